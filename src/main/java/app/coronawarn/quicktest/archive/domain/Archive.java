@@ -33,7 +33,7 @@ import lombok.Setter;
 import lombok.ToString;
 
 @Data
-@ToString(exclude = { "secret", "ciphertext" })
+@ToString(exclude = { "secret", "ciphertext", "ciphertextBinary" })
 @Entity
 @Table(name = "archive")
 public class Archive {
@@ -51,14 +51,39 @@ public class Archive {
     @Column(name = "poc_id", columnDefinition = "varchar(255)", nullable = false)
     private String pocId;
 
+    /**
+     * Secret of the entry wrapped by the KeyProvider, null if the entry is encrypted with a data key.
+     */
     @Lob
-    @Column(name = "secret", nullable = false)
+    @Column(name = "secret")
     private String secret;
 
+    /**
+     * Id of the {@link ArchiveDataKey} used to encrypt the entry, null if the entry has its own secret.
+     */
+    @Column(name = "key_id", columnDefinition = "varchar(36)")
+    private String keyId;
+
+    /**
+     * Base64 encoded ciphertext of the JSON record (format version 1).
+     */
     @Lob
-    @Column(name = "ciphertext", nullable = false)
+    @Column(name = "ciphertext")
     private String ciphertext;
 
+    /**
+     * Ciphertext of the compressed binary record (format version 2).
+     */
+    @Lob
+    @Column(name = "ciphertext_binary")
+    private byte[] ciphertextBinary;
+
+    /**
+     * Version of the record format, null for entries created before the version was introduced (version 1).
+     */
+    @Column(name = "format_version", columnDefinition = "int")
+    private Integer formatVersion;
+
     @Column(name = "algorithm_aes", columnDefinition = "varchar(255)", nullable = false)
     private String algorithmAes;
 
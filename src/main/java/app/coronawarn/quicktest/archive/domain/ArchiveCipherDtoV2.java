@@ -0,0 +1,42 @@
+/*-
+ * ---license-start
+ * Corona-Warn-App / cwa-quick-test-backend
+ * ---
+ * Copyright (C) 2021 - 2023 T-Systems International GmbH and all other contributors
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---license-end
+ */
+
+package app.coronawarn.quicktest.archive.domain;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+
+/**
+ * Binary archive record. The properties are written as an array without names, so the order must not be changed.
+ * New properties have to be appended at the end.
+ */
+@ToString(callSuper = true)
+@EqualsAndHashCode(callSuper = true)
+@JsonFormat(shape = JsonFormat.Shape.ARRAY)
+@JsonPropertyOrder({ "hashedGuid", "shortHashedGuid", "tenantId", "pocId", "createdAt", "updatedAt", "version",
+    "confirmationCwa", "testResult", "privacyAgreement", "lastName", "firstName", "email", "phoneNumber", "sex",
+    "street", "houseNumber", "zipCode", "city", "testBrandId", "testBrandName", "birthday", "testResultServerHash",
+    "dcc", "additionalInfo", "groupName" })
+public class ArchiveCipherDtoV2 extends ArchiveCipherDto {
+
+    public static final int FORMAT_VERSION = 2;
+}
@@ -0,0 +1,58 @@
+/*-
+ * ---license-start
+ * Corona-Warn-App / cwa-quick-test-backend
+ * ---
+ * Copyright (C) 2021 - 2023 T-Systems International GmbH and all other contributors
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---license-end
+ */
+
+package app.coronawarn.quicktest.archive.domain;
+
+import java.time.LocalDateTime;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Lob;
+import javax.persistence.Table;
+import lombok.Data;
+import lombok.ToString;
+
+/**
+ * Data key of a tenant used to encrypt archive entries in envelope mode.
+ * The key itself is stored wrapped by the {@link app.coronawarn.quicktest.service.KeyProvider}.
+ */
+@Data
+@ToString(exclude = "wrappedKey")
+@Entity
+@Table(name = "archive_data_key")
+public class ArchiveDataKey {
+
+    @Id
+    @Column(name = "key_id", columnDefinition = "varchar(36)", nullable = false)
+    private String keyId;
+
+    @Column(name = "tenant_id", columnDefinition = "varchar(255)", nullable = false)
+    private String tenantId;
+
+    @Lob
+    @Column(name = "wrapped_key", nullable = false)
+    private String wrappedKey;
+
+    @Column(name = "valid_until", columnDefinition = "datetime", nullable = false)
+    private LocalDateTime validUntil;
+
+    @Column(name = "created_at", columnDefinition = "datetime", nullable = false)
+    private LocalDateTime createdAt;
+}
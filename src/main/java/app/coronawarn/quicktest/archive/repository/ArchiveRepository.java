@@ -21,20 +21,73 @@
 package app.coronawarn.quicktest.archive.repository;
 
 import app.coronawarn.quicktest.archive.domain.Archive;
+import app.coronawarn.quicktest.archive.domain.ArchiveDataKey;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import javax.persistence.EntityManager;
-import javax.persistence.RollbackException;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceException;
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.hibernate.exception.ConstraintViolationException;
-import org.springframework.data.domain.PageRequest;
 
+/**
+ * Repository of the longterm archive.
+ * Every operation runs in its own EntityManager and transaction, so the repository can be used by concurrent
+ * threads. The returned entities are detached.
+ */
 // see app.coronawarn.quicktest.config.ArchiveEntityManagerConfig
 @RequiredArgsConstructor
 @Slf4j
-public class ArchiveRepository {
+public class ArchiveRepository implements AutoCloseable {
 
-    private final EntityManager em;
+    private final EntityManagerFactory emf;
+
+    /**
+     * Runs the operation with a new EntityManager within a transaction. The transaction is rolled back if the
+     * operation fails, the EntityManager is always closed.
+     */
+    private <T> T inTransaction(final Function<EntityManager, T> operation) {
+        final EntityManager em = this.emf.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            final T result = operation.apply(em);
+            em.getTransaction().commit();
+            return result;
+        } catch (final RuntimeException e) {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            throw e;
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * Closes the EntityManagerFactory of the longterm archive.
+     */
+    @Override
+    public void close() {
+        if (this.emf.isOpen()) {
+            this.emf.close();
+        }
+    }
 
     /**
      * Saves the entry.
@@ -44,13 +97,14 @@ public class ArchiveRepository {
      */
     public Archive save(Archive archive) {
         try {
-            this.em.getTransaction().begin();
-            this.em.persist(archive);
-            this.em.getTransaction().commit();
-        } catch (final RollbackException r) {
-            log.warn("Rollback exception occured: {}", r.getMessage());
+            inTransaction(em -> {
+                em.persist(archive);
+                return archive;
+            });
+        } catch (final PersistenceException e) {
+            log.warn("Rollback exception occured: {}", e.getMessage());
             // resume on error in case of a constraint violation (already present)
-            if (r.getCause() instanceof ConstraintViolationException) {
+            if (ExceptionUtils.indexOfType(e, ConstraintViolationException.class) >= 0) {
                 log.warn("Constraint violation, value already present in longterm db.");
             }
         }
@@ -58,86 +112,249 @@ public class ArchiveRepository {
     }
 
     /**
-     * Returns all existing entries.
+     * Saves all entries within a single transaction using JDBC batching.
+     * Entries which are already present in the longterm db are skipped. If the chunk cannot be committed, e.g.
+     * because an entry was inserted concurrently, the entries are saved one by one, so that a single constraint
+     * violation only skips the affected entry. An entry which cannot be inserted only counts as already present if
+     * it is found in the longterm db, otherwise it is reported as failed.
      *
-     * @return {@link List} of {@link Archive}
+     * @param archives {@link List} of {@link Archive}
+     * @return {@link SaveAllResult} with the hashed guids of inserted, already present and failed entries
      */
-    public List<Archive> findAll() {
-        this.em.getTransaction().begin();
+    public SaveAllResult saveAll(final List<Archive> archives) {
+        if (archives.isEmpty()) {
+            return new SaveAllResult(Collections.emptyList(), Collections.emptyList(), Collections.emptyList());
+        }
+        try {
+            return inTransaction(em -> {
+                final List<String> inserted = new ArrayList<>(archives.size());
+                final List<String> existing = new ArrayList<>();
+                final Set<String> present = new HashSet<>(em
+                    .createQuery("SELECT a.hashedGuid FROM Archive a WHERE a.hashedGuid IN ?1", String.class)
+                    .setParameter(1, archives.stream().map(Archive::getHashedGuid).collect(Collectors.toList()))
+                    .getResultList());
+                for (final Archive archive : archives) {
+                    if (present.contains(archive.getHashedGuid())) {
+                        existing.add(archive.getHashedGuid());
+                    } else {
+                        em.persist(archive);
+                        inserted.add(archive.getHashedGuid());
+                    }
+                }
+                return new SaveAllResult(inserted, existing, Collections.emptyList());
+            });
+        } catch (final PersistenceException e) {
+            log.warn("Could not save chunk of {} entries in longterm db, saving one by one: {}",
+                archives.size(), e.getMessage());
+            return this.saveOneByOne(archives);
+        }
+    }
 
-        final List<Archive> result = em
-            .createQuery("SELECT a FROM Archive a", Archive.class)
-            .getResultList();
+    private SaveAllResult saveOneByOne(final List<Archive> archives) {
+        final List<String> inserted = new ArrayList<>(archives.size());
+        final List<String> existing = new ArrayList<>();
+        final List<String> failed = new ArrayList<>();
+        for (final Archive archive : archives) {
+            try {
+                // persist a copy, the failed chunk already assigned a version to the given instance
+                inTransaction(em -> {
+                    em.persist(copyOf(archive));
+                    return null;
+                });
+                inserted.add(archive.getHashedGuid());
+            } catch (final PersistenceException e) {
+                // a constraint violation is not necessarily a duplicate, e.g. a NOT NULL or length violation
+                if (exists(archive.getHashedGuid())) {
+                    log.warn("Constraint violation, value already present in longterm db.");
+                    existing.add(archive.getHashedGuid());
+                } else {
+                    log.warn("Could not save entry {} in longterm db: {}", archive.getHashedGuid(), e.getMessage());
+                    failed.add(archive.getHashedGuid());
+                }
+            }
+        }
+        return new SaveAllResult(inserted, existing, failed);
+    }
 
-        this.em.getTransaction().commit();
-        return result;
+    private boolean exists(final String hashedGuid) {
+        return !inTransaction(em -> em
+            .createQuery("SELECT a.hashedGuid FROM Archive a WHERE a.hashedGuid = ?1", String.class)
+            .setParameter(1, hashedGuid)
+            .setMaxResults(1)
+            .getResultList()).isEmpty();
+    }
+
+    private Archive copyOf(final Archive archive) {
+        final Archive copy = new Archive();
+        copy.setHashedGuid(archive.getHashedGuid());
+        copy.setIdentifier(archive.getIdentifier());
+        copy.setTenantId(archive.getTenantId());
+        copy.setPocId(archive.getPocId());
+        copy.setSecret(archive.getSecret());
+        copy.setKeyId(archive.getKeyId());
+        copy.setCiphertext(archive.getCiphertext());
+        copy.setCiphertextBinary(archive.getCiphertextBinary());
+        copy.setFormatVersion(archive.getFormatVersion());
+        copy.setAlgorithmAes(archive.getAlgorithmAes());
+        copy.setCreatedAt(archive.getCreatedAt());
+        copy.setUpdatedAt(archive.getUpdatedAt());
+        return copy;
+    }
+
+    @RequiredArgsConstructor
+    @Getter
+    public static class SaveAllResult {
+        /**
+         * Hashed guids of the entries inserted by this call.
+         */
+        private final List<String> inserted;
+
+        /**
+         * Hashed guids of the entries which were already present in the longterm db.
+         */
+        private final List<String> existing;
+
+        /**
+         * Hashed guids of the entries which could not be saved, they are not stored in the longterm db.
+         */
+        private final List<String> failed;
+
+        /**
+         * Returns the hashed guids of all entries which are stored in the longterm db after this call.
+         *
+         * @return {@link List} of {@link String}
+         */
+        public List<String> getStored() {
+            final List<String> stored = new ArrayList<>(inserted.size() + existing.size());
+            stored.addAll(inserted);
+            stored.addAll(existing);
+            return stored;
+        }
     }
 
     /**
-     * Returns all entries by pocId.
+     * Returns the next entries by tenantId ordered by hashedGuid (keyset pagination).
      *
+     * @param tenantId         SHA256 Hash of TenantId to search for
+     * @param afterHashedGuid  hashedGuid of the last entry of the previous chunk or null for the first chunk
+     * @param limit            maximum amount of entries
      * @return {@link List} of {@link Archive}
      */
-    public List<Archive> findAllByPocId(final String pocId, final String tenantId) {
-        em.getTransaction().begin();
+    public List<Archive> findAllByTenantIdAfter(final String tenantId, final String afterHashedGuid,
+                                                final int limit) {
+        return inTransaction(em -> em
+            .createQuery("SELECT a FROM Archive a WHERE a.tenantId = ?1 AND a.hashedGuid > ?2 "
+                + "ORDER BY a.hashedGuid", Archive.class)
+            .setParameter(1, tenantId)
+            .setParameter(2, afterHashedGuid != null ? afterHashedGuid : "")
+            .setMaxResults(limit)
+            .getResultList());
+    }
 
-        final List<Archive> result = em
-            .createQuery("SELECT a FROM Archive a WHERE a.pocId = ?1 AND a.tenantId = ?2", Archive.class)
+    /**
+     * Returns the next entries by pocId ordered by hashedGuid (keyset pagination).
+     *
+     * @param pocId            SHA256 Hash of PocId to search for
+     * @param tenantId         SHA256 Hash of TenantId to search for
+     * @param afterHashedGuid  hashedGuid of the last entry of the previous chunk or null for the first chunk
+     * @param limit            maximum amount of entries
+     * @return {@link List} of {@link Archive}
+     */
+    public List<Archive> findAllByPocIdAfter(final String pocId, final String tenantId, final String afterHashedGuid,
+                                             final int limit) {
+        return inTransaction(em -> em
+            .createQuery("SELECT a FROM Archive a WHERE a.pocId = ?1 AND a.tenantId = ?2 AND a.hashedGuid > ?3 "
+                + "ORDER BY a.hashedGuid", Archive.class)
             .setParameter(1, pocId)
             .setParameter(2, tenantId)
-            .getResultList();
-
-        em.getTransaction().commit();
-        return result;
+            .setParameter(3, afterHashedGuid != null ? afterHashedGuid : "")
+            .setMaxResults(limit)
+            .getResultList());
     }
 
     /**
-     * Returns all entries by tenantId.
+     * Streams all entries by tenantId ordered by hashedGuid.
+     * The entries are lazily loaded in chunks, so only one chunk is held in memory at a time.
      *
-     * @return {@link List} of {@link Archive}
+     * @param tenantId  SHA256 Hash of TenantId to search for
+     * @param chunkSize amount of entries loaded at once
+     * @return {@link Stream} of {@link Archive}
      */
-    public List<Archive> findAllByTenantId(final String tenantId) {
-        em.getTransaction().begin();
-
-        final List<Archive> result = em
-            .createQuery("SELECT a FROM Archive a WHERE a.tenantId = ?1", Archive.class)
-            .setParameter(1, tenantId).getResultList();
-
-        em.getTransaction().commit();
-        return result;
+    public Stream<Archive> streamAllByTenantId(final String tenantId, final int chunkSize) {
+        return stream(after -> findAllByTenantIdAfter(tenantId, after, chunkSize));
     }
 
     /**
-     * Returns all entries by tenantId.
+     * Streams all entries by pocId ordered by hashedGuid.
+     * The entries are lazily loaded in chunks, so only one chunk is held in memory at a time.
      *
-     * @return {@link List} of {@link Archive}
+     * @param pocId     SHA256 Hash of PocId to search for
+     * @param tenantId  SHA256 Hash of TenantId to search for
+     * @param chunkSize amount of entries loaded at once
+     * @return {@link Stream} of {@link Archive}
      */
-    public List<Archive> findAllByTenantId(final String tenantId, PageRequest pageRequest) {
-        em.getTransaction().begin();
+    public Stream<Archive> streamAllByPocId(final String pocId, final String tenantId, final int chunkSize) {
+        return stream(after -> findAllByPocIdAfter(pocId, tenantId, after, chunkSize));
+    }
 
-        final List<Archive> result = em
-            .createQuery("SELECT a FROM Archive a WHERE a.tenantId = ?1", Archive.class)
-            .setFirstResult(pageRequest.getPageNumber() * pageRequest.getPageSize())
-            .setMaxResults(pageRequest.getPageSize())
-            .setParameter(1, tenantId)
-            .getResultList();
+    private Stream<Archive> stream(final Function<String, List<Archive>> nextChunk) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(
+            new KeysetIterator(nextChunk), Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    @RequiredArgsConstructor
+    private static class KeysetIterator implements Iterator<Archive> {
+
+        private final Function<String, List<Archive>> nextChunk;
+
+        private Iterator<Archive> chunk = Collections.emptyIterator();
+
+        private String lastHashedGuid;
 
-        em.getTransaction().commit();
-        return result;
+        private boolean exhausted;
+
+        @Override
+        public boolean hasNext() {
+            if (!chunk.hasNext() && !exhausted) {
+                final List<Archive> next = nextChunk.apply(lastHashedGuid);
+                exhausted = next.isEmpty();
+                chunk = next.iterator();
+            }
+            return chunk.hasNext();
+        }
+
+        @Override
+        public Archive next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final Archive archive = chunk.next();
+            lastHashedGuid = archive.getHashedGuid();
+            return archive;
+        }
     }
 
     /**
-     * Delete all entries by tenantId.
+     * Deletes at most limit entities of the tenant, so the statement holds its locks only for a short time.
+     *
+     * @param tenantId SHA256 Hash of TenantId
+     * @param limit    maximum amount of deleted entities
+     * @return amount of deleted entities
      */
-    public void deleteAllByTenantId(final String tenantId) {
-        em.getTransaction().begin();
-
-        em
-            .createQuery("DELETE FROM Archive a WHERE a.tenantId = ?1")
-            .setParameter(1, tenantId)
-            .executeUpdate();
-
-        em.getTransaction().commit();
+    public int deleteByTenantId(final String tenantId, final int limit) {
+        return inTransaction(em -> {
+            final List<String> hashedGuids = em
+                .createQuery("SELECT a.hashedGuid FROM Archive a WHERE a.tenantId = ?1", String.class)
+                .setParameter(1, tenantId)
+                .setMaxResults(limit)
+                .getResultList();
+            if (hashedGuids.isEmpty()) {
+                return 0;
+            }
+            return em.createQuery("DELETE FROM Archive a WHERE a.hashedGuid IN ?1")
+                .setParameter(1, hashedGuids)
+                .executeUpdate();
+        });
     }
 
     /**
@@ -146,15 +363,10 @@ public class ArchiveRepository {
      * @return {@link List} of {@link String}
      */
     public List<String> findAllHashedGuids(final List<String> search) {
-        this.em.getTransaction().begin();
-
-        final List<String> result = em
+        return inTransaction(em -> em
             .createQuery("SELECT a.hashedGuid FROM Archive a WHERE a.hashedGuid IN ?1", String.class)
             .setParameter(1, search)
-            .getResultList();
-
-        this.em.getTransaction().commit();
-        return result;
+            .getResultList());
     }
 
     /**
@@ -164,15 +376,63 @@ public class ArchiveRepository {
      * @return amount of found entities.
      */
     public Integer countAllByTenantId(final String tenantId) {
-        em.getTransaction().begin();
-
-        final Integer result = em
+        return inTransaction(em -> em
             .createQuery("SELECT COUNT(*) FROM Archive a WHERE a.tenantId = ?1", Long.class)
             .setParameter(1, tenantId)
             .getSingleResult()
-            .intValue();
+            .intValue());
+    }
 
-        em.getTransaction().commit();
-        return result;
+    /**
+     * Saves the data key.
+     *
+     * @param dataKey {@link ArchiveDataKey}
+     * @return {@link ArchiveDataKey}
+     */
+    public ArchiveDataKey saveDataKey(final ArchiveDataKey dataKey) {
+        return inTransaction(em -> {
+            em.persist(dataKey);
+            return dataKey;
+        });
+    }
+
+    /**
+     * Returns the data key with the given id.
+     *
+     * @param keyId id of the data key
+     * @return {@link Optional} of {@link ArchiveDataKey}
+     */
+    public Optional<ArchiveDataKey> findDataKey(final String keyId) {
+        return Optional.ofNullable(inTransaction(em -> em.find(ArchiveDataKey.class, keyId)));
+    }
+
+    /**
+     * Returns the data key of the tenant with the latest expiry which is still valid at the given time.
+     *
+     * @param tenantId   SHA256 Hash of TenantId to search for
+     * @param validAfter point in time the key has to be valid
+     * @return {@link Optional} of {@link ArchiveDataKey}
+     */
+    public Optional<ArchiveDataKey> findValidDataKey(final String tenantId, final LocalDateTime validAfter) {
+        return inTransaction(em -> em
+            .createQuery("SELECT k FROM ArchiveDataKey k WHERE k.tenantId = ?1 AND k.validUntil > ?2 "
+                + "ORDER BY k.validUntil DESC", ArchiveDataKey.class)
+            .setParameter(1, tenantId)
+            .setParameter(2, validAfter)
+            .setMaxResults(1)
+            .getResultList())
+            .stream().findFirst();
+    }
+
+    /**
+     * Delete all data keys by tenantId.
+     *
+     * @param tenantId SHA256 Hash of TenantId
+     */
+    public void deleteDataKeysByTenantId(final String tenantId) {
+        inTransaction(em -> em
+            .createQuery("DELETE FROM ArchiveDataKey k WHERE k.tenantId = ?1")
+            .setParameter(1, tenantId)
+            .executeUpdate());
     }
 }
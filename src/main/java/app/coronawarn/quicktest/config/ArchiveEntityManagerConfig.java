@@ -22,7 +22,7 @@ package app.coronawarn.quicktest.config;
 
 import app.coronawarn.quicktest.archive.repository.ArchiveRepository;
 import java.util.Properties;
-import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
 import javax.sql.DataSource;
 import lombok.extern.slf4j.Slf4j;
 import org.hibernate.cfg.AvailableSettings;
@@ -32,7 +32,6 @@ import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.orm.jpa.JpaTransactionManager;
 import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
 import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
 
@@ -57,24 +56,23 @@ public class ArchiveEntityManagerConfig {
         this.jpaHibernateProperties = jpaHibernateProperties;
     }
 
-    @Bean
+    /**
+     * Creates the repository of the longterm archive. The EntityManagerFactory is shared by all operations of the
+     * repository, every operation uses its own EntityManager and transaction. The factory is not exposed as bean,
+     * otherwise the auto configured EntityManagerFactory and transaction manager of the primary datasource would
+     * back off.
+     *
+     * @return {@link ArchiveRepository}
+     */
+    @Bean(destroyMethod = "close")
     public ArchiveRepository archiveRepository() {
         log.info("Creating ArchiveRepository");
-        return new ArchiveRepository(this.archiveEntityManager());
+        return new ArchiveRepository(this.archiveEntityManagerFactory());
     }
 
-    private EntityManager archiveEntityManager() {
-        log.debug("Creating Archive EntityManager");
-        return this.archiveJpaTransactionManager()
-                .getEntityManagerFactory()
-                .createEntityManager();
-    }
-
-    private JpaTransactionManager archiveJpaTransactionManager() {
-        log.debug("Creating Archive JpaTransactionManager");
-        final JpaTransactionManager transactionManager = new JpaTransactionManager();
-        transactionManager.setEntityManagerFactory(archiveEntityManagerFactoryBean().getObject());
-        return transactionManager;
+    private EntityManagerFactory archiveEntityManagerFactory() {
+        log.debug("Creating Archive EntityManagerFactory");
+        return archiveEntityManagerFactoryBean().getObject();
     }
 
     private LocalContainerEntityManagerFactoryBean archiveEntityManagerFactoryBean() {
@@ -112,6 +110,8 @@ public class ArchiveEntityManagerConfig {
         if (this.jpaHibernateProperties.getJdbc().getBatchSize() != null) {
             properties.put(AvailableSettings.STATEMENT_BATCH_SIZE,
                     this.jpaHibernateProperties.getJdbc().getBatchSize());
+            properties.put(AvailableSettings.ORDER_INSERTS, Boolean.TRUE.toString());
+            properties.put(AvailableSettings.BATCH_VERSIONED_DATA, Boolean.TRUE.toString());
         }
         if (this.jpaHibernateProperties.getShowSql() != null) {
             properties.put(AvailableSettings.SHOW_SQL, this.jpaHibernateProperties.getShowSql());
@@ -35,16 +35,29 @@ public class ArchiveProperties {
     private Hash hash = new Hash();
     private Crypt crypt = new Crypt();
     private VaultTransit vaultTransit = new VaultTransit();
+    private Envelope envelope = new Envelope();
 
     /**
      * Comma seperated list of PartnerID of Partners who should be ignored for archiving.
      */
     private String excludedPartners = "";
 
+    /**
+     * Amount of threads decrypting entities read from the archive, 1 decrypts on the calling thread.
+     */
+    private int decryptParallelism = 1;
+
+    /**
+     * Format of new entries: 1 = JSON as Base64 text, 2 = compressed CBOR as binary.
+     */
+    private int recordFormatVersion = 1;
+
     @Data
     public static final class VaultTransit {
         private String folder = "cwa-quick-test-archive";
         private String dek = "cwa-quick-test-archive-encryption-key";
+        private int batchSize = 250;
+        private long publicKeyCacheTtlInSeconds = 300;
     }
 
     @Data
@@ -59,12 +72,29 @@ public class ArchiveProperties {
         private long locklimit = -1;
         private long olderThanInSeconds = -1;
         private int chunkSize = 1000;
+        private int batchSize = 100;
+        private int parallelism = 1;
     }
 
     @Data
     public static final class Hash {
         private String algorithm;
         private String pepper;
+        /**
+         * Maximum amount of cached hashes of tenant and poc ids.
+         */
+        private int cacheSize = 10000;
+    }
+
+    @Data
+    public static final class Envelope {
+        /**
+         * Encrypt new entries with a data key per tenant instead of a secret per entry.
+         */
+        private boolean enabled = false;
+        private long keyValidityInSeconds = 86400;
+        private int cacheSize = 1000;
+        private long cacheTtlInSeconds = 3600;
     }
 
     @Data
@@ -32,6 +32,7 @@ public class CsvUploadConfig {
     private String secretKey;
     private String bucketName;
     private int expiration;
+    private int partSize = 5 * 1024 * 1024;
 
     private Region region;
 
@@ -0,0 +1,47 @@
+/*-
+ * ---license-start
+ * Corona-Warn-App / cwa-quick-test-backend
+ * ---
+ * Copyright (C) 2021 - 2023 T-Systems International GmbH and all other contributors
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---license-end
+ */
+
+package app.coronawarn.quicktest.config;
+
+import app.coronawarn.quicktest.dbencryption.DbEncryptionInterceptor;
+import app.coronawarn.quicktest.dbencryption.LazyDecryptionService;
+import app.coronawarn.quicktest.dbencryption.PersonalDataRecordService;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class DbEncryptionConfig {
+
+    /**
+     * Registers the {@link DbEncryptionInterceptor} for all sessions of the primary persistence unit.
+     *
+     * @param personalDataRecordService packs and unpacks the personal data record
+     * @param lazyDecryptionService     decides whether loaded values are decrypted on first access
+     * @return customizer which sets the interceptor
+     */
+    @Bean
+    public HibernatePropertiesCustomizer dbEncryptionInterceptorCustomizer(
+        PersonalDataRecordService personalDataRecordService, LazyDecryptionService lazyDecryptionService) {
+        return properties -> properties.put(AvailableSettings.INTERCEPTOR,
+            new DbEncryptionInterceptor(personalDataRecordService, lazyDecryptionService));
+    }
+}
@@ -158,4 +158,80 @@ public class PdfConfig {
         + "europäischen Ländern. Dort findedn Sie auch Hinweise, welche <br> Informationen und Dokumente Sie bei der "
         + "Einreise vorlegen <br> müssen. Die Datenverarbeitung unterliegt den Vorschriften des <br> "
         + "jeweiligen Einreiselandes";
+
+    private AsyncRendering asyncRendering = new AsyncRendering();
+
+    private Bulkhead bulkhead = new Bulkhead();
+
+    private ObjectStorage objectStorage = new ObjectStorage();
+
+    @Getter
+    @Setter
+    public static class AsyncRendering {
+        /**
+         * Render PDFs after the result was committed instead of within the request.
+         */
+        private boolean enabled = false;
+        private int threads = 2;
+        private int queueCapacity = 200;
+        /**
+         * Time a PDF download waits for a PDF which is still rendered on this instance.
+         */
+        private long waitInMillis = 2000;
+        /**
+         * Pending PDFs older than this are rendered by the recovery job, e.g. after a restart.
+         */
+        private long recoverAfterSeconds = 120;
+        private int recoveryBatchSize = 50;
+        private long recoveryDelay = 60000;
+        private long locklimit = 1800000;
+    }
+
+    @Getter
+    @Setter
+    public static class Bulkhead {
+        /**
+         * PDFs rendered at the same time on this instance.
+         */
+        private int maxConcurrent = 4;
+        /**
+         * PDFs waiting for a free slot, further requests are rejected immediately.
+         */
+        private int queueCapacity = 100;
+        private long timeoutInMillis = 30000;
+    }
+
+    @Getter
+    @Setter
+    public static class ObjectStorage {
+        /**
+         * Store the encrypted PDFs of the archive in the S3 bucket instead of the quick_test_archive table.
+         */
+        private boolean enabled = false;
+        private String keyPrefix = "pdf/";
+        /**
+         * Uploads after the commit run on this many threads, uploads which do not fit into the queue are moved by
+         * the migration job.
+         */
+        private int uploadThreads = 2;
+        private int uploadQueueCapacity = 200;
+        private Migration migration = new Migration();
+    }
+
+    @Getter
+    @Setter
+    public static class Migration {
+        /**
+         * Move PDFs which are still stored in the quick_test_archive table to the bucket.
+         */
+        private boolean enabled = false;
+        private int batchSize = 50;
+        private int maxBatchesPerRun = 20;
+        /**
+         * Pause between two batches to limit the load on database and bucket.
+         */
+        private long pauseInMillis = 1000;
+        private long delay = 300000;
+        private long locklimit = 1800000;
+    }
 }
@@ -50,6 +50,10 @@ public class QuickTestConfig {
 
     private FrontendContextConfig frontendContextConfig = new FrontendContextConfig();
     private CancellationConfig cancellation = new CancellationConfig();
+    private ConflictFilterConfig conflictFilter = new ConflictFilterConfig();
+    private BulkDeleteConfig bulkDelete = new BulkDeleteConfig();
+    private PersonalDataRecordConfig personalDataRecord = new PersonalDataRecordConfig();
+    private LazyDecryptionConfig lazyDecryption = new LazyDecryptionConfig();
 
     @Getter
     @Setter
@@ -61,6 +65,77 @@ public class QuickTestConfig {
 
     }
 
+    @Getter
+    @Setter
+    public static class BulkDeleteConfig {
+
+        /**
+         * Rows deleted by one statement of a bulk delete.
+         */
+        private int batchSize = 1000;
+        private long pauseInMillis = 100;
+        /**
+         * Extension of the ShedLock lock of the running job after every statement.
+         */
+        private int lockExtensionInSeconds = 600;
+
+    }
+
+    @Getter
+    @Setter
+    public static class LazyDecryptionConfig {
+
+        /**
+         * Decrypt the encrypted columns of quick tests and archived quick tests on first access instead of when they
+         * are loaded.
+         */
+        private boolean enabled = false;
+
+    }
+
+    @Getter
+    @Setter
+    public static class PersonalDataRecordConfig {
+
+        /**
+         * Store the personal data of quick tests and archived quick tests as one encrypted record instead of one
+         * encrypted column per value. Rows of both layouts are readable regardless of this setting.
+         */
+        private boolean enabled = false;
+        private Migration migration = new Migration();
+
+        @Getter
+        @Setter
+        public static class Migration {
+            /**
+             * Convert the rows which are still stored with one encrypted column per value.
+             */
+            private boolean enabled = false;
+            private int batchSize = 100;
+            private int maxBatchesPerRun = 20;
+            /**
+             * Pause between two batches to limit the load on the database.
+             */
+            private long pauseInMillis = 1000;
+            private long delay = 300000;
+            private long locklimit = 1800000;
+        }
+    }
+
+    @Getter
+    @Setter
+    public static class ConflictFilterConfig {
+
+        private boolean enabled = false;
+        private double falsePositiveProbability = 0.01;
+        private int minExpectedInsertions = 100000;
+        private int pageSize = 10000;
+        private long rebuildDelay = 21600000;
+        private long refreshDelay = 30000;
+        private int refreshOverlapInSeconds = 60;
+
+    }
+
     @Getter
     @Setter
     public static class FrontendContextConfig {
@@ -76,5 +151,9 @@ public class QuickTestConfig {
         private int maxAgeInMinutes;
         private int locklimit;
         private int chunkSize;
+        /**
+         * Time after which a cleanup run stops, the remaining quick tests are deleted by the next run. 0 for no limit.
+         */
+        private int timeBudgetInSeconds;
     }
 }
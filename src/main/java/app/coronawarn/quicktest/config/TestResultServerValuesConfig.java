@@ -40,4 +40,52 @@ public class TestResultServerValuesConfig {
     private String trustStorePath;
     private char[] trustStorePassword;
 
+    private Batching batching = new Batching();
+
+    private Outbox outbox = new Outbox();
+
+    @Getter
+    @Setter
+    public static class Batching {
+        /**
+         * Send the results of concurrent requests and of the cleanup together instead of one call per result.
+         */
+        private boolean enabled = false;
+        /**
+         * Time a batch waits for further results after its first result.
+         */
+        private long lingerInMillis = 20;
+        private int maxBatchSize = 100;
+        /**
+         * Results waiting for a batch, further results are rejected.
+         */
+        private int queueCapacity = 5000;
+        /**
+         * Time a caller waits for the outcome of its result.
+         */
+        private long timeoutInMillis = 30000;
+    }
+
+    @Getter
+    @Setter
+    public static class Outbox {
+        /**
+         * Store test results in the transaction of the quick test and send them afterwards instead of during the
+         * request.
+         */
+        private boolean enabled = false;
+        private long delay = 1000;
+        private int batchSize = 100;
+        private int maxBatchesPerRun = 50;
+        /**
+         * Delay of the first retry of a result which was not accepted, doubled for every further attempt.
+         */
+        private long initialBackoffInMillis = 1000;
+        private long maxBackoffInMillis = 600000;
+        /**
+         * Attempts after which a result is parked, it is kept for analysis but not sent again.
+         */
+        private int maxAttempts = 20;
+        private long locklimit = 1800000;
+    }
 }
@@ -34,8 +34,12 @@ import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.enums.ParameterIn;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.Date;
@@ -60,6 +64,7 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 
 @Slf4j
@@ -123,6 +128,57 @@ public class ArchiveExportController {
         }
     }
 
+    /**
+     * Endpoint for downloading archived entities as a stream.
+     * The CSV is written chunk by chunk directly to the response (chunked transfer encoding), so the heap usage is
+     * bounded by the chunk size and not by the amount of archived entities.
+     *
+     * @return CSV with all archived data.
+     */
+    @Operation(
+        summary = "Download Archive CSV-File (streamed)",
+        description = "Streams a CSV-File with all archived data for whole Partner.",
+        parameters = {
+          @Parameter(
+              in = ParameterIn.PATH,
+              name = "partnerId",
+              description = "Partner ID of the PArtner to download data of",
+              required = true),
+          @Parameter(
+              in = ParameterIn.QUERY,
+              name = "stream",
+              description = "Must be true to stream the CSV-File",
+              required = true)
+        }
+    )
+    @ApiResponses(value = {
+      @ApiResponse(responseCode = "200", description = "Successful")
+    })
+    @GetMapping(value = "/{partnerId}", params = "stream=true", produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    @Secured({ROLE_ARCHIVE_OPERATOR})
+    public ResponseEntity<StreamingResponseBody> exportArchiveStreamed(@PathVariable("partnerId") String partnerId,
+                                                                       Authentication authentication) {
+
+        log.info("Streamed Archive Export triggered for PartnerId: {} by {}", partnerId, authentication.getName());
+
+        StreamingResponseBody body = outputStream -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+            try {
+                int entityCount = archiveService.writeCsv(partnerId, writer);
+                log.info("Streamed Archive Export finished for PartnerId: {}, Entities: {}", partnerId, entityCount);
+            } catch (CsvRequiredFieldEmptyException | CsvDataTypeMismatchException e) {
+                log.error("Failed to stream CSV: {}", e.getMessage());
+                throw new IOException("Failed to create CSV.", e);
+            }
+        };
+
+        return ResponseEntity
+            .status(HttpStatus.OK)
+            .contentType(MediaType.APPLICATION_OCTET_STREAM)
+            .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=quicktest_export.csv")
+            .body(body);
+    }
+
     /**
      * Endpoint for creating a zip file with multiple CSV-files.
      *
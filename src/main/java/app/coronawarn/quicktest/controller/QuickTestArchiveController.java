@@ -31,6 +31,7 @@ import app.coronawarn.quicktest.utils.Utilities;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import java.io.InputStream;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
@@ -41,6 +42,7 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.modelmapper.ModelMapper;
 import org.modelmapper.TypeToken;
+import org.springframework.core.io.InputStreamResource;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
@@ -63,6 +65,8 @@ import org.springframework.web.server.ResponseStatusException;
 @Validated
 public class QuickTestArchiveController {
 
+    private static final String PDF_RETRY_AFTER_SECONDS = "2";
+
     private final QuickTestArchiveService quickTestArchiveService;
     private final ModelMapper modelMapper;
     private final Utilities utilities;
@@ -79,18 +83,26 @@ public class QuickTestArchiveController {
     )
     @ApiResponses(value = {
       @ApiResponse(responseCode = "200", description = "PDF found"),
+      @ApiResponse(responseCode = "202", description = "PDF is not rendered yet, retry later"),
       @ApiResponse(responseCode = "404", description = "Quicktest not found"),
       @ApiResponse(responseCode = "500", description = "Inserting failed because of internal error.")})
     @RequestMapping(path = "/{hashedGuid}/pdf", method = RequestMethod.GET, produces = MediaType.APPLICATION_PDF_VALUE)
     @Secured({ROLE_COUNTER, ROLE_LAB})
-    public ResponseEntity<byte[]> getQuickTestPdf(
+    public ResponseEntity<InputStreamResource> getQuickTestPdf(
             @PathVariable("hashedGuid") String hashedGuid) {
         try {
-            ResponseEntity<byte[]> responseEntity = ResponseEntity.ok()
+            InputStream pdf = quickTestArchiveService.getPdf(hashedGuid);
+            if (pdf == null) {
+                log.info("pdf not rendered yet.");
+                return ResponseEntity.status(HttpStatus.ACCEPTED)
+                    .header(HttpHeaders.RETRY_AFTER, PDF_RETRY_AFTER_SECONDS)
+                    .build();
+            }
+            ResponseEntity<InputStreamResource> responseEntity = ResponseEntity.ok()
                 .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\""
                     + "Schnelltest_" + hashedGuid + ".pdf\"")
                 .contentType(MediaType.APPLICATION_PDF)
-                .body(quickTestArchiveService.getPdf(hashedGuid));
+                .body(new InputStreamResource(pdf));
             log.info("pdf successfully downloaded.");
             return responseEntity;
         } catch (ResponseStatusException e) {
@@ -0,0 +1,137 @@
+/*-
+ * ---license-start
+ * Corona-Warn-App / cwa-quick-test-backend
+ * ---
+ * Copyright (C) 2021 - 2023 T-Systems International GmbH and all other contributors
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---license-end
+ */
+
+package app.coronawarn.quicktest.dbencryption;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import org.hibernate.EmptyInterceptor;
+import org.hibernate.type.Type;
+
+/**
+ * Prepares the encrypted values of loaded entities and maintains the personal data record.
+ * <ul>
+ *     <li>Every {@link EncryptedValue} of a loaded entity is named for the decryption metrics. Unless lazy decryption
+ *     is enabled, the values are decrypted right away.</li>
+ *     <li>Entities with a {@value PersonalDataRecordService#RECORD_PROPERTY} property store their personal data as
+ *     one encrypted record. The record is unpacked into the entity state when a row is loaded and packed again when
+ *     it is written, so the entities keep their getters and setters. While the record layout is enabled the
+ *     converters of the packed properties leave their columns empty, otherwise the record is removed when the row
+ *     is written.</li>
+ * </ul>
+ */
+public class DbEncryptionInterceptor extends EmptyInterceptor {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient PersonalDataRecordService personalDataRecordService;
+
+    private final transient LazyDecryptionService lazyDecryptionService;
+
+    /**
+     * Constructor for DbEncryptionInterceptor.
+     */
+    public DbEncryptionInterceptor(PersonalDataRecordService personalDataRecordService,
+                                   LazyDecryptionService lazyDecryptionService) {
+        this.personalDataRecordService = personalDataRecordService;
+        this.lazyDecryptionService = lazyDecryptionService;
+    }
+
+    @Override
+    public boolean onLoad(Object entity, Serializable id, Object[] state, String[] propertyNames, Type[] types) {
+        final String entityName = entity.getClass().getSimpleName();
+        final boolean unpacked = unpackRecord(entityName, state, propertyNames);
+        final boolean lazy = lazyDecryptionService.isEnabled();
+        for (int i = 0; i < propertyNames.length; i++) {
+            if (state[i] instanceof EncryptedValue) {
+                final EncryptedValue<?> value = ((EncryptedValue<?>) state[i]).bind(entityName, propertyNames[i]);
+                if (!lazy) {
+                    value.get();
+                }
+            }
+        }
+        return unpacked;
+    }
+
+    @Override
+    public boolean onSave(Object entity, Serializable id, Object[] state, String[] propertyNames, Type[] types) {
+        final int recordIndex = indexOf(propertyNames, PersonalDataRecordService.RECORD_PROPERTY);
+        if (recordIndex < 0 || !personalDataRecordService.isEnabled()) {
+            return false;
+        }
+        state[recordIndex] = personalDataRecordService.encode(collect(state, propertyNames));
+        return true;
+    }
+
+    @Override
+    public boolean onFlushDirty(Object entity, Serializable id, Object[] currentState, Object[] previousState,
+                                String[] propertyNames, Type[] types) {
+        final int recordIndex = indexOf(propertyNames, PersonalDataRecordService.RECORD_PROPERTY);
+        if (recordIndex < 0) {
+            return false;
+        }
+        if (personalDataRecordService.isEnabled()) {
+            currentState[recordIndex] = personalDataRecordService.encode(collect(currentState, propertyNames));
+            return true;
+        }
+        if (currentState[recordIndex] != null) {
+            // back to one column per value, the converters fill the columns again
+            currentState[recordIndex] = null;
+            return true;
+        }
+        return false;
+    }
+
+    private boolean unpackRecord(String entityName, Object[] state, String[] propertyNames) {
+        final int recordIndex = indexOf(propertyNames, PersonalDataRecordService.RECORD_PROPERTY);
+        if (recordIndex < 0 || state[recordIndex] == null) {
+            return false;
+        }
+        final Map<String, Object> values = personalDataRecordService.decode((byte[]) state[recordIndex]);
+        lazyDecryptionService.countDecryption(entityName, PersonalDataRecordService.RECORD_PROPERTY);
+        for (int i = 0; i < propertyNames.length; i++) {
+            if (PersonalDataRecordService.PROPERTIES.contains(propertyNames[i])) {
+                state[i] = EncryptedValue.of(values.get(propertyNames[i]));
+            }
+        }
+        return true;
+    }
+
+    private static Map<String, Object> collect(Object[] state, String[] propertyNames) {
+        final Map<String, Object> values = new HashMap<>();
+        for (int i = 0; i < propertyNames.length; i++) {
+            if (PersonalDataRecordService.PROPERTIES.contains(propertyNames[i])) {
+                values.put(propertyNames[i], state[i] instanceof EncryptedValue
+                    ? ((EncryptedValue<?>) state[i]).get() : state[i]);
+            }
+        }
+        return values;
+    }
+
+    private static int indexOf(String[] propertyNames, String propertyName) {
+        for (int i = 0; i < propertyNames.length; i++) {
+            if (propertyName.equals(propertyNames[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
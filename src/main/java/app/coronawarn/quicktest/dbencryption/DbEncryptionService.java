@@ -21,7 +21,8 @@
 package app.coronawarn.quicktest.dbencryption;
 
 import app.coronawarn.quicktest.config.QuickTestConfig;
-import java.nio.ByteBuffer;
+import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.security.InvalidAlgorithmParameterException;
@@ -29,10 +30,13 @@ import java.security.InvalidKeyException;
 import java.security.Key;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
+import java.util.Arrays;
 import java.util.Base64;
 import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
+import javax.crypto.CipherInputStream;
 import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.ShortBufferException;
 import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 import javax.validation.ValidationException;
@@ -45,12 +49,20 @@ import org.springframework.security.crypto.encrypt.AesBytesEncryptor;
 public class DbEncryptionService {
 
     private static final Charset CHARSET = StandardCharsets.UTF_8;
+    private static final int IV_LENGTH = 12;
     private static DbEncryptionService instance;
+    private static final String RANDOM_ALGORITHM = "SHA1PRNG";
     private final Key key;
 
-    private final Cipher encryptCipher;
-    private final Cipher decryptCipher;
-    private SecureRandom random;
+    /*
+     * Every thread gets its own ciphers and IV source, so concurrent column conversions do not wait for each other.
+     * The ciphers are initialized with a new IV for every operation.
+     */
+    private final ThreadLocal<Cipher> encryptCipher =
+        ThreadLocal.withInitial(AesBytesEncryptor.CipherAlgorithm.GCM::createCipher);
+    private final ThreadLocal<Cipher> decryptCipher =
+        ThreadLocal.withInitial(AesBytesEncryptor.CipherAlgorithm.GCM::createCipher);
+    private final ThreadLocal<SecureRandom> random = ThreadLocal.withInitial(DbEncryptionService::createRandom);
 
 
     /**
@@ -58,10 +70,8 @@ public class DbEncryptionService {
      * Initializes Cipher with ciphersuite configured in application properties.
      */
     public DbEncryptionService(QuickTestConfig quickTestConfig) {
-        this.encryptCipher = AesBytesEncryptor.CipherAlgorithm.GCM.createCipher();
-        this.decryptCipher = AesBytesEncryptor.CipherAlgorithm.GCM.createCipher();
         try {
-            this.random = SecureRandom.getInstance("SHA1PRNG");
+            SecureRandom.getInstance(RANDOM_ALGORITHM);
         } catch (NoSuchAlgorithmException e) {
             throw new ValidationException(
                 "Randomstring generation not possible"
@@ -242,30 +252,96 @@ public class DbEncryptionService {
         return Base64.getEncoder().encodeToString(encrypt(plain));
     }
 
+    /**
+     * Encrypts a ByteArray without base 64 encoding, e.g. for binary objects stored outside of the database.
+     *
+     * @param plain the plain ByteArray.
+     * @return IV and encrypted bytes
+     * @throws InvalidKeyException                if the given key is inappropriate for initializing this cipher
+     * @throws BadPaddingException                if this cipher is in decryption mode, and (un)padding has been
+     *                                            requested, but the decrypted data is not bounded by the appropriate
+     *                                            padding bytes
+     * @throws IllegalBlockSizeException          if this cipher is a block cipher,
+     *                                            no padding has been requested (only in encryption mode), and the total
+     *                                            input length of the data processed by this cipher is not a multiple
+     *                                            of block size;
+     * @throws InvalidAlgorithmParameterException if the given algorithm parameters are inappropriate for this cipher
+     */
+    public byte[] encryptBytes(byte[] plain) throws InvalidKeyException, BadPaddingException,
+        IllegalBlockSizeException, InvalidAlgorithmParameterException {
+        return encrypt(plain);
+    }
+
+    /**
+     * Decrypts bytes encrypted with {@link #encryptBytes(byte[])}.
+     *
+     * @param encrypted IV and encrypted bytes
+     * @return decrypted bytes
+     * @throws InvalidKeyException                if the given key is inappropriate for initializing this cipher
+     * @throws BadPaddingException                if this cipher is in decryption mode, and (un)padding has been
+     *                                            requested, but the decrypted data is not bounded by the appropriate
+     *                                            padding bytes
+     * @throws IllegalBlockSizeException          if this cipher is a block cipher,
+     *                                            no padding has been requested (only in encryption mode), and the total
+     *                                            input length of the data processed by this cipher is not a multiple
+     *                                            of block size;
+     * @throws InvalidAlgorithmParameterException if the given algorithm parameters are inappropriate for this cipher
+     */
+    public byte[] decryptBytes(byte[] encrypted) throws InvalidKeyException, BadPaddingException,
+        IllegalBlockSizeException, InvalidAlgorithmParameterException {
+        return decrypt(encrypted);
+    }
+
+    /**
+     * Decrypts bytes encrypted with {@link #encryptBytes(byte[])} while they are read from the given stream.
+     * The returned stream has its own cipher, so it can be read without blocking other decryptions.
+     *
+     * @param encrypted stream with IV and encrypted bytes
+     * @return stream of the decrypted bytes
+     * @throws IOException                        if the IV cannot be read
+     * @throws InvalidKeyException                if the given key is inappropriate for initializing this cipher
+     * @throws InvalidAlgorithmParameterException if the given algorithm parameters are inappropriate for this cipher
+     */
+    public InputStream decryptingStream(InputStream encrypted)
+        throws IOException, InvalidKeyException, InvalidAlgorithmParameterException {
+        byte[] iv = encrypted.readNBytes(IV_LENGTH);
+        if (iv.length != IV_LENGTH) {
+            throw new IOException("Encrypted stream is too short");
+        }
+        Cipher cipher = AesBytesEncryptor.CipherAlgorithm.GCM.createCipher();
+        cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(128, iv));
+        return new CipherInputStream(encrypted, cipher);
+    }
+
     private byte[] decrypt(byte[] ciphertext)
         throws InvalidKeyException, BadPaddingException, IllegalBlockSizeException, InvalidAlgorithmParameterException {
-        synchronized (decryptCipher) {
-            ByteBuffer byteBuffer = ByteBuffer.wrap(ciphertext);
-            byte[] iv = new byte[12];
-            byteBuffer.get(iv);
-            byte[] encrypted = new byte[byteBuffer.remaining()];
-            byteBuffer.get(encrypted);
-            decryptCipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(128, iv));
-            return decryptCipher.doFinal(encrypted);
-        }
+        Cipher cipher = decryptCipher.get();
+        cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(128, ciphertext, 0, IV_LENGTH));
+        return cipher.doFinal(ciphertext, IV_LENGTH, ciphertext.length - IV_LENGTH);
     }
 
     private byte[] encrypt(byte[] plain)
         throws InvalidKeyException, BadPaddingException, IllegalBlockSizeException, InvalidAlgorithmParameterException {
-        synchronized (encryptCipher) {
-            byte[] iv = new byte[12]; // create new IV
-            random.nextBytes(iv);
-            encryptCipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(128, iv));
-            byte[] encrypted = encryptCipher.doFinal(plain);
-            ByteBuffer byteBuffer = ByteBuffer.allocate(iv.length + encrypted.length);
-            byteBuffer.put(iv);
-            byteBuffer.put(encrypted);
-            return byteBuffer.array();
+        byte[] iv = new byte[IV_LENGTH]; // create new IV
+        random.get().nextBytes(iv);
+        Cipher cipher = encryptCipher.get();
+        cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(128, iv));
+        byte[] result = new byte[IV_LENGTH + cipher.getOutputSize(plain.length)];
+        System.arraycopy(iv, 0, result, 0, IV_LENGTH);
+        int length;
+        try {
+            length = cipher.doFinal(plain, 0, plain.length, result, IV_LENGTH);
+        } catch (ShortBufferException e) {
+            throw new IllegalStateException("Output size of cipher too small", e);
+        }
+        return length == result.length - IV_LENGTH ? result : Arrays.copyOf(result, IV_LENGTH + length);
+    }
+
+    private static SecureRandom createRandom() {
+        try {
+            return SecureRandom.getInstance(RANDOM_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Randomstring generation not possible", e);
         }
     }
 }
@@ -0,0 +1,190 @@
+/*-
+ * ---license-start
+ * Corona-Warn-App / cwa-quick-test-backend
+ * ---
+ * Copyright (C) 2021 - 2023 T-Systems International GmbH and all other contributors
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---license-end
+ */
+
+package app.coronawarn.quicktest.dbencryption;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import org.hibernate.annotations.Immutable;
+
+/**
+ * Value of an encrypted column. A value read from the database keeps its ciphertext and is decrypted on first access,
+ * so loading an entity does not decrypt the columns the caller does not need. As long as the value is not replaced,
+ * the ciphertext is written back without encrypting it again.
+ *
+ * <p>Instances are not changed by setters, a new value replaces the instance, so Hibernate can treat the value as
+ * immutable. Like the entities, instances are not thread-safe.
+ *
+ * @param <T> type of the decrypted value
+ */
+@Immutable
+public final class EncryptedValue<T> {
+
+    private final String ciphertext;
+
+    private final Function<String, T> decryption;
+
+    private final BiConsumer<String, String> decryptionCounter;
+
+    private T value;
+
+    private boolean decrypted;
+
+    private String entity = "unknown";
+
+    private String field = "unknown";
+
+    private EncryptedValue(String ciphertext, Function<String, T> decryption,
+                           BiConsumer<String, String> decryptionCounter, T value, boolean decrypted) {
+        this.ciphertext = ciphertext;
+        this.decryption = decryption;
+        this.decryptionCounter = decryptionCounter;
+        this.value = value;
+        this.decrypted = decrypted;
+    }
+
+    /**
+     * Creates a value set by the application, it is encrypted when it is written.
+     *
+     * @param value the decrypted value
+     * @param <T>   type of the decrypted value
+     * @return the value or null if the value is null
+     */
+    public static <T> EncryptedValue<T> of(T value) {
+        return value == null ? null : new EncryptedValue<>(null, null, null, value, true);
+    }
+
+    /**
+     * Creates a value read from the database, it is decrypted on first access.
+     *
+     * @param ciphertext        the column value
+     * @param decryption        decrypts the column value
+     * @param decryptionCounter counts the decryption with the names passed to {@link #bind(String, String)}
+     * @param <T>               type of the decrypted value
+     * @return the value or null if the column is null
+     */
+    public static <T> EncryptedValue<T> ofCiphertext(String ciphertext, Function<String, T> decryption,
+                                                     BiConsumer<String, String> decryptionCounter) {
+        return ciphertext == null ? null : new EncryptedValue<>(ciphertext, decryption, decryptionCounter, null, false);
+    }
+
+    /**
+     * Null-safe access for getters.
+     *
+     * @param value the value, may be null
+     * @param <T>   type of the decrypted value
+     * @return the decrypted value or null
+     */
+    public static <T> T get(EncryptedValue<T> value) {
+        return value == null ? null : value.get();
+    }
+
+    /**
+     * Returns the value to store for setters. The current instance is kept if it is already decrypted and the value
+     * does not change, so setting an unchanged value does not make the entity dirty. A value which is not decrypted
+     * yet is replaced without decrypting it for the comparison.
+     *
+     * @param current the current value, may be null
+     * @param value   the new decrypted value, may be null
+     * @param <T>     type of the decrypted value
+     * @return the value to store
+     */
+    public static <T> EncryptedValue<T> set(EncryptedValue<T> current, T value) {
+        if (value == null) {
+            return null;
+        }
+        if (current != null && current.isDecrypted() && Objects.deepEquals(current.get(), value)) {
+            return current;
+        }
+        return of(value);
+    }
+
+    /**
+     * Names the column for the decryption metrics.
+     *
+     * @param entity name of the entity or projection
+     * @param field  name of the property
+     * @return this value
+     */
+    public EncryptedValue<T> bind(String entity, String field) {
+        this.entity = entity;
+        this.field = field;
+        return this;
+    }
+
+    /**
+     * Returns the decrypted value, the ciphertext is decrypted on first access.
+     *
+     * @return the decrypted value
+     */
+    public T get() {
+        if (!decrypted) {
+            value = decryption.apply(ciphertext);
+            decrypted = true;
+            decryptionCounter.accept(entity, field);
+        }
+        return value;
+    }
+
+    public boolean isDecrypted() {
+        return decrypted;
+    }
+
+    /**
+     * Returns the ciphertext the value was read with.
+     *
+     * @return the ciphertext or null if the value was set by the application
+     */
+    public String getCiphertext() {
+        return ciphertext;
+    }
+
+    /**
+     * Values read from the database are equal if they were read with the same ciphertext, values set by the
+     * application if their decrypted values are equal. Nothing is decrypted for the comparison, a value read from the
+     * database is never equal to a value set by the application, so replacing a value always writes the column.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof EncryptedValue)) {
+            return false;
+        }
+        final EncryptedValue<?> other = (EncryptedValue<?>) o;
+        if (ciphertext != null || other.ciphertext != null) {
+            return Objects.equals(ciphertext, other.ciphertext);
+        }
+        return Objects.deepEquals(value, other.value);
+    }
+
+    @Override
+    public int hashCode() {
+        return ciphertext != null ? ciphertext.hashCode() : Arrays.deepHashCode(new Object[] {value});
+    }
+
+    @Override
+    public String toString() {
+        return "EncryptedValue(" + entity + "." + field + ")";
+    }
+}
@@ -0,0 +1,60 @@
+/*-
+ * ---license-start
+ * Corona-Warn-App / cwa-quick-test-backend
+ * ---
+ * Copyright (C) 2021 - 2023 T-Systems International GmbH and all other contributors
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---license-end
+ */
+
+package app.coronawarn.quicktest.dbencryption;
+
+import javax.persistence.AttributeConverter;
+
+/**
+ * Converts an encrypted column to an {@link EncryptedValue} without decrypting it. The encryption and decryption of
+ * the values is done by the given column converter, the decryptions are counted by the {@link LazyDecryptionService}.
+ *
+ * @param <T> type of the decrypted value
+ */
+public abstract class EncryptedValueConverter<T> implements AttributeConverter<EncryptedValue<T>, String> {
+
+    private final AttributeConverter<T, String> columnConverter;
+
+    private final LazyDecryptionService lazyDecryptionService;
+
+    protected EncryptedValueConverter(AttributeConverter<T, String> columnConverter,
+                                      LazyDecryptionService lazyDecryptionService) {
+        this.columnConverter = columnConverter;
+        this.lazyDecryptionService = lazyDecryptionService;
+    }
+
+    @Override
+    public String convertToDatabaseColumn(EncryptedValue<T> value) {
+        if (value == null) {
+            return null;
+        }
+        if (value.getCiphertext() != null) {
+            // unchanged since it was read
+            return value.getCiphertext();
+        }
+        return columnConverter.convertToDatabaseColumn(value.get());
+    }
+
+    @Override
+    public EncryptedValue<T> convertToEntityAttribute(String s) {
+        return EncryptedValue.ofCiphertext(s, columnConverter::convertToEntityAttribute,
+            lazyDecryptionService::countDecryption);
+    }
+}
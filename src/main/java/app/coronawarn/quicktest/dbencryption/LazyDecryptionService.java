@@ -0,0 +1,73 @@
+/*-
+ * ---license-start
+ * Corona-Warn-App / cwa-quick-test-backend
+ * ---
+ * Copyright (C) 2021 - 2023 T-Systems International GmbH and all other contributors
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---license-end
+ */
+
+package app.coronawarn.quicktest.dbencryption;
+
+import app.coronawarn.quicktest.config.QuickTestConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.springframework.stereotype.Service;
+
+/**
+ * Decides whether the encrypted columns of loaded entities are decrypted on first access ({@link EncryptedValue}) and
+ * counts the decryptions per entity and field.
+ */
+@Service
+public class LazyDecryptionService {
+
+    private final QuickTestConfig quickTestConfig;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor for LazyDecryptionService.
+     */
+    public LazyDecryptionService(QuickTestConfig quickTestConfig, MeterRegistry meterRegistry) {
+        this.quickTestConfig = quickTestConfig;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Whether encrypted columns are decrypted on first access instead of when the entity is loaded.
+     *
+     * @return true if lazy decryption is enabled
+     */
+    public boolean isEnabled() {
+        return quickTestConfig.getLazyDecryption().isEnabled();
+    }
+
+    /**
+     * Counts a decrypted value.
+     *
+     * @param entity name of the entity or projection
+     * @param field  name of the property
+     */
+    public void countDecryption(String entity, String field) {
+        counters.computeIfAbsent(entity + "." + field, key -> Counter.builder("quicktest.db.decrypt")
+            .description("Decrypted values of encrypted columns")
+            .tag("entity", entity)
+            .tag("field", field)
+            .register(meterRegistry)).increment();
+    }
+}
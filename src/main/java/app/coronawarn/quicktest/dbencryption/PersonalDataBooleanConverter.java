@@ -0,0 +1,44 @@
+/*-
+ * ---license-start
+ * Corona-Warn-App / cwa-quick-test-backend
+ * ---
+ * Copyright (C) 2021 - 2023 T-Systems International GmbH and all other contributors
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---license-end
+ */
+
+package app.coronawarn.quicktest.dbencryption;
+
+import javax.persistence.Converter;
+
+/**
+ * Like {@link EncryptedValueBooleanConverter}, but leaves the column empty while the value is stored in the personal
+ * data record, see {@link DbEncryptionInterceptor}. Values of columns are still read.
+ */
+@Converter
+public class PersonalDataBooleanConverter extends EncryptedValueBooleanConverter {
+
+    private final PersonalDataRecordService personalDataRecordService;
+
+    public PersonalDataBooleanConverter(PersonalDataRecordService personalDataRecordService,
+                                        LazyDecryptionService lazyDecryptionService) {
+        super(lazyDecryptionService);
+        this.personalDataRecordService = personalDataRecordService;
+    }
+
+    @Override
+    public String convertToDatabaseColumn(EncryptedValue<Boolean> value) {
+        return personalDataRecordService.isEnabled() ? null : super.convertToDatabaseColumn(value);
+    }
+}
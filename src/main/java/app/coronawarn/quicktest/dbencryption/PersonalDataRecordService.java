@@ -0,0 +1,210 @@
+/*-
+ * ---license-start
+ * Corona-Warn-App / cwa-quick-test-backend
+ * ---
+ * Copyright (C) 2021 - 2023 T-Systems International GmbH and all other contributors
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---license-end
+ */
+
+package app.coronawarn.quicktest.dbencryption;
+
+import app.coronawarn.quicktest.config.QuickTestConfig;
+import app.coronawarn.quicktest.model.Sex;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import javax.crypto.BadPaddingException;
+import javax.crypto.IllegalBlockSizeException;
+import javax.persistence.PersistenceException;
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.PropertyAccessorFactory;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Packs the personal data of a row into one record which is encrypted once, instead of encrypting every value in
+ * its own column. The record is written and read by the {@link DbEncryptionInterceptor}.
+ */
+@Configuration
+public class PersonalDataRecordService {
+
+    /**
+     * Name of the entity property which holds the encrypted record.
+     */
+    public static final String RECORD_PROPERTY = "personalData";
+
+    /**
+     * Entity properties which are stored in the record, an entity stores the properties it has.
+     */
+    public static final List<String> PROPERTIES = List.of(
+        "confirmationCwa", "privacyAgreement", "lastName", "firstName", "email", "phoneNumber", "sex", "street",
+        "houseNumber", "zipCode", "city", "testBrandId", "testBrandName", "birthday", "standardisedFamilyName",
+        "standardisedGivenName", "diseaseAgentTargeted", "dccConsent", "additionalInfo", "groupName", "testType");
+
+    private static final int FORMAT_VERSION = 1;
+    private static final byte TYPE_STRING = 1;
+    private static final byte TYPE_BOOLEAN = 2;
+    private static final byte TYPE_SEX = 3;
+
+    private final QuickTestConfig quickTestConfig;
+
+    private final DbEncryptionService dbEncryptionService;
+
+    /**
+     * Constructor for PersonalDataRecordService.
+     */
+    public PersonalDataRecordService(QuickTestConfig quickTestConfig, DbEncryptionService dbEncryptionService) {
+        this.quickTestConfig = quickTestConfig;
+        this.dbEncryptionService = dbEncryptionService;
+    }
+
+    /**
+     * Whether rows are written with the record layout. The converters get this service injected by the Hibernate
+     * bean container, so they use the configuration of their own application context.
+     *
+     * @return true if the personal data of written rows is stored in the record
+     */
+    public boolean isEnabled() {
+        return quickTestConfig.getPersonalDataRecord().isEnabled();
+    }
+
+    /**
+     * Serializes and encrypts the given values, null values are left out.
+     *
+     * @param values values by property name
+     * @return IV and encrypted record
+     */
+    public byte[] encode(Map<String, Object> values) {
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+            final DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(FORMAT_VERSION);
+            out.writeShort((int) values.values().stream().filter(Objects::nonNull).count());
+            for (Map.Entry<String, Object> entry : values.entrySet()) {
+                if (entry.getValue() != null) {
+                    out.writeUTF(entry.getKey());
+                    writeValue(out, entry.getValue());
+                }
+            }
+            return dbEncryptionService.encryptBytes(bytes.toByteArray());
+        } catch (IOException | InvalidAlgorithmParameterException | InvalidKeyException
+            | BadPaddingException | IllegalBlockSizeException e) {
+            throw new PersistenceException(e);
+        }
+    }
+
+    /**
+     * Decrypts and deserializes a record created by {@link #encode(Map)}.
+     *
+     * @param record IV and encrypted record
+     * @return values by property name, without the null values
+     */
+    public Map<String, Object> decode(byte[] record) {
+        try {
+            final DataInputStream in =
+                new DataInputStream(new ByteArrayInputStream(dbEncryptionService.decryptBytes(record)));
+            final int version = in.readUnsignedByte();
+            if (version != FORMAT_VERSION) {
+                throw new PersistenceException("Unknown personal data record format " + version);
+            }
+            final int count = in.readUnsignedShort();
+            final Map<String, Object> values = new HashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                final String name = in.readUTF();
+                values.put(name, readValue(in));
+            }
+            return values;
+        } catch (IOException | InvalidAlgorithmParameterException | InvalidKeyException
+            | BadPaddingException | IllegalBlockSizeException e) {
+            throw new PersistenceException(e);
+        }
+    }
+
+    /**
+     * Collects the values of the record properties from the given bean, e.g. to convert an entity.
+     *
+     * @param source bean with getters for (some of) the record properties
+     * @return values by property name
+     */
+    public Map<String, Object> read(Object source) {
+        final BeanWrapper wrapper = PropertyAccessorFactory.forBeanPropertyAccess(source);
+        final Map<String, Object> values = new HashMap<>();
+        for (String property : PROPERTIES) {
+            if (wrapper.isReadableProperty(property)) {
+                values.put(property, wrapper.getPropertyValue(property));
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Sets the values of a record on the given bean, e.g. on a DTO built from a projection.
+     *
+     * @param record IV and encrypted record, nothing is set if it is null
+     * @param target bean with setters for (some of) the record properties
+     */
+    public void apply(byte[] record, Object target) {
+        if (record == null) {
+            return;
+        }
+        final BeanWrapper wrapper = PropertyAccessorFactory.forBeanPropertyAccess(target);
+        decode(record).forEach((property, value) -> {
+            if (wrapper.isWritableProperty(property)) {
+                wrapper.setPropertyValue(property, value);
+            }
+        });
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value instanceof String) {
+            final byte[] bytes = ((String) value).getBytes(StandardCharsets.UTF_8);
+            out.writeByte(TYPE_STRING);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        } else if (value instanceof Boolean) {
+            out.writeByte(TYPE_BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Sex) {
+            out.writeByte(TYPE_SEX);
+            out.writeUTF(((Sex) value).name());
+        } else {
+            throw new PersistenceException("Unsupported personal data type " + value.getClass().getName());
+        }
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException {
+        final byte type = in.readByte();
+        switch (type) {
+          case TYPE_STRING:
+              final byte[] bytes = new byte[in.readInt()];
+              in.readFully(bytes);
+              return new String(bytes, StandardCharsets.UTF_8);
+          case TYPE_BOOLEAN:
+              return in.readBoolean();
+          case TYPE_SEX:
+              return Sex.valueOf(in.readUTF());
+          default:
+              throw new PersistenceException("Unknown personal data type " + type);
+        }
+    }
+}
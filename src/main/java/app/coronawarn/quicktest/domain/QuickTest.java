@@ -20,9 +20,12 @@
 
 package app.coronawarn.quicktest.domain;
 
-import app.coronawarn.quicktest.dbencryption.DbEncryptionBooleanConverter;
-import app.coronawarn.quicktest.dbencryption.DbEncryptionSexTypeConverter;
-import app.coronawarn.quicktest.dbencryption.DbEncryptionStringConverter;
+import app.coronawarn.quicktest.dbencryption.EncryptedValue;
+import app.coronawarn.quicktest.dbencryption.EncryptedValueStringConverter;
+import app.coronawarn.quicktest.dbencryption.PersonalDataBooleanConverter;
+import app.coronawarn.quicktest.dbencryption.PersonalDataRecordService;
+import app.coronawarn.quicktest.dbencryption.PersonalDataSexTypeConverter;
+import app.coronawarn.quicktest.dbencryption.PersonalDataStringConverter;
 import app.coronawarn.quicktest.model.SecurityAuditListenerQuickTest;
 import app.coronawarn.quicktest.model.Sex;
 import app.coronawarn.quicktest.utils.Utilities;
@@ -33,6 +36,7 @@ import javax.persistence.Convert;
 import javax.persistence.Entity;
 import javax.persistence.EntityListeners;
 import javax.persistence.Id;
+import javax.persistence.Lob;
 import javax.persistence.PrePersist;
 import javax.persistence.PreUpdate;
 import javax.persistence.Table;
@@ -96,8 +100,8 @@ public class QuickTest {
     private Integer version;
 
     @Column(name = "confirmation_cwa")
-    @Convert(converter = DbEncryptionBooleanConverter.class)
-    private Boolean confirmationCwa;
+    @Convert(converter = PersonalDataBooleanConverter.class)
+    private EncryptedValue<Boolean> confirmationCwa;
 
     /**
      * The test result.
@@ -111,84 +115,84 @@ public class QuickTest {
     private Short testResult;
 
     @Column(name = "privacy_agreement")
-    @Convert(converter = DbEncryptionBooleanConverter.class)
-    private Boolean privacyAgreement;
+    @Convert(converter = PersonalDataBooleanConverter.class)
+    private EncryptedValue<Boolean> privacyAgreement;
 
     @Column(name = "last_name")
-    @Convert(converter = DbEncryptionStringConverter.class)
-    private String lastName;
+    @Convert(converter = PersonalDataStringConverter.class)
+    private EncryptedValue<String> lastName;
 
     @Column(name = "first_name")
-    @Convert(converter = DbEncryptionStringConverter.class)
-    private String firstName;
+    @Convert(converter = PersonalDataStringConverter.class)
+    private EncryptedValue<String> firstName;
 
     @Column(name = "email")
-    @Convert(converter = DbEncryptionStringConverter.class)
-    private String email;
+    @Convert(converter = PersonalDataStringConverter.class)
+    private EncryptedValue<String> email;
 
     @Column(name = "phone_number")
-    @Convert(converter = DbEncryptionStringConverter.class)
-    private String phoneNumber;
+    @Convert(converter = PersonalDataStringConverter.class)
+    private EncryptedValue<String> phoneNumber;
 
     @Column(name = "sex")
-    @Convert(converter = DbEncryptionSexTypeConverter.class)
-    private Sex sex;
+    @Convert(converter = PersonalDataSexTypeConverter.class)
+    private EncryptedValue<Sex> sex;
 
     @Column(name = "street")
-    @Convert(converter = DbEncryptionStringConverter.class)
-    private String street;
+    @Convert(converter = PersonalDataStringConverter.class)
+    private EncryptedValue<String> street;
 
     @Column(name = "house_number")
-    @Convert(converter = DbEncryptionStringConverter.class)
-    private String houseNumber;
+    @Convert(converter = PersonalDataStringConverter.class)
+    private EncryptedValue<String> houseNumber;
 
     @Column(name = "zip_code")
-    @Convert(converter = DbEncryptionStringConverter.class)
-    private String zipCode;
+    @Convert(converter = PersonalDataStringConverter.class)
+    private EncryptedValue<String> zipCode;
 
     @Column(name = "city")
-    @Convert(converter = DbEncryptionStringConverter.class)
-    private String city;
+    @Convert(converter = PersonalDataStringConverter.class)
+    private EncryptedValue<String> city;
 
     @Column(name = "test_brand_id")
-    @Convert(converter = DbEncryptionStringConverter.class)
-    private String testBrandId;
+    @Convert(converter = PersonalDataStringConverter.class)
+    private EncryptedValue<String> testBrandId;
 
     @Column(name = "test_brand_name")
-    @Convert(converter = DbEncryptionStringConverter.class)
-    private String testBrandName;
+    @Convert(converter = PersonalDataStringConverter.class)
+    private EncryptedValue<String> testBrandName;
 
     @Column(name = "birthday")
-    @Convert(converter = DbEncryptionStringConverter.class)
-    private String birthday;
+    @Convert(converter = PersonalDataStringConverter.class)
+    private EncryptedValue<String> birthday;
 
     @Column(name = "standardised_family_name")
-    @Convert(converter = DbEncryptionStringConverter.class)
-    private String standardisedFamilyName;
+    @Convert(converter = PersonalDataStringConverter.class)
+    private EncryptedValue<String> standardisedFamilyName;
 
     @Column(name = "standardised_given_name")
-    @Convert(converter = DbEncryptionStringConverter.class)
-    private String standardisedGivenName;
+    @Convert(converter = PersonalDataStringConverter.class)
+    private EncryptedValue<String> standardisedGivenName;
 
     @Column(name = "disease_agent_targeted")
-    @Convert(converter = DbEncryptionStringConverter.class)
-    private String diseaseAgentTargeted;
+    @Convert(converter = PersonalDataStringConverter.class)
+    private EncryptedValue<String> diseaseAgentTargeted;
 
     @Column(name = "test_result_server_hash")
-    @Convert(converter = DbEncryptionStringConverter.class)
-    private String testResultServerHash;
+    @Convert(converter = EncryptedValueStringConverter.class)
+    private EncryptedValue<String> testResultServerHash;
 
     @Column(name = "dcc_sign_data")
-    @Convert(converter = DbEncryptionStringConverter.class)
-    private String dccSignData;
+    @Convert(converter = EncryptedValueStringConverter.class)
+    private EncryptedValue<String> dccSignData;
 
     @Column(name = "dcc_unsigned")
-    @Convert(converter = DbEncryptionStringConverter.class)
-    private String dccUnsigned;
+    @Convert(converter = EncryptedValueStringConverter.class)
+    private EncryptedValue<String> dccUnsigned;
 
     @Column(name = "dcc_consent")
-    @Convert(converter = DbEncryptionBooleanConverter.class)
-    private Boolean dccConsent;
+    @Convert(converter = PersonalDataBooleanConverter.class)
+    private EncryptedValue<Boolean> dccConsent;
 
     @Column(name = "dcc_public_key")
     private String publicKey;
@@ -197,16 +201,221 @@ public class QuickTest {
     private DccStatus dccStatus;
 
     @Column(name = "additional_info")
-    @Convert(converter = DbEncryptionStringConverter.class)
-    private String additionalInfo;
+    @Convert(converter = PersonalDataStringConverter.class)
+    private EncryptedValue<String> additionalInfo;
 
     @Column(name = "group_name")
-    @Convert(converter = DbEncryptionStringConverter.class)
-    private String groupName;
+    @Convert(converter = PersonalDataStringConverter.class)
+    private EncryptedValue<String> groupName;
 
     @Column(name = "test_type")
-    @Convert(converter = DbEncryptionStringConverter.class)
-    private String testType;
+    @Convert(converter = PersonalDataStringConverter.class)
+    private EncryptedValue<String> testType;
+
+    /**
+     * Personal data of the row as one encrypted record, replaces the encrypted columns of the values, see
+     * {@link PersonalDataRecordService}.
+     */
+    @Lob
+    @Column(name = "personal_data")
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    private byte[] personalData;
+
+    // encrypted columns are decrypted on first access, see EncryptedValue
+
+    public Boolean getConfirmationCwa() {
+        return EncryptedValue.get(confirmationCwa);
+    }
+
+    public void setConfirmationCwa(Boolean confirmationCwa) {
+        this.confirmationCwa = EncryptedValue.set(this.confirmationCwa, confirmationCwa);
+    }
+
+    public Boolean getPrivacyAgreement() {
+        return EncryptedValue.get(privacyAgreement);
+    }
+
+    public void setPrivacyAgreement(Boolean privacyAgreement) {
+        this.privacyAgreement = EncryptedValue.set(this.privacyAgreement, privacyAgreement);
+    }
+
+    public String getLastName() {
+        return EncryptedValue.get(lastName);
+    }
+
+    public void setLastName(String lastName) {
+        this.lastName = EncryptedValue.set(this.lastName, lastName);
+    }
+
+    public String getFirstName() {
+        return EncryptedValue.get(firstName);
+    }
+
+    public void setFirstName(String firstName) {
+        this.firstName = EncryptedValue.set(this.firstName, firstName);
+    }
+
+    public String getEmail() {
+        return EncryptedValue.get(email);
+    }
+
+    public void setEmail(String email) {
+        this.email = EncryptedValue.set(this.email, email);
+    }
+
+    public String getPhoneNumber() {
+        return EncryptedValue.get(phoneNumber);
+    }
+
+    public void setPhoneNumber(String phoneNumber) {
+        this.phoneNumber = EncryptedValue.set(this.phoneNumber, phoneNumber);
+    }
+
+    public Sex getSex() {
+        return EncryptedValue.get(sex);
+    }
+
+    public void setSex(Sex sex) {
+        this.sex = EncryptedValue.set(this.sex, sex);
+    }
+
+    public String getStreet() {
+        return EncryptedValue.get(street);
+    }
+
+    public void setStreet(String street) {
+        this.street = EncryptedValue.set(this.street, street);
+    }
+
+    public String getHouseNumber() {
+        return EncryptedValue.get(houseNumber);
+    }
+
+    public void setHouseNumber(String houseNumber) {
+        this.houseNumber = EncryptedValue.set(this.houseNumber, houseNumber);
+    }
+
+    public String getZipCode() {
+        return EncryptedValue.get(zipCode);
+    }
+
+    public void setZipCode(String zipCode) {
+        this.zipCode = EncryptedValue.set(this.zipCode, zipCode);
+    }
+
+    public String getCity() {
+        return EncryptedValue.get(city);
+    }
+
+    public void setCity(String city) {
+        this.city = EncryptedValue.set(this.city, city);
+    }
+
+    public String getTestBrandId() {
+        return EncryptedValue.get(testBrandId);
+    }
+
+    public void setTestBrandId(String testBrandId) {
+        this.testBrandId = EncryptedValue.set(this.testBrandId, testBrandId);
+    }
+
+    public String getTestBrandName() {
+        return EncryptedValue.get(testBrandName);
+    }
+
+    public void setTestBrandName(String testBrandName) {
+        this.testBrandName = EncryptedValue.set(this.testBrandName, testBrandName);
+    }
+
+    public String getBirthday() {
+        return EncryptedValue.get(birthday);
+    }
+
+    public void setBirthday(String birthday) {
+        this.birthday = EncryptedValue.set(this.birthday, birthday);
+    }
+
+    public String getStandardisedFamilyName() {
+        return EncryptedValue.get(standardisedFamilyName);
+    }
+
+    public void setStandardisedFamilyName(String standardisedFamilyName) {
+        this.standardisedFamilyName = EncryptedValue.set(this.standardisedFamilyName, standardisedFamilyName);
+    }
+
+    public String getStandardisedGivenName() {
+        return EncryptedValue.get(standardisedGivenName);
+    }
+
+    public void setStandardisedGivenName(String standardisedGivenName) {
+        this.standardisedGivenName = EncryptedValue.set(this.standardisedGivenName, standardisedGivenName);
+    }
+
+    public String getDiseaseAgentTargeted() {
+        return EncryptedValue.get(diseaseAgentTargeted);
+    }
+
+    public void setDiseaseAgentTargeted(String diseaseAgentTargeted) {
+        this.diseaseAgentTargeted = EncryptedValue.set(this.diseaseAgentTargeted, diseaseAgentTargeted);
+    }
+
+    public String getTestResultServerHash() {
+        return EncryptedValue.get(testResultServerHash);
+    }
+
+    public void setTestResultServerHash(String testResultServerHash) {
+        this.testResultServerHash = EncryptedValue.set(this.testResultServerHash, testResultServerHash);
+    }
+
+    public String getDccSignData() {
+        return EncryptedValue.get(dccSignData);
+    }
+
+    public void setDccSignData(String dccSignData) {
+        this.dccSignData = EncryptedValue.set(this.dccSignData, dccSignData);
+    }
+
+    public String getDccUnsigned() {
+        return EncryptedValue.get(dccUnsigned);
+    }
+
+    public void setDccUnsigned(String dccUnsigned) {
+        this.dccUnsigned = EncryptedValue.set(this.dccUnsigned, dccUnsigned);
+    }
+
+    public Boolean getDccConsent() {
+        return EncryptedValue.get(dccConsent);
+    }
+
+    public void setDccConsent(Boolean dccConsent) {
+        this.dccConsent = EncryptedValue.set(this.dccConsent, dccConsent);
+    }
+
+    public String getAdditionalInfo() {
+        return EncryptedValue.get(additionalInfo);
+    }
+
+    public void setAdditionalInfo(String additionalInfo) {
+        this.additionalInfo = EncryptedValue.set(this.additionalInfo, additionalInfo);
+    }
+
+    public String getGroupName() {
+        return EncryptedValue.get(groupName);
+    }
+
+    public void setGroupName(String groupName) {
+        this.groupName = EncryptedValue.set(this.groupName, groupName);
+    }
+
+    public String getTestType() {
+        return EncryptedValue.get(testType);
+    }
+
+    public void setTestType(String testType) {
+        this.testType = EncryptedValue.set(this.testType, testType);
+    }
 
     @PrePersist
     private void onCreate() {
@@ -20,10 +20,13 @@
 
 package app.coronawarn.quicktest.domain;
 
-import app.coronawarn.quicktest.dbencryption.DbEncryptionBooleanConverter;
-import app.coronawarn.quicktest.dbencryption.DbEncryptionByteArrayConverter;
-import app.coronawarn.quicktest.dbencryption.DbEncryptionSexTypeConverter;
-import app.coronawarn.quicktest.dbencryption.DbEncryptionStringConverter;
+import app.coronawarn.quicktest.dbencryption.EncryptedValue;
+import app.coronawarn.quicktest.dbencryption.EncryptedValueByteArrayConverter;
+import app.coronawarn.quicktest.dbencryption.EncryptedValueStringConverter;
+import app.coronawarn.quicktest.dbencryption.PersonalDataBooleanConverter;
+import app.coronawarn.quicktest.dbencryption.PersonalDataRecordService;
+import app.coronawarn.quicktest.dbencryption.PersonalDataSexTypeConverter;
+import app.coronawarn.quicktest.dbencryption.PersonalDataStringConverter;
 import app.coronawarn.quicktest.model.SecurityAuditListenerQuickTestArchive;
 import app.coronawarn.quicktest.model.Sex;
 import java.time.LocalDateTime;
@@ -81,88 +84,264 @@ public class QuickTestArchive {
     private Integer version;
 
     @Column(name = "confirmation_cwa")
-    @Convert(converter = DbEncryptionBooleanConverter.class)
-    private Boolean confirmationCwa;
+    @Convert(converter = PersonalDataBooleanConverter.class)
+    private EncryptedValue<Boolean> confirmationCwa;
 
     @Column(name = "test_result")
     private Short testResult;
 
     @Column(name = "privacy_agreement")
-    @Convert(converter = DbEncryptionBooleanConverter.class)
-    private Boolean privacyAgreement;
+    @Convert(converter = PersonalDataBooleanConverter.class)
+    private EncryptedValue<Boolean> privacyAgreement;
 
     @Column(name = "last_name")
-    @Convert(converter = DbEncryptionStringConverter.class)
-    private String lastName;
+    @Convert(converter = PersonalDataStringConverter.class)
+    private EncryptedValue<String> lastName;
 
     @Column(name = "first_name")
-    @Convert(converter = DbEncryptionStringConverter.class)
-    private String firstName;
+    @Convert(converter = PersonalDataStringConverter.class)
+    private EncryptedValue<String> firstName;
 
     @Column(name = "email")
-    @Convert(converter = DbEncryptionStringConverter.class)
-    private String email;
+    @Convert(converter = PersonalDataStringConverter.class)
+    private EncryptedValue<String> email;
 
     @Column(name = "phone_number")
-    @Convert(converter = DbEncryptionStringConverter.class)
-    private String phoneNumber;
+    @Convert(converter = PersonalDataStringConverter.class)
+    private EncryptedValue<String> phoneNumber;
 
     @Column(name = "sex")
-    @Convert(converter = DbEncryptionSexTypeConverter.class)
-    private Sex sex;
+    @Convert(converter = PersonalDataSexTypeConverter.class)
+    private EncryptedValue<Sex> sex;
 
     @Column(name = "street")
-    @Convert(converter = DbEncryptionStringConverter.class)
-    private String street;
+    @Convert(converter = PersonalDataStringConverter.class)
+    private EncryptedValue<String> street;
 
     @Column(name = "house_number")
-    @Convert(converter = DbEncryptionStringConverter.class)
-    private String houseNumber;
+    @Convert(converter = PersonalDataStringConverter.class)
+    private EncryptedValue<String> houseNumber;
 
     @Column(name = "zip_code")
-    @Convert(converter = DbEncryptionStringConverter.class)
-    private String zipCode;
+    @Convert(converter = PersonalDataStringConverter.class)
+    private EncryptedValue<String> zipCode;
 
     @Column(name = "city")
-    @Convert(converter = DbEncryptionStringConverter.class)
-    private String city;
+    @Convert(converter = PersonalDataStringConverter.class)
+    private EncryptedValue<String> city;
 
     @Column(name = "test_brand_id")
-    @Convert(converter = DbEncryptionStringConverter.class)
-    private String testBrandId;
+    @Convert(converter = PersonalDataStringConverter.class)
+    private EncryptedValue<String> testBrandId;
 
     @Column(name = "test_brand_name")
-    @Convert(converter = DbEncryptionStringConverter.class)
-    private String testBrandName;
+    @Convert(converter = PersonalDataStringConverter.class)
+    private EncryptedValue<String> testBrandName;
 
     @Column(name = "birthday")
-    @Convert(converter = DbEncryptionStringConverter.class)
-    private String birthday;
+    @Convert(converter = PersonalDataStringConverter.class)
+    private EncryptedValue<String> birthday;
 
     @Lob
     @Column(name = "pdf")
-    @Convert(converter = DbEncryptionByteArrayConverter.class)
-    private byte[] pdf;
+    @Convert(converter = EncryptedValueByteArrayConverter.class)
+    private EncryptedValue<byte[]> pdf;
+
+    @Column(name = "pdf_object_key")
+    private String pdfObjectKey;
 
     @Column(name = "test_result_server_hash")
-    @Convert(converter = DbEncryptionStringConverter.class)
-    private String testResultServerHash;
+    @Convert(converter = EncryptedValueStringConverter.class)
+    private EncryptedValue<String> testResultServerHash;
 
     @Column(name = "dcc")
-    @Convert(converter = DbEncryptionStringConverter.class)
-    private String dcc;
+    @Convert(converter = EncryptedValueStringConverter.class)
+    private EncryptedValue<String> dcc;
 
     @Column(name = "additional_info")
-    @Convert(converter = DbEncryptionStringConverter.class)
-    private String additionalInfo;
+    @Convert(converter = PersonalDataStringConverter.class)
+    private EncryptedValue<String> additionalInfo;
 
     @Column(name = "group_name")
-    @Convert(converter = DbEncryptionStringConverter.class)
-    private String groupName;
+    @Convert(converter = PersonalDataStringConverter.class)
+    private EncryptedValue<String> groupName;
 
     @Column(name = "test_type")
-    @Convert(converter = DbEncryptionStringConverter.class)
-    private String testType;
+    @Convert(converter = PersonalDataStringConverter.class)
+    private EncryptedValue<String> testType;
+
+    /**
+     * Personal data of the row as one encrypted record, replaces the encrypted columns of the values, see
+     * {@link PersonalDataRecordService}.
+     */
+    @Lob
+    @Column(name = "personal_data")
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    private byte[] personalData;
+
+    // encrypted columns are decrypted on first access, see EncryptedValue
+
+    public Boolean getConfirmationCwa() {
+        return EncryptedValue.get(confirmationCwa);
+    }
+
+    public void setConfirmationCwa(Boolean confirmationCwa) {
+        this.confirmationCwa = EncryptedValue.set(this.confirmationCwa, confirmationCwa);
+    }
+
+    public Boolean getPrivacyAgreement() {
+        return EncryptedValue.get(privacyAgreement);
+    }
+
+    public void setPrivacyAgreement(Boolean privacyAgreement) {
+        this.privacyAgreement = EncryptedValue.set(this.privacyAgreement, privacyAgreement);
+    }
+
+    public String getLastName() {
+        return EncryptedValue.get(lastName);
+    }
+
+    public void setLastName(String lastName) {
+        this.lastName = EncryptedValue.set(this.lastName, lastName);
+    }
+
+    public String getFirstName() {
+        return EncryptedValue.get(firstName);
+    }
+
+    public void setFirstName(String firstName) {
+        this.firstName = EncryptedValue.set(this.firstName, firstName);
+    }
+
+    public String getEmail() {
+        return EncryptedValue.get(email);
+    }
+
+    public void setEmail(String email) {
+        this.email = EncryptedValue.set(this.email, email);
+    }
+
+    public String getPhoneNumber() {
+        return EncryptedValue.get(phoneNumber);
+    }
+
+    public void setPhoneNumber(String phoneNumber) {
+        this.phoneNumber = EncryptedValue.set(this.phoneNumber, phoneNumber);
+    }
+
+    public Sex getSex() {
+        return EncryptedValue.get(sex);
+    }
+
+    public void setSex(Sex sex) {
+        this.sex = EncryptedValue.set(this.sex, sex);
+    }
+
+    public String getStreet() {
+        return EncryptedValue.get(street);
+    }
+
+    public void setStreet(String street) {
+        this.street = EncryptedValue.set(this.street, street);
+    }
+
+    public String getHouseNumber() {
+        return EncryptedValue.get(houseNumber);
+    }
+
+    public void setHouseNumber(String houseNumber) {
+        this.houseNumber = EncryptedValue.set(this.houseNumber, houseNumber);
+    }
+
+    public String getZipCode() {
+        return EncryptedValue.get(zipCode);
+    }
+
+    public void setZipCode(String zipCode) {
+        this.zipCode = EncryptedValue.set(this.zipCode, zipCode);
+    }
+
+    public String getCity() {
+        return EncryptedValue.get(city);
+    }
+
+    public void setCity(String city) {
+        this.city = EncryptedValue.set(this.city, city);
+    }
+
+    public String getTestBrandId() {
+        return EncryptedValue.get(testBrandId);
+    }
+
+    public void setTestBrandId(String testBrandId) {
+        this.testBrandId = EncryptedValue.set(this.testBrandId, testBrandId);
+    }
+
+    public String getTestBrandName() {
+        return EncryptedValue.get(testBrandName);
+    }
+
+    public void setTestBrandName(String testBrandName) {
+        this.testBrandName = EncryptedValue.set(this.testBrandName, testBrandName);
+    }
+
+    public String getBirthday() {
+        return EncryptedValue.get(birthday);
+    }
+
+    public void setBirthday(String birthday) {
+        this.birthday = EncryptedValue.set(this.birthday, birthday);
+    }
+
+    public byte[] getPdf() {
+        return EncryptedValue.get(pdf);
+    }
+
+    public void setPdf(byte[] pdf) {
+        this.pdf = EncryptedValue.set(this.pdf, pdf);
+    }
+
+    public String getTestResultServerHash() {
+        return EncryptedValue.get(testResultServerHash);
+    }
+
+    public void setTestResultServerHash(String testResultServerHash) {
+        this.testResultServerHash = EncryptedValue.set(this.testResultServerHash, testResultServerHash);
+    }
+
+    public String getDcc() {
+        return EncryptedValue.get(dcc);
+    }
+
+    public void setDcc(String dcc) {
+        this.dcc = EncryptedValue.set(this.dcc, dcc);
+    }
+
+    public String getAdditionalInfo() {
+        return EncryptedValue.get(additionalInfo);
+    }
+
+    public void setAdditionalInfo(String additionalInfo) {
+        this.additionalInfo = EncryptedValue.set(this.additionalInfo, additionalInfo);
+    }
+
+    public String getGroupName() {
+        return EncryptedValue.get(groupName);
+    }
+
+    public void setGroupName(String groupName) {
+        this.groupName = EncryptedValue.set(this.groupName, groupName);
+    }
+
+    public String getTestType() {
+        return EncryptedValue.get(testType);
+    }
+
+    public void setTestType(String testType) {
+        this.testType = EncryptedValue.set(this.testType, testType);
+    }
 
     @Override
     public boolean equals(Object o) {
@@ -0,0 +1,70 @@
+/*-
+ * ---license-start
+ * Corona-Warn-App / cwa-quick-test-backend
+ * ---
+ * Copyright (C) 2021 - 2023 T-Systems International GmbH and all other contributors
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---license-end
+ */
+
+package app.coronawarn.quicktest.domain;
+
+import app.coronawarn.quicktest.dbencryption.DbEncryptionStringConverter;
+import app.coronawarn.quicktest.utils.Utilities;
+import java.time.LocalDateTime;
+import javax.persistence.Column;
+import javax.persistence.Convert;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.PrePersist;
+import javax.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * PDF of a quick test archive which still has to be rendered (asynchronous PDF rendering).
+ * Holds the request data which is needed for rendering but not stored in the archive.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "quick_test_pdf_job")
+public class QuickTestPdfJob {
+
+    @Id
+    @Column(name = "hashed_guid")
+    private String hashedGuid;
+
+    @Column(name = "poc_information")
+    @Convert(converter = DbEncryptionStringConverter.class)
+    private String pocInformation;
+
+    @Column(name = "user_name")
+    @Convert(converter = DbEncryptionStringConverter.class)
+    private String userName;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    @PrePersist
+    private void onCreate() {
+        if (createdAt == null) {
+            createdAt = Utilities.getCurrentLocalDateTimeUtc();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*-
+ * ---license-start
+ * Corona-Warn-App / cwa-quick-test-backend
+ * ---
+ * Copyright (C) 2021 - 2023 T-Systems International GmbH and all other contributors
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---license-end
+ */
+
+package app.coronawarn.quicktest.domain;
+
+import app.coronawarn.quicktest.dbencryption.DbEncryptionStringConverter;
+import app.coronawarn.quicktest.utils.Utilities;
+import java.time.LocalDateTime;
+import javax.persistence.Column;
+import javax.persistence.Convert;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.PrePersist;
+import javax.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Test result which still has to be sent to the Test Result Server (transactional outbox).
+ * Entries are written in the transaction of the quick test and delivered in the order of their id per quick test.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@Entity
+@Table(name = "test_result_outbox")
+public class TestResultOutboxEntry {
+
+    @Id
+    @Column(name = "id")
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "hashed_guid")
+    private String hashedGuid;
+
+    @Column(name = "test_result_server_hash")
+    @Convert(converter = DbEncryptionStringConverter.class)
+    private String testResultServerHash;
+
+    @Column(name = "result")
+    private short result;
+
+    @Column(name = "sample_collection")
+    private Long sampleCollection;
+
+    @Column(name = "pcr")
+    private boolean pcr;
+
+    @Column(name = "attempts")
+    private int attempts;
+
+    @Column(name = "last_error")
+    private String lastError;
+
+    @Column(name = "next_attempt_at")
+    private LocalDateTime nextAttemptAt;
+
+    /**
+     * Set when the result was given up after the maximum number of attempts, parked entries are not sent again and
+     * do not block later results of the quick test.
+     */
+    @Column(name = "parked_at")
+    private LocalDateTime parkedAt;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    @PrePersist
+    private void onCreate() {
+        if (createdAt == null) {
+            createdAt = Utilities.getCurrentLocalDateTimeUtc();
+        }
+        if (nextAttemptAt == null) {
+            nextAttemptAt = createdAt;
+        }
+    }
+}
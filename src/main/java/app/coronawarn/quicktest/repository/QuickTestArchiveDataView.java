@@ -20,11 +20,15 @@
 
 package app.coronawarn.quicktest.repository;
 
+import app.coronawarn.quicktest.dbencryption.EncryptedValue;
 import app.coronawarn.quicktest.model.Sex;
 import java.time.LocalDateTime;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 
+/**
+ * Data of an archived quick test, the encrypted columns are decrypted on first access.
+ */
 @AllArgsConstructor
 @Getter
 public class QuickTestArchiveDataView {
@@ -44,41 +48,123 @@ public class QuickTestArchiveDataView {
     // Persistence (Hibernate) version from 'quick_test_archive' table
     private Integer version;
 
-    private Boolean confirmationCwa;
+    private EncryptedValue<Boolean> confirmationCwa;
 
     private Short testResult;
 
-    private Boolean privacyAgreement;
+    private EncryptedValue<Boolean> privacyAgreement;
+
+    private EncryptedValue<String> lastName;
+
+    private EncryptedValue<String> firstName;
+
+    private EncryptedValue<String> email;
+
+    private EncryptedValue<String> phoneNumber;
+
+    private EncryptedValue<Sex> sex;
+
+    private EncryptedValue<String> street;
+
+    private EncryptedValue<String> houseNumber;
+
+    private EncryptedValue<String> zipCode;
+
+    private EncryptedValue<String> city;
+
+    private EncryptedValue<String> testBrandId;
+
+    private EncryptedValue<String> testBrandName;
+
+    private EncryptedValue<String> birthday;
+
+    private EncryptedValue<String> testResultServerHash;
+
+    private EncryptedValue<String> dcc;
+
+    private EncryptedValue<String> additionalInfo;
+
+    private EncryptedValue<String> groupName;
+
+    // Personal data record, replaces the personal data columns if set
+    private byte[] personalData;
+
+    // Key of the PDF in the bucket, null if the PDF is stored in the table
+    private String pdfObjectKey;
+
+    public Boolean getConfirmationCwa() {
+        return decrypted(confirmationCwa, "confirmationCwa");
+    }
+
+    public Boolean getPrivacyAgreement() {
+        return decrypted(privacyAgreement, "privacyAgreement");
+    }
+
+    public String getLastName() {
+        return decrypted(lastName, "lastName");
+    }
 
-    private String lastName;
+    public String getFirstName() {
+        return decrypted(firstName, "firstName");
+    }
 
-    private String firstName;
+    public String getEmail() {
+        return decrypted(email, "email");
+    }
 
-    private String email;
+    public String getPhoneNumber() {
+        return decrypted(phoneNumber, "phoneNumber");
+    }
 
-    private String phoneNumber;
+    public Sex getSex() {
+        return decrypted(sex, "sex");
+    }
 
-    private Sex sex;
+    public String getStreet() {
+        return decrypted(street, "street");
+    }
 
-    private String street;
+    public String getHouseNumber() {
+        return decrypted(houseNumber, "houseNumber");
+    }
 
-    private String houseNumber;
+    public String getZipCode() {
+        return decrypted(zipCode, "zipCode");
+    }
 
-    private String zipCode;
+    public String getCity() {
+        return decrypted(city, "city");
+    }
 
-    private String city;
+    public String getTestBrandId() {
+        return decrypted(testBrandId, "testBrandId");
+    }
 
-    private String testBrandId;
+    public String getTestBrandName() {
+        return decrypted(testBrandName, "testBrandName");
+    }
 
-    private String testBrandName;
+    public String getBirthday() {
+        return decrypted(birthday, "birthday");
+    }
 
-    private String birthday;
+    public String getTestResultServerHash() {
+        return decrypted(testResultServerHash, "testResultServerHash");
+    }
 
-    private String testResultServerHash;
+    public String getDcc() {
+        return decrypted(dcc, "dcc");
+    }
 
-    private String dcc;
+    public String getAdditionalInfo() {
+        return decrypted(additionalInfo, "additionalInfo");
+    }
 
-    private String additionalInfo;
+    public String getGroupName() {
+        return decrypted(groupName, "groupName");
+    }
 
-    private String groupName;
+    private static <T> T decrypted(EncryptedValue<T> value, String field) {
+        return value == null ? null : value.bind(QuickTestArchiveDataView.class.getSimpleName(), field).get();
+    }
 }
@@ -58,5 +58,32 @@ public interface QuickTestArchiveRepository extends JpaRepository<QuickTestArchi
     @Query("DELETE FROM QuickTestArchive q WHERE q.hashedGuid = :hashedGuid")
     int deleteByHashedGuid(@Param("hashedGuid") String hashedGuid);
 
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM QuickTestArchive q WHERE q.hashedGuid IN :hashedGuids")
+    int deleteAllByHashedGuidIn(@Param("hashedGuids") List<String> hashedGuids);
+
     Stream<QuickTestArchiveDataView> findAllByTenantId(String tenantId, Pageable pageable);
+
+    @Query("SELECT q.hashedGuid FROM QuickTestArchive q WHERE q.hashedGuid > :hashedGuid ORDER BY q.hashedGuid")
+    List<String> findHashedGuidsAfter(@Param("hashedGuid") String hashedGuid, Pageable pageable);
+
+    @Query("SELECT q.hashedGuid FROM QuickTestArchive q WHERE q.pdf IS NOT NULL AND q.pdfObjectKey IS NULL")
+    List<String> findHashedGuidsWithStoredPdf(Pageable pageable);
+
+    /**
+     * Replaces the stored PDF by the object key of the uploaded PDF, if the archive has not changed since the PDF
+     * was read.
+     *
+     * @return 1 if the archive was updated, 0 if it was changed or removed in the meantime
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE QuickTestArchive q SET q.pdfObjectKey = :objectKey, q.pdf = NULL, q.version = q.version + 1 "
+        + "WHERE q.hashedGuid = :hashedGuid AND q.version = :version")
+    int movePdfToBucket(@Param("hashedGuid") String hashedGuid, @Param("version") Integer version,
+                        @Param("objectKey") String objectKey);
+
+    @Query("SELECT q.hashedGuid FROM QuickTestArchive q WHERE q.personalData IS NULL")
+    List<String> findHashedGuidsWithoutPersonalDataRecord(Pageable pageable);
 }
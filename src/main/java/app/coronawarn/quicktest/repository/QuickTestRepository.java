@@ -49,16 +49,38 @@ public interface QuickTestRepository extends JpaRepository<QuickTest, String> {
     int countAllByCreatedAtBeforeAndVersionIsGreaterThan(LocalDateTime time,
                                                          Integer version);
 
-    List<QuickTest> findAllByCreatedAtBeforeAndVersionIsGreaterThan(LocalDateTime time,
-                                                                    Integer version,
-                                                                    Pageable pageable);
+    @Query("SELECT q FROM QuickTest q WHERE q.createdAt < :time AND q.version > 0 "
+        + "ORDER BY q.createdAt, q.hashedGuid")
+    List<QuickTest> findToDelete(@Param("time") LocalDateTime time, Pageable pageable);
 
-    List<QuickTest> findAllByDccStatus(DccStatus dccStatus);
+    /**
+     * Finds the next quick tests to delete after the given one, ordered by created at and hashed guid (keyset).
+     */
+    @Query("SELECT q FROM QuickTest q WHERE q.createdAt < :time AND q.version > 0 AND (q.createdAt > :createdAt "
+        + "OR (q.createdAt = :createdAt AND q.hashedGuid > :hashedGuid)) ORDER BY q.createdAt, q.hashedGuid")
+    List<QuickTest> findToDeleteAfter(@Param("time") LocalDateTime time, @Param("createdAt") LocalDateTime createdAt,
+                                      @Param("hashedGuid") String hashedGuid, Pageable pageable);
 
-    @Query("DELETE FROM QuickTest q WHERE q.createdAt < :time")
+    @Query("DELETE FROM QuickTest q WHERE q.hashedGuid IN :hashedGuids")
     @Modifying
-    void deleteByCreatedAtBefore(@Param("time") LocalDateTime time);
+    int deleteByHashedGuids(@Param("hashedGuids") List<String> hashedGuids);
+
+    List<QuickTest> findAllByDccStatus(DccStatus dccStatus);
+
+    /**
+     * Finds the quick tests which were never updated (version 0), they have no result to report to the Test Result
+     * Server and can be deleted without a chunk.
+     */
+    @Query("SELECT q.hashedGuid FROM QuickTest q WHERE q.createdAt < :time AND q.version = 0")
+    List<String> findHashedGuidsByCreatedAtBefore(@Param("time") LocalDateTime time, Pageable pageable);
+
+    @Query("SELECT q.hashedGuid FROM QuickTest q WHERE q.personalData IS NULL")
+    List<String> findHashedGuidsWithoutPersonalDataRecord(Pageable pageable);
 
     int countAllByTenantIdIsAndPocIdIsIn(String tenantId, List<String> pocIds);
 
+    List<QuickTestConflictView> findAllByHashedGuidGreaterThanOrderByHashedGuid(String hashedGuid, Pageable pageable);
+
+    List<QuickTestConflictView> findAllByCreatedAtGreaterThanEqual(LocalDateTime createdAt);
+
 }
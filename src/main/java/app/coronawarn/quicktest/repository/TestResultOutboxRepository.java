@@ -0,0 +1,48 @@
+/*-
+ * ---license-start
+ * Corona-Warn-App / cwa-quick-test-backend
+ * ---
+ * Copyright (C) 2021 - 2023 T-Systems International GmbH and all other contributors
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---license-end
+ */
+
+package app.coronawarn.quicktest.repository;
+
+import app.coronawarn.quicktest.domain.TestResultOutboxEntry;
+import java.time.LocalDateTime;
+import java.util.List;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+public interface TestResultOutboxRepository extends JpaRepository<TestResultOutboxEntry, Long> {
+
+    /**
+     * Finds the entries which are due, only the oldest entry of every quick test is returned to keep the order.
+     * Parked entries are skipped.
+     */
+    @Query("SELECT e FROM TestResultOutboxEntry e WHERE e.nextAttemptAt <= :now AND e.parkedAt IS NULL AND e.id = "
+        + "(SELECT MIN(o.id) FROM TestResultOutboxEntry o WHERE o.hashedGuid = e.hashedGuid AND o.parkedAt IS NULL) "
+        + "ORDER BY e.id")
+    List<TestResultOutboxEntry> findDueEntries(@Param("now") LocalDateTime now, Pageable pageable);
+
+    @Query("SELECT MIN(e.createdAt) FROM TestResultOutboxEntry e WHERE e.parkedAt IS NULL")
+    LocalDateTime findOldestCreatedAt();
+
+    long countByParkedAtIsNull();
+
+    long countByParkedAtIsNotNull();
+}
@@ -0,0 +1,155 @@
+/*-
+ * ---license-start
+ * Corona-Warn-App / cwa-quick-test-backend
+ * ---
+ * Copyright (C) 2021 - 2023 T-Systems International GmbH and all other contributors
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---license-end
+ */
+
+package app.coronawarn.quicktest.service;
+
+import app.coronawarn.quicktest.archive.domain.ArchiveDataKey;
+import app.coronawarn.quicktest.archive.repository.ArchiveRepository;
+import app.coronawarn.quicktest.config.ArchiveProperties;
+import app.coronawarn.quicktest.service.cryption.CryptionService;
+import app.coronawarn.quicktest.utils.ExpiringLruCache;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.UUID;
+import javax.annotation.PostConstruct;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+/**
+ * Provides the data keys used to encrypt longterm archive entries in envelope mode.
+ * A tenant gets a new data key per configured period. The key is wrapped once by the {@link KeyProvider}, stored in
+ * the longterm archive and kept in memory, so the {@link KeyProvider} is only called once per tenant and key instead
+ * of once per entry.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ArchiveDataKeyService {
+
+    private final ArchiveProperties properties;
+
+    private final KeyProvider keyProvider;
+
+    private final ArchiveRepository longTermArchiveRepository;
+
+    private final CryptionService cryptionService;
+
+    private ExpiringLruCache<String, DataKey> currentKeys;
+
+    private ExpiringLruCache<String, DataKey> keysById;
+
+    /**
+     * Creates the data key caches.
+     */
+    @PostConstruct
+    public void initCaches() {
+        final ArchiveProperties.Envelope envelope = properties.getEnvelope();
+        final Duration ttl = Duration.ofSeconds(envelope.getCacheTtlInSeconds());
+        currentKeys = new ExpiringLruCache<>(envelope.getCacheSize(), ttl);
+        keysById = new ExpiringLruCache<>(envelope.getCacheSize(), ttl);
+    }
+
+    public boolean isEnabled() {
+        return properties.getEnvelope().isEnabled();
+    }
+
+    /**
+     * Returns the data key to encrypt new entries of the tenant. A new data key is created if the tenant has no
+     * valid data key.
+     *
+     * @param tenantId   TenantId, used as context for the {@link KeyProvider}
+     * @param tenantHash SHA256 Hash of TenantId
+     * @return {@link DataKey}
+     */
+    public synchronized DataKey getCurrentKey(final String tenantId, final String tenantHash) {
+        final LocalDateTime now = LocalDateTime.now();
+        final DataKey cached = currentKeys.get(tenantHash);
+        if (cached != null && cached.getValidUntil().isAfter(now)) {
+            return cached;
+        }
+
+        final DataKey dataKey = longTermArchiveRepository.findValidDataKey(tenantHash, now)
+                .map(stored -> unwrap(stored, tenantId))
+                .orElseGet(() -> createKey(tenantId, tenantHash, now));
+        currentKeys.put(tenantHash, dataKey);
+        keysById.put(dataKey.getKeyId(), dataKey);
+        return dataKey;
+    }
+
+    /**
+     * Returns the data key with the given id.
+     *
+     * @param keyId      id of the data key
+     * @param tenantId   TenantId, used as context for the {@link KeyProvider}
+     * @param tenantHash SHA256 Hash of TenantId the key must belong to
+     * @return {@link DataKey}
+     */
+    public DataKey getKey(final String keyId, final String tenantId, final String tenantHash) {
+        final DataKey dataKey = keysById.computeIfAbsent(keyId, id -> longTermArchiveRepository.findDataKey(id)
+                .map(stored -> unwrap(stored, tenantId))
+                .orElseThrow(() -> new IllegalStateException("Data key not found: " + id)));
+        if (!dataKey.getTenantHash().equals(tenantHash)) {
+            throw new IllegalStateException("Data key " + keyId + " does not belong to tenant");
+        }
+        return dataKey;
+    }
+
+    /**
+     * Deletes all data keys of the tenant.
+     *
+     * @param tenantHash SHA256 Hash of TenantId
+     */
+    public synchronized void deleteByTenantId(final String tenantHash) {
+        longTermArchiveRepository.deleteDataKeysByTenantId(tenantHash);
+        currentKeys.removeIf(dataKey -> dataKey.getTenantHash().equals(tenantHash));
+        keysById.removeIf(dataKey -> dataKey.getTenantHash().equals(tenantHash));
+    }
+
+    private DataKey createKey(final String tenantId, final String tenantHash, final LocalDateTime now) {
+        final String secret = cryptionService.generateRandomSecret();
+
+        final ArchiveDataKey dataKey = new ArchiveDataKey();
+        dataKey.setKeyId(UUID.randomUUID().toString());
+        dataKey.setTenantId(tenantHash);
+        dataKey.setWrappedKey(keyProvider.encrypt(secret, tenantId));
+        dataKey.setValidUntil(now.plusSeconds(properties.getEnvelope().getKeyValidityInSeconds()));
+        dataKey.setCreatedAt(now);
+        longTermArchiveRepository.saveDataKey(dataKey);
+
+        log.info("Created data key {} valid until {}", dataKey.getKeyId(), dataKey.getValidUntil());
+        return new DataKey(dataKey.getKeyId(), tenantHash, secret, dataKey.getValidUntil());
+    }
+
+    private DataKey unwrap(final ArchiveDataKey dataKey, final String tenantId) {
+        return new DataKey(dataKey.getKeyId(), dataKey.getTenantId(),
+                keyProvider.decrypt(dataKey.getWrappedKey(), tenantId), dataKey.getValidUntil());
+    }
+
+    @RequiredArgsConstructor
+    @Getter
+    public static class DataKey {
+        private final String keyId;
+        private final String tenantHash;
+        private final String secret;
+        private final LocalDateTime validUntil;
+    }
+}
@@ -0,0 +1,128 @@
+/*-
+ * ---license-start
+ * Corona-Warn-App / cwa-quick-test-backend
+ * ---
+ * Copyright (C) 2021 - 2023 T-Systems International GmbH and all other contributors
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---license-end
+ */
+
+package app.coronawarn.quicktest.service;
+
+import app.coronawarn.quicktest.config.ArchiveProperties;
+import app.coronawarn.quicktest.exception.UncheckedNoSuchAlgorithmException;
+import app.coronawarn.quicktest.utils.ExpiringLruCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import javax.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.apache.commons.lang3.StringUtils;
+import org.bouncycastle.util.encoders.Hex;
+import org.springframework.stereotype.Service;
+
+/**
+ * Creates the peppered hashes used as identifiers in the longterm archive.
+ * Every thread keeps a digest which already absorbed the pepper and clones it for each hash. Hashes of the low
+ * cardinality tenant and poc ids are additionally kept in a bounded cache.
+ */
+@Service
+@RequiredArgsConstructor
+public class ArchiveHashService {
+
+    private final ArchiveProperties properties;
+
+    private final KeyProvider keyProvider;
+
+    private final MeterRegistry meterRegistry;
+
+    private final ThreadLocal<MessageDigest> pepperedDigest = ThreadLocal.withInitial(this::buildPepperedDigest);
+
+    private ExpiringLruCache<String, String> cachedHashes;
+
+    private Counter cacheHits;
+
+    private Counter cacheMisses;
+
+    /**
+     * Creates the hash cache and its metrics.
+     */
+    @PostConstruct
+    public void initCache() {
+        cachedHashes = new ExpiringLruCache<>(properties.getHash().getCacheSize());
+        cacheHits = Counter.builder("archive.hash.cache")
+            .description("Lookups of tenant and poc hashes")
+            .tag("result", "hit")
+            .register(meterRegistry);
+        cacheMisses = Counter.builder("archive.hash.cache")
+            .description("Lookups of tenant and poc hashes")
+            .tag("result", "miss")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Creates the peppered hash of the given value.
+     *
+     * @param in value to hash
+     * @return hex encoded hash, empty for blank values
+     */
+    public String createHash(final String in) {
+        if (StringUtils.isBlank(in)) {
+            return "";
+        }
+        final MessageDigest digest = cloneDigest();
+        return Hex.toHexString(digest.digest(in.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Creates the peppered hash of a tenant or poc id, using the hash cache.
+     *
+     * @param in tenant or poc id
+     * @return hex encoded hash, empty for blank values
+     */
+    public String createCachedHash(final String in) {
+        if (StringUtils.isBlank(in)) {
+            return "";
+        }
+        final String cached = cachedHashes.get(in);
+        if (cached != null) {
+            cacheHits.increment();
+            return cached;
+        }
+        cacheMisses.increment();
+        final String hash = createHash(in);
+        cachedHashes.put(in, hash);
+        return hash;
+    }
+
+    private MessageDigest cloneDigest() {
+        try {
+            return (MessageDigest) pepperedDigest.get().clone();
+        } catch (CloneNotSupportedException e) {
+            return buildPepperedDigest();
+        }
+    }
+
+    private MessageDigest buildPepperedDigest() {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance(properties.getHash().getAlgorithm());
+            digest.update(keyProvider.getPepper());
+            return digest;
+        } catch (NoSuchAlgorithmException e) {
+            throw new UncheckedNoSuchAlgorithmException(e);
+        }
+    }
+}
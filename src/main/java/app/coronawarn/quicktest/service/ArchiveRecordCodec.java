@@ -0,0 +1,86 @@
+/*-
+ * ---license-start
+ * Corona-Warn-App / cwa-quick-test-backend
+ * ---
+ * Copyright (C) 2021 - 2023 T-Systems International GmbH and all other contributors
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---license-end
+ */
+
+package app.coronawarn.quicktest.service;
+
+import app.coronawarn.quicktest.archive.domain.ArchiveCipherDto;
+import app.coronawarn.quicktest.archive.domain.ArchiveCipherDtoV1;
+import app.coronawarn.quicktest.archive.domain.ArchiveCipherDtoV2;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+import org.springframework.beans.BeanUtils;
+import org.springframework.stereotype.Component;
+
+/**
+ * Encodes archive records in the binary format version 2: {@link ArchiveCipherDtoV2} as CBOR, compressed with
+ * deflate.
+ */
+@Component
+public class ArchiveRecordCodec {
+
+    private final ObjectMapper cborMapper = new ObjectMapper(new CBORFactory()).registerModule(new JavaTimeModule());
+
+    /**
+     * Encodes the record.
+     *
+     * @param dto record to encode
+     * @return compressed CBOR
+     */
+    public byte[] encode(final ArchiveCipherDto dto) {
+        final ArchiveCipherDtoV2 record = new ArchiveCipherDtoV2();
+        BeanUtils.copyProperties(dto, record);
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        try (OutputStream out = new DeflaterOutputStream(bytes)) {
+            cborMapper.writeValue(out, record);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes the record. Readers get the same {@link ArchiveCipherDtoV1} as for JSON records.
+     *
+     * @param encoded compressed CBOR
+     * @return {@link ArchiveCipherDtoV1}
+     */
+    public ArchiveCipherDtoV1 decode(final byte[] encoded) {
+        final ArchiveCipherDtoV2 record;
+        try (InputStream in = new InflaterInputStream(new ByteArrayInputStream(encoded))) {
+            record = cborMapper.readValue(in, ArchiveCipherDtoV2.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        final ArchiveCipherDtoV1 dto = new ArchiveCipherDtoV1();
+        BeanUtils.copyProperties(record, dto);
+        return dto;
+    }
+}
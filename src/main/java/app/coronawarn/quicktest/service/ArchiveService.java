@@ -22,13 +22,16 @@ package app.coronawarn.quicktest.service;
 
 import app.coronawarn.quicktest.archive.domain.Archive;
 import app.coronawarn.quicktest.archive.domain.ArchiveCipherDtoV1;
+import app.coronawarn.quicktest.archive.domain.ArchiveCipherDtoV2;
 import app.coronawarn.quicktest.archive.repository.ArchiveRepository;
 import app.coronawarn.quicktest.config.ArchiveProperties;
+import app.coronawarn.quicktest.dbencryption.PersonalDataRecordService;
 import app.coronawarn.quicktest.exception.UncheckedJsonProcessingException;
-import app.coronawarn.quicktest.exception.UncheckedNoSuchAlgorithmException;
 import app.coronawarn.quicktest.repository.QuickTestArchiveDataView;
 import app.coronawarn.quicktest.repository.QuickTestArchiveRepository;
+import app.coronawarn.quicktest.service.cryption.AesCryption;
 import app.coronawarn.quicktest.service.cryption.CryptionService;
+import app.coronawarn.quicktest.utils.ParallelStreams;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.opencsv.CSVWriter;
@@ -36,26 +39,42 @@ import com.opencsv.bean.StatefulBeanToCsv;
 import com.opencsv.bean.StatefulBeanToCsvBuilder;
 import com.opencsv.exceptions.CsvDataTypeMismatchException;
 import com.opencsv.exceptions.CsvRequiredFieldEmptyException;
+import java.io.IOException;
 import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import net.javacrumbs.shedlock.core.LockExtender;
 import org.apache.commons.lang3.StringUtils;
-import org.bouncycastle.util.encoders.Hex;
 import org.springframework.core.convert.ConversionService;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -68,6 +87,8 @@ public class ArchiveService {
 
     private static final DateTimeFormatter IDENTIFIER_FORMATTER = DateTimeFormatter.ofPattern("ddMM");
 
+    private static final int READ_CHUNK_SIZE = 500;
+
     private final ArchiveProperties properties;
 
     private final KeyProvider keyProvider;
@@ -82,6 +103,49 @@ public class ArchiveService {
 
     private final CryptionService cryptionService;
 
+    private final ArchiveDataKeyService dataKeyService;
+
+    private final ArchiveRecordCodec recordCodec;
+
+    private final ArchiveHashService hashService;
+
+    private final QuickTestPdfStorage pdfStorage;
+
+    private final BulkDeleteService bulkDeleteService;
+
+    private final PersonalDataRecordService personalDataRecordService;
+
+    private ExecutorService archiveExecutor;
+
+    private ExecutorService decryptExecutor;
+
+    /**
+     * Creates the worker pools used to convert and encrypt the entities while moving them to the archive and to
+     * decrypt the entities read from the archive.
+     */
+    @PostConstruct
+    public void initArchiveExecutor() {
+        final int parallelism = Math.max(1, properties.getMoveToArchiveJob().getParallelism());
+        log.info("Creating archive worker pool with parallelism {}", parallelism);
+        archiveExecutor = Executors.newFixedThreadPool(parallelism, new CustomizableThreadFactory("archive-worker-"));
+        if (properties.getDecryptParallelism() > 1) {
+            log.info("Creating archive decrypt pool with parallelism {}", properties.getDecryptParallelism());
+            decryptExecutor = Executors.newFixedThreadPool(properties.getDecryptParallelism(),
+                    new CustomizableThreadFactory("archive-decrypt-"));
+        }
+    }
+
+    /**
+     * Stops the worker pools.
+     */
+    @PreDestroy
+    public void shutdownArchiveExecutor() {
+        archiveExecutor.shutdownNow();
+        if (decryptExecutor != null) {
+            decryptExecutor.shutdownNow();
+        }
+    }
+
     /**
      * Moves the entries to the archive.
      */
@@ -101,25 +165,7 @@ public class ArchiveService {
                 return;
             }
 
-            List<String> hashedGuids = shortTermArchiveEntities.stream()
-                    .map(QuickTestArchiveDataView::getHashedGuid)
-                    .collect(Collectors.toList());
-
-            List<String> existingHashedGuids = longTermArchiveRepository.findAllHashedGuids(hashedGuids);
-            if (!existingHashedGuids.isEmpty()) {
-                log.warn("Found {} QuickTest entities which are both in short-term and long-term archive: {}",
-                        existingHashedGuids.size(), String.join(", ", existingHashedGuids));
-                log.warn("Deleting not properly cleaned up entities.");
-                existingHashedGuids.forEach(shortTermArchiveRepository::deleteByHashedGuid);
-            }
-
-            shortTermArchiveEntities.stream()
-                    .filter(entity -> !existingHashedGuids.contains(entity.getHashedGuid()))
-                    .map(this::convertQuickTest)
-                    .map(this::buildArchive)
-                    .map(longTermArchiveRepository::save)
-                    .map(Archive::getHashedGuid)
-                    .forEach(shortTermArchiveRepository::deleteById);
+            moveChunk(shortTermArchiveEntities, properties.getMoveToArchiveJob().getBatchSize());
         } else {
             log.error("Property 'archive.moveToArchiveJob.older-than-in-seconds' not set.");
         }
@@ -143,61 +189,149 @@ public class ArchiveService {
             return;
         }
 
+        int removed = moveChunk(shortTermArchiveEntities, properties.getCancellationArchiveJob().getBatchSize());
+        log.info("Chunk Finished move to longterm archive.");
+
+        if (removed == 0) {
+            log.warn("No entities of chunk could be moved to longterm archive, stopping.");
+            return;
+        }
+
+        // Continue with next chunk (Recursion will be stopped when no entities are left)
+        try {
+            LockExtender.extendActiveLock(Duration.ofMinutes(10), Duration.ZERO);
+        } catch (LockExtender.NoActiveLockException ignored) {
+            // Exception will be thrown if Job is executed outside Sheduler Context
+        }
+
+        moveToArchiveByTenantId(tenantId);
+    }
+
+    /**
+     * Moves a chunk of short-term archive entities to the longterm archive.
+     * Conversion and encryption run in parallel on the archive worker pool, the encrypted entities are persisted
+     * and deleted from the short-term archive in batches in the order of the chunk. While one batch is persisted
+     * the worker pool already continues with the following batches.
+     *
+     * @param shortTermArchiveEntities entities to move
+     * @param batchSize                amount of entities persisted and deleted at once
+     * @return amount of entities removed from the short-term archive
+     */
+    private int moveChunk(final List<QuickTestArchiveDataView> shortTermArchiveEntities, final int batchSize) {
+        final long start = System.currentTimeMillis();
+
         List<String> hashedGuids = shortTermArchiveEntities.stream()
                 .map(QuickTestArchiveDataView::getHashedGuid)
                 .collect(Collectors.toList());
+        final Map<String, String> pdfObjectKeys = new HashMap<>();
+        shortTermArchiveEntities.forEach(entity -> pdfObjectKeys.put(entity.getHashedGuid(), entity.getPdfObjectKey()));
 
-        List<String> existingHashedGuids = longTermArchiveRepository.findAllHashedGuids(hashedGuids);
+        Set<String> existingHashedGuids = new HashSet<>(longTermArchiveRepository.findAllHashedGuids(hashedGuids));
         if (!existingHashedGuids.isEmpty()) {
             log.warn("Found {} QuickTest entities which are both in short-term and long-term archive: {}",
                     existingHashedGuids.size(), String.join(", ", existingHashedGuids));
             log.warn("Deleting not properly cleaned up entities.");
-            existingHashedGuids.forEach(shortTermArchiveRepository::deleteByHashedGuid);
+            shortTermArchiveRepository.deleteAllByHashedGuidIn(new ArrayList<>(existingHashedGuids));
+            pdfStorage.delete(existingHashedGuids.stream().map(pdfObjectKeys::get).collect(Collectors.toList()));
         }
 
-        shortTermArchiveEntities.stream()
+        // data keys are resolved up front once per tenant instead of once per entity
+        final Map<String, ArchiveDataKeyService.DataKey> dataKeys = new HashMap<>();
+        if (dataKeyService.isEnabled()) {
+            shortTermArchiveEntities.stream()
+                    .map(QuickTestArchiveDataView::getTenantId)
+                    .distinct()
+                    .forEach(tenantId -> dataKeys.put(tenantId,
+                            dataKeyService.getCurrentKey(tenantId, createHash(tenantId))));
+        }
+
+        final List<Future<PendingArchive>> encrypted = shortTermArchiveEntities.stream()
                 .filter(entity -> !existingHashedGuids.contains(entity.getHashedGuid()))
-                .map(this::convertQuickTest)
-                .map(this::buildArchive)
-                .map(longTermArchiveRepository::save)
-                .map(Archive::getHashedGuid)
-                .forEach(shortTermArchiveRepository::deleteById);
-        log.info("Chunk Finished move to longterm archive.");
+                .map(entity -> archiveExecutor.submit(() ->
+                        buildArchive(convertQuickTest(entity), dataKeys.get(entity.getTenantId()))))
+                .collect(Collectors.toList());
 
-        // Continue with next chunk (Recursion will be stopped when no entities are left)
+        final int usedBatchSize = Math.max(1, batchSize);
+        int moved = 0;
         try {
-            LockExtender.extendActiveLock(Duration.ofMinutes(10), Duration.ZERO);
-        } catch (LockExtender.NoActiveLockException ignored) {
-            // Exception will be thrown if Job is executed outside Sheduler Context
+            for (int from = 0; from < encrypted.size(); from += usedBatchSize) {
+                final List<PendingArchive> pending = new ArrayList<>(usedBatchSize);
+                for (Future<PendingArchive> future : encrypted.subList(from, Math.min(from + usedBatchSize,
+                        encrypted.size()))) {
+                    pending.add(awaitArchive(future));
+                }
+                final List<Archive> batch = encryptSecrets(pending);
+
+                final ArchiveRepository.SaveAllResult result = longTermArchiveRepository.saveAll(batch);
+                final List<String> stored = result.getStored();
+                if (!result.getFailed().isEmpty()) {
+                    log.warn("Could not save {} entities in longterm archive, keeping them in short-term archive.",
+                            result.getFailed().size());
+                }
+                if (!stored.isEmpty()) {
+                    shortTermArchiveRepository.deleteAllByHashedGuidIn(stored);
+                    pdfStorage.delete(stored.stream().map(pdfObjectKeys::get).collect(Collectors.toList()));
+                }
+                moved += stored.size();
+            }
+        } finally {
+            encrypted.forEach(future -> future.cancel(true));
         }
 
-        moveToArchiveByTenantId(tenantId);
+        final long duration = Math.max(1, System.currentTimeMillis() - start);
+        log.info("Moved {} of {} entities to longterm archive in {} ms ({} entities/s).",
+                moved, encrypted.size(), duration, moved * 1000L / duration);
+        return moved + existingHashedGuids.size();
+    }
+
+    /**
+     * Encrypts the secrets of a batch with one KeyProvider call per tenant instead of one call per entity.
+     */
+    private List<Archive> encryptSecrets(final List<PendingArchive> pending) {
+        final Map<String, List<PendingArchive>> byTenant = pending.stream()
+                .filter(entry -> entry.getSecret() != null)
+                .collect(Collectors.groupingBy(PendingArchive::getTenantId));
+        byTenant.forEach((tenantId, entries) -> {
+            final List<String> secrets = keyProvider.encryptAll(entries.stream()
+                    .map(PendingArchive::getSecret)
+                    .collect(Collectors.toList()), tenantId);
+            for (int i = 0; i < entries.size(); i++) {
+                entries.get(i).getArchive().setSecret(secrets.get(i));
+            }
+        });
+        return pending.stream()
+                .map(PendingArchive::getArchive)
+                .collect(Collectors.toList());
+    }
+
+    private PendingArchive awaitArchive(final Future<PendingArchive> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for archive encryption", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Failed to encrypt archive", e.getCause());
+        }
     }
 
     /**
-     * Get decrypted entities from longterm archive.
+     * Streams the decrypted entities from longterm archive in a stable order.
+     * The entities are loaded lazily in chunks, the stream should be closed after use.
      *
      * @param pocId    (optional) pocId to filter for
      * @param tenantId tenantID to filter for
+     * @return {@link Stream} of {@link ArchiveCipherDtoV1}
      */
-    public List<ArchiveCipherDtoV1> getQuicktestsFromLongterm(final String pocId, final String tenantId) {
-        List<Archive> entities = pocId != null
-                ? longTermArchiveRepository.findAllByPocId(createHash(pocId), createHash(tenantId))
-                : longTermArchiveRepository.findAllByTenantId(createHash(tenantId));
-
-        List<ArchiveCipherDtoV1> dtos = new ArrayList<>(entities.size());
-        for (Archive archive : entities) {
-            try {
-                final String decrypt = keyProvider.decrypt(archive.getSecret(), tenantId);
-                final String json = cryptionService.getAesCryption().decrypt(decrypt, archive.getCiphertext());
-                final ArchiveCipherDtoV1 dto = this.mapper.readValue(json, ArchiveCipherDtoV1.class);
-                dtos.add(dto);
-            } catch (final Exception e) {
-                log.warn("Could not decrypt archive {}", archive.getHashedGuid());
-                log.warn("Cause: {}", e.getLocalizedMessage());
-            }
-        }
-        return dtos;
+    public Stream<ArchiveCipherDtoV1> streamQuicktestsFromLongterm(final String pocId, final String tenantId) {
+        Stream<Archive> entities = pocId != null
+                ? longTermArchiveRepository.streamAllByPocId(createHash(pocId), createHash(tenantId), READ_CHUNK_SIZE)
+                : longTermArchiveRepository.streamAllByTenantId(createHash(tenantId), READ_CHUNK_SIZE);
+
+        return decryptAll(entities, tenantId);
     }
 
     @RequiredArgsConstructor
@@ -217,8 +351,31 @@ public class ArchiveService {
         throws CsvRequiredFieldEmptyException, CsvDataTypeMismatchException {
 
         StringWriter stringWriter = new StringWriter();
+        int totalEntityCount;
+        try {
+            totalEntityCount = writeCsv(partnerId, stringWriter);
+        } catch (IOException e) {
+            // StringWriter does not throw IOExceptions
+            throw new UncheckedIOException(e);
+        }
+
+        return new CsvExportFile(stringWriter.toString().getBytes(StandardCharsets.UTF_8), totalEntityCount);
+    }
+
+    /**
+     * Writes a CSV containing given Quicktest-Archive-Entities to the given writer.
+     * The entities are loaded, decrypted and written chunk by chunk. The writer is flushed after each chunk, so
+     * only one chunk is held in memory at a time.
+     *
+     * @param partnerId Partner for which the CSV should be created.
+     * @param writer    Writer to write the CSV to. The writer will not be closed.
+     * @return amount of written entities
+     */
+    public int writeCsv(String partnerId, Writer writer)
+        throws CsvRequiredFieldEmptyException, CsvDataTypeMismatchException, IOException {
+
         CSVWriter csvWriter = new CSVWriter(
-            stringWriter,
+            writer,
             '\t',
             CSVWriter.DEFAULT_QUOTE_CHARACTER,
 
@@ -228,48 +385,135 @@ public class ArchiveService {
         StatefulBeanToCsv<ArchiveCipherDtoV1> beanToCsv =
             new StatefulBeanToCsvBuilder<ArchiveCipherDtoV1>(csvWriter).build();
 
-        int page = 0;
-        int pageSize = 500;
+        log.info("Loading Archive for Partner {}", partnerId);
         int totalEntityCount = 0;
-        List<ArchiveCipherDtoV1> quicktests;
-        do {
-            log.info("Loading Archive Chunk {} for Partner {}", page, partnerId);
-            quicktests = getQuicktestsFromLongtermByTenantId(partnerId, page, pageSize);
-            totalEntityCount += quicktests.size();
-            log.info("Found {} Quicktests in Archive for Chunk {} for Partner {}", quicktests.size(), page, partnerId);
-            beanToCsv.write(quicktests);
-            page++;
-
-            try {
-                LockExtender.extendActiveLock(Duration.ofMinutes(10), Duration.ZERO);
-            } catch (LockExtender.NoActiveLockException ignored) {
-                // Exception will be thrown if Job is executed outside Scheduler Context
+        try (Stream<ArchiveCipherDtoV1> stream = streamQuicktestsFromLongtermByTenantId(partnerId)) {
+            Iterator<ArchiveCipherDtoV1> quicktests = stream.iterator();
+            while (quicktests.hasNext()) {
+                beanToCsv.write(quicktests.next());
+                totalEntityCount++;
+
+                if (totalEntityCount % READ_CHUNK_SIZE == 0) {
+                    log.info("Wrote {} Quicktests from Archive for Partner {}", totalEntityCount, partnerId);
+                    csvWriter.flush();
+                    try {
+                        LockExtender.extendActiveLock(Duration.ofMinutes(10), Duration.ZERO);
+                    } catch (LockExtender.NoActiveLockException ignored) {
+                        // Exception will be thrown if Job is executed outside Scheduler Context
+                    }
+                }
             }
-        } while (!quicktests.isEmpty());
+        }
+        csvWriter.flush();
         log.info("Got {} Quicktests for Partner {}", totalEntityCount, partnerId);
+        return totalEntityCount;
+    }
 
-        return new CsvExportFile(stringWriter.toString().getBytes(StandardCharsets.UTF_8), totalEntityCount);
+    /**
+     * Streams the decrypted longterm archives by tenantId in a stable order.
+     * The entities are loaded lazily in chunks, entities which cannot be decrypted are skipped.
+     * The stream should be closed after use.
+     *
+     * @param tenantId tenantID to filter for
+     * @return {@link Stream} of {@link ArchiveCipherDtoV1}
+     */
+    public Stream<ArchiveCipherDtoV1> streamQuicktestsFromLongtermByTenantId(final String tenantId) {
+        return streamQuicktestsFromLongterm(null, tenantId);
     }
 
     /**
-     * Get longterm archives by tenantId.
+     * Decrypts the entities in the order of the given stream, entities which cannot be decrypted are skipped.
+     * With a decrypt parallelism greater than 1 the entities are decrypted on the decrypt pool, data keys are
+     * resolved on the calling thread while the entities are read. Secrets of entities
+     * without data key are decrypted in chunks with one KeyProvider call per chunk.
+     * The returned stream should be closed to cancel pending decryptions.
      */
-    public List<ArchiveCipherDtoV1> getQuicktestsFromLongtermByTenantId(final String tenantId, int page, int pageSize) {
-        List<Archive> allByPocId = longTermArchiveRepository
-            .findAllByTenantId(createHash(tenantId), PageRequest.of(page, pageSize));
-        List<ArchiveCipherDtoV1> dtos = new ArrayList<>(allByPocId.size());
-        for (Archive archive : allByPocId) {
-            try {
-                final String decrypt = keyProvider.decrypt(archive.getSecret(), tenantId);
-                final String json = cryptionService.getAesCryption().decrypt(decrypt, archive.getCiphertext());
-                final ArchiveCipherDtoV1 dto = this.mapper.readValue(json, ArchiveCipherDtoV1.class);
-                dtos.add(dto);
-            } catch (final Exception e) {
-                log.warn("Could not decrypt archive {}", archive.getHashedGuid());
-                log.warn("Cause: {}", e.getLocalizedMessage());
+    private Stream<ArchiveCipherDtoV1> decryptAll(final Stream<Archive> archives, final String tenantId) {
+        final Stream<EncryptedArchive> encrypted = ParallelStreams.chunked(archives
+                .map(archive -> resolveDataKey(archive, tenantId))
+                .filter(Objects::nonNull), READ_CHUNK_SIZE)
+                .flatMap(chunk -> decryptSecrets(chunk, tenantId).stream());
+        final Stream<ArchiveCipherDtoV1> decrypted = decryptExecutor != null
+                ? ParallelStreams.mapOrdered(encrypted, this::decryptArchive, decryptExecutor, READ_CHUNK_SIZE)
+                : encrypted.map(this::decryptArchive);
+        return decrypted.filter(Objects::nonNull);
+    }
+
+    private EncryptedArchive resolveDataKey(final Archive archive, final String tenantId) {
+        try {
+            final String dataKeySecret = archive.getKeyId() != null
+                    ? dataKeyService.getKey(archive.getKeyId(), tenantId, archive.getTenantId()).getSecret()
+                    : null;
+            return new EncryptedArchive(archive, tenantId, dataKeySecret);
+        } catch (final Exception e) {
+            log.warn("Could not decrypt archive {}", archive.getHashedGuid());
+            log.warn("Cause: {}", e.getLocalizedMessage());
+            return null;
+        }
+    }
+
+    private List<EncryptedArchive> decryptSecrets(final List<EncryptedArchive> chunk, final String tenantId) {
+        final List<EncryptedArchive> withoutDataKey = chunk.stream()
+                .filter(entry -> entry.getSecret() == null)
+                .collect(Collectors.toList());
+        if (withoutDataKey.isEmpty()) {
+            return chunk;
+        }
+        try {
+            final List<String> secrets = keyProvider.decryptAll(withoutDataKey.stream()
+                    .map(entry -> entry.getArchive().getSecret())
+                    .collect(Collectors.toList()), tenantId);
+            for (int i = 0; i < withoutDataKey.size(); i++) {
+                withoutDataKey.get(i).setSecret(secrets.get(i));
+            }
+        } catch (final Exception e) {
+            log.warn("Could not decrypt secrets in batch, falling back to single decryption: {}",
+                    e.getLocalizedMessage());
+        }
+        return chunk;
+    }
+
+    private ArchiveCipherDtoV1 decryptArchive(final EncryptedArchive encrypted) {
+        final Archive archive = encrypted.getArchive();
+        try {
+            final String decrypt = encrypted.getSecret() != null
+                    ? encrypted.getSecret()
+                    : keyProvider.decrypt(archive.getSecret(), encrypted.getTenantId());
+            if (Objects.equals(archive.getFormatVersion(), ArchiveCipherDtoV2.FORMAT_VERSION)) {
+                final AesCryption aesCryption = (AesCryption) cryptionService.getByAlgorithm(archive.getAlgorithmAes());
+                return recordCodec.decode(aesCryption.decrypt(decrypt, archive.getCiphertextBinary()));
             }
+            final String json = cryptionService.getByAlgorithm(archive.getAlgorithmAes())
+                    .decrypt(decrypt, archive.getCiphertext());
+            return this.mapper.readValue(json, ArchiveCipherDtoV1.class);
+        } catch (final Exception e) {
+            log.warn("Could not decrypt archive {}", archive.getHashedGuid());
+            log.warn("Cause: {}", e.getLocalizedMessage());
+            return null;
         }
-        return dtos;
+    }
+
+    @AllArgsConstructor
+    @Getter
+    private static class EncryptedArchive {
+        private final Archive archive;
+        private final String tenantId;
+        /**
+         * Plain secret of the entity, either the data key or the decrypted secret of the entity.
+         */
+        @Setter
+        private String secret;
+    }
+
+    @RequiredArgsConstructor
+    @Getter
+    private static class PendingArchive {
+        private final Archive archive;
+        private final String tenantId;
+        /**
+         * Plain secret which still has to be encrypted by the KeyProvider, null if a data key is used.
+         */
+        private final String secret;
     }
 
     /**
@@ -286,14 +530,23 @@ public class ArchiveService {
 
         if (excludedPartners.stream().anyMatch(partnerId -> partnerId.equals(archiveData.getTenantId()))) {
             shortTermArchiveRepository.deleteById(archiveData.getHashedGuid());
+            pdfStorage.delete(Collections.singletonList(archiveData.getPdfObjectKey()));
             return false;
         } else {
             return true;
         }
     }
 
+    /**
+     * Deletes all entities and data keys of the given TenantId from Long Term Archive.
+     *
+     * @param partnerId Tenant ID to delete.
+     */
     public void deleteByTenantId(String partnerId) {
-        longTermArchiveRepository.deleteAllByTenantId(createHash(partnerId));
+        final String tenantHash = createHash(partnerId);
+        bulkDeleteService.deleteInBatches("archive",
+            limit -> longTermArchiveRepository.deleteByTenantId(tenantHash, limit));
+        dataKeyService.deleteByTenantId(tenantHash);
     }
 
     /**
@@ -335,29 +588,34 @@ public class ArchiveService {
         archive.setDcc(quickTestArchive.getDcc());
         archive.setAdditionalInfo(quickTestArchive.getAdditionalInfo());
         archive.setGroupName(quickTestArchive.getGroupName());
+        personalDataRecordService.apply(quickTestArchive.getPersonalData(), archive);
 
         return archive;
     }
 
-    private Archive buildArchive(final ArchiveCipherDtoV1 dto) {
+    private PendingArchive buildArchive(final ArchiveCipherDtoV1 dto, final ArchiveDataKeyService.DataKey dataKey) {
         final LocalDateTime now = LocalDateTime.now();
-        final String secret = cryptionService.generateRandomSecret();
+        final String secret = dataKey != null ? dataKey.getSecret() : cryptionService.generateRandomSecret();
 
         final Archive archive = new Archive();
         archive.setHashedGuid(dto.getHashedGuid());
         archive.setIdentifier(buildIdentifier(dto));
         archive.setTenantId(createHash(dto.getTenantId()));
         archive.setPocId(createHash(dto.getPocId()));
-        archive.setCiphertext(buildCiphertext(secret, dto));
-        archive.setSecret(encryptSecret(secret, dto.getTenantId()));
+        if (properties.getRecordFormatVersion() == ArchiveCipherDtoV2.FORMAT_VERSION) {
+            archive.setCiphertextBinary(cryptionService.getAesCryption().encrypt(secret, recordCodec.encode(dto)));
+            archive.setFormatVersion(ArchiveCipherDtoV2.FORMAT_VERSION);
+        } else {
+            archive.setCiphertext(buildCiphertext(secret, dto));
+            archive.setFormatVersion(1);
+        }
+        if (dataKey != null) {
+            archive.setKeyId(dataKey.getKeyId());
+        }
         archive.setAlgorithmAes(cryptionService.getAesCryption().getAlgorithm());
         archive.setCreatedAt(now);
         archive.setUpdatedAt(now);
-        return archive;
-    }
-
-    private String encryptSecret(final String secret, final String context) {
-        return keyProvider.encrypt(secret, context);
+        return new PendingArchive(archive, dto.getTenantId(), dataKey != null ? null : secret);
     }
 
     private String buildCiphertext(final String secret, final ArchiveCipherDtoV1 dto) {
@@ -378,25 +636,13 @@ public class ArchiveService {
         final String identifier = String.format("%s%s",
                 LocalDate.parse(birthday, BIRTHDAY_FORMATTER).format(IDENTIFIER_FORMATTER),
                 lastnameId.substring(0, 2).toUpperCase());
-        return createHash(identifier);
+        return hashService.createHash(identifier);
     }
 
+    /**
+     * Creates the peppered hash of a tenant or poc id.
+     */
     String createHash(String in) {
-        if (StringUtils.isBlank(in)) {
-            return "";
-        }
-        final MessageDigest digest = buildMessageDigest(properties.getHash().getAlgorithm());
-        digest.reset();
-        digest.update(keyProvider.getPepper());
-        byte[] identifierHashed = digest.digest(in.getBytes(StandardCharsets.UTF_8));
-        return Hex.toHexString(identifierHashed);
-    }
-
-    private MessageDigest buildMessageDigest(final String alg) {
-        try {
-            return MessageDigest.getInstance(alg);
-        } catch (NoSuchAlgorithmException e) {
-            throw new UncheckedNoSuchAlgorithmException(e);
-        }
+        return hashService.createCachedHash(in);
     }
 }
@@ -0,0 +1,118 @@
+/*-
+ * ---license-start
+ * Corona-Warn-App / cwa-quick-test-backend
+ * ---
+ * Copyright (C) 2021 - 2023 T-Systems International GmbH and all other contributors
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---license-end
+ */
+
+package app.coronawarn.quicktest.service;
+
+import app.coronawarn.quicktest.config.QuickTestConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntUnaryOperator;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import net.javacrumbs.shedlock.core.LockExtender;
+import org.springframework.stereotype.Service;
+
+/**
+ * Deletes large amounts of rows with bounded statements instead of one unbounded DELETE, so a statement holds its
+ * row and gap locks only for a short time and replicas can keep up. The lock of the running scheduled job is
+ * extended after every statement.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class BulkDeleteService {
+
+    private final QuickTestConfig quickTestConfig;
+
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Runs the delete statement until it deletes less rows than the batch size, with a pause between statements.
+     * Deleted rows are reported as quicktest.bulk.delete.rows, the duration of the statements as
+     * quicktest.bulk.delete.statement, both tagged with the name.
+     *
+     * @param name        name of the deleted data, used as metric tag and in the log
+     * @param deleteBatch deletes at most the given amount of rows in its own transaction, returns the deleted rows
+     * @return amount of deleted rows
+     */
+    public long deleteInBatches(String name, IntUnaryOperator deleteBatch) {
+        final QuickTestConfig.BulkDeleteConfig config = quickTestConfig.getBulkDelete();
+        final int batchSize = Math.max(1, config.getBatchSize());
+        final Timer statementTimer = Timer.builder("quicktest.bulk.delete.statement")
+            .description("Duration of a single bounded delete statement")
+            .tag("name", name)
+            .register(meterRegistry);
+        final Counter deletedRows = Counter.builder("quicktest.bulk.delete.rows")
+            .description("Rows deleted by bounded delete statements")
+            .tag("name", name)
+            .register(meterRegistry);
+
+        final long start = System.nanoTime();
+        long deleted = 0;
+        long longestStatement = 0;
+        int statements = 0;
+        while (true) {
+            final long statementStart = System.nanoTime();
+            final int count = deleteBatch.applyAsInt(batchSize);
+            final long duration = System.nanoTime() - statementStart;
+            statementTimer.record(duration, TimeUnit.NANOSECONDS);
+            longestStatement = Math.max(longestStatement, duration);
+            deletedRows.increment(count);
+            deleted += count;
+            statements++;
+            if (count < batchSize) {
+                break;
+            }
+            extendLock(config.getLockExtensionInSeconds());
+            if (!pause(config.getPauseInMillis())) {
+                break;
+            }
+        }
+        final long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        log.info("Deleted {} rows of {} with {} statements in {} ms ({} rows per second), longest statement {} ms",
+            deleted, name, statements, millis, millis > 0 ? deleted * 1000 / millis : deleted,
+            TimeUnit.NANOSECONDS.toMillis(longestStatement));
+        return deleted;
+    }
+
+    private void extendLock(int seconds) {
+        try {
+            LockExtender.extendActiveLock(Duration.ofSeconds(seconds), Duration.ZERO);
+        } catch (LockExtender.NoActiveLockException ignored) {
+            // Exception will be thrown if Job is executed outside Sheduler Context
+        }
+    }
+
+    private boolean pause(long millis) {
+        if (millis <= 0) {
+            return true;
+        }
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -22,11 +22,14 @@ package app.coronawarn.quicktest.service;
 
 import app.coronawarn.quicktest.config.CsvUploadConfig;
 import app.coronawarn.quicktest.domain.Cancellation;
+import app.coronawarn.quicktest.utils.S3MultipartOutputStream;
 import com.amazonaws.services.s3.AmazonS3;
-import com.amazonaws.services.s3.model.ObjectMetadata;
-import java.io.ByteArrayInputStream;
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestOutputStream;
 import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.time.ZonedDateTime;
 import java.util.List;
 import lombok.RequiredArgsConstructor;
@@ -93,30 +96,37 @@ public class CancellationSchedulingService {
         log.info("Process CSV Upload Batch with size of {}", cancellations.size());
         for (Cancellation cancellation : cancellations) {
             log.info("Processing CSV for Partner {}", cancellation.getPartnerId());
+            String objectId = cancellation.getPartnerId() + ".csv";
+            S3MultipartOutputStream s3Stream = new S3MultipartOutputStream(
+                s3Client, s3Config.getBucketName(), objectId, s3Config.getPartSize());
             try {
-                ArchiveService.CsvExportFile csv = archiveService.createCsv(cancellation.getPartnerId());
-                String objectId = cancellation.getPartnerId() + ".csv";
-                ObjectMetadata metadata = new ObjectMetadata();
-                metadata.setContentLength(csv.getCsvBytes().length);
-
-                s3Client.putObject(
-                    s3Config.getBucketName(),
-                    objectId,
-                    new ByteArrayInputStream(csv.getCsvBytes()), metadata);
+                MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+                Writer writer = new BufferedWriter(new OutputStreamWriter(
+                    new DigestOutputStream(s3Stream, sha256), StandardCharsets.UTF_8));
+                int totalEntityCount;
+                try {
+                    totalEntityCount = archiveService.writeCsv(cancellation.getPartnerId(), writer);
+                    // closing completes the upload, it must not happen for a partially written file
+                    writer.close();
+                } catch (Exception e) {
+                    s3Stream.abort();
+                    throw e;
+                }
+                String hash = String.valueOf(Hex.encode(sha256.digest()));
+                int size = Math.toIntExact(s3Stream.getSize());
 
-                log.info("File stored to S3 with id: {}, size: {}, hash: {}",
-                    objectId, csv.getCsvBytes().length, getHash(csv.getCsvBytes()));
+                log.info("File stored to S3 with id: {}, size: {}, hash: {}", objectId, size, hash);
 
-                if (cancellation.getDbEntityCount() == csv.getTotalEntityCount()) {
+                if (cancellation.getDbEntityCount() == totalEntityCount) {
                     cancellationService.updateCsvCreated(cancellation, ZonedDateTime.now(), objectId,
-                        getHash(csv.getCsvBytes()), csv.getTotalEntityCount(), csv.getCsvBytes().length);
+                        hash, totalEntityCount, size);
                 } else {
                     log.error("Difference between actual and expected EntityCount in CSV File for partner {}. "
                             + "Expected: {}, Actual: {}, CSV Export will not be marked as finished.",
-                        cancellation.getPartnerId(), cancellation.getDbEntityCount(), csv.getTotalEntityCount());
+                        cancellation.getPartnerId(), cancellation.getDbEntityCount(), totalEntityCount);
 
                     cancellationService.updateDataExportError(cancellation, "CSV Export Delta detected. "
-                        + "Expected: " + cancellation.getDbEntityCount() + " Actual: " + csv.getTotalEntityCount());
+                        + "Expected: " + cancellation.getDbEntityCount() + " Actual: " + totalEntityCount);
                 }
             } catch (Exception e) {
                 String errorMessage = e.getClass().getName() + ": " + e.getMessage();
@@ -163,14 +173,4 @@ public class CancellationSchedulingService {
             processCancellationArchiveBatchRecursion(nextBatch);
         }
     }
-
-    private String getHash(byte[] bytes) {
-        try {
-            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
-            byte[] hashBytes = sha256.digest(bytes);
-            return String.valueOf(Hex.encode(hashBytes));
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("Failed to load SHA-256 Message Digest");
-        }
-    }
 }
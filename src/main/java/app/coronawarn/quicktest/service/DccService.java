@@ -67,6 +67,8 @@ import org.bouncycastle.util.encoders.Hex;
 import org.springframework.http.HttpStatus;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 @Slf4j
 @Component
@@ -76,10 +78,13 @@ public class DccService {
     private final DccConfig dccConfig;
     private final QuickTestRepository quickTestRepository;
     private final QuickTestArchiveRepository quickTestArchiveRepository;
+    private final QuickTestPdfStorage pdfStorage;
     private final DgcCryptedPublisher dgcCryptedPublisher;
     private final DgcGenerator dgcGenerator;
     private final QuickTestConfig quickTestConfig;
     private final DccPdfGenerator dccPdfGenerator;
+    private final QuickTestPdfRenderService pdfRenderService;
+    private final PlatformTransactionManager transactionManager;
 
     // TODO to be scheduled look up for keys, then generate dcc and prepare for upload
     // should open transaction pro quick test
@@ -155,10 +160,16 @@ public class DccService {
     public void uploadDccData() {
         ObjectMapper objectMapper = new ObjectMapper();
         MessageDigest digest = createSha256Digest();
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
 
         List<QuickTest> quicktestsPending = quickTestRepository.findAllByDccStatus(DccStatus.pendingSignature);
         log.info("Upload dcc data for quicktests: size=[{}]", quicktestsPending.size());
         for (QuickTest quickTest : quicktestsPending) {
+            if (pdfRenderService.isPending(quickTest.getHashedGuid())) {
+                // the certificate page is appended to the rendered PDF, try again with the next run
+                log.debug("pdf of {} not rendered yet", quickTest.getHashedGuid());
+                continue;
+            }
             log.debug("dcc sign {}", quickTest.getHashedGuid());
             try {
                 DccUploadData dccUploadData = objectMapper.readValue(quickTest.getDccSignData(), DccUploadData.class);
@@ -169,27 +180,30 @@ public class DccService {
                 byte[] coseSigned = dgcSetCosePartial(
                     Base64.getDecoder().decode(quickTest.getDccUnsigned()),
                     Base64.getDecoder().decode(dccUploadResult.getPartialDcc()));
-                Optional<QuickTestArchive> quickTestArchive =
-                    quickTestArchiveRepository.findByHashedGuid(quickTest.getHashedGuid());
-                if (quickTestArchive.isPresent()) {
-                    String dcc = dgcGenerator.coseToQrCode(coseSigned);
-                    quickTestArchive.get().setDcc(dcc);
-                    try {
-                        ByteArrayOutputStream pdf =
-                            dccPdfGenerator.appendCertificatePage(quickTestArchive.get().getPdf(), quickTest, dcc);
-                        quickTestArchive.get().setPdf(pdf.toByteArray());
-                    } catch (IOException exception) {
-                        log.warn("Appending Certificate to PDF failed for quicktest hashedGuid=[{}]",
-                            quickTest.getHashedGuid());
-                    } catch (Exception exception) {
-                        log.warn("General Exception while appending certificate to PDF for quicktest hashedGuid=[{}]",
-                            quickTest.getHashedGuid());
+                // the PDF is moved to the bucket after the commit
+                transactionTemplate.executeWithoutResult(status -> {
+                    Optional<QuickTestArchive> quickTestArchive =
+                        quickTestArchiveRepository.findByHashedGuid(quickTest.getHashedGuid());
+                    if (quickTestArchive.isPresent()) {
+                        String dcc = dgcGenerator.coseToQrCode(coseSigned);
+                        quickTestArchive.get().setDcc(dcc);
+                        try {
+                            ByteArrayOutputStream pdf = dccPdfGenerator.appendCertificatePage(
+                                pdfStorage.read(quickTestArchive.get()), quickTest, dcc);
+                            pdfStorage.store(quickTestArchive.get(), pdf.toByteArray());
+                        } catch (IOException exception) {
+                            log.warn("Appending Certificate to PDF failed for quicktest hashedGuid=[{}]",
+                                quickTest.getHashedGuid());
+                        } catch (Exception exception) {
+                            log.warn("General Exception while appending certificate to PDF "
+                                + "for quicktest hashedGuid=[{}]", quickTest.getHashedGuid());
+                        }
+                        quickTestArchiveRepository.saveAndFlush(quickTestArchive.get());
+                    } else {
+                        log.warn("can not find quick test archive {}", quickTest.getHashedGuid());
                     }
-                    quickTestArchiveRepository.saveAndFlush(quickTestArchive.get());
-                } else {
-                    log.warn("can not find quick test archive {}", quickTest.getHashedGuid());
-                }
-                quickTestRepository.delete(quickTest);
+                    quickTestRepository.delete(quickTest);
+                });
             } catch (FeignException e) {
                 log.warn("Error during uploading dcc data {}", quickTest.getHashedGuid(), e);
                 if (HttpStatus.CONFLICT.value() == e.status()) {
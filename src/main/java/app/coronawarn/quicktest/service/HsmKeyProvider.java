@@ -24,6 +24,9 @@ import app.coronawarn.quicktest.config.ArchiveProperties;
 import app.coronawarn.quicktest.exception.DccException;
 import java.nio.charset.StandardCharsets;
 import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Primary;
 import org.springframework.context.annotation.Profile;
@@ -57,4 +60,24 @@ public class HsmKeyProvider implements KeyProvider {
     public String encrypt(String plain, String context) {
         throw new DccException(HttpStatus.NOT_IMPLEMENTED, "not implemented");
     }
+
+    @Override
+    public List<String> decryptAll(List<String> encrypted, String context) {
+        final List<String> decrypted = new ArrayList<>(encrypted.size());
+        for (String value : encrypted) {
+            try {
+                decrypted.add(this.decrypt(value, context));
+            } catch (RuntimeException e) {
+                decrypted.add(null);
+            }
+        }
+        return decrypted;
+    }
+
+    @Override
+    public List<String> encryptAll(List<String> plain, String context) {
+        return plain.stream()
+                .map(value -> this.encrypt(value, context))
+                .collect(Collectors.toList());
+    }
 }
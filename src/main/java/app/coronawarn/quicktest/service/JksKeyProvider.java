@@ -38,6 +38,7 @@ import java.security.PublicKey;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.stream.Collectors;
 import javax.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Profile;
@@ -119,6 +120,26 @@ public class JksKeyProvider implements KeyProvider {
         return this.cryption.encrypt(this.getPublicKey(), plain);
     }
 
+    @Override
+    public List<String> decryptAll(List<String> encrypted, String context) {
+        final List<String> decrypted = new ArrayList<>(encrypted.size());
+        for (String value : encrypted) {
+            try {
+                decrypted.add(this.decrypt(value, context));
+            } catch (RuntimeException e) {
+                decrypted.add(null);
+            }
+        }
+        return decrypted;
+    }
+
+    @Override
+    public List<String> encryptAll(List<String> plain, String context) {
+        return plain.stream()
+                .map(value -> this.encrypt(value, context))
+                .collect(Collectors.toList());
+    }
+
     private PrivateKey getPrivateKey(PublicKey publicKey) {
         return this.entries.stream()
                 .filter(key -> key.getCertificate().getPublicKey().equals(publicKey))
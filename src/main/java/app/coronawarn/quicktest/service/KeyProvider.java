@@ -23,6 +23,7 @@ package app.coronawarn.quicktest.service;
 import java.security.NoSuchAlgorithmException;
 import java.security.PublicKey;
 import java.security.spec.InvalidKeySpecException;
+import java.util.List;
 
 public interface KeyProvider {
 
@@ -49,4 +50,22 @@ public interface KeyProvider {
     String decrypt(String encrypted, String context);
 
     String encrypt(String plain, String context);
+
+    /**
+     * Decrypts the contents with as few requests as possible.
+     *
+     * @param encrypted contents
+     * @param context   context of all contents
+     * @return decrypted contents in the order of the given contents, null for contents which could not be decrypted
+     */
+    List<String> decryptAll(List<String> encrypted, String context);
+
+    /**
+     * Encrypts the contents with as few requests as possible.
+     *
+     * @param plain   contents
+     * @param context context of all contents
+     * @return encrypted contents in the order of the given contents
+     */
+    List<String> encryptAll(List<String> plain, String context);
 }
@@ -0,0 +1,149 @@
+/*-
+ * ---license-start
+ * Corona-Warn-App / cwa-quick-test-backend
+ * ---
+ * Copyright (C) 2021 - 2023 T-Systems International GmbH and all other contributors
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---license-end
+ */
+
+package app.coronawarn.quicktest.service;
+
+import app.coronawarn.quicktest.config.QuickTestConfig;
+import app.coronawarn.quicktest.dbencryption.PersonalDataRecordService;
+import app.coronawarn.quicktest.domain.QuickTest;
+import app.coronawarn.quicktest.domain.QuickTestArchive;
+import app.coronawarn.quicktest.repository.QuickTestArchiveRepository;
+import app.coronawarn.quicktest.repository.QuickTestRepository;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import javax.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import net.javacrumbs.shedlock.spring.annotation.SchedulerLock;
+import org.springframework.beans.PropertyAccessorFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Converts quick tests and archived quick tests which are still stored with one encrypted column per personal data
+ * value to the personal data record of the {@link PersonalDataRecordService}.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PersonalDataRecordMigrationService {
+
+    private final QuickTestConfig quickTestConfig;
+    private final PersonalDataRecordService personalDataRecordService;
+    private final QuickTestRepository quickTestRepository;
+    private final QuickTestArchiveRepository quickTestArchiveRepository;
+    private final PlatformTransactionManager transactionManager;
+    private final EntityManager entityManager;
+
+    /**
+     * Converts the rows in batches with a pause between them, at most maxBatchesPerRun batches per table and run.
+     * Only runs while the record layout is enabled, rows written in the meantime are not overwritten.
+     */
+    @Scheduled(fixedDelayString = "${quicktest.personal-data-record.migration.delay:300000}")
+    @SchedulerLock(name = "PersonalDataRecordMigrationService_migrate", lockAtLeastFor = "PT0S",
+        lockAtMostFor = "${quicktest.personal-data-record.migration.locklimit:1800000}")
+    public void migrate() {
+        final QuickTestConfig.PersonalDataRecordConfig.Migration config =
+            quickTestConfig.getPersonalDataRecord().getMigration();
+        if (!personalDataRecordService.isEnabled() || !config.isEnabled()) {
+            return;
+        }
+        final int quickTests = migrate(QuickTest.class,
+            quickTestRepository::findHashedGuidsWithoutPersonalDataRecord, config);
+        final int archives = migrate(QuickTestArchive.class,
+            quickTestArchiveRepository::findHashedGuidsWithoutPersonalDataRecord, config);
+        if (quickTests > 0 || archives > 0) {
+            log.info("Converted {} quick tests and {} archived quick tests to personal data records.",
+                quickTests, archives);
+        }
+    }
+
+    private int migrate(Class<?> entityClass, Function<Pageable, List<String>> findHashedGuids,
+                        QuickTestConfig.PersonalDataRecordConfig.Migration config) {
+        final TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        final PageRequest page = PageRequest.of(0, Math.max(1, config.getBatchSize()));
+        int converted = 0;
+        for (int batch = 0; batch < config.getMaxBatchesPerRun(); batch++) {
+            final List<String> hashedGuids = findHashedGuids.apply(page);
+            if (hashedGuids.isEmpty()) {
+                break;
+            }
+            final int convertedBefore = converted;
+            for (String hashedGuid : hashedGuids) {
+                try {
+                    if (Boolean.TRUE.equals(transactionTemplate.execute(status -> convert(entityClass, hashedGuid)))) {
+                        converted++;
+                    }
+                } catch (RuntimeException e) {
+                    log.warn("Converting {} to personal data records stopped after {} rows: {}",
+                        entityClass.getSimpleName(), converted, e.getMessage());
+                    return converted;
+                }
+            }
+            // rows changed during the batch are found again, retry them in the next run
+            if (converted == convertedBefore || !pause(config.getPauseInMillis())) {
+                break;
+            }
+        }
+        return converted;
+    }
+
+    /**
+     * Writes the record and clears the columns with one statement. The statement only matches the version which was
+     * read, a row changed in the meantime was written completely and is left alone.
+     */
+    private boolean convert(Class<?> entityClass, String hashedGuid) {
+        final Object entity = entityManager.find(entityClass, hashedGuid);
+        if (entity == null) {
+            // deleted in the meantime
+            return false;
+        }
+        final Object version = PropertyAccessorFactory.forBeanPropertyAccess(entity).getPropertyValue("version");
+        final Map<String, Object> values = personalDataRecordService.read(entity);
+        final String clearColumns = values.keySet().stream()
+            .sorted()
+            .map(property -> "e." + property + " = NULL")
+            .collect(Collectors.joining(", "));
+        return entityManager.createQuery("UPDATE " + entityClass.getSimpleName() + " e "
+                + "SET e." + PersonalDataRecordService.RECORD_PROPERTY + " = :record, " + clearColumns
+                + " WHERE e.hashedGuid = :hashedGuid AND e.version = :version"
+                + " AND e." + PersonalDataRecordService.RECORD_PROPERTY + " IS NULL")
+            .setParameter("record", personalDataRecordService.encode(values))
+            .setParameter("hashedGuid", hashedGuid)
+            .setParameter("version", version)
+            .executeUpdate() == 1;
+    }
+
+    private boolean pause(long millis) {
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
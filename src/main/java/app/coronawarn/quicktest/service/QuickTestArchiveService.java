@@ -24,10 +24,12 @@ import app.coronawarn.quicktest.config.QuickTestConfig;
 import app.coronawarn.quicktest.domain.QuickTestArchive;
 import app.coronawarn.quicktest.repository.QuickTestArchiveRepository;
 import app.coronawarn.quicktest.repository.QuickTestArchiveView;
+import java.io.InputStream;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import javax.persistence.EntityManager;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
@@ -42,15 +44,19 @@ public class QuickTestArchiveService {
 
     private final QuickTestArchiveRepository quickTestArchiveRepository;
     private final QuickTestConfig quickTestConfig;
+    private final QuickTestPdfRenderService pdfRenderService;
+    private final QuickTestPdfStorage pdfStorage;
+    private final EntityManager entityManager;
 
     /**
-     * Stores quicktest with pdf in archive table.
+     * Opens the pdf of a quicktest in archive table, PDFs in the bucket are streamed from there.
+     * If the PDF is still rendered on this instance, waits briefly for it.
      *
      * @param hashedGuid to identify quicktest
-     * @return PDF as byte array
+     * @return PDF as stream, null if the PDF is not rendered yet
      * @throws ResponseStatusException if quicktest not found.
      */
-    public byte[] getPdf(String hashedGuid)
+    public InputStream getPdf(String hashedGuid)
         throws ResponseStatusException {
         Optional<QuickTestArchive> quickTestArchive = quickTestArchiveRepository.findByHashedGuid(hashedGuid);
         if (quickTestArchive.isEmpty()) {
@@ -58,7 +64,16 @@ public class QuickTestArchiveService {
             log.info("Requested Quick Test with HashedGuid could not be found or wrong poc");
             throw new ResponseStatusException(HttpStatus.NOT_FOUND);
         }
-        return quickTestArchive.get().getPdf();
+        if (!pdfStorage.hasPdf(quickTestArchive.get()) && pdfRenderService.isPending(hashedGuid)) {
+            pdfRenderService.awaitRendering(hashedGuid);
+            // the request shares one persistence context (open in view), without detaching the archive the
+            // stale instance without PDF would be returned again
+            entityManager.detach(quickTestArchive.get());
+            return quickTestArchiveRepository.findByHashedGuid(hashedGuid)
+                .map(pdfStorage::open)
+                .orElse(null);
+        }
+        return pdfStorage.open(quickTestArchive.get());
     }
 
     /**
@@ -0,0 +1,203 @@
+/*-
+ * ---license-start
+ * Corona-Warn-App / cwa-quick-test-backend
+ * ---
+ * Copyright (C) 2021 - 2023 T-Systems International GmbH and all other contributors
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---license-end
+ */
+
+package app.coronawarn.quicktest.service;
+
+import app.coronawarn.quicktest.config.QuickTestConfig;
+import app.coronawarn.quicktest.repository.QuickTestArchiveRepository;
+import app.coronawarn.quicktest.repository.QuickTestConflictView;
+import app.coronawarn.quicktest.repository.QuickTestRepository;
+import app.coronawarn.quicktest.utils.BloomFilter;
+import app.coronawarn.quicktest.utils.Utilities;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.LocalDateTime;
+import java.util.List;
+import javax.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * In-memory Bloom filter over the hashed guids of quick tests and archived quick tests, and the short hashes of
+ * quick tests per poc. A quick test which is definitely not contained cannot conflict with an existing one, so the
+ * conflict queries can be skipped.
+ * Every instance keeps its own filter. It is rebuilt periodically and refreshed with the quick tests created in the
+ * meantime, including the ones created by other instances.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class QuickTestConflictFilter {
+
+    private static final String METRIC_PREFIX = "quicktest.conflict.filter";
+
+    private final QuickTestConfig quickTestConfig;
+    private final QuickTestRepository quickTestRepository;
+    private final QuickTestArchiveRepository quickTestArchiveRepository;
+    private final MeterRegistry meterRegistry;
+
+    private volatile BloomFilter filter;
+
+    private volatile LocalDateTime refreshedUntil;
+
+    private Counter skipped;
+
+    private Counter queried;
+
+    /**
+     * Registers the metrics of the filter.
+     */
+    @PostConstruct
+    public void initMetrics() {
+        skipped = Counter.builder(METRIC_PREFIX + ".checks")
+            .description("Conflict checks of new quick tests")
+            .tag("result", "skipped")
+            .register(meterRegistry);
+        queried = Counter.builder(METRIC_PREFIX + ".checks")
+            .description("Conflict checks of new quick tests")
+            .tag("result", "queried")
+            .register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + ".size", this, f -> f.filter != null ? f.filter.getBitSize() : 0)
+            .description("Size of the conflict filter in bits")
+            .register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + ".insertions", this, f -> f.filter != null ? f.filter.getInsertions() : 0)
+            .description("Values added to the conflict filter")
+            .register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + ".fpp", this,
+                f -> f.filter != null ? f.filter.getExpectedFalsePositiveProbability() : 1)
+            .description("Expected false positive probability of the conflict filter")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Checks whether the quick test might conflict with an existing quick test or archived quick test.
+     * Returns true as long as the filter is disabled or not yet built.
+     *
+     * @param tenantId   tenant id
+     * @param pocId      poc id
+     * @param shortHash  short hash of the guid
+     * @param hashedGuid SHA256 hash of the guid
+     * @return false if there is definitely no conflicting quick test
+     */
+    public boolean mightConflict(String tenantId, String pocId, String shortHash, String hashedGuid) {
+        final BloomFilter current = this.filter;
+        if (current == null) {
+            queried.increment();
+            return true;
+        }
+        final boolean mightConflict = current.mightContain(hashedGuid)
+            || current.mightContain(shortHashKey(tenantId, pocId, shortHash));
+        (mightConflict ? queried : skipped).increment();
+        return mightConflict;
+    }
+
+    /**
+     * Adds a created quick test to the filter.
+     *
+     * @param tenantId   tenant id
+     * @param pocId      poc id
+     * @param shortHash  short hash of the guid
+     * @param hashedGuid SHA256 hash of the guid
+     */
+    public void add(String tenantId, String pocId, String shortHash, String hashedGuid) {
+        final BloomFilter current = this.filter;
+        if (current != null) {
+            current.put(hashedGuid);
+            current.put(shortHashKey(tenantId, pocId, shortHash));
+        }
+    }
+
+    /**
+     * Rebuilds the filter from the quick test and quick test archive tables.
+     * The filter is sized for twice the current amount of values, so that the false positive probability holds until
+     * the next rebuild.
+     */
+    @Scheduled(fixedDelayString = "${quicktest.conflict-filter.rebuild-delay:21600000}")
+    public synchronized void rebuild() {
+        if (!quickTestConfig.getConflictFilter().isEnabled()) {
+            return;
+        }
+        final long start = System.currentTimeMillis();
+        final LocalDateTime rebuildStart = Utilities.getCurrentLocalDateTimeUtc();
+        final QuickTestConfig.ConflictFilterConfig config = quickTestConfig.getConflictFilter();
+        final long expected = Math.max(config.getMinExpectedInsertions(),
+            2 * (2 * quickTestRepository.count() + quickTestArchiveRepository.count()));
+        final BloomFilter rebuilt = new BloomFilter(expected, config.getFalsePositiveProbability());
+
+        final PageRequest page = PageRequest.of(0, Math.max(1, config.getPageSize()));
+        String after = "";
+        List<QuickTestConflictView> quickTests;
+        do {
+            quickTests = quickTestRepository.findAllByHashedGuidGreaterThanOrderByHashedGuid(after, page);
+            for (QuickTestConflictView quickTest : quickTests) {
+                put(rebuilt, quickTest);
+                after = quickTest.getHashedGuid();
+            }
+        } while (quickTests.size() == page.getPageSize());
+
+        after = "";
+        List<String> archived;
+        do {
+            archived = quickTestArchiveRepository.findHashedGuidsAfter(after, page);
+            archived.forEach(rebuilt::put);
+            if (!archived.isEmpty()) {
+                after = archived.get(archived.size() - 1);
+            }
+        } while (archived.size() == page.getPageSize());
+
+        this.filter = rebuilt;
+        // quick tests created while the tables were scanned
+        this.refreshedUntil = rebuildStart;
+        refresh();
+        log.info("Rebuilt conflict filter with {} values and {} bits in {} ms.",
+            rebuilt.getInsertions(), rebuilt.getBitSize(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Adds the quick tests created since the last refresh, e.g. by other instances.
+     * Refreshes overlap by the configured amount of seconds to include quick tests which were committed late.
+     */
+    @Scheduled(fixedDelayString = "${quicktest.conflict-filter.refresh-delay:30000}",
+        initialDelayString = "${quicktest.conflict-filter.refresh-delay:30000}")
+    public synchronized void refresh() {
+        final BloomFilter current = this.filter;
+        if (current == null || !quickTestConfig.getConflictFilter().isEnabled()) {
+            return;
+        }
+        final LocalDateTime now = Utilities.getCurrentLocalDateTimeUtc();
+        quickTestRepository.findAllByCreatedAtGreaterThanEqual(
+                refreshedUntil.minusSeconds(quickTestConfig.getConflictFilter().getRefreshOverlapInSeconds()))
+            .forEach(quickTest -> put(current, quickTest));
+        this.refreshedUntil = now;
+    }
+
+    private void put(final BloomFilter target, final QuickTestConflictView quickTest) {
+        target.put(quickTest.getHashedGuid());
+        target.put(shortHashKey(quickTest.getTenantId(), quickTest.getPocId(), quickTest.getShortHashedGuid()));
+    }
+
+    private String shortHashKey(final String tenantId, final String pocId, final String shortHash) {
+        return tenantId + '\n' + pocId + '\n' + shortHash;
+    }
+}
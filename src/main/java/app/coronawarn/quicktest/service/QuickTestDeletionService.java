@@ -27,15 +27,27 @@ import app.coronawarn.quicktest.model.quicktest.PcrTestResult;
 import app.coronawarn.quicktest.model.quicktest.QuickTestResult;
 import app.coronawarn.quicktest.repository.QuickTestRepository;
 import app.coronawarn.quicktest.utils.TestTypeUtils;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import javax.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Propagation;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.server.ResponseStatusException;
 
 @Slf4j
@@ -43,46 +55,157 @@ import org.springframework.web.server.ResponseStatusException;
 @RequiredArgsConstructor
 public class QuickTestDeletionService {
 
+    private static final CompletableFuture<Void> NOTHING_SENT = CompletableFuture.completedFuture(null);
+
     private final QuickTestRepository quickTestRepository;
     private final TestResultService testResultService;
     private final QuickTestConfig quickTestConfig;
+    private final PlatformTransactionManager transactionManager;
+    private final MeterRegistry meterRegistry;
+    private final BulkDeleteService bulkDeleteService;
+    private final TestResultOutboxService testResultOutboxService;
+
+    private final AtomicLong remaining = new AtomicLong();
+
+    private Counter reported;
+
+    private Counter deleted;
 
+    private Timer chunkTimer;
 
     /**
-     * Handle a chunk of old tests to delete.
-     * Requires_New opens a new transaction and commits it after the method finishes.
+     * Creates the cleanup metrics.
+     */
+    @PostConstruct
+    public void initMetrics() {
+        reported = Counter.builder("quicktest.cleanup.reported")
+            .description("Quick tests reported as redeemed to the Test Result Server by the cleanup")
+            .register(meterRegistry);
+        deleted = Counter.builder("quicktest.cleanup.deleted")
+            .description("Quick tests with personal data deleted by the cleanup")
+            .register(meterRegistry);
+        chunkTimer = Timer.builder("quicktest.cleanup.chunk")
+            .description("Duration of reporting and deleting a chunk of quick tests")
+            .register(meterRegistry);
+        Gauge.builder("quicktest.cleanup.remaining", remaining, AtomicLong::get)
+            .description("Quick tests with personal data left to delete by the current cleanup run")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Deletes all quick tests created before the timestamp.
+     * Quick tests with personal data are read in chunks ordered by created at and hashed guid, reported as redeemed
+     * to the Test Result Server and deleted. The next chunk starts after the last quick test of the previous one, so
+     * deleted rows do not shift the following chunks. The run stops when its time budget is used up, the Test
+     * Result Server does not accept a chunk or a chunk cannot be deleted, the remaining quick tests are handled by the
+     * next run. Quick tests without result (version 0) are deleted in batches at the end.
      *
      * @param deleteTimestamp find all before
-     * @param chunkSize desired chunk size
-     * @param chunks amount of chunks
-     * @param i current chunk
      */
-    @Transactional(propagation = Propagation.REQUIRES_NEW)
-    public void handleChunk(LocalDateTime deleteTimestamp, int chunkSize, int chunks, int i) {
-        log.info("Deleting chunk {} of {}", i, chunks);
-
-        List<QuickTest> quickTestChunk = quickTestRepository.findAllByCreatedAtBeforeAndVersionIsGreaterThan(
-          deleteTimestamp,
-          0,
-          PageRequest.of(i - 1, chunkSize));
-
-        quickTestChunk.forEach(quickTest -> sendResultToTestResultServer(
-          quickTest.getTestResultServerHash(),
-          TestResult.REDEEMED.getValue(),
-          deleteTimestamp.toEpochSecond(ZoneOffset.UTC),
-          quickTest.getConfirmationCwa() != null ? quickTest.getConfirmationCwa() : false,
-                TestTypeUtils.isPcr(quickTest.getTestType())));
-
-        log.info("Set Status of quicktests on TRS. Deleting QuickTests in DB");
-
-        try {
-            quickTestRepository.deleteAll(quickTestChunk);
-            quickTestRepository.flush();
-        } catch (final Exception exception) {
-            log.warn("Could not delete chunk on db, trying to continue with the next chunk.");
+    public void removeAllBefore(LocalDateTime deleteTimestamp) {
+        final QuickTestConfig.CleanUpSettings settings = quickTestConfig.getCleanUpSettings();
+        final PageRequest page = PageRequest.of(0, Math.max(1, settings.getChunkSize()));
+        final long budget = TimeUnit.SECONDS.toNanos(settings.getTimeBudgetInSeconds());
+        final long start = System.nanoTime();
+        final TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        remaining.set(quickTestRepository.countAllByCreatedAtBeforeAndVersionIsGreaterThan(deleteTimestamp, 0));
+        log.info("Found {} QuickTests which need to set to redeemed on TRS", remaining.get());
+
+        List<QuickTest> quickTestChunk = quickTestRepository.findToDelete(deleteTimestamp, page);
+        int chunk = 0;
+        long processed = 0;
+        while (!quickTestChunk.isEmpty()) {
+            chunk++;
+            try {
+                handleChunk(deleteTimestamp, quickTestChunk, transactionTemplate);
+            } catch (ResponseStatusException e) {
+                log.error("Could not set status of chunk {} on TRS, stopping cleanup after {} QuickTests.",
+                    chunk, processed);
+                return;
+            } catch (DataAccessException | TransactionException e) {
+                log.error("Could not delete chunk {} on db, stopping cleanup after {} QuickTests: {}",
+                    chunk, processed, e.getMessage());
+                return;
+            }
+            processed += quickTestChunk.size();
+            remaining.set(Math.max(0, remaining.get() - quickTestChunk.size()));
+            log.info("Processing of chunk {} finished, {} QuickTests processed, {} per second.", chunk, processed,
+                perSecond(processed, System.nanoTime() - start));
+            if (budget > 0 && System.nanoTime() - start > budget) {
+                log.warn("Cleanup time budget used up after {} QuickTests, continuing with the next run.", processed);
+                return;
+            }
+            final QuickTest last = quickTestChunk.get(quickTestChunk.size() - 1);
+            quickTestChunk = quickTestRepository.findToDeleteAfter(deleteTimestamp, last.getCreatedAt(),
+                last.getHashedGuid(), page);
         }
 
-        log.info("Processing of chunk {} of {} finished.", i, chunks);
+        log.info("Delete remaining QuickTests");
+        bulkDeleteService.deleteInBatches("quick_test", limit -> transactionTemplate.execute(status -> {
+            final List<String> hashedGuids =
+                quickTestRepository.findHashedGuidsByCreatedAtBefore(deleteTimestamp, PageRequest.of(0, limit));
+            return hashedGuids.isEmpty() ? 0 : quickTestRepository.deleteByHashedGuids(hashedGuids);
+        }));
+    }
+
+    /**
+     * Handle a chunk of old tests to delete.
+     * The results are sent to the Test Result Server together, afterwards the chunk is deleted in a new transaction.
+     * If the outbox is enabled, the results are queued in the transaction of the delete instead, behind the results
+     * of the quick tests which are still waiting in the outbox, so they cannot be overwritten by them.
+     *
+     * @param deleteTimestamp     timestamp of the cleanup, sent as sample collection
+     * @param quickTestChunk      the quick tests to delete
+     * @param transactionTemplate transaction of the delete
+     * @throws ResponseStatusException if a result was not accepted by the Test Result Server, nothing is deleted
+     * @throws DataAccessException      if the chunk could not be deleted, the queued results are rolled back
+     */
+    void handleChunk(LocalDateTime deleteTimestamp, List<QuickTest> quickTestChunk,
+                     TransactionTemplate transactionTemplate) throws ResponseStatusException {
+        final Timer.Sample sample = Timer.start(meterRegistry);
+        final boolean outbox = testResultOutboxService.isEnabled();
+        if (!outbox) {
+            List<CompletableFuture<Void>> sent = quickTestChunk.stream()
+              .map(quickTest -> sendResultToTestResultServer(
+                quickTest.getTestResultServerHash(),
+                TestResult.REDEEMED.getValue(),
+                deleteTimestamp.toEpochSecond(ZoneOffset.UTC),
+                quickTest.getConfirmationCwa() != null ? quickTest.getConfirmationCwa() : false,
+                TestTypeUtils.isPcr(quickTest.getTestType())))
+              .collect(Collectors.toList());
+            sent.forEach(testResultService::await);
+            reported.increment(sent.stream().filter(outcome -> outcome != NOTHING_SENT).count());
+        }
+
+        log.debug("Set Status of quicktests on TRS. Deleting QuickTests in DB");
+
+        final List<String> hashedGuids = quickTestChunk.stream()
+            .map(QuickTest::getHashedGuid)
+            .collect(Collectors.toList());
+        final Integer count = transactionTemplate.execute(status -> {
+            if (outbox) {
+                reported.increment(enqueueRedeemed(deleteTimestamp, quickTestChunk));
+            }
+            return quickTestRepository.deleteByHashedGuids(hashedGuids);
+        });
+        deleted.increment(count == null ? 0 : count);
+        sample.stop(chunkTimer);
+    }
+
+    private long enqueueRedeemed(LocalDateTime deleteTimestamp, List<QuickTest> quickTestChunk) {
+        final List<QuickTest> reportable = quickTestChunk.stream()
+            .filter(quickTest -> Boolean.TRUE.equals(quickTest.getConfirmationCwa())
+                && quickTest.getTestResultServerHash() != null)
+            .collect(Collectors.toList());
+        reportable.forEach(quickTest -> testResultOutboxService.enqueue(
+            quickTest.getHashedGuid(),
+            quickTest.getTestResultServerHash(),
+            TestResult.REDEEMED.getValue(),
+            deleteTimestamp.toEpochSecond(ZoneOffset.UTC),
+            TestTypeUtils.isPcr(quickTest.getTestType())));
+        return reportable.size();
     }
 
     /**
@@ -91,10 +214,10 @@ public class QuickTestDeletionService {
      * @param result the result (short)
      * @param sc samle colletion timestamp
      * @param confirmationCwa if cwa requested
-     * @throws ResponseStatusException possible error
+     * @return outcome of the update, completed if nothing has to be sent
      */
-    private void sendResultToTestResultServer(String testResultServerHash, short result, Long sc,
-                                              boolean confirmationCwa, boolean isPcr) throws ResponseStatusException {
+    private CompletableFuture<Void> sendResultToTestResultServer(String testResultServerHash, short result, Long sc,
+                                                                 boolean confirmationCwa, boolean isPcr) {
 
         if (confirmationCwa && testResultServerHash != null) {
             if (isPcr) {
@@ -104,17 +227,20 @@ public class QuickTestDeletionService {
                 pcrTestResult.setResult(result);
                 pcrTestResult.setSampleCollection(sc);
                 pcrTestResult.setLabId(quickTestConfig.getLabId());
-                testResultService.createOrUpdatePcrTestResult(pcrTestResult);
-                log.info("Update PCR TestResult on TestResult-Server successfully.");
+                return testResultService.submitPcrTestResult(pcrTestResult);
             } else {
                 log.info("Sending TestResult to TestResult-Server");
                 QuickTestResult quickTestResult = new QuickTestResult();
                 quickTestResult.setId(testResultServerHash);
                 quickTestResult.setResult(result);
                 quickTestResult.setSampleCollection(sc);
-                testResultService.createOrUpdateTestResult(quickTestResult);
-                log.info("Update TestResult on TestResult-Server successfully.");
+                return testResultService.submitTestResult(quickTestResult);
             }
         }
+        return NOTHING_SENT;
+    }
+
+    private static long perSecond(long count, long nanos) {
+        return nanos > 0 ? count * TimeUnit.SECONDS.toNanos(1) / nanos : count;
     }
 }
@@ -0,0 +1,89 @@
+/*-
+ * ---license-start
+ * Corona-Warn-App / cwa-quick-test-backend
+ * ---
+ * Copyright (C) 2021 - 2023 T-Systems International GmbH and all other contributors
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---license-end
+ */
+
+package app.coronawarn.quicktest.service;
+
+import app.coronawarn.quicktest.config.PdfConfig;
+import app.coronawarn.quicktest.repository.QuickTestArchiveRepository;
+import java.util.List;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import net.javacrumbs.shedlock.spring.annotation.SchedulerLock;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Moves PDFs which are still stored in the quick_test_archive table to the bucket of the {@link QuickTestPdfStorage}.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class QuickTestPdfMigrationService {
+
+    private final PdfConfig pdfConfig;
+    private final QuickTestPdfStorage pdfStorage;
+    private final QuickTestArchiveRepository quickTestArchiveRepository;
+
+    /**
+     * Moves stored PDFs to the bucket in batches with a pause between them, at most maxBatchesPerRun batches per run.
+     * A run stops at the first PDF which cannot be moved, it is retried in the next run.
+     */
+    @Scheduled(fixedDelayString = "${pdf.objectStorage.migration.delay:300000}")
+    @SchedulerLock(name = "QuickTestPdfMigrationService_migratePdfs", lockAtLeastFor = "PT0S",
+        lockAtMostFor = "${pdf.objectStorage.migration.locklimit:1800000}")
+    public void migratePdfs() {
+        final PdfConfig.Migration config = pdfConfig.getObjectStorage().getMigration();
+        if (!pdfStorage.isEnabled() || !config.isEnabled()) {
+            return;
+        }
+        final PageRequest page = PageRequest.of(0, Math.max(1, config.getBatchSize()));
+        int moved = 0;
+        for (int batch = 0; batch < config.getMaxBatchesPerRun(); batch++) {
+            final List<String> hashedGuids = quickTestArchiveRepository.findHashedGuidsWithStoredPdf(page);
+            if (hashedGuids.isEmpty()) {
+                break;
+            }
+            for (String hashedGuid : hashedGuids) {
+                if (!pdfStorage.offload(hashedGuid)) {
+                    log.warn("Moving PDFs to bucket stopped after {} PDFs.", moved);
+                    return;
+                }
+                moved++;
+            }
+            if (!pause(config.getPauseInMillis())) {
+                break;
+            }
+        }
+        if (moved > 0) {
+            log.info("Moved {} PDFs to bucket.", moved);
+        }
+    }
+
+    private boolean pause(long millis) {
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,299 @@
+/*-
+ * ---license-start
+ * Corona-Warn-App / cwa-quick-test-backend
+ * ---
+ * Copyright (C) 2021 - 2023 T-Systems International GmbH and all other contributors
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---license-end
+ */
+
+package app.coronawarn.quicktest.service;
+
+import app.coronawarn.quicktest.config.PdfConfig;
+import app.coronawarn.quicktest.domain.QuickTest;
+import app.coronawarn.quicktest.domain.QuickTestArchive;
+import app.coronawarn.quicktest.domain.QuickTestPdfJob;
+import app.coronawarn.quicktest.repository.QuickTestArchiveRepository;
+import app.coronawarn.quicktest.repository.QuickTestPdfJobRepository;
+import app.coronawarn.quicktest.utils.PdfGenerator;
+import app.coronawarn.quicktest.utils.Utilities;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import net.javacrumbs.shedlock.spring.annotation.SchedulerLock;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Renders the PDFs of quick test archives outside of the result submission (asynchronous PDF rendering).
+ * The archive is stored without PDF together with a {@link QuickTestPdfJob}. After the commit the PDF is rendered
+ * on a bounded worker pool and stored in the archive. Jobs which were not rendered, e.g. because the pool was full
+ * or the instance stopped, are rendered by a recovery job.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class QuickTestPdfRenderService {
+
+    private static final String POC_INFORMATION_DELIMITER = "\n";
+
+    private final PdfConfig pdfConfig;
+    private final PdfGenerator pdfGenerator;
+    private final QuickTestArchiveRepository quickTestArchiveRepository;
+    private final QuickTestPdfJobRepository quickTestPdfJobRepository;
+    private final QuickTestPdfStorage pdfStorage;
+    private final PlatformTransactionManager transactionManager;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, CompletableFuture<Void>> inFlight = new ConcurrentHashMap<>();
+
+    private ThreadPoolExecutor renderExecutor;
+
+    private TransactionTemplate transactionTemplate;
+
+    private Timer renderTimer;
+
+    private Counter renderFailures;
+
+    /**
+     * Creates the render pool and its metrics if asynchronous rendering is enabled.
+     */
+    @PostConstruct
+    public void initRenderExecutor() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        if (!isEnabled()) {
+            return;
+        }
+        final PdfConfig.AsyncRendering config = pdfConfig.getAsyncRendering();
+        final int threads = Math.max(1, config.getThreads());
+        log.info("Creating PDF render pool with {} threads and queue capacity {}", threads,
+            config.getQueueCapacity());
+        renderExecutor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(Math.max(1, config.getQueueCapacity())),
+            new CustomizableThreadFactory("pdf-render-"));
+        renderTimer = Timer.builder("quicktest.pdf.render")
+            .description("Duration of rendering and storing a quick test PDF")
+            .register(meterRegistry);
+        renderFailures = Counter.builder("quicktest.pdf.render.failures")
+            .description("PDFs which could not be rendered and are left to the recovery job")
+            .register(meterRegistry);
+        Gauge.builder("quicktest.pdf.render.queue", renderExecutor, executor -> executor.getQueue().size())
+            .description("PDFs waiting for a render thread")
+            .register(meterRegistry);
+        Gauge.builder("quicktest.pdf.render.inflight", inFlight, Map::size)
+            .description("PDFs queued or rendered on this instance")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Stops the render pool, pending PDFs are rendered by the recovery job.
+     */
+    @PreDestroy
+    public void shutdownRenderExecutor() {
+        if (renderExecutor != null) {
+            renderExecutor.shutdownNow();
+        }
+    }
+
+    public boolean isEnabled() {
+        return pdfConfig.getAsyncRendering().isEnabled();
+    }
+
+    /**
+     * Stores the data needed to render the PDF of the quick test and schedules the rendering after the commit of the
+     * current transaction.
+     *
+     * @param quickTest      quick test with the result, must already be stored as archive
+     * @param pocInformation poc information printed on the PDF
+     * @param user           user printed on the PDF
+     */
+    public void scheduleRendering(QuickTest quickTest, List<String> pocInformation, String user) {
+        quickTestPdfJobRepository.save(new QuickTestPdfJob(quickTest.getHashedGuid(),
+            String.join(POC_INFORMATION_DELIMITER, pocInformation), user, null));
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    submit(quickTest, pocInformation, user);
+                }
+            });
+        } else {
+            submit(quickTest, pocInformation, user);
+        }
+    }
+
+    /**
+     * Checks whether the PDF of the quick test archive is still pending.
+     *
+     * @param hashedGuid hashed guid of the quick test archive
+     * @return true if the PDF has not been rendered yet
+     */
+    public boolean isPending(String hashedGuid) {
+        return inFlight.containsKey(hashedGuid) || quickTestPdfJobRepository.existsById(hashedGuid);
+    }
+
+    /**
+     * Waits for the configured time if the PDF is currently rendered on this instance.
+     *
+     * @param hashedGuid hashed guid of the quick test archive
+     */
+    public void awaitRendering(String hashedGuid) {
+        final CompletableFuture<Void> rendering = inFlight.get(hashedGuid);
+        if (rendering == null) {
+            return;
+        }
+        try {
+            rendering.get(pdfConfig.getAsyncRendering().getWaitInMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            log.debug("PDF {} not rendered in time: {}", hashedGuid, e.getMessage());
+        }
+    }
+
+    /**
+     * Renders pending PDFs which were not rendered in time, e.g. after a restart of an instance.
+     */
+    @Scheduled(fixedDelayString = "${pdf.asyncRendering.recoveryDelay:60000}")
+    @SchedulerLock(name = "QuickTestPdfRenderService_recoverPendingPdfs", lockAtLeastFor = "PT0S",
+        lockAtMostFor = "${pdf.asyncRendering.locklimit:1800000}")
+    public void recoverPendingPdfs() {
+        final PdfConfig.AsyncRendering config = pdfConfig.getAsyncRendering();
+        final List<QuickTestPdfJob> jobs = quickTestPdfJobRepository.findAllByCreatedAtBeforeOrderByCreatedAt(
+            Utilities.getCurrentLocalDateTimeUtc().minusSeconds(config.getRecoverAfterSeconds()),
+            PageRequest.of(0, Math.max(1, config.getRecoveryBatchSize())));
+        if (jobs.isEmpty()) {
+            return;
+        }
+        log.info("Rendering {} pending PDFs", jobs.size());
+        for (QuickTestPdfJob job : jobs) {
+            if (inFlight.containsKey(job.getHashedGuid())) {
+                continue;
+            }
+            final Optional<QuickTestArchive> archive = quickTestArchiveRepository.findByHashedGuid(job.getHashedGuid());
+            if (archive.isEmpty()) {
+                quickTestPdfJobRepository.deleteById(job.getHashedGuid());
+                continue;
+            }
+            try {
+                render(toQuickTest(archive.get()), pocInformation(job), job.getUserName());
+            } catch (RuntimeException e) {
+                log.warn("Rendering pending PDF failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void submit(QuickTest quickTest, List<String> pocInformation, String user) {
+        final CompletableFuture<Void> rendering = new CompletableFuture<>();
+        inFlight.put(quickTest.getHashedGuid(), rendering);
+        try {
+            renderExecutor.execute(() -> {
+                try {
+                    render(quickTest, pocInformation, user);
+                    rendering.complete(null);
+                } catch (RuntimeException e) {
+                    renderFailures.increment();
+                    log.warn("Rendering PDF failed, leaving it to the recovery job: {}", e.getMessage());
+                    rendering.completeExceptionally(e);
+                } finally {
+                    inFlight.remove(quickTest.getHashedGuid());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(quickTest.getHashedGuid());
+            renderFailures.increment();
+            log.warn("PDF render queue is full, leaving PDF to the recovery job");
+            rendering.completeExceptionally(e);
+        }
+    }
+
+    private void render(QuickTest quickTest, List<String> pocInformation, String user) {
+        final Timer.Sample sample = Timer.start(meterRegistry);
+        final byte[] pdf;
+        try {
+            pdf = pdfGenerator.generatePdf(pocInformation, quickTest, user).toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException("generating PDF failed", e);
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            quickTestArchiveRepository.findByHashedGuid(quickTest.getHashedGuid())
+                .filter(archive -> !pdfStorage.hasPdf(archive))
+                .ifPresent(archive -> {
+                    pdfStorage.store(archive, pdf);
+                    quickTestArchiveRepository.save(archive);
+                });
+            if (quickTestPdfJobRepository.existsById(quickTest.getHashedGuid())) {
+                quickTestPdfJobRepository.deleteById(quickTest.getHashedGuid());
+            }
+        });
+        if (renderTimer != null) {
+            sample.stop(renderTimer);
+        }
+    }
+
+    private List<String> pocInformation(QuickTestPdfJob job) {
+        return job.getPocInformation() == null || job.getPocInformation().isEmpty()
+            ? List.of() : Arrays.asList(job.getPocInformation().split(POC_INFORMATION_DELIMITER, -1));
+    }
+
+    private QuickTest toQuickTest(QuickTestArchive archive) {
+        final QuickTest quickTest = new QuickTest();
+        quickTest.setHashedGuid(archive.getHashedGuid());
+        quickTest.setShortHashedGuid(archive.getShortHashedGuid());
+        quickTest.setTenantId(archive.getTenantId());
+        quickTest.setPocId(archive.getPocId());
+        quickTest.setTestResult(archive.getTestResult());
+        quickTest.setFirstName(archive.getFirstName());
+        quickTest.setLastName(archive.getLastName());
+        quickTest.setBirthday(archive.getBirthday());
+        quickTest.setEmail(archive.getEmail());
+        quickTest.setPhoneNumber(archive.getPhoneNumber());
+        quickTest.setSex(archive.getSex());
+        quickTest.setStreet(archive.getStreet());
+        quickTest.setHouseNumber(archive.getHouseNumber());
+        quickTest.setZipCode(archive.getZipCode());
+        quickTest.setCity(archive.getCity());
+        quickTest.setTestBrandId(archive.getTestBrandId());
+        quickTest.setTestBrandName(archive.getTestBrandName());
+        quickTest.setAdditionalInfo(archive.getAdditionalInfo());
+        quickTest.setTestType(archive.getTestType());
+        quickTest.setCreatedAt(archive.getCreatedAt());
+        quickTest.setUpdatedAt(archive.getUpdatedAt());
+        return quickTest;
+    }
+}
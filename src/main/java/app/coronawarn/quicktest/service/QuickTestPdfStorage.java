@@ -0,0 +1,296 @@
+/*-
+ * ---license-start
+ * Corona-Warn-App / cwa-quick-test-backend
+ * ---
+ * Copyright (C) 2021 - 2023 T-Systems International GmbH and all other contributors
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---license-end
+ */
+
+package app.coronawarn.quicktest.service;
+
+import app.coronawarn.quicktest.config.CsvUploadConfig;
+import app.coronawarn.quicktest.config.PdfConfig;
+import app.coronawarn.quicktest.dbencryption.DbEncryptionService;
+import app.coronawarn.quicktest.domain.QuickTestArchive;
+import app.coronawarn.quicktest.repository.QuickTestArchiveRepository;
+import com.amazonaws.SdkClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Stores the PDFs of quick test archives. If the object storage is enabled the PDF is encrypted and uploaded to the
+ * S3 bucket and only the object key stays in the archive, otherwise the PDF is stored in the archive table.
+ * PDFs stored in the table stay readable and are moved to the bucket by the {@link QuickTestPdfMigrationService}.
+ *
+ * <p>A PDF is first stored in the table within the transaction of the archive. After the commit it is uploaded on a
+ * bounded upload pool to a new object key, which is swapped into the archive if the archive was not changed in the
+ * meantime. So the bucket never holds a PDF of a rolled back transaction, and neither the request nor its database
+ * connection waits for the upload. Uploads which do not fit into the pool are left to the migration job.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class QuickTestPdfStorage {
+
+    private static final int MAX_KEYS_PER_DELETE = 1000;
+
+    private final PdfConfig pdfConfig;
+    private final CsvUploadConfig s3Config;
+    private final AmazonS3 s3Client;
+    private final DbEncryptionService dbEncryptionService;
+    private final QuickTestArchiveRepository quickTestArchiveRepository;
+    private final PlatformTransactionManager transactionManager;
+
+    private ThreadPoolExecutor uploadExecutor;
+
+    /**
+     * Creates the upload pool if the object storage is enabled.
+     */
+    @PostConstruct
+    public void initUploadExecutor() {
+        if (!isEnabled()) {
+            return;
+        }
+        final PdfConfig.ObjectStorage config = pdfConfig.getObjectStorage();
+        final int threads = Math.max(1, config.getUploadThreads());
+        uploadExecutor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(Math.max(1, config.getUploadQueueCapacity())),
+            new CustomizableThreadFactory("pdf-upload-"));
+    }
+
+    /**
+     * Stops the upload pool, PDFs which were not uploaded are moved by the migration job.
+     */
+    @PreDestroy
+    public void shutdownUploadExecutor() {
+        if (uploadExecutor != null) {
+            uploadExecutor.shutdownNow();
+        }
+    }
+
+    public boolean isEnabled() {
+        return pdfConfig.getObjectStorage().isEnabled();
+    }
+
+    public boolean hasPdf(QuickTestArchive archive) {
+        return archive.getPdf() != null || archive.getPdfObjectKey() != null;
+    }
+
+    /**
+     * Sets the PDF of the archive, it is moved to the bucket after the commit of the current transaction. The
+     * object of a replaced PDF is deleted after the commit.
+     *
+     * @param archive the archive, has to be saved by the caller within the current transaction
+     * @param pdf     the PDF
+     */
+    public void store(QuickTestArchive archive, byte[] pdf) {
+        final String replacedObjectKey = archive.getPdfObjectKey();
+        archive.setPdf(pdf);
+        archive.setPdfObjectKey(null);
+        afterCommit(archive.getHashedGuid(), replacedObjectKey);
+    }
+
+    /**
+     * Moves the PDF of the archive to the bucket after the commit of the current transaction.
+     *
+     * @param archive the archive, has to be saved by the caller within the current transaction
+     */
+    public void offloadAfterCommit(QuickTestArchive archive) {
+        if (archive.getPdf() != null) {
+            afterCommit(archive.getHashedGuid(), null);
+        }
+    }
+
+    /**
+     * Moves the committed PDF of the archive to the bucket and keeps only the object key in the archive.
+     * Must not be called within a transaction or from a transaction synchronization, it opens own transactions.
+     * If the upload fails the PDF stays in the archive and is moved later by the migration job, if the archive was
+     * changed during the upload the uploaded object is deleted again.
+     *
+     * @param hashedGuid hashed guid of the archive
+     * @return false if the upload failed, true otherwise
+     */
+    public boolean offload(String hashedGuid) {
+        if (!isEnabled()) {
+            return false;
+        }
+        final TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        final QuickTestArchive archive = transactionTemplate.execute(status ->
+            quickTestArchiveRepository.findByHashedGuid(hashedGuid).orElse(null));
+        if (archive == null || archive.getPdf() == null || archive.getPdfObjectKey() != null) {
+            // removed or moved in the meantime
+            return true;
+        }
+        final String objectKey = objectKey(hashedGuid);
+        try {
+            final byte[] encrypted = dbEncryptionService.encryptBytes(archive.getPdf());
+            final ObjectMetadata metadata = new ObjectMetadata();
+            metadata.setContentType(MediaType.APPLICATION_OCTET_STREAM_VALUE);
+            metadata.setContentLength(encrypted.length);
+            s3Client.putObject(s3Config.getBucketName(), objectKey, new ByteArrayInputStream(encrypted), metadata);
+        } catch (GeneralSecurityException | SdkClientException e) {
+            log.warn("Storing PDF in bucket failed, keeping it in the archive: {}", e.getMessage());
+            return false;
+        }
+        final Integer moved = transactionTemplate.execute(status ->
+            quickTestArchiveRepository.movePdfToBucket(hashedGuid, archive.getVersion(), objectKey));
+        if (moved == null || moved == 0) {
+            log.debug("Archive changed while its PDF was uploaded, deleting the uploaded PDF");
+            delete(List.of(objectKey));
+        }
+        return true;
+    }
+
+    /**
+     * Opens the PDF of the archive. A PDF stored in the bucket is decrypted while it is read.
+     *
+     * @param archive the archive
+     * @return stream of the PDF, null if the archive has no PDF yet
+     * @throws ResponseStatusException if the PDF cannot be read from the bucket
+     */
+    public InputStream open(QuickTestArchive archive) throws ResponseStatusException {
+        if (archive.getPdf() != null) {
+            return new ByteArrayInputStream(archive.getPdf());
+        }
+        if (archive.getPdfObjectKey() == null) {
+            return null;
+        }
+        S3Object object = null;
+        try {
+            object = s3Client.getObject(s3Config.getBucketName(), archive.getPdfObjectKey());
+            return dbEncryptionService.decryptingStream(object.getObjectContent());
+        } catch (IOException | GeneralSecurityException | SdkClientException e) {
+            log.error("Reading PDF from bucket failed: {}", e.getMessage());
+            closeQuietly(object);
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Reads the PDF of the archive completely.
+     *
+     * @param archive the archive
+     * @return the PDF, null if the archive has no PDF yet
+     * @throws ResponseStatusException if the PDF cannot be read from the bucket
+     */
+    public byte[] read(QuickTestArchive archive) throws ResponseStatusException {
+        try (InputStream pdf = open(archive)) {
+            return pdf == null ? null : pdf.readAllBytes();
+        } catch (IOException e) {
+            log.error("Reading PDF from bucket failed: {}", e.getMessage());
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Deletes the PDFs of removed archives from the bucket. Objects which do not exist are ignored.
+     *
+     * @param objectKeys object keys of the removed archives, archives without object key are passed as null
+     */
+    public void delete(List<String> objectKeys) {
+        final List<String> existingKeys = objectKeys.stream().filter(Objects::nonNull).collect(Collectors.toList());
+        if (!isEnabled() || existingKeys.isEmpty()) {
+            return;
+        }
+        for (int from = 0; from < existingKeys.size(); from += MAX_KEYS_PER_DELETE) {
+            final List<DeleteObjectsRequest.KeyVersion> keys =
+                existingKeys.subList(from, Math.min(from + MAX_KEYS_PER_DELETE, existingKeys.size())).stream()
+                    .map(DeleteObjectsRequest.KeyVersion::new)
+                    .collect(Collectors.toList());
+            try {
+                s3Client.deleteObjects(new DeleteObjectsRequest(s3Config.getBucketName()).withKeys(keys)
+                    .withQuiet(true));
+            } catch (SdkClientException e) {
+                log.warn("Deleting {} PDFs from bucket failed: {}", keys.size(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Every upload gets its own key, so an upload never overwrites the PDF an archive currently refers to.
+     */
+    private String objectKey(String hashedGuid) {
+        return pdfConfig.getObjectStorage().getKeyPrefix() + hashedGuid + "/" + UUID.randomUUID();
+    }
+
+    /**
+     * Without a transaction the PDF stays in the archive and is moved by the migration job. The upload is only handed
+     * to the upload pool, the synchronization itself does not touch the database.
+     */
+    private void afterCommit(String hashedGuid, String replacedObjectKey) {
+        if (!isEnabled() || !TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                try {
+                    uploadExecutor.execute(() -> {
+                        if (replacedObjectKey != null) {
+                            delete(Collections.singletonList(replacedObjectKey));
+                        }
+                        offload(hashedGuid);
+                    });
+                } catch (RejectedExecutionException e) {
+                    log.warn("PDF upload queue is full, leaving PDF to the migration job");
+                    if (replacedObjectKey != null) {
+                        delete(Collections.singletonList(replacedObjectKey));
+                    }
+                }
+            }
+        });
+    }
+
+    private void closeQuietly(S3Object object) {
+        if (object == null) {
+            return;
+        }
+        try {
+            object.close();
+        } catch (IOException e) {
+            log.debug("Closing PDF object failed: {}", e.getMessage());
+        }
+    }
+}
@@ -46,8 +46,10 @@ import java.util.Optional;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.server.ResponseStatusException;
 
@@ -62,12 +64,17 @@ public class QuickTestService {
     private final TestResultService testResultService;
     private final QuickTestDeletionService quickTestDeletionService;
     private final QuickTestArchiveRepository quickTestArchiveRepository;
+    private final QuickTestPdfStorage pdfStorage;
     private final QuickTestLogRepository quickTestLogRepository;
     private final PdfGenerator pdf;
     private final Utilities utilities;
+    private final QuickTestConflictFilter conflictFilter;
+    private final QuickTestPdfRenderService pdfRenderService;
+    private final TestResultOutboxService testResultOutbox;
 
     /**
      * Checks if an other quick test with given short hash already exists.
+     * The database is only queried if the {@link QuickTestConflictFilter} reports a possible conflict.
      * If not a new entity of QuickTest will be created and stored.
      * Also a pending TestResult will be sent to TestResult-Server.
      *
@@ -78,34 +85,45 @@ public class QuickTestService {
     public void createNewQuickTest(Map<String, String> ids, String hashedGuid)
             throws ResponseStatusException {
         String shortHash = hashedGuid.substring(0, 8);
-        log.debug("Searching for existing QuickTests with shortHash {}", shortHash);
+        String tenantId = ids.get(quickTestConfig.getTenantIdKey());
+        String pocId = ids.get(quickTestConfig.getTenantPointOfCareIdKey());
 
-        Optional<QuickTest> conflictingQuickTestByHashed =
-                quickTestRepository.findByTenantIdAndPocIdAndShortHashedGuidOrHashedGuid(
-                        ids.get(quickTestConfig.getTenantIdKey()), ids.get(quickTestConfig.getTenantPointOfCareIdKey()),
-                        shortHash, hashedGuid);
+        boolean mightConflict = conflictFilter.mightConflict(tenantId, pocId, shortHash, hashedGuid);
+        if (mightConflict) {
+            log.debug("Searching for existing QuickTests with shortHash {}", shortHash);
 
-        Optional<QuickTestArchive> conflictingQuickTestArchiveByHashed =
-                quickTestArchiveRepository.findByHashedGuid(hashedGuid);
+            Optional<QuickTest> conflictingQuickTestByHashed =
+                    quickTestRepository.findByTenantIdAndPocIdAndShortHashedGuidOrHashedGuid(
+                            tenantId, pocId, shortHash, hashedGuid);
 
-        if (conflictingQuickTestByHashed.isPresent() || conflictingQuickTestArchiveByHashed.isPresent()) {
-            log.debug("QuickTest with Guid {} already exists", shortHash);
-            log.info("QuickTest with Guid already exists");
-            throw new ResponseStatusException(HttpStatus.CONFLICT);
+            Optional<QuickTestArchive> conflictingQuickTestArchiveByHashed =
+                    quickTestArchiveRepository.findByHashedGuid(hashedGuid);
+
+            if (conflictingQuickTestByHashed.isPresent() || conflictingQuickTestArchiveByHashed.isPresent()) {
+                log.debug("QuickTest with Guid {} already exists", shortHash);
+                log.info("QuickTest with Guid already exists");
+                throw new ResponseStatusException(HttpStatus.CONFLICT);
+            }
         }
 
         QuickTest newQuickTest = new QuickTest();
         newQuickTest.setShortHashedGuid(shortHash);
-        newQuickTest.setTenantId(ids.get(quickTestConfig.getTenantIdKey()));
-        newQuickTest.setPocId(ids.get(quickTestConfig.getTenantPointOfCareIdKey()));
+        newQuickTest.setTenantId(tenantId);
+        newQuickTest.setPocId(pocId);
         newQuickTest.setHashedGuid(hashedGuid);
         newQuickTest.setGroupName(utilities.getSubGroupFromToken().orElse(""));
 
         log.debug("Persisting QuickTest in database");
         try {
-            quickTestRepository.save(newQuickTest);
+            // flush immediately, a quick test created by another instance since the last filter refresh or the
+            // conflict check is rejected by the primary key or the unique short hash index and reported as conflict
+            quickTestRepository.saveAndFlush(newQuickTest);
+            conflictFilter.add(tenantId, pocId, shortHash, hashedGuid);
             log.debug("Created new QuickTest with hashedGUID {}", hashedGuid);
             log.info("Created new QuickTest with hashedGUID");
+        } catch (DataIntegrityViolationException e) {
+            log.info("QuickTest with Guid already exists");
+            throw new ResponseStatusException(HttpStatus.CONFLICT);
         } catch (Exception e) {
             log.debug("Failed to insert new QuickTest, hashedGuid = {}, message=[{}]", hashedGuid, e.getMessage());
             log.error("Failed to insert new QuickTest");
@@ -157,16 +175,24 @@ public class QuickTestService {
             }
         }
         addStatistics(quicktest);
-        byte[] pdf;
-        try {
-            pdf = createPdf(quicktest, pocInformation, user);
-        } catch (IOException e) {
-            log.error("generating PDF failed.");
-            log.debug("generating PDF failed, message=[{}]", e.getMessage());
-            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR);
+        byte[] pdf = null;
+        if (!pdfRenderService.isEnabled()) {
+            try {
+                pdf = createPdf(quicktest, pocInformation, user);
+            } catch (IOException e) {
+                log.error("generating PDF failed.");
+                log.debug("generating PDF failed, message=[{}]", e.getMessage());
+                throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR);
+            }
         }
         try {
-            quickTestArchiveRepository.save(mappingQuickTestToQuickTestArchive(quicktest, pdf));
+            QuickTestArchive quickTestArchive = mappingQuickTestToQuickTestArchive(quicktest, pdf);
+            quickTestArchiveRepository.save(quickTestArchive);
+            pdfStorage.offloadAfterCommit(quickTestArchive);
+            if (pdf == null) {
+                // rendered after the commit
+                pdfRenderService.scheduleRendering(quicktest, pocInformation, user);
+            }
             log.debug("New QuickTestArchive created for poc {} and shortHashedGuid {}",
                     quicktest.getPocId(), quicktest.getShortHashedGuid());
         } catch (Exception e) {
@@ -184,7 +210,8 @@ public class QuickTestService {
             log.error("Could not delete QuickTest. updateQuickTest failed.");
             throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR);
         }
-        sendResultToTestResultServer(quicktest.getTestResultServerHash(), quickTestUpdateRequest.getResult(),
+        sendResultToTestResultServer(quicktest.getHashedGuid(), quicktest.getTestResultServerHash(),
+                quickTestUpdateRequest.getResult(),
                 quicktest.getUpdatedAt().toEpochSecond(ZoneOffset.UTC),
                 quicktest.getConfirmationCwa() != null ? quicktest.getConfirmationCwa() : false,
                 TestTypeUtils.isPcr(quicktest.getTestType()));
@@ -312,7 +339,8 @@ public class QuickTestService {
         }
         // only create entry in TR if rat, TR only accepts results 1-3
         if (TestTypeUtils.isRat(quicktest.getTestType())) {
-            sendResultToTestResultServer(quicktest.getTestResultServerHash(), quicktest.getTestResult(),
+            sendResultToTestResultServer(quicktest.getHashedGuid(), quicktest.getTestResultServerHash(),
+                    quicktest.getTestResult(),
                     quicktest.getUpdatedAt().toEpochSecond(ZoneOffset.UTC),
                     quicktest.getConfirmationCwa() != null ? quicktest.getConfirmationCwa() : false,
                     false);
@@ -325,24 +353,14 @@ public class QuickTestService {
     /**
      * Remove all quicktests before timestamp.
      * If quicktest already has personal data, a fail-Result is sent to the testresultserver.
+     * Runs without transaction, the chunks are deleted in their own transactions.
      *
      * @param deleteTimestamp Timestamp before which everything will be deleted
      */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public void removeAllBefore(LocalDateTime deleteTimestamp) {
         log.info("Deleting QuickTests from DB");
-
-        int totalCount = quickTestRepository.countAllByCreatedAtBeforeAndVersionIsGreaterThan(deleteTimestamp, 0);
-        int chunkSize = quickTestConfig.getCleanUpSettings().getChunkSize();
-        int chunks = totalCount / chunkSize + 1;
-
-        log.info("Found {} QuickTests which need to set to failed on TRS in {} chunks", totalCount, chunks);
-
-        for (int i = 1; i <= chunks; i++) {
-            quickTestDeletionService.handleChunk(deleteTimestamp, chunkSize, chunks, i);
-        }
-
-        log.info("Delete remaining QuickTests");
-        quickTestRepository.deleteByCreatedAtBefore(deleteTimestamp);
+        quickTestDeletionService.removeAllBefore(deleteTimestamp);
     }
 
     protected void addStatistics(QuickTest quickTest) {
@@ -416,10 +434,13 @@ public class QuickTestService {
         );
     }
 
-    private void sendResultToTestResultServer(String testResultServerHash, short result, Long sc,
+    private void sendResultToTestResultServer(String hashedGuid, String testResultServerHash, short result, Long sc,
                                               boolean confirmationCwa, boolean isPcr) throws ResponseStatusException {
         if (confirmationCwa && testResultServerHash != null) {
-            if (isPcr) {
+            if (testResultOutbox.isEnabled()) {
+                // sent after the commit
+                testResultOutbox.enqueue(hashedGuid, testResultServerHash, result, sc, isPcr);
+            } else if (isPcr) {
                 log.info("Sending PCR TestResult to TestResult-Server");
                 PcrTestResult pcrTestResult = new PcrTestResult();
                 pcrTestResult.setId(testResultServerHash);
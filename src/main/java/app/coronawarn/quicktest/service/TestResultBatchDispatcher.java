@@ -0,0 +1,212 @@
+/*-
+ * ---license-start
+ * Corona-Warn-App / cwa-quick-test-backend
+ * ---
+ * Copyright (C) 2021 - 2023 T-Systems International GmbH and all other contributors
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---license-end
+ */
+
+package app.coronawarn.quicktest.service;
+
+import app.coronawarn.quicktest.config.TestResultServerValuesConfig;
+import feign.FeignException;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Collects the test results of concurrent callers and sends them to the Test Result Server with one call per batch.
+ * A batch is sent when maxBatchSize results are collected or lingerInMillis after its first result.
+ * If the Test Result Server rejects a batch, its results are sent one by one, so every caller gets the outcome of
+ * its own result. Results whose outcome was cancelled before their batch is sent are skipped.
+ *
+ * @param <T> type of the test results
+ */
+@Slf4j
+public class TestResultBatchDispatcher<T> {
+
+    private final Consumer<List<T>> sender;
+
+    private final TestResultServerValuesConfig.Batching config;
+
+    private final BlockingQueue<PendingResult<T>> queue;
+
+    private final DistributionSummary batchSize;
+
+    private final Timer latency;
+
+    private final Thread worker;
+
+    private volatile boolean running = true;
+
+    /**
+     * Creates the dispatcher and starts its sender thread.
+     *
+     * @param type          type of the test results, used as metric tag and in the thread name
+     * @param sender        sends a list of test results, throws an exception if they were not accepted
+     * @param config        batch configuration
+     * @param meterRegistry registry of the batch size and latency histograms
+     */
+    public TestResultBatchDispatcher(String type, Consumer<List<T>> sender,
+                                     TestResultServerValuesConfig.Batching config, MeterRegistry meterRegistry) {
+        this.sender = sender;
+        this.config = config;
+        this.queue = new LinkedBlockingQueue<>(Math.max(1, config.getQueueCapacity()));
+        this.batchSize = DistributionSummary.builder("quicktest.trs.batch.size")
+            .description("Test results sent to the Test Result Server with one call")
+            .tag("type", type)
+            .publishPercentileHistogram()
+            .register(meterRegistry);
+        this.latency = Timer.builder("quicktest.trs.batch.latency")
+            .description("Duration of a call to the Test Result Server")
+            .tag("type", type)
+            .publishPercentileHistogram()
+            .register(meterRegistry);
+        this.worker = new Thread(this::dispatch, "trs-batch-" + type);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Adds the result to the next batch.
+     *
+     * @param result the test result
+     * @return completed when the result was accepted by the Test Result Server, failed otherwise. Cancel it to skip
+     *     the result if it was not sent yet.
+     */
+    public CompletableFuture<Void> submit(T result) {
+        final PendingResult<T> pending = new PendingResult<>(result);
+        if (!running || !queue.offer(pending)) {
+            pending.outcome.completeExceptionally(new RejectedExecutionException("Test result queue is full"));
+        } else if (!running && queue.remove(pending)) {
+            // stopped while the result was queued, the sender thread may already have drained the queue
+            pending.outcome.completeExceptionally(new RejectedExecutionException("Test result dispatcher stopped"));
+        }
+        return pending.outcome;
+    }
+
+    /**
+     * Stops the sender thread, results which are already queued are sent before. Results which are still queued
+     * after the timeout are failed.
+     */
+    public void stop() {
+        running = false;
+        worker.interrupt();
+        try {
+            worker.join(config.getTimeoutInMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        final List<PendingResult<T>> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        remaining.forEach(pending -> pending.outcome.completeExceptionally(
+            new RejectedExecutionException("Test result dispatcher stopped")));
+    }
+
+    private void dispatch() {
+        final int maxBatchSize = Math.max(1, config.getMaxBatchSize());
+        final List<PendingResult<T>> batch = new ArrayList<>(maxBatchSize);
+        while (running) {
+            try {
+                collect(batch, maxBatchSize);
+            } catch (InterruptedException e) {
+                // stopped, the collected results are sent below
+            }
+            sendSafely(batch);
+        }
+        while (queue.drainTo(batch, maxBatchSize) > 0) {
+            sendSafely(batch);
+        }
+    }
+
+    /**
+     * Sends and clears the batch. Nothing thrown by the sender may end the sender thread, otherwise all following
+     * results would wait for their timeout.
+     */
+    private void sendSafely(List<PendingResult<T>> batch) {
+        try {
+            send(batch);
+        } catch (Throwable e) {
+            log.error("Sending a batch of {} test results failed unexpectedly", batch.size(), e);
+            batch.forEach(pending -> pending.outcome.completeExceptionally(e));
+        } finally {
+            batch.clear();
+        }
+    }
+
+    private void collect(List<PendingResult<T>> batch, int maxBatchSize) throws InterruptedException {
+        batch.add(queue.take());
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(config.getLingerInMillis());
+        while (batch.size() < maxBatchSize) {
+            final PendingResult<T> next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+            queue.drainTo(batch, maxBatchSize - batch.size());
+        }
+    }
+
+    private void send(List<PendingResult<T>> collected) {
+        final List<PendingResult<T>> batch = collected.stream()
+            .filter(pending -> !pending.outcome.isCancelled())
+            .collect(Collectors.toList());
+        if (batch.isEmpty()) {
+            return;
+        }
+        batchSize.record(batch.size());
+        final List<T> results = batch.stream().map(pending -> pending.result).collect(Collectors.toList());
+        try {
+            latency.record(() -> sender.accept(results));
+            batch.forEach(pending -> pending.outcome.complete(null));
+        } catch (RuntimeException e) {
+            if (batch.size() > 1 && isRejected(e)) {
+                log.warn("Test Result Server rejected a batch of {} results, sending them one by one", batch.size());
+                batch.forEach(pending -> send(List.of(pending)));
+            } else {
+                batch.forEach(pending -> pending.outcome.completeExceptionally(e));
+            }
+        }
+    }
+
+    /**
+     * A client error can be caused by a single result of the batch, other errors would fail for every result.
+     */
+    private boolean isRejected(RuntimeException e) {
+        return e instanceof FeignException && ((FeignException) e).status() >= 400
+            && ((FeignException) e).status() < 500;
+    }
+
+    private static final class PendingResult<T> {
+
+        private final T result;
+
+        private final CompletableFuture<Void> outcome = new CompletableFuture<>();
+
+        private PendingResult(T result) {
+            this.result = result;
+        }
+    }
+}
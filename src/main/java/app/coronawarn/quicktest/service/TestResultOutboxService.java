@@ -0,0 +1,217 @@
+/*-
+ * ---license-start
+ * Corona-Warn-App / cwa-quick-test-backend
+ * ---
+ * Copyright (C) 2021 - 2023 T-Systems International GmbH and all other contributors
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---license-end
+ */
+
+package app.coronawarn.quicktest.service;
+
+import app.coronawarn.quicktest.config.QuickTestConfig;
+import app.coronawarn.quicktest.config.TestResultServerValuesConfig;
+import app.coronawarn.quicktest.domain.TestResultOutboxEntry;
+import app.coronawarn.quicktest.model.quicktest.PcrTestResult;
+import app.coronawarn.quicktest.model.quicktest.QuickTestResult;
+import app.coronawarn.quicktest.repository.TestResultOutboxRepository;
+import app.coronawarn.quicktest.utils.Utilities;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import javax.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import net.javacrumbs.shedlock.spring.annotation.SchedulerLock;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Sends test results to the Test Result Server outside of the request (transactional outbox).
+ * The results are stored as {@link TestResultOutboxEntry} in the transaction of the quick test and delivered by a
+ * scheduled job which runs on one instance at a time. Results which are not accepted are retried with exponential
+ * backoff, later results of the same quick test wait until the earlier ones are delivered. After maxAttempts a result
+ * is parked: it stays in the outbox with its last error but is not sent again and no longer blocks later results.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class TestResultOutboxService {
+
+    private static final int MAX_ERROR_LENGTH = 500;
+
+    private final TestResultServerValuesConfig testResultServerConfig;
+    private final QuickTestConfig quickTestConfig;
+    private final TestResultOutboxRepository testResultOutboxRepository;
+    private final TestResultService testResultService;
+    private final MeterRegistry meterRegistry;
+
+    private Counter delivered;
+
+    private Counter failures;
+
+    private Counter parked;
+
+    /**
+     * Creates the outbox metrics if the outbox is enabled.
+     */
+    @PostConstruct
+    public void initMetrics() {
+        if (!isEnabled()) {
+            return;
+        }
+        delivered = Counter.builder("quicktest.trs.outbox.delivered")
+            .description("Test results delivered from the outbox to the Test Result Server")
+            .register(meterRegistry);
+        failures = Counter.builder("quicktest.trs.outbox.failures")
+            .description("Failed deliveries of test results, retried later")
+            .register(meterRegistry);
+        parked = Counter.builder("quicktest.trs.outbox.parked")
+            .description("Test results given up after the maximum number of attempts")
+            .register(meterRegistry);
+        Gauge.builder("quicktest.trs.outbox.size", testResultOutboxRepository,
+                TestResultOutboxRepository::countByParkedAtIsNull)
+            .description("Test results waiting in the outbox")
+            .register(meterRegistry);
+        Gauge.builder("quicktest.trs.outbox.parked.size", testResultOutboxRepository,
+                TestResultOutboxRepository::countByParkedAtIsNotNull)
+            .description("Parked test results in the outbox")
+            .register(meterRegistry);
+        Gauge.builder("quicktest.trs.outbox.lag", this, TestResultOutboxService::lagInSeconds)
+            .description("Age of the oldest test result waiting in the outbox")
+            .baseUnit("seconds")
+            .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return testResultServerConfig.getOutbox().isEnabled();
+    }
+
+    /**
+     * Stores a test result in the current transaction, it is sent after the commit.
+     *
+     * @param hashedGuid           hashed guid of the quick test, results of a quick test are sent in order
+     * @param testResultServerHash id of the result on the Test Result Server
+     * @param result               the result
+     * @param sampleCollection     sample collection timestamp
+     * @param pcr                  true for PCR tests
+     */
+    public void enqueue(String hashedGuid, String testResultServerHash, short result, Long sampleCollection,
+                        boolean pcr) {
+        final TestResultOutboxEntry entry = new TestResultOutboxEntry();
+        entry.setHashedGuid(hashedGuid);
+        entry.setTestResultServerHash(testResultServerHash);
+        entry.setResult(result);
+        entry.setSampleCollection(sampleCollection);
+        entry.setPcr(pcr);
+        testResultOutboxRepository.save(entry);
+    }
+
+    /**
+     * Sends the due test results, at most maxBatchesPerRun batches per run.
+     * Results of a batch are submitted together, so they are sent with one call if batching is enabled.
+     */
+    @Scheduled(fixedDelayString = "${testresultserver.outbox.delay:1000}")
+    @SchedulerLock(name = "TestResultOutboxService_deliver", lockAtLeastFor = "PT0S",
+        lockAtMostFor = "${testresultserver.outbox.locklimit:1800000}")
+    public void deliver() {
+        if (!isEnabled()) {
+            return;
+        }
+        final TestResultServerValuesConfig.Outbox config = testResultServerConfig.getOutbox();
+        final PageRequest page = PageRequest.of(0, Math.max(1, config.getBatchSize()));
+        for (int batch = 0; batch < config.getMaxBatchesPerRun(); batch++) {
+            final List<TestResultOutboxEntry> entries =
+                testResultOutboxRepository.findDueEntries(Utilities.getCurrentLocalDateTimeUtc(), page);
+            if (entries.isEmpty()) {
+                return;
+            }
+            final List<CompletableFuture<Void>> outcomes = entries.stream()
+                .map(this::submit)
+                .collect(Collectors.toList());
+            int sent = 0;
+            for (int i = 0; i < entries.size(); i++) {
+                if (await(entries.get(i), outcomes.get(i))) {
+                    sent++;
+                }
+            }
+            if (sent == 0) {
+                log.warn("Test Result Server did not accept any of {} results, retrying later", entries.size());
+                return;
+            }
+        }
+    }
+
+    private CompletableFuture<Void> submit(TestResultOutboxEntry entry) {
+        if (entry.isPcr()) {
+            PcrTestResult pcrTestResult = new PcrTestResult();
+            pcrTestResult.setId(entry.getTestResultServerHash());
+            pcrTestResult.setResult(entry.getResult());
+            pcrTestResult.setSampleCollection(entry.getSampleCollection());
+            pcrTestResult.setLabId(quickTestConfig.getLabId());
+            return testResultService.submitPcrTestResult(pcrTestResult);
+        } else {
+            QuickTestResult quickTestResult = new QuickTestResult();
+            quickTestResult.setId(entry.getTestResultServerHash());
+            quickTestResult.setResult(entry.getResult());
+            quickTestResult.setSampleCollection(entry.getSampleCollection());
+            return testResultService.submitTestResult(quickTestResult);
+        }
+    }
+
+    private boolean await(TestResultOutboxEntry entry, CompletableFuture<Void> outcome) {
+        try {
+            testResultService.await(outcome);
+        } catch (ResponseStatusException e) {
+            retryLater(entry, e);
+            return false;
+        }
+        testResultOutboxRepository.delete(entry);
+        delivered.increment();
+        return true;
+    }
+
+    private void retryLater(TestResultOutboxEntry entry, ResponseStatusException e) {
+        final TestResultServerValuesConfig.Outbox config = testResultServerConfig.getOutbox();
+        entry.setAttempts(entry.getAttempts() + 1);
+        entry.setLastError(StringUtils.abbreviate(e.getMessage(), MAX_ERROR_LENGTH));
+        if (entry.getAttempts() >= config.getMaxAttempts()) {
+            entry.setParkedAt(Utilities.getCurrentLocalDateTimeUtc());
+            testResultOutboxRepository.save(entry);
+            parked.increment();
+            log.error("Sending test result {} failed {} times, giving up", entry.getId(), entry.getAttempts());
+            return;
+        }
+        final long backoff = config.getInitialBackoffInMillis() << Math.min(entry.getAttempts() - 1, 30);
+        entry.setNextAttemptAt(Utilities.getCurrentLocalDateTimeUtc()
+            .plus(Duration.ofMillis(Math.min(Math.max(backoff, 0), config.getMaxBackoffInMillis()))));
+        testResultOutboxRepository.save(entry);
+        failures.increment();
+        log.warn("Sending test result {} failed {} times, next attempt at {}", entry.getId(), entry.getAttempts(),
+            entry.getNextAttemptAt());
+    }
+
+    private double lagInSeconds() {
+        final LocalDateTime oldest = testResultOutboxRepository.findOldestCreatedAt();
+        return oldest == null ? 0 : Duration.between(oldest, Utilities.getCurrentLocalDateTimeUtc()).toSeconds();
+    }
+}
@@ -23,13 +23,19 @@ package app.coronawarn.quicktest.service;
 import app.coronawarn.quicktest.client.TestResultServerClient;
 import app.coronawarn.quicktest.client.TestResultServerPcrClient;
 import app.coronawarn.quicktest.config.QuickTestConfig;
+import app.coronawarn.quicktest.config.TestResultServerValuesConfig;
 import app.coronawarn.quicktest.model.quicktest.PcrTestResult;
 import app.coronawarn.quicktest.model.quicktest.PcrTestResultList;
 import app.coronawarn.quicktest.model.quicktest.QuickTestResult;
 import app.coronawarn.quicktest.model.quicktest.QuickTestResultList;
-import feign.FeignException;
-import java.util.Collections;
+import io.micrometer.core.instrument.MeterRegistry;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
@@ -45,6 +51,35 @@ public class TestResultService {
     private final TestResultServerClient testResultServerClient;
     private final TestResultServerPcrClient testResultServerPcrClient;
     private final QuickTestConfig quickTestConfig;
+    private final TestResultServerValuesConfig testResultServerConfig;
+    private final MeterRegistry meterRegistry;
+
+    private TestResultBatchDispatcher<QuickTestResult> quickTestResults;
+    private TestResultBatchDispatcher<PcrTestResult> pcrTestResults;
+
+    /**
+     * Starts the batch dispatchers if batching is enabled.
+     */
+    @PostConstruct
+    public void startBatching() {
+        final TestResultServerValuesConfig.Batching batching = testResultServerConfig.getBatching();
+        if (batching.isEnabled()) {
+            log.info("Sending test results in batches of up to {} results", batching.getMaxBatchSize());
+            quickTestResults = new TestResultBatchDispatcher<>("rat", this::sendTestResults, batching, meterRegistry);
+            pcrTestResults = new TestResultBatchDispatcher<>("pcr", this::sendPcrTestResults, batching, meterRegistry);
+        }
+    }
+
+    /**
+     * Sends the queued results and stops the batch dispatchers.
+     */
+    @PreDestroy
+    public void stopBatching() {
+        if (quickTestResults != null) {
+            quickTestResults.stop();
+            pcrTestResults.stop();
+        }
+    }
 
     /**
      * Creates or updates a QuickTest in TestResult Server.
@@ -52,19 +87,7 @@ public class TestResultService {
      * @param quickTestResult comment.
      */
     public void createOrUpdateTestResult(QuickTestResult quickTestResult) throws ResponseStatusException {
-        try {
-            QuickTestResultList resultList = new QuickTestResultList();
-            resultList.setLabId(quickTestConfig.getLabId());
-            resultList.setTestResults(Collections.singletonList(quickTestResult));
-            ResponseEntity<Void> response = testResultServerClient.results(resultList);
-            if (response.getStatusCode() != HttpStatus.NO_CONTENT) {
-                log.error("Failed to update testresult response: " + response.getStatusCode());
-                throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR);
-            }
-        } catch (FeignException e) {
-            log.error("Failed to update testresult", e);
-            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR);
-        }
+        await(submitTestResult(quickTestResult));
     }
 
     /**
@@ -73,17 +96,87 @@ public class TestResultService {
      * @param pcrTestResult comment.
      */
     public void createOrUpdatePcrTestResult(PcrTestResult pcrTestResult) throws ResponseStatusException {
+        await(submitPcrTestResult(pcrTestResult));
+    }
+
+    /**
+     * Sends a QuickTest to TestResult Server, together with other results if batching is enabled.
+     *
+     * @param quickTestResult the result
+     * @return outcome of the result, see {@link #await(CompletableFuture)}
+     */
+    public CompletableFuture<Void> submitTestResult(QuickTestResult quickTestResult) {
+        if (quickTestResults != null) {
+            return quickTestResults.submit(quickTestResult);
+        }
         try {
-            PcrTestResultList resultList = new PcrTestResultList();
-            resultList.setLabId(quickTestConfig.getLabId());
-            resultList.setTestResults(List.of(pcrTestResult));
-            ResponseEntity<Void> response = testResultServerPcrClient.pcrResults(resultList);
-            if (response.getStatusCode() != HttpStatus.NO_CONTENT) {
-                log.error("Failed to update pcr testresult response: " + response.getStatusCode());
-                throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR);
-            }
-        } catch (FeignException e) {
-            log.error("Failed to update pcr testresult", e);
+            sendTestResults(List.of(quickTestResult));
+            return CompletableFuture.completedFuture(null);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Sends a Pcr Test to TestResult Server, together with other results if batching is enabled.
+     *
+     * @param pcrTestResult the result
+     * @return outcome of the result, see {@link #await(CompletableFuture)}
+     */
+    public CompletableFuture<Void> submitPcrTestResult(PcrTestResult pcrTestResult) {
+        if (pcrTestResults != null) {
+            return pcrTestResults.submit(pcrTestResult);
+        }
+        try {
+            sendPcrTestResults(List.of(pcrTestResult));
+            return CompletableFuture.completedFuture(null);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Waits for the outcome of a submitted result. If it is not available in time the outcome is cancelled, so a
+     * result which is still queued is not sent anymore. A result which is already being sent can still be accepted
+     * by TestResult Server.
+     *
+     * @param outcome outcome of the result
+     * @throws ResponseStatusException if the result was not accepted by TestResult Server.
+     */
+    public void await(CompletableFuture<Void> outcome) throws ResponseStatusException {
+        try {
+            outcome.get(testResultServerConfig.getBatching().getTimeoutInMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR);
+        } catch (ExecutionException e) {
+            log.error("Failed to update testresult", e.getCause());
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR);
+        } catch (TimeoutException e) {
+            outcome.cancel(false);
+            log.error("Failed to update testresult in time");
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    private void sendTestResults(List<QuickTestResult> results) {
+        QuickTestResultList resultList = new QuickTestResultList();
+        resultList.setLabId(quickTestConfig.getLabId());
+        resultList.setTestResults(results);
+        ResponseEntity<Void> response = testResultServerClient.results(resultList);
+        if (response.getStatusCode() != HttpStatus.NO_CONTENT) {
+            log.error("Failed to update testresult response: " + response.getStatusCode());
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    private void sendPcrTestResults(List<PcrTestResult> results) {
+        PcrTestResultList resultList = new PcrTestResultList();
+        resultList.setLabId(quickTestConfig.getLabId());
+        resultList.setTestResults(results);
+        ResponseEntity<Void> response = testResultServerPcrClient.pcrResults(resultList);
+        if (response.getStatusCode() != HttpStatus.NO_CONTENT) {
+            log.error("Failed to update pcr testresult response: " + response.getStatusCode());
             throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR);
         }
     }
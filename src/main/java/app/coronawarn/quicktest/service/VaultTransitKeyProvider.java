@@ -27,7 +27,11 @@ import java.security.NoSuchAlgorithmException;
 import java.security.PublicKey;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.X509EncodedKeySpec;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.bouncycastle.util.encoders.Base64;
@@ -35,6 +39,10 @@ import org.springframework.context.annotation.Primary;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Service;
 import org.springframework.vault.core.VaultTemplate;
+import org.springframework.vault.support.Ciphertext;
+import org.springframework.vault.support.Plaintext;
+import org.springframework.vault.support.VaultDecryptionResult;
+import org.springframework.vault.support.VaultEncryptionResult;
 import org.springframework.vault.support.VaultTransitContext;
 import org.springframework.vault.support.VaultTransitKey;
 
@@ -49,8 +57,24 @@ public class VaultTransitKeyProvider implements KeyProvider {
     private final ArchiveProperties properties;
     private final VaultTemplate vaultTemplate;
 
+    private volatile CachedPublicKey cachedPublicKey;
+
+    /**
+     * Returns the public key of the data encryption key. The key is cached for the configured time.
+     */
     @Override
     public PublicKey getPublicKey() throws NoSuchAlgorithmException, InvalidKeySpecException {
+        final CachedPublicKey cached = this.cachedPublicKey;
+        if (cached != null && cached.getExpiresAt() > System.currentTimeMillis()) {
+            return cached.getPublicKey();
+        }
+        final PublicKey publicKey = loadPublicKey();
+        this.cachedPublicKey = new CachedPublicKey(publicKey, System.currentTimeMillis()
+                + properties.getVaultTransit().getPublicKeyCacheTtlInSeconds() * 1000);
+        return publicKey;
+    }
+
+    private PublicKey loadPublicKey() throws NoSuchAlgorithmException, InvalidKeySpecException {
         VaultTransitKey publicKey = vaultTemplate
                 .opsForTransit(properties.getVaultTransit().getFolder())
                 .getKey(properties.getVaultTransit().getDek());
@@ -94,4 +118,72 @@ public class VaultTransitKeyProvider implements KeyProvider {
                         Base64.encode(plain.getBytes(StandardCharsets.UTF_8)),
                         VaultTransitContext.fromContext(Base64.encode(context.getBytes(StandardCharsets.UTF_8))));
     }
+
+    /**
+     * Decrypts the contents with one Transit request per batch (batch_input).
+     */
+    @Override
+    public List<String> decryptAll(List<String> encrypted, String context) {
+        final VaultTransitContext transitContext = buildContext(context);
+        final List<String> decrypted = new ArrayList<>(encrypted.size());
+        final int batchSize = getBatchSize();
+        for (int start = 0; start < encrypted.size(); start += batchSize) {
+            final List<String> batch = encrypted.subList(start, Math.min(start + batchSize, encrypted.size()));
+            final List<Ciphertext> request = batch.stream()
+                    .map(value -> Ciphertext.of(value).with(transitContext))
+                    .collect(Collectors.toList());
+            final List<VaultDecryptionResult> results = this.vaultTemplate
+                    .opsForTransit(properties.getVaultTransit().getFolder())
+                    .decrypt(properties.getVaultTransit().getDek(), request);
+            for (VaultDecryptionResult result : results) {
+                if (result.isSuccessful()) {
+                    decrypted.add(new String(Base64.decode(result.get().getPlaintext()), StandardCharsets.UTF_8));
+                } else {
+                    log.warn("Could not decrypt value in batch: {}", result.getCause().getMessage());
+                    decrypted.add(null);
+                }
+            }
+        }
+        return decrypted;
+    }
+
+    /**
+     * Encrypts the contents with one Transit request per batch (batch_input).
+     */
+    @Override
+    public List<String> encryptAll(List<String> plain, String context) {
+        final VaultTransitContext transitContext = buildContext(context);
+        final List<String> encrypted = new ArrayList<>(plain.size());
+        final int batchSize = getBatchSize();
+        for (int start = 0; start < plain.size(); start += batchSize) {
+            final List<String> batch = plain.subList(start, Math.min(start + batchSize, plain.size()));
+            final List<Plaintext> request = batch.stream()
+                    .map(value -> Plaintext.of(Base64.encode(value.getBytes(StandardCharsets.UTF_8)))
+                            .with(transitContext))
+                    .collect(Collectors.toList());
+            final List<VaultEncryptionResult> results = this.vaultTemplate
+                    .opsForTransit(properties.getVaultTransit().getFolder())
+                    .encrypt(properties.getVaultTransit().getDek(), request);
+            for (VaultEncryptionResult result : results) {
+                // throws the cause if the value could not be encrypted
+                encrypted.add(result.get().getCiphertext());
+            }
+        }
+        return encrypted;
+    }
+
+    private int getBatchSize() {
+        return Math.max(1, properties.getVaultTransit().getBatchSize());
+    }
+
+    private VaultTransitContext buildContext(String context) {
+        return VaultTransitContext.fromContext(Base64.encode(context.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @RequiredArgsConstructor
+    @Getter
+    private static class CachedPublicKey {
+        private final PublicKey publicKey;
+        private final long expiresAt;
+    }
 }
@@ -22,4 +22,7 @@ package app.coronawarn.quicktest.service.cryption;
 
 public interface AesCryption extends Cryption {
 
+    byte[] encrypt(final String secret, final byte[] plain);
+
+    byte[] decrypt(final String secret, final byte[] encrypted);
 }
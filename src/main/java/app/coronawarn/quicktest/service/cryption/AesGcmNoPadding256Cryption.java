@@ -61,6 +61,8 @@ public class AesGcmNoPadding256Cryption implements AesCryption {
 
     private static final int AES_KEY_BIT = 256;
 
+    private final SecureRandom secureRandom = new SecureRandom();
+
     @Value("${archive.crypt.AesGcmNoPadding256.iterations:12345}")
     private int iterations;
 
@@ -76,6 +78,16 @@ public class AesGcmNoPadding256Cryption implements AesCryption {
 
     @Override
     public String encrypt(final String secret, final String plainText) {
+        return this.encodeText(this.encrypt(secret, plainText.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Override
+    public String decrypt(final String secret, final String encryptedText) {
+        return new String(this.decrypt(secret, this.decodeText(encryptedText)), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public byte[] encrypt(final String secret, final byte[] plain) {
         final String usedSecret = secret != null ? secret : "";
         try {
             final byte[] salt = this.getRandomNonce(SALT_LENGTH_BYTE);
@@ -84,14 +96,13 @@ public class AesGcmNoPadding256Cryption implements AesCryption {
 
             final Cipher cipher = Cipher.getInstance(ENCRYPT_ALGO);
             cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH_BIT, iv));
-            final byte[] cipherText = cipher.doFinal(plainText.getBytes(StandardCharsets.UTF_8));
+            final byte[] cipherText = cipher.doFinal(plain);
 
-            final byte[] cipherTextWithIvSalt = ByteBuffer.allocate(iv.length + salt.length + cipherText.length)
+            return ByteBuffer.allocate(iv.length + salt.length + cipherText.length)
                     .put(iv)
                     .put(salt)
                     .put(cipherText)
                     .array();
-            return this.encodeText(cipherTextWithIvSalt);
         } catch (final InvalidKeyException e) {
             throw new UncheckedInvalidKeyException(e);
         } catch (final InvalidAlgorithmParameterException e) {
@@ -110,10 +121,10 @@ public class AesGcmNoPadding256Cryption implements AesCryption {
     }
 
     @Override
-    public String decrypt(final String secret, final String encryptedText) {
+    public byte[] decrypt(final String secret, final byte[] encrypted) {
         final String usedSecret = secret != null ? secret : "";
         try {
-            final ByteBuffer bb = ByteBuffer.wrap(this.decodeText(encryptedText));
+            final ByteBuffer bb = ByteBuffer.wrap(encrypted);
             final byte[] iv = new byte[IV_LENGTH_BYTE];
             bb.get(iv);
             final byte[] salt = new byte[SALT_LENGTH_BYTE];
@@ -125,9 +136,7 @@ public class AesGcmNoPadding256Cryption implements AesCryption {
 
             final Cipher cipher = Cipher.getInstance(ENCRYPT_ALGO);
             cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH_BIT, iv));
-            final byte[] plainText = cipher.doFinal(cipherText);
-
-            return new String(plainText, StandardCharsets.UTF_8);
+            return cipher.doFinal(cipherText);
         } catch (final InvalidKeyException e) {
             throw new UncheckedInvalidKeyException(e);
         } catch (final InvalidAlgorithmParameterException e) {
@@ -155,7 +164,7 @@ public class AesGcmNoPadding256Cryption implements AesCryption {
 
     private byte[] getRandomNonce(final int numBytes) {
         final byte[] nonce = new byte[numBytes];
-        new SecureRandom().nextBytes(nonce);
+        secureRandom.nextBytes(nonce);
         return nonce;
     }
 
@@ -0,0 +1,243 @@
+/*-
+ * ---license-start
+ * Corona-Warn-App / cwa-quick-test-backend
+ * ---
+ * Copyright (C) 2021 - 2023 T-Systems International GmbH and all other contributors
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---license-end
+ */
+
+package app.coronawarn.quicktest.service.cryption;
+
+import app.coronawarn.quicktest.exception.UncheckedBadPaddingException;
+import app.coronawarn.quicktest.exception.UncheckedIllegalBlockSizeException;
+import app.coronawarn.quicktest.exception.UncheckedInvalidAlgorithmParameterException;
+import app.coronawarn.quicktest.exception.UncheckedInvalidKeyException;
+import app.coronawarn.quicktest.exception.UncheckedInvalidKeySpecException;
+import app.coronawarn.quicktest.exception.UncheckedNoSuchAlgorithmException;
+import app.coronawarn.quicktest.exception.UncheckedNoSuchPaddingException;
+import app.coronawarn.quicktest.utils.ExpiringLruCache;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.KeySpec;
+import java.time.Duration;
+import java.util.Base64;
+import javax.annotation.PostConstruct;
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * AES-GCM with a 256 bit key derived from the secret by PBKDF2, like {@link AesGcmNoPadding256Cryption}.
+ * The key of a secret is derived once and cached, all texts encrypted with the same secret share the salt and are
+ * only distinguished by their random IV. The format is version (1 byte) | IV (12 bytes) | salt (32 bytes) |
+ * ciphertext, encoded as Base64 for texts.
+ */
+@Service
+public class AesGcmNoPadding256V2Cryption implements AesCryption {
+
+    private static final String ALGORITHM = "AES/GCM/NoPadding/V2";
+
+    private static final String ENCRYPT_ALGO = "AES/GCM/NoPadding";
+
+    private static final byte FORMAT_VERSION = 2;
+
+    private static final int TAG_LENGTH_BIT = 128;
+
+    private static final int IV_LENGTH_BYTE = 12;
+
+    private static final int SALT_LENGTH_BYTE = 32;
+
+    private static final int AES_KEY_BIT = 256;
+
+    private final SecureRandom secureRandom = new SecureRandom();
+
+    @Value("${archive.crypt.AesGcmNoPadding256V2.iterations:12345}")
+    private int iterations;
+
+    @Value("${archive.crypt.AesGcmNoPadding256V2.cacheSize:1000}")
+    private int cacheSize;
+
+    @Value("${archive.crypt.AesGcmNoPadding256V2.cacheTtlInSeconds:3600}")
+    private long cacheTtlInSeconds;
+
+    /**
+     * Keys used for encryption by fingerprint of the secret.
+     */
+    private ExpiringLruCache<String, DerivedKey> encryptionKeys;
+
+    /**
+     * Keys by fingerprint of secret and salt.
+     */
+    private ExpiringLruCache<String, SecretKey> keys;
+
+    /**
+     * Creates the key caches.
+     */
+    @PostConstruct
+    public void initCaches() {
+        encryptionKeys = new ExpiringLruCache<>(cacheSize, Duration.ofSeconds(cacheTtlInSeconds));
+        keys = new ExpiringLruCache<>(cacheSize, Duration.ofSeconds(cacheTtlInSeconds));
+    }
+
+    @Override
+    public boolean supportAlgorithm(String algorithm) {
+        return ALGORITHM.equalsIgnoreCase(algorithm);
+    }
+
+    @Override
+    public String getAlgorithm() {
+        return ALGORITHM;
+    }
+
+    @Override
+    public String encrypt(final String secret, final String plainText) {
+        return Base64.getEncoder().encodeToString(this.encrypt(secret, plainText.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Override
+    public String decrypt(final String secret, final String encryptedText) {
+        return new String(this.decrypt(secret, Base64.getDecoder().decode(encryptedText)), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public byte[] encrypt(final String secret, final byte[] plain) {
+        final String usedSecret = secret != null ? secret : "";
+        try {
+            final DerivedKey derivedKey = encryptionKeys.computeIfAbsent(fingerprint(usedSecret, null),
+                fp -> {
+                    final byte[] salt = this.getRandomNonce(SALT_LENGTH_BYTE);
+                    final SecretKey key = keys.computeIfAbsent(fingerprint(usedSecret, salt),
+                        k -> this.buildKey(usedSecret.toCharArray(), salt));
+                    return new DerivedKey(salt, key);
+                });
+            final byte[] iv = this.getRandomNonce(IV_LENGTH_BYTE);
+
+            final Cipher cipher = Cipher.getInstance(ENCRYPT_ALGO);
+            cipher.init(Cipher.ENCRYPT_MODE, derivedKey.key, new GCMParameterSpec(TAG_LENGTH_BIT, iv));
+            final byte[] cipherText = cipher.doFinal(plain);
+
+            return ByteBuffer.allocate(1 + iv.length + SALT_LENGTH_BYTE + cipherText.length)
+                    .put(FORMAT_VERSION)
+                    .put(iv)
+                    .put(derivedKey.salt)
+                    .put(cipherText)
+                    .array();
+        } catch (final InvalidKeyException e) {
+            throw new UncheckedInvalidKeyException(e);
+        } catch (final InvalidAlgorithmParameterException e) {
+            throw new UncheckedInvalidAlgorithmParameterException(e);
+        } catch (final BadPaddingException e) {
+            throw new UncheckedBadPaddingException(e);
+        } catch (final IllegalBlockSizeException e) {
+            throw new UncheckedIllegalBlockSizeException(e);
+        } catch (final NoSuchAlgorithmException e) {
+            throw new UncheckedNoSuchAlgorithmException(e);
+        } catch (final NoSuchPaddingException e) {
+            throw new UncheckedNoSuchPaddingException(e);
+        }
+    }
+
+    @Override
+    public byte[] decrypt(final String secret, final byte[] encrypted) {
+        final String usedSecret = secret != null ? secret : "";
+        try {
+            final ByteBuffer bb = ByteBuffer.wrap(encrypted);
+            final byte version = bb.get();
+            if (version != FORMAT_VERSION) {
+                throw new IllegalArgumentException("Unsupported cipher format version: " + version);
+            }
+            final byte[] iv = new byte[IV_LENGTH_BYTE];
+            bb.get(iv);
+            final byte[] salt = new byte[SALT_LENGTH_BYTE];
+            bb.get(salt);
+            final byte[] cipherText = new byte[bb.remaining()];
+            bb.get(cipherText);
+
+            final SecretKey key = keys.computeIfAbsent(fingerprint(usedSecret, salt),
+                k -> this.buildKey(usedSecret.toCharArray(), salt));
+
+            final Cipher cipher = Cipher.getInstance(ENCRYPT_ALGO);
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH_BIT, iv));
+            return cipher.doFinal(cipherText);
+        } catch (final InvalidKeyException e) {
+            throw new UncheckedInvalidKeyException(e);
+        } catch (final InvalidAlgorithmParameterException e) {
+            throw new UncheckedInvalidAlgorithmParameterException(e);
+        } catch (final BadPaddingException e) {
+            throw new UncheckedBadPaddingException(e);
+        } catch (final IllegalBlockSizeException e) {
+            throw new UncheckedIllegalBlockSizeException(e);
+        } catch (final NoSuchAlgorithmException e) {
+            throw new UncheckedNoSuchAlgorithmException(e);
+        } catch (final NoSuchPaddingException e) {
+            throw new UncheckedNoSuchPaddingException(e);
+        }
+    }
+
+    private byte[] getRandomNonce(final int numBytes) {
+        final byte[] nonce = new byte[numBytes];
+        secureRandom.nextBytes(nonce);
+        return nonce;
+    }
+
+    /**
+     * The caches are not keyed by the secret itself, so secrets are not kept in memory longer than needed.
+     */
+    private String fingerprint(final String secret, final byte[] salt) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(secret.getBytes(StandardCharsets.UTF_8));
+            if (salt != null) {
+                digest.update(salt);
+            }
+            return Base64.getEncoder().encodeToString(digest.digest());
+        } catch (final NoSuchAlgorithmException e) {
+            throw new UncheckedNoSuchAlgorithmException(e);
+        }
+    }
+
+    private SecretKey buildKey(final char[] password, final byte[] salt) {
+        try {
+            final SecretKeyFactory factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA512");
+            final KeySpec spec = new PBEKeySpec(password, salt, this.iterations, AES_KEY_BIT);
+            return new SecretKeySpec(factory.generateSecret(spec).getEncoded(), "AES");
+        } catch (final NoSuchAlgorithmException e) {
+            throw new UncheckedNoSuchAlgorithmException(e);
+        } catch (final InvalidKeySpecException e) {
+            throw new UncheckedInvalidKeySpecException(e);
+        }
+    }
+
+    @RequiredArgsConstructor
+    private static final class DerivedKey {
+        private final byte[] salt;
+        private final SecretKey key;
+    }
+}
@@ -0,0 +1,150 @@
+/*-
+ * ---license-start
+ * Corona-Warn-App / cwa-quick-test-backend
+ * ---
+ * Copyright (C) 2021 - 2023 T-Systems International GmbH and all other contributors
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---license-end
+ */
+
+package app.coronawarn.quicktest.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread safe Bloom filter for strings.
+ * A negative result of {@link #mightContain(String)} is definite, a positive result may be a false positive.
+ */
+public final class BloomFilter {
+
+    private final AtomicLongArray bits;
+
+    private final long bitSize;
+
+    private final int hashFunctions;
+
+    private final AtomicLong insertions = new AtomicLong();
+
+    /**
+     * Creates a Bloom filter sized for the expected amount of insertions and false positive probability.
+     *
+     * @param expectedInsertions        expected amount of elements
+     * @param falsePositiveProbability  desired false positive probability, between 0 and 1 (exclusive)
+     */
+    public BloomFilter(final long expectedInsertions, final double falsePositiveProbability) {
+        if (falsePositiveProbability <= 0 || falsePositiveProbability >= 1) {
+            throw new IllegalArgumentException("falsePositiveProbability must be between 0 and 1");
+        }
+        final long n = Math.max(1, expectedInsertions);
+        final long m = Math.max(64, (long) (-n * Math.log(falsePositiveProbability) / (Math.log(2) * Math.log(2))));
+        // the bit index is derived from an int, so the filter is limited to 2^31 bits
+        this.bits = new AtomicLongArray((int) Math.min(1L << 25, (m + 63) / 64));
+        this.bitSize = (long) bits.length() * 64;
+        this.hashFunctions = Math.max(1, (int) Math.round((double) bitSize / n * Math.log(2)));
+    }
+
+    /**
+     * Adds the value to the filter.
+     *
+     * @param value value to add
+     */
+    public void put(final String value) {
+        final long hash = hash(value);
+        final int h1 = (int) hash;
+        final int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashFunctions; i++) {
+            final long index = index(h1, h2, i);
+            final int word = (int) (index >>> 6);
+            final long mask = 1L << index;
+            long current = bits.get(word);
+            while ((current & mask) == 0 && !bits.compareAndSet(word, current, current | mask)) {
+                current = bits.get(word);
+            }
+        }
+        insertions.incrementAndGet();
+    }
+
+    /**
+     * Checks whether the value might have been added.
+     *
+     * @param value value to check
+     * @return false if the value was definitely not added
+     */
+    public boolean mightContain(final String value) {
+        final long hash = hash(value);
+        final int h1 = (int) hash;
+        final int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashFunctions; i++) {
+            final long index = index(h1, h2, i);
+            if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the size of the filter in bits.
+     *
+     * @return size in bits
+     */
+    public long getBitSize() {
+        return bitSize;
+    }
+
+    /**
+     * Returns the amount of insertions, values added more than once are counted more than once.
+     *
+     * @return amount of insertions
+     */
+    public long getInsertions() {
+        return insertions.get();
+    }
+
+    /**
+     * Returns the expected false positive probability for the current amount of insertions.
+     *
+     * @return probability between 0 and 1
+     */
+    public double getExpectedFalsePositiveProbability() {
+        return Math.pow(1 - Math.exp(-hashFunctions * (double) insertions.get() / bitSize), hashFunctions);
+    }
+
+    private long index(final int h1, final int h2, final int i) {
+        int combined = h1 + i * h2;
+        if (combined < 0) {
+            combined = ~combined;
+        }
+        return combined % bitSize;
+    }
+
+    /**
+     * 64 bit FNV-1a hash with a final avalanche step, the two halves are used for double hashing.
+     */
+    private static long hash(final String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb53a185ec1a3L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
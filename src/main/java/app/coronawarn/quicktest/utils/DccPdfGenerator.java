@@ -29,38 +29,35 @@ import app.coronawarn.quicktest.dgc.DccDecoder;
 import app.coronawarn.quicktest.domain.QuickTest;
 import com.google.zxing.BarcodeFormat;
 import com.google.zxing.EncodeHintType;
-import com.google.zxing.MultiFormatWriter;
 import com.google.zxing.client.j2se.MatrixToImageConfig;
 import com.google.zxing.client.j2se.MatrixToImageWriter;
 import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
 import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
 import java.awt.Color;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.stream.Collectors;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.PDPageContentStream;
 import org.apache.pdfbox.pdmodel.common.PDRectangle;
 import org.apache.pdfbox.pdmodel.font.PDFont;
-import org.apache.pdfbox.pdmodel.font.PDType0Font;
 import org.apache.pdfbox.pdmodel.font.PDType1Font;
 import org.apache.pdfbox.pdmodel.graphics.image.JPEGFactory;
 import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
 import org.apache.pdfbox.util.Matrix;
-import org.springframework.core.io.ClassPathResource;
 import org.springframework.stereotype.Service;
 
 @Service
@@ -68,11 +65,25 @@ import org.springframework.stereotype.Service;
 @RequiredArgsConstructor
 public class DccPdfGenerator {
 
+    private static final Map<EncodeHintType, Object> QR_CODE_HINTS =
+        Map.of(EncodeHintType.MARGIN, 0, EncodeHintType.ERROR_CORRECTION, ErrorCorrectionLevel.H);
+    private static final MatrixToImageConfig QR_CODE_COLORS = new MatrixToImageConfig(0xFF000001, 0xFFFFFFFF);
+    // Set QR Code size to 6 cm in px
+    // 708 -> 6cm at 300 dpi
+    // 226 -> 6cm at 96 dpi
+    private static final int QR_CODE_SIZE_PX = 708;
+
     private final PdfConfig pdfConfig;
     private final QuickTestConfig quickTestConfig;
 
     private final DccDecoder dccDecoder;
 
+    private final PdfResources pdfResources;
+
+    private final PdfRenderBulkhead bulkhead;
+
+    private final QRCodeWriter qrCodeWriter = new QRCodeWriter();
+
     private final int pending = 5;
     private final int negativeRat = 6;
     private final int negativePcr = 11;
@@ -83,97 +94,84 @@ public class DccPdfGenerator {
     private final DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyy-MM-dd");
     private final float leading = 14.5f;
 
-    private PDFont fontArial;
-    private PDFont fontArialBold;
-    private PDFont fontArialItalic;
-
     private final Color pantoneReflexBlue = Color.decode("#003399");
     private final Color pantoneYellow = Color.decode("#FFCC00");
 
 
     /**
      * Appends the EU certificate including a QR code to the pdf.
+     * The pages are appended as incremental update, the existing content of the pdf is kept as it is.
+     * Waits for a free slot of the {@link PdfRenderBulkhead}, fails with 503 if there is none.
      *
      * @param quicktest      Quicktest
      * @param dcc            certificate data
      * @throws IOException   when creating pdf went wrong
      */
     public ByteArrayOutputStream appendCertificatePage(byte[] pdf, QuickTest quicktest, String dcc) throws IOException {
-        PDDocument document = PDDocument.load(pdf);
-        configCertPage(document);
-        generateCertPage(document, quicktest, dcc);
-        generateCertPageFoldable(document, quicktest, dcc);
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        close(document, out);
-        return out;
+        return bulkhead.execute(() -> render(pdf, quicktest, dcc));
     }
 
-    private void configCertPage(PDDocument document) {
-        // Add Arial fonts to pdfbox
-        final ClassPathResource cs = new ClassPathResource("pdf/fonts/arial.ttf");
-        try {
-            this.fontArial = PDType0Font.load(document,
-              Objects.requireNonNull(cs.getClassLoader())
-                .getResourceAsStream("pdf/fonts/arial.ttf"));
-            this.fontArialBold = PDType0Font.load(document,
-              Objects.requireNonNull(cs.getClassLoader())
-                .getResourceAsStream("pdf/fonts/arialbd.ttf"));
-            this.fontArialItalic = PDType0Font.load(document,
-              Objects.requireNonNull(cs.getClassLoader())
-                .getResourceAsStream("pdf/fonts/ariali.ttf"));
-        } catch (IOException e) {
-            log.error("Could not load font");
+    private ByteArrayOutputStream render(byte[] pdf, QuickTest quicktest, String dcc) throws IOException {
+        try (PdfRenderContext ctx = new PdfRenderContext(PDDocument.load(pdf), pdfResources)) {
+            // rendered once, both pages show the same image
+            PDImageXObject qrCode = createQrCode(ctx, dcc);
+            generateCertPage(ctx, quicktest, dcc, qrCode);
+            generateCertPageFoldable(ctx, quicktest, dcc, qrCode);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(pdf.length * 2);
+            saveIncremental(ctx, out);
+            return out;
         }
     }
 
-    private void generateCertPage(PDDocument document, QuickTest quicktest, String dcc)
+    private void generateCertPage(PdfRenderContext ctx, QuickTest quicktest, String dcc, PDImageXObject qrCode)
       throws IOException {
 
         PDPage page = new PDPage(PDRectangle.A4);
-        document.addPage(page);
+        ctx.getDocument().addPage(page);
         page.setMediaBox(PDRectangle.A4);
-        PDPageContentStream cos = new PDPageContentStream(document, page);
+        PDPageContentStream cos = new PDPageContentStream(ctx.getDocument(), page);
         PDRectangle rect = page.getMediaBox();
 
         DccDecodeResult dccDecodeResult = dccDecoder.decodeDcc(dcc);
-        generateHeadlinePage(document, cos, rect, false);
-        generatePersonalInfoPage(document, cos, rect, quicktest, dccDecodeResult, false);
-        generateQrCode(document, cos, rect, dcc, false);
-        generateMemberStateInfoPage(document, cos, rect, false);
-        generateCertificateInfoPage(cos, rect, quicktest, dccDecodeResult, false);
+        generateHeadlinePage(ctx, cos, rect, false);
+        generatePersonalInfoPage(ctx, cos, rect, quicktest, dccDecodeResult, false);
+        generateQrCode(cos, rect, qrCode, false);
+        generateMemberStateInfoPage(ctx, cos, rect, false);
+        generateCertificateInfoPage(ctx, cos, rect, quicktest, dccDecodeResult, false);
         if (!isEnvironmentNameEmpty()) {
             generateTrainingText(cos, rect, false);
         }
         cos.close();
     }
 
-    private void generateCertPageFoldable(PDDocument document, QuickTest quicktest, String dcc)
+    private void generateCertPageFoldable(PdfRenderContext ctx, QuickTest quicktest, String dcc,
+                                          PDImageXObject qrCode)
       throws IOException {
 
         PDPage page = new PDPage(PDRectangle.A4);
-        document.addPage(page);
+        ctx.getDocument().addPage(page);
         page.setMediaBox(PDRectangle.A4);
-        PDPageContentStream cos = new PDPageContentStream(document, page);
+        PDPageContentStream cos = new PDPageContentStream(ctx.getDocument(), page);
         PDRectangle rect = page.getMediaBox();
 
         DccDecodeResult dccDecodeResult = dccDecoder.decodeDcc(dcc);
-        generateFoldings(document, cos, rect);
-        generateHeadlinePage(document, cos, rect, true);
-        generatePersonalInfoPage(document, cos, rect, quicktest, dccDecodeResult, true);
-        generateQrCode(document, cos, rect, dcc, true);
+        generateFoldings(ctx, cos, rect);
+        generateHeadlinePage(ctx, cos, rect, true);
+        generatePersonalInfoPage(ctx, cos, rect, quicktest, dccDecodeResult, true);
+        generateQrCode(cos, rect, qrCode, true);
 
         // Rotate upcoming pages by 180 degrees
         cos.transform(Matrix.getRotateInstance(Math.toRadians(180), rect.getWidth(), rect.getHeight() + 420));
 
-        generateMemberStateInfoPage(document, cos, rect, true);
-        generateCertificateInfoPage(cos, rect, quicktest, dccDecodeResult, true);
+        generateMemberStateInfoPage(ctx, cos, rect, true);
+        generateCertificateInfoPage(ctx, cos, rect, quicktest, dccDecodeResult, true);
         if (!isEnvironmentNameEmpty()) {
             generateTrainingText(cos, rect, true);
         }
         cos.close();
     }
 
-    private void generateFoldings(PDDocument document, PDPageContentStream cos, PDRectangle rect) {
+    private void generateFoldings(PdfRenderContext ctx, PDPageContentStream cos, PDRectangle rect) {
         try {
             cos.setLineDashPattern(new float[]{3, 1}, 0);
             float length = 15f;
@@ -214,37 +212,34 @@ public class DccPdfGenerator {
         }
     }
 
-    private void generateQrCode(PDDocument document, PDPageContentStream cos, PDRectangle rect, String text,
-                                boolean foldable) {
+    private PDImageXObject createQrCode(PdfRenderContext ctx, String text) {
         try {
-            // Print QR Code on the personal info page, aligning to the center of the whole page
-            float x = foldable ? mm2Point(45f) : rect.getWidth() / 2;
-            float y = foldable ? mm2Point(85f) : rect.getHeight() / 2 + mm2Point(85f);
-            // Set QR Code size to 6 cm in px
-            // 708 -> 6cm at 300 dpi
-            // 226 -> 6cm at 96 dpi
-            int qrCodeSizePx = 708;
-            float qrCodeImageSizePt = mm2Point(60f);
-
-            Map<EncodeHintType, Object> hintMap = new HashMap<>();
-            hintMap.put(EncodeHintType.MARGIN, 0);
-            hintMap.put(EncodeHintType.ERROR_CORRECTION, ErrorCorrectionLevel.H);
-
-            BitMatrix matrix = new MultiFormatWriter().encode(
-              new String(text.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8),
-              BarcodeFormat.QR_CODE, qrCodeSizePx, qrCodeSizePx, hintMap);
-
-            MatrixToImageConfig config = new MatrixToImageConfig(0xFF000001, 0xFFFFFFFF);
-            BufferedImage bufferedImage = MatrixToImageWriter.toBufferedImage(matrix, config);
-            PDImageXObject image = JPEGFactory.createFromImage(document, bufferedImage);
-            cos.drawImage(image, x, y, qrCodeImageSizePt, qrCodeImageSizePt);
+            BitMatrix matrix = qrCodeWriter.encode(text, BarcodeFormat.QR_CODE, QR_CODE_SIZE_PX, QR_CODE_SIZE_PX,
+              QR_CODE_HINTS);
+            BufferedImage bufferedImage = MatrixToImageWriter.toBufferedImage(matrix, QR_CODE_COLORS);
+            return JPEGFactory.createFromImage(ctx.getDocument(), bufferedImage);
         } catch (Exception e) {
             log.error("Could not create QR code.", e);
+            return null;
         }
     }
 
-    private void generateHeadlinePage(PDDocument document, PDPageContentStream cos, PDRectangle rect, boolean foldable)
+    private void generateQrCode(PDPageContentStream cos, PDRectangle rect, PDImageXObject qrCode, boolean foldable)
       throws IOException {
+        if (qrCode == null) {
+            return;
+        }
+        // Print QR Code on the personal info page, aligning to the center of the whole page
+        float x = foldable ? mm2Point(45f) : rect.getWidth() / 2;
+        float y = foldable ? mm2Point(85f) : rect.getHeight() / 2 + mm2Point(85f);
+        float qrCodeImageSizePt = mm2Point(60f);
+        cos.drawImage(qrCode, x, y, qrCodeImageSizePt, qrCodeImageSizePt);
+    }
+
+    private void generateHeadlinePage(PdfRenderContext ctx, PDPageContentStream cos, PDRectangle rect,
+                                      boolean foldable) throws IOException {
+        final PDFont fontArial = ctx.getFont(PdfResources.ARIAL);
+        final PDFont fontArialBold = ctx.getFont(PdfResources.ARIAL_BOLD);
         // Top left on single page, bottom right on folding page
         float offsetX = foldable ? rect.getWidth() / 2 : 0;
         float offsetY = foldable ? 0 : rect.getHeight() / 2;
@@ -276,11 +271,7 @@ public class DccPdfGenerator {
             // Show flag with German country code
 
             String flag = pdfConfig.getCertFlagPath();
-            final ClassPathResource classPathResource = new ClassPathResource(flag);
-            final byte[] sampleBytes = IOUtils.toByteArray(Objects.requireNonNull(
-              Objects.requireNonNull(classPathResource.getClassLoader())
-                .getResourceAsStream(flag)));
-            PDImageXObject pdImage = PDImageXObject.createFromByteArray(document, sampleBytes, "flag");
+            PDImageXObject pdImage = ctx.getImage(flag);
 
             float flagWidth = 113f;
             float flagHeight = 75f;
@@ -302,10 +293,11 @@ public class DccPdfGenerator {
         }
     }
 
-    private void generatePersonalInfoPage(PDDocument document, PDPageContentStream cos,
+    private void generatePersonalInfoPage(PdfRenderContext ctx, PDPageContentStream cos,
                                           PDRectangle rect, QuickTest quicktest,
                                           DccDecodeResult dccDecodeResult, boolean foldable)
       throws IOException {
+        final PDFont fontArial = ctx.getFont(PdfResources.ARIAL);
         // Top right on single page, bottom left on foldable page
         float offsetX = foldable ? 0 : rect.getWidth() / 2;
         float offsetY = foldable ? 0 : rect.getHeight() / 2;
@@ -341,11 +333,7 @@ public class DccPdfGenerator {
 
         try {
             String cert = pdfConfig.getCertCertlogoPath();
-            final ClassPathResource classPathResource = new ClassPathResource(cert);
-            final byte[] sampleBytes = IOUtils.toByteArray(Objects.requireNonNull(
-              Objects.requireNonNull(classPathResource.getClassLoader())
-                .getResourceAsStream(cert)));
-            PDImageXObject pdImage = PDImageXObject.createFromByteArray(document, sampleBytes, "cert");
+            PDImageXObject pdImage = ctx.getImage(cert);
             cos.drawImage(pdImage, offsetX + mm2Point(5f), offsetY + mm2Point(60f), 295f - leading * 2,
                 70f - 7f);
         } catch (IOException | NullPointerException e) {
@@ -366,16 +354,19 @@ public class DccPdfGenerator {
           List.of(pdfConfig.getCertCertIdDe(), pdfConfig.getCertCertIdEn(),dccDecodeResult.getCi())
         );
 
-        data.forEach(entry -> printQrPagePersonalInfo(cos, entry));
+        data.forEach(entry -> printQrPagePersonalInfo(ctx, cos, entry));
         cos.endText();
     }
 
-    private void printQrPagePersonalInfo(PDPageContentStream cos, List<String> data) {
+    private void printQrPagePersonalInfo(PdfRenderContext ctx, PDPageContentStream cos, List<String> data) {
         int boldSize = 11;
         int italicSize = 10;
         int normalSize = 10;
 
         try {
+            final PDFont fontArial = ctx.getFont(PdfResources.ARIAL);
+            final PDFont fontArialBold = ctx.getFont(PdfResources.ARIAL_BOLD);
+            final PDFont fontArialItalic = ctx.getFont(PdfResources.ARIAL_ITALIC);
             cos.setFont(fontArialBold, boldSize);
             cos.setNonStrokingColor(pantoneReflexBlue);
             cos.showText(data.get(0));
@@ -394,7 +385,7 @@ public class DccPdfGenerator {
         }
     }
 
-    private void generateMemberStateInfoPage(PDDocument document, PDPageContentStream cos,
+    private void generateMemberStateInfoPage(PdfRenderContext ctx, PDPageContentStream cos,
                                              PDRectangle rect, boolean foldable) throws IOException {
         // If foldable, page is rotated by 180 degrees
         // Bottom left for single page, top right for foldable page
@@ -403,11 +394,7 @@ public class DccPdfGenerator {
 
         try {
             String flagSep = pdfConfig.getCertFlagSeparatorPath();
-            final ClassPathResource classPathResource = new ClassPathResource(flagSep);
-            final byte[] sampleBytes = IOUtils.toByteArray(Objects.requireNonNull(
-              Objects.requireNonNull(classPathResource.getClassLoader())
-                .getResourceAsStream(flagSep)));
-            PDImageXObject pdImage = PDImageXObject.createFromByteArray(document, sampleBytes, "flagSep");
+            PDImageXObject pdImage = ctx.getImage(flagSep);
             cos.drawImage(pdImage, offsetX + mm2Point(5f),offsetY + mm2Point(125f), 295f - 2 * leading, 63f);
         } catch (IOException | NullPointerException e) {
             log.error("Flag seperator image not found!");
@@ -419,21 +406,21 @@ public class DccPdfGenerator {
         cos.newLineAtOffset(offsetX + mm2Point(5f), offsetY + mm2Point(120f));
         float textsize = 9f;
 
-        printDescriptionBlock(cos, textsize, pdfConfig.getCertMemberStateDescriptionDe());
+        printDescriptionBlock(ctx, cos, textsize, pdfConfig.getCertMemberStateDescriptionDe());
 
         cos.newLine();
         if (!foldable) {
             cos.newLine();
         }
 
-        printDescriptionBlock(cos, textsize, pdfConfig.getCertMemberStateDescriptionEn());
+        printDescriptionBlock(ctx, cos, textsize, pdfConfig.getCertMemberStateDescriptionEn());
 
         cos.newLine();
         if (!foldable) {
             cos.newLine();
         }
 
-        printDescriptionBlock(cos, textsize, pdfConfig.getCertMemberStateFurtherDescription());
+        printDescriptionBlock(ctx, cos, textsize, pdfConfig.getCertMemberStateFurtherDescription());
 
         cos.endText();
 
@@ -446,12 +433,7 @@ public class DccPdfGenerator {
 
             try {
                 String foldingInstruction = pdfConfig.getCertFoldingInstruction();
-                final ClassPathResource classPathResource = new ClassPathResource(foldingInstruction);
-                final byte[] sampleBytes = IOUtils.toByteArray(Objects.requireNonNull(
-                  Objects.requireNonNull(classPathResource.getClassLoader())
-                    .getResourceAsStream(foldingInstruction)));
-                PDImageXObject pdImage = PDImageXObject.createFromByteArray(
-                  document, sampleBytes, "foldingInstruction");
+                PDImageXObject pdImage = ctx.getImage(foldingInstruction);
                 cos.drawImage(pdImage, offsetX + mm2Point(15f),offsetY + mm2Point(10f), 208f, 60f);
             } catch (IOException | NullPointerException e) {
                 log.error("Folding instruction image not found!");
@@ -466,7 +448,10 @@ public class DccPdfGenerator {
      * @param text the text to print
      * @throws IOException thrown from content stream
      */
-    private void printDescriptionBlock(PDPageContentStream cos, float textsize, String text) throws IOException {
+    private void printDescriptionBlock(PdfRenderContext ctx, PDPageContentStream cos, float textsize, String text)
+      throws IOException {
+        final PDFont fontArial = ctx.getFont(PdfResources.ARIAL);
+        final PDFont fontArialBold = ctx.getFont(PdfResources.ARIAL_BOLD);
         String[] splittedText = text.split(pdfConfig.getCertLineSeparator());
         for (int i = 0, deTextLength = splittedText.length; i < deTextLength; i++) {
             String currentText = splittedText[i];
@@ -489,8 +474,10 @@ public class DccPdfGenerator {
         }
     }
 
-    private void generateCertificateInfoPage(PDPageContentStream cos, PDRectangle rect, QuickTest quickTest,
-                                             DccDecodeResult dccDecodeResult, boolean foldable) throws IOException {
+    private void generateCertificateInfoPage(PdfRenderContext ctx, PDPageContentStream cos, PDRectangle rect,
+                                             QuickTest quickTest, DccDecodeResult dccDecodeResult, boolean foldable)
+      throws IOException {
+        final PDFont fontArialBold = ctx.getFont(PdfResources.ARIAL_BOLD);
         // If foldable, page is rotated by 180 degrees
         // Bottom right for single page, top left for foldable page
 
@@ -533,7 +520,7 @@ public class DccPdfGenerator {
         float spacingText = -9f;
 
         data.forEach(entry ->
-          printCertData(cos, spacingParagraph, spacingText, entry.get(0), entry.get(1), entry.get(2)));
+          printCertData(ctx, cos, spacingParagraph, spacingText, entry.get(0), entry.get(1), entry.get(2)));
         cos.endText();
     }
 
@@ -556,9 +543,11 @@ public class DccPdfGenerator {
         return testResult;
     }
 
-    private void printCertData(PDPageContentStream cos, float spacingParagraph, float spacingText, String textOriginal,
-                               String translation, String value) {
+    private void printCertData(PdfRenderContext ctx, PDPageContentStream cos, float spacingParagraph,
+                               float spacingText, String textOriginal, String translation, String value) {
         try {
+            final PDFont fontArial = ctx.getFont(PdfResources.ARIAL);
+            final PDFont fontArialBold = ctx.getFont(PdfResources.ARIAL_BOLD);
             cos.setNonStrokingColor(pantoneReflexBlue);
             cos.setFont(fontArialBold, 8);
             // split text at a configured line break and count lines on the left side of the row to be able to
@@ -601,9 +590,22 @@ public class DccPdfGenerator {
         return mm * 2.83465f;
     }
 
-    private void close(PDDocument document, ByteArrayOutputStream output) throws IOException {
-        document.save(output);
-        document.close();
+    /**
+     * Writes only the new pages and their objects behind the loaded pdf. The page tree nodes and the catalog are
+     * marked as changed, so the new pages are reachable from the updated objects.
+     */
+    private void saveIncremental(PdfRenderContext ctx, ByteArrayOutputStream output) throws IOException {
+        PDDocument document = ctx.getDocument();
+        ctx.subsetFonts();
+        document.getDocumentCatalog().getCOSObject().setNeedToBeUpdated(true);
+        for (PDPage page : document.getPages()) {
+            COSBase parent = page.getCOSObject().getDictionaryObject(COSName.PARENT);
+            while (parent instanceof COSDictionary && !((COSDictionary) parent).isNeedToBeUpdated()) {
+                ((COSDictionary) parent).setNeedToBeUpdated(true);
+                parent = ((COSDictionary) parent).getDictionaryObject(COSName.PARENT);
+            }
+        }
+        document.saveIncremental(output);
     }
 
     private void generateTrainingText(PDPageContentStream cos, PDRectangle rect, boolean foldable) throws IOException {
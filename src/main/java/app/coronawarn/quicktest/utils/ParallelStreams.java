@@ -0,0 +1,166 @@
+/*-
+ * ---license-start
+ * Corona-Warn-App / cwa-quick-test-backend
+ * ---
+ * Copyright (C) 2021 - 2023 T-Systems International GmbH and all other contributors
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---license-end
+ */
+
+package app.coronawarn.quicktest.utils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Utility class for mapping and chunking streams.
+ */
+public final class ParallelStreams {
+
+    private ParallelStreams() {
+    }
+
+    /**
+     * Maps the elements of a sequential stream on the given executor and returns the results in the order of the
+     * source. The source is consumed lazily on the calling thread, at most maxPending elements are mapped ahead of
+     * the consumer. Closing the returned stream cancels the pending tasks and closes the source.
+     *
+     * @param source     sequential source stream
+     * @param mapper     mapping function, executed on the executor
+     * @param executor   executor to run the mapping function on
+     * @param maxPending maximum amount of elements mapped ahead of the consumer
+     * @param <T>        type of the source elements
+     * @param <R>        type of the mapped elements
+     * @return {@link Stream} of the mapped elements in the order of the source
+     */
+    public static <T, R> Stream<R> mapOrdered(final Stream<T> source, final Function<T, R> mapper,
+                                              final ExecutorService executor, final int maxPending) {
+        final OrderedIterator<T, R> iterator =
+            new OrderedIterator<>(source.iterator(), mapper, executor, Math.max(1, maxPending));
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED), false)
+            .onClose(iterator::cancel)
+            .onClose(source::close);
+    }
+
+    /**
+     * Groups the elements of a sequential stream into lists of the given size, the last list may be smaller.
+     * The source is consumed lazily, closing the returned stream closes the source.
+     *
+     * @param source sequential source stream
+     * @param size   maximum amount of elements per list
+     * @param <T>    type of the source elements
+     * @return {@link Stream} of lists in the order of the source
+     */
+    public static <T> Stream<List<T>> chunked(final Stream<T> source, final int size) {
+        final Iterator<T> iterator = source.iterator();
+        final int usedSize = Math.max(1, size);
+        final Iterator<List<T>> chunks = new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public List<T> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                final List<T> chunk = new ArrayList<>(usedSize);
+                while (chunk.size() < usedSize && iterator.hasNext()) {
+                    chunk.add(iterator.next());
+                }
+                return chunk;
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(chunks, Spliterator.ORDERED), false)
+            .onClose(source::close);
+    }
+
+    private static final class OrderedIterator<T, R> implements Iterator<R> {
+
+        private final Iterator<T> source;
+
+        private final Function<T, R> mapper;
+
+        private final ExecutorService executor;
+
+        private final int maxPending;
+
+        private final Deque<Future<R>> pending = new ArrayDeque<>();
+
+        private OrderedIterator(final Iterator<T> source, final Function<T, R> mapper,
+                                final ExecutorService executor, final int maxPending) {
+            this.source = source;
+            this.mapper = mapper;
+            this.executor = executor;
+            this.maxPending = maxPending;
+        }
+
+        @Override
+        public boolean hasNext() {
+            fill();
+            return !pending.isEmpty();
+        }
+
+        @Override
+        public R next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final Future<R> head = pending.poll();
+            fill();
+            return await(head);
+        }
+
+        private void fill() {
+            while (pending.size() < maxPending && source.hasNext()) {
+                final T element = source.next();
+                pending.add(executor.submit(() -> mapper.apply(element)));
+            }
+        }
+
+        private R await(final Future<R> future) {
+            try {
+                return future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancel();
+                throw new IllegalStateException("Interrupted while waiting for mapped element", e);
+            } catch (ExecutionException e) {
+                cancel();
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new IllegalStateException("Failed to map element", e.getCause());
+            }
+        }
+
+        private void cancel() {
+            pending.forEach(future -> future.cancel(true));
+            pending.clear();
+        }
+    }
+}
@@ -38,21 +38,16 @@ import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.GregorianCalendar;
 import java.util.List;
-import java.util.Objects;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.pdfbox.io.IOUtils;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDDocumentInformation;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.PDPageContentStream;
 import org.apache.pdfbox.pdmodel.common.PDRectangle;
 import org.apache.pdfbox.pdmodel.font.PDFont;
-import org.apache.pdfbox.pdmodel.font.PDType0Font;
 import org.apache.pdfbox.pdmodel.font.PDType1Font;
-import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
 import org.apache.pdfbox.util.Matrix;
-import org.springframework.core.io.ClassPathResource;
 import org.springframework.stereotype.Service;
 
 @Service
@@ -62,6 +57,8 @@ public class PdfGenerator {
 
     private final PdfConfig pdfConfig;
     private final QuickTestConfig quickTestConfig;
+    private final PdfResources pdfResources;
+    private final PdfRenderBulkhead bulkhead;
 
     private final int pendingPcr = 10;
     private final int negativePcr = 11;
@@ -76,11 +73,10 @@ public class PdfGenerator {
     private final int offsetX = 70;
     private final float leading = 14.5f;
     private final int fontSize = 12;
-    private PDFont fontType;
-    private PDFont fontTypeBold;
 
     /**
      * Generates a PDF file for rapid test result to print.
+     * Waits for a free slot of the {@link PdfRenderBulkhead}, fails with 503 if there is none.
      *
      * @param pocInformation point of care data used in pdf
      * @param quicktest      Quicktest
@@ -89,39 +85,33 @@ public class PdfGenerator {
      */
     public ByteArrayOutputStream generatePdf(List<String> pocInformation, QuickTest quicktest,
                                              String user) throws IOException {
-        PDDocument document = new PDDocument();
-        PDPage page1 = new PDPage(PDRectangle.A4);
-        document.addPage(page1);
-        page1.setMediaBox(PDRectangle.A4);
-        PDPageContentStream cos = new PDPageContentStream(document, page1);
-        config(document);
-        PDRectangle rect1 = page1.getMediaBox();
-        write(document, cos, rect1, pocInformation, quicktest, user, false);
-
-        PDPage page2 = new PDPage(PDRectangle.A4);
-        document.addPage(page2);
-        page2.setMediaBox(PDRectangle.A4);
-        PDPageContentStream cos2 = new PDPageContentStream(document, page2);
-        write(document, cos2, page2.getMediaBox(), pocInformation, quicktest, user, true);
-        ByteArrayOutputStream pdf = new ByteArrayOutputStream();
-        close(document, pdf);
-        return pdf;
+        return bulkhead.execute(() -> render(pocInformation, quicktest, user));
     }
 
-    private void config(PDDocument document) {
+    private ByteArrayOutputStream render(List<String> pocInformation, QuickTest quicktest, String user)
+      throws IOException {
+        try (PdfRenderContext ctx = new PdfRenderContext(new PDDocument(), pdfResources)) {
+            PDDocument document = ctx.getDocument();
+            PDPage page1 = new PDPage(PDRectangle.A4);
+            document.addPage(page1);
+            page1.setMediaBox(PDRectangle.A4);
+            PDPageContentStream cos = new PDPageContentStream(document, page1);
+            config(document);
+            PDRectangle rect1 = page1.getMediaBox();
+            write(ctx, cos, rect1, pocInformation, quicktest, user, false);
 
-        final ClassPathResource cs = new ClassPathResource("pdf/fonts/arial.ttf");
-        try {
-            this.fontType = PDType0Font.load(document,
-              Objects.requireNonNull(cs.getClassLoader())
-                .getResourceAsStream("pdf/fonts/arial.ttf"));
-            this.fontTypeBold = PDType0Font.load(document,
-              Objects.requireNonNull(cs.getClassLoader())
-                .getResourceAsStream("pdf/fonts/arialbd.ttf"));
-        } catch (IOException e) {
-            log.error("Could not load font");
+            PDPage page2 = new PDPage(PDRectangle.A4);
+            document.addPage(page2);
+            page2.setMediaBox(PDRectangle.A4);
+            PDPageContentStream cos2 = new PDPageContentStream(document, page2);
+            write(ctx, cos2, page2.getMediaBox(), pocInformation, quicktest, user, true);
+            ByteArrayOutputStream pdf = new ByteArrayOutputStream();
+            close(document, pdf);
+            return pdf;
         }
+    }
 
+    private void config(PDDocument document) {
         PDDocumentInformation pdd = document.getDocumentInformation();
         pdd.setAuthor(pdfConfig.getAuthorPdfPropertiesText());
         pdd.setTitle(pdfConfig.getQuickTestHeadlineText());
@@ -131,32 +121,33 @@ public class PdfGenerator {
         pdd.setCreationDate(gcal);
     }
 
-    private void write(PDDocument document, PDPageContentStream cos, PDRectangle rect,
+    private void write(PdfRenderContext ctx, PDPageContentStream cos, PDRectangle rect,
                        List<String> pocInformation,
                        QuickTest quicktest,
                        String user,
                        boolean english) throws IOException {
-        generatePoCAddress(cos, rect, pocInformation);
-        addCoronaAppIcon(document, cos, rect);
-        generatePersonAddress(cos, rect, quicktest);
+        generatePoCAddress(ctx, cos, rect, pocInformation);
+        addCoronaAppIcon(ctx, cos, rect);
+        generatePersonAddress(ctx, cos, rect, quicktest);
         generateSubject(cos, rect, quicktest, english);
-        generateText(cos, rect, quicktest, user, english);
-        generateEnd(cos, rect, english);
+        generateText(ctx, cos, rect, quicktest, user, english);
+        generateEnd(ctx, cos, rect, english);
         if (!isEnvironmentNameEmpty()) {
             generateTrainingText(cos, rect, english);
         }
         cos.close();
     }
 
-    private void generatePoCAddress(PDPageContentStream cos, PDRectangle rect, List<String> pocInformation)
-      throws IOException {
+    private void generatePoCAddress(PdfRenderContext ctx, PDPageContentStream cos, PDRectangle rect,
+                                    List<String> pocInformation) throws IOException {
+        final PDFont fontType = ctx.getFont(PdfResources.ARIAL);
         cos.beginText();
         cos.setFont(fontType, fontSize);
         cos.setLeading(leading);
         cos.newLineAtOffset(0, rect.getHeight() - 110);
         pocInformation.forEach(s -> {
             try {
-                rightAlignment(cos, rect, s);
+                rightAlignment(cos, rect, fontType, s);
             } catch (IOException e) {
                 throw new UncheckedIOException(e);
             }
@@ -164,15 +155,12 @@ public class PdfGenerator {
         cos.endText();
     }
 
-    private void addCoronaAppIcon(PDDocument document, PDPageContentStream cos, PDRectangle rect) throws IOException {
+    private void addCoronaAppIcon(PdfRenderContext ctx, PDPageContentStream cos, PDRectangle rect)
+      throws IOException {
+        final PDFont fontType = ctx.getFont(PdfResources.ARIAL);
         try {
-            final ClassPathResource classPathResource = new ClassPathResource(pdfConfig.getLogoPath());
-            final byte[] sampleBytes = IOUtils.toByteArray(Objects.requireNonNull(
-              Objects.requireNonNull(classPathResource.getClassLoader())
-                .getResourceAsStream(pdfConfig.getLogoPath())));
-            PDImageXObject pdImage = PDImageXObject.createFromByteArray(document, sampleBytes, "logo");
-            cos.drawImage(pdImage, 280f, rect.getHeight() - offsetX, 50f, 50f);
-        } catch (IOException | NullPointerException e) {
+            cos.drawImage(ctx.getImage(pdfConfig.getLogoPath()), 280f, rect.getHeight() - offsetX, 50f, 50f);
+        } catch (IOException e) {
             log.error("Logo not found!");
         }
         cos.beginText();
@@ -182,8 +170,9 @@ public class PdfGenerator {
         cos.endText();
     }
 
-    private void generatePersonAddress(PDPageContentStream cos, PDRectangle rect, QuickTest quicktest)
-      throws IOException {
+    private void generatePersonAddress(PdfRenderContext ctx, PDPageContentStream cos, PDRectangle rect,
+                                       QuickTest quicktest) throws IOException {
+        final PDFont fontType = ctx.getFont(PdfResources.ARIAL);
         cos.beginText();
         cos.setFont(fontType, fontSize);
         cos.setLeading(leading);
@@ -207,7 +196,8 @@ public class PdfGenerator {
 
     }
 
-    private void rightAlignment(PDPageContentStream cos, PDRectangle rect, String text) throws IOException {
+    private void rightAlignment(PDPageContentStream cos, PDRectangle rect, PDFont fontType, String text)
+      throws IOException {
         float pagewidth;
         float textWidth;
         float padding;
@@ -249,9 +239,11 @@ public class PdfGenerator {
 
     }
 
-    private void generateText(PDPageContentStream cos, PDRectangle rect, QuickTest quicktest, String user,
-                              boolean english)
+    private void generateText(PdfRenderContext ctx, PDPageContentStream cos, PDRectangle rect, QuickTest quicktest,
+                              String user, boolean english)
       throws IOException {
+        final PDFont fontType = ctx.getFont(PdfResources.ARIAL);
+        final PDFont fontTypeBold = ctx.getFont(PdfResources.ARIAL_BOLD);
         cos.beginText();
         cos.setFont(fontTypeBold, fontSize);
         cos.setLeading(leading);
@@ -483,7 +475,9 @@ public class PdfGenerator {
         cos.endText();
     }
 
-    private void generateEnd(PDPageContentStream cos, PDRectangle rect, boolean english) throws IOException {
+    private void generateEnd(PdfRenderContext ctx, PDPageContentStream cos, PDRectangle rect, boolean english)
+      throws IOException {
+        final PDFont fontType = ctx.getFont(PdfResources.ARIAL);
         cos.beginText();
         cos.setFont(fontType, fontSize);
         cos.setLeading(leading);
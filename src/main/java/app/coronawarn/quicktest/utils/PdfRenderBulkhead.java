@@ -0,0 +1,135 @@
+/*-
+ * ---license-start
+ * Corona-Warn-App / cwa-quick-test-backend
+ * ---
+ * Copyright (C) 2021 - 2023 T-Systems International GmbH and all other contributors
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---license-end
+ */
+
+package app.coronawarn.quicktest.utils;
+
+import app.coronawarn.quicktest.config.PdfConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.io.IOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Limits the number of PDFs rendered at the same time. Renders beyond pdf.bulkhead.maxConcurrent wait for a free
+ * slot, at most pdf.bulkhead.queueCapacity of them and for at most pdf.bulkhead.timeoutInMillis. Rejected renders
+ * fail with 503, so a burst of submissions queues up instead of exhausting the heap.
+ */
+@Slf4j
+@Component
+public class PdfRenderBulkhead {
+
+    private final PdfConfig.Bulkhead config;
+
+    private final int maxConcurrent;
+
+    private final Semaphore permits;
+
+    /**
+     * Renders which are running or waiting for a permit.
+     */
+    private final AtomicInteger admitted = new AtomicInteger();
+
+    private final Counter rejectedFull;
+
+    private final Counter rejectedTimeout;
+
+    /**
+     * Creates the bulkhead and its metrics.
+     */
+    public PdfRenderBulkhead(PdfConfig pdfConfig, MeterRegistry meterRegistry) {
+        this.config = pdfConfig.getBulkhead();
+        this.maxConcurrent = Math.max(1, config.getMaxConcurrent());
+        this.permits = new Semaphore(maxConcurrent, true);
+        Gauge.builder("quicktest.pdf.bulkhead.active", this, PdfRenderBulkhead::getActive)
+            .description("PDFs rendered at the moment")
+            .register(meterRegistry);
+        Gauge.builder("quicktest.pdf.bulkhead.waiting", this, PdfRenderBulkhead::getWaiting)
+            .description("PDFs waiting for a free render slot")
+            .register(meterRegistry);
+        rejectedFull = Counter.builder("quicktest.pdf.bulkhead.rejected")
+            .tag("reason", "full")
+            .description("PDFs rejected by the render bulkhead")
+            .register(meterRegistry);
+        rejectedTimeout = Counter.builder("quicktest.pdf.bulkhead.rejected")
+            .tag("reason", "timeout")
+            .description("PDFs rejected by the render bulkhead")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Renders a PDF as soon as a slot is free.
+     *
+     * @param task the render
+     * @param <T>  result of the render
+     * @return the result of the task
+     * @throws IOException             if the task fails
+     * @throws ResponseStatusException 503 if the queue is full or no slot got free in time
+     */
+    public <T> T execute(RenderTask<T> task) throws IOException {
+        if (admitted.incrementAndGet() > maxConcurrent + config.getQueueCapacity()) {
+            admitted.decrementAndGet();
+            rejectedFull.increment();
+            log.warn("PDF render queue is full");
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE);
+        }
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(config.getTimeoutInMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            admitted.decrementAndGet();
+            rejectedTimeout.increment();
+            log.warn("No PDF render slot got free within {}ms", config.getTimeoutInMillis());
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE);
+        }
+        try {
+            return task.render();
+        } finally {
+            permits.release();
+            admitted.decrementAndGet();
+        }
+    }
+
+    public int getActive() {
+        return maxConcurrent - permits.availablePermits();
+    }
+
+    public int getWaiting() {
+        return Math.max(0, admitted.get() - getActive());
+    }
+
+    /**
+     * A render which may fail with an {@link IOException}, like the PDFBox calls it is made of.
+     */
+    @FunctionalInterface
+    public interface RenderTask<T> {
+        T render() throws IOException;
+    }
+}
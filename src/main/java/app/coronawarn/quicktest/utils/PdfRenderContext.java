@@ -0,0 +1,104 @@
+/*-
+ * ---license-start
+ * Corona-Warn-App / cwa-quick-test-backend
+ * ---
+ * Copyright (C) 2021 - 2023 T-Systems International GmbH and all other contributors
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---license-end
+ */
+
+package app.coronawarn.quicktest.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import lombok.Getter;
+import org.apache.fontbox.ttf.TrueTypeFont;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDType0Font;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+/**
+ * State of a single render: the document and the fonts and images loaded into it. A context is created for every
+ * PDF and must not be shared between threads, the generators themselves keep no per document state.
+ * Closing the context closes the document and returns the parsed fonts to {@link PdfResources}, so it has to be
+ * closed after the document was saved.
+ */
+final class PdfRenderContext implements Closeable {
+
+    @Getter
+    private final PDDocument document;
+
+    private final PdfResources pdfResources;
+
+    private final Map<String, PDFont> fonts = new HashMap<>();
+
+    private final Map<String, PDImageXObject> images = new HashMap<>();
+
+    private final Map<String, TrueTypeFont> parsedFonts = new HashMap<>();
+
+    PdfRenderContext(PDDocument document, PdfResources pdfResources) {
+        this.document = document;
+        this.pdfResources = pdfResources;
+    }
+
+    /**
+     * Returns the font, it is loaded into the document on first use and embedded as subset.
+     */
+    PDFont getFont(String path) throws IOException {
+        PDFont font = fonts.get(path);
+        if (font == null) {
+            TrueTypeFont parsedFont = pdfResources.acquireFont(path);
+            parsedFonts.put(path, parsedFont);
+            font = PDType0Font.load(document, parsedFont, true);
+            fonts.put(path, font);
+        }
+        return font;
+    }
+
+    /**
+     * Writes the subsets of the fonts. {@link PDDocument#save} does this itself, an incremental save does not.
+     */
+    void subsetFonts() throws IOException {
+        for (PDFont font : fonts.values()) {
+            if (font.willBeSubset()) {
+                font.subset();
+            }
+        }
+    }
+
+    /**
+     * Returns the image, it is loaded into the document on first use and shared by all pages.
+     */
+    PDImageXObject getImage(String path) throws IOException {
+        PDImageXObject image = images.get(path);
+        if (image == null) {
+            image = pdfResources.loadImage(document, path);
+            images.put(path, image);
+        }
+        return image;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            document.close();
+        } finally {
+            parsedFonts.forEach(pdfResources::releaseFont);
+            parsedFonts.clear();
+        }
+    }
+}
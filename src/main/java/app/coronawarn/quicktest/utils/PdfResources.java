@@ -0,0 +1,228 @@
+/*-
+ * ---license-start
+ * Corona-Warn-App / cwa-quick-test-backend
+ * ---
+ * Copyright (C) 2021 - 2023 T-Systems International GmbH and all other contributors
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---license-end
+ */
+
+package app.coronawarn.quicktest.utils;
+
+import app.coronawarn.quicktest.config.PdfConfig;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.fontbox.ttf.TTFParser;
+import org.apache.fontbox.ttf.TrueTypeFont;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSDocument;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Component;
+
+/**
+ * Fonts and images used in the generated PDFs. The resources are read from the classpath once, images are decoded
+ * and compressed once and only their encoded stream is copied into each document. Parsed fonts are kept in a pool
+ * and lent to one document at a time.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PdfResources {
+
+    public static final String ARIAL = "pdf/fonts/arial.ttf";
+    public static final String ARIAL_BOLD = "pdf/fonts/arialbd.ttf";
+    public static final String ARIAL_ITALIC = "pdf/fonts/ariali.ttf";
+
+    private final PdfConfig pdfConfig;
+
+    private final Map<String, byte[]> fonts = new ConcurrentHashMap<>();
+
+    /**
+     * Parsed fonts which are not lent to a document at the moment. Their amount is bounded by the renders running
+     * at the same time.
+     */
+    private final Map<String, Queue<TrueTypeFont>> parsedFonts = new ConcurrentHashMap<>();
+
+    /**
+     * Encoded images, the COS objects belong to imageDocument and are only read while holding its lock.
+     */
+    private final Map<String, PDImageXObject> images = new HashMap<>();
+
+    private final PDDocument imageDocument = new PDDocument();
+
+    /**
+     * Loads the fonts and images of the configured PDFs.
+     */
+    @PostConstruct
+    public void preload() {
+        for (String font : List.of(ARIAL, ARIAL_BOLD, ARIAL_ITALIC)) {
+            try {
+                fontBytes(font);
+            } catch (IOException e) {
+                log.error("Could not load font {}", font);
+            }
+        }
+        for (String image : List.of(pdfConfig.getLogoPath(), pdfConfig.getCertFlagPath(),
+            pdfConfig.getCertCertlogoPath(), pdfConfig.getCertFlagSeparatorPath(),
+            pdfConfig.getCertFoldingInstruction())) {
+            try {
+                imageTemplate(image);
+            } catch (IOException e) {
+                log.error("Could not load image {}", image);
+            }
+        }
+    }
+
+    /**
+     * Closes the images and the parsed fonts.
+     */
+    @PreDestroy
+    public void close() throws IOException {
+        imageDocument.close();
+        for (Queue<TrueTypeFont> pool : parsedFonts.values()) {
+            for (TrueTypeFont font = pool.poll(); font != null; font = pool.poll()) {
+                font.close();
+            }
+        }
+    }
+
+    /**
+     * Lends a parsed font to a single document, the font is parsed only if all parsed fonts are in use. A parsed
+     * font must not be used by two documents at the same time and has to be returned with
+     * {@link #releaseFont(String, TrueTypeFont)} after the document was saved.
+     *
+     * @param path classpath location of the TrueType font
+     * @return the parsed font
+     * @throws IOException if the font could not be read
+     */
+    public TrueTypeFont acquireFont(String path) throws IOException {
+        TrueTypeFont font = fontPool(path).poll();
+        return font != null ? font : new TTFParser().parse(new ByteArrayInputStream(fontBytes(path)));
+    }
+
+    /**
+     * Returns a parsed font lent by {@link #acquireFont(String)}.
+     *
+     * @param path classpath location of the TrueType font
+     * @param font the parsed font
+     */
+    public void releaseFont(String path, TrueTypeFont font) {
+        fontPool(path).offer(font);
+    }
+
+    /**
+     * Loads an image into the document. The image should be loaded once per document and drawn on every page it is
+     * shown on, so its stream is written only once.
+     *
+     * @param document the document the image is used in
+     * @param path     classpath location of the image
+     * @return the image
+     * @throws IOException if the image could not be read
+     */
+    public PDImageXObject loadImage(PDDocument document, String path) throws IOException {
+        synchronized (imageDocument) {
+            COSStream stream = (COSStream) copy(imageTemplate(path).getCOSObject(), document.getDocument());
+            return new PDImageXObject(new PDStream(stream), null);
+        }
+    }
+
+    private Queue<TrueTypeFont> fontPool(String path) {
+        return parsedFonts.computeIfAbsent(path, key -> new ConcurrentLinkedQueue<>());
+    }
+
+    private byte[] fontBytes(String path) throws IOException {
+        byte[] bytes = fonts.get(path);
+        if (bytes == null) {
+            bytes = readResource(path);
+            fonts.putIfAbsent(path, bytes);
+        }
+        return bytes;
+    }
+
+    private PDImageXObject imageTemplate(String path) throws IOException {
+        synchronized (imageDocument) {
+            PDImageXObject template = images.get(path);
+            if (template == null) {
+                template = PDImageXObject.createFromByteArray(imageDocument, readResource(path), path);
+                images.put(path, template);
+            }
+            return template;
+        }
+    }
+
+    private static byte[] readResource(String path) throws IOException {
+        try (InputStream input = new ClassPathResource(path).getInputStream()) {
+            return IOUtils.toByteArray(input);
+        }
+    }
+
+    private static COSBase copy(COSBase base, COSDocument target) throws IOException {
+        if (base instanceof COSObject) {
+            return copy(((COSObject) base).getObject(), target);
+        }
+        if (base instanceof COSStream) {
+            COSStream source = (COSStream) base;
+            COSStream stream = target.createCOSStream();
+            copyEntries(source, stream, target);
+            try (InputStream input = source.createRawInputStream();
+                 OutputStream output = stream.createRawOutputStream()) {
+                IOUtils.copy(input, output);
+            }
+            return stream;
+        }
+        if (base instanceof COSDictionary) {
+            COSDictionary dictionary = new COSDictionary();
+            copyEntries((COSDictionary) base, dictionary, target);
+            return dictionary;
+        }
+        if (base instanceof COSArray) {
+            COSArray array = new COSArray();
+            for (COSBase item : (COSArray) base) {
+                array.add(copy(item, target));
+            }
+            return array;
+        }
+        return base;
+    }
+
+    private static void copyEntries(COSDictionary source, COSDictionary target, COSDocument document)
+        throws IOException {
+        for (Map.Entry<COSName, COSBase> entry : source.entrySet()) {
+            if (!COSName.LENGTH.equals(entry.getKey())) {
+                target.setItem(entry.getKey(), copy(entry.getValue(), document));
+            }
+        }
+    }
+}
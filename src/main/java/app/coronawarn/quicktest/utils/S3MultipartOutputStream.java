@@ -0,0 +1,168 @@
+/*-
+ * ---license-start
+ * Corona-Warn-App / cwa-quick-test-backend
+ * ---
+ * Copyright (C) 2021 - 2023 T-Systems International GmbH and all other contributors
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---license-end
+ */
+
+package app.coronawarn.quicktest.utils;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * OutputStream which uploads the written bytes to S3 using a multipart upload.
+ * Only one part is buffered in memory. Objects smaller than one part are uploaded with a single request.
+ * The upload is completed when the stream is closed, {@link #abort()} discards the already uploaded parts.
+ */
+@Slf4j
+public class S3MultipartOutputStream extends OutputStream {
+
+    /**
+     * Minimum size of a part (except the last one) accepted by S3.
+     */
+    public static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+
+    private final AmazonS3 s3Client;
+
+    private final String bucketName;
+
+    private final String objectId;
+
+    private final byte[] buffer;
+
+    private final List<PartETag> partETags = new ArrayList<>();
+
+    private int position;
+
+    private String uploadId;
+
+    private boolean closed;
+
+    @Getter
+    private long size;
+
+    /**
+     * Creates a new stream for the given object.
+     *
+     * @param s3Client   S3 client
+     * @param bucketName name of the bucket
+     * @param objectId   id of the object to create
+     * @param partSize   size of a part, at least {@link #MIN_PART_SIZE}
+     */
+    public S3MultipartOutputStream(AmazonS3 s3Client, String bucketName, String objectId, int partSize) {
+        this.s3Client = s3Client;
+        this.bucketName = bucketName;
+        this.objectId = objectId;
+        this.buffer = new byte[Math.max(MIN_PART_SIZE, partSize)];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        buffer[position++] = (byte) b;
+        size++;
+        if (position == buffer.length) {
+            uploadPart();
+        }
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        ensureOpen();
+        int remaining = length;
+        int from = offset;
+        while (remaining > 0) {
+            int count = Math.min(remaining, buffer.length - position);
+            System.arraycopy(bytes, from, buffer, position, count);
+            position += count;
+            size += count;
+            from += count;
+            remaining -= count;
+            if (position == buffer.length) {
+                uploadPart();
+            }
+        }
+    }
+
+    /**
+     * Uploads the remaining bytes and completes the upload.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (uploadId == null) {
+            ObjectMetadata metadata = new ObjectMetadata();
+            metadata.setContentLength(position);
+            s3Client.putObject(bucketName, objectId, new ByteArrayInputStream(buffer, 0, position), metadata);
+        } else {
+            if (position > 0) {
+                uploadPart();
+            }
+            s3Client.completeMultipartUpload(
+                new CompleteMultipartUploadRequest(bucketName, objectId, uploadId, partETags));
+            log.info("Completed multipart upload of {} with {} parts", objectId, partETags.size());
+        }
+    }
+
+    /**
+     * Aborts the upload and discards all already uploaded parts.
+     */
+    public void abort() {
+        closed = true;
+        if (uploadId != null) {
+            log.warn("Aborting multipart upload of {}", objectId);
+            s3Client.abortMultipartUpload(new AbortMultipartUploadRequest(bucketName, objectId, uploadId));
+        }
+    }
+
+    private void uploadPart() {
+        if (uploadId == null) {
+            uploadId = s3Client.initiateMultipartUpload(
+                new InitiateMultipartUploadRequest(bucketName, objectId)).getUploadId();
+        }
+        UploadPartRequest request = new UploadPartRequest()
+            .withBucketName(bucketName)
+            .withKey(objectId)
+            .withUploadId(uploadId)
+            .withPartNumber(partETags.size() + 1)
+            .withInputStream(new ByteArrayInputStream(buffer, 0, position))
+            .withPartSize(position);
+        partETags.add(s3Client.uploadPart(request).getPartETag());
+        position = 0;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+}
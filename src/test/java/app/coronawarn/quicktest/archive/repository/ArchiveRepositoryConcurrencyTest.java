@@ -0,0 +1,154 @@
+/*-
+ * ---license-start
+ * Corona-Warn-App / cwa-quick-test-backend
+ * ---
+ * Copyright (C) 2021 - 2023 T-Systems International GmbH and all other contributors
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---license-end
+ */
+
+package app.coronawarn.quicktest.archive.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import app.coronawarn.quicktest.archive.domain.Archive;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+@SpringBootTest
+class ArchiveRepositoryConcurrencyTest {
+
+    private static final String TENANT_ID = "concurrency_tenant";
+
+    private static final int WRITERS = 8;
+
+    private static final int READERS = 8;
+
+    private static final int BATCHES = 10;
+
+    private static final int BATCH_SIZE = 20;
+
+    @Autowired
+    private ArchiveRepository archiveRepository;
+
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        deleteArchives();
+        executor = Executors.newFixedThreadPool(WRITERS + READERS);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+        deleteArchives();
+    }
+
+    @Test
+    void concurrentReadersAndWriters() throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Future<Integer>> writers = new ArrayList<>();
+        for (int writer = 0; writer < WRITERS; writer++) {
+            final int id = writer;
+            writers.add(executor.submit(awaitStart(start, () -> {
+                int inserted = 0;
+                for (int batch = 0; batch < BATCHES; batch++) {
+                    // every second writer saves the entries of its neighbour again
+                    final int owner = id % 2 == 0 ? id : id - 1;
+                    final int first = batch * BATCH_SIZE;
+                    final List<Archive> archives = IntStream.range(first, first + BATCH_SIZE)
+                        .mapToObj(i -> buildArchive(owner + "-" + i))
+                        .collect(Collectors.toList());
+                    inserted += archiveRepository.saveAll(archives).getInserted().size();
+                }
+                return inserted;
+            })));
+        }
+        final List<Future<Integer>> readers = new ArrayList<>();
+        for (int reader = 0; reader < READERS; reader++) {
+            readers.add(executor.submit(awaitStart(start, () -> {
+                int read = 0;
+                for (int i = 0; i < BATCHES; i++) {
+                    try (Stream<Archive> archives = archiveRepository.streamAllByTenantId(TENANT_ID, 7)) {
+                        final List<String> hashedGuids = archives.map(Archive::getHashedGuid)
+                            .collect(Collectors.toList());
+                        assertThat(hashedGuids).doesNotHaveDuplicates().isSorted();
+                        read += hashedGuids.size();
+                    }
+                    archiveRepository.countAllByTenantId(TENANT_ID);
+                }
+                return read;
+            })));
+        }
+
+        start.countDown();
+        int inserted = 0;
+        for (Future<Integer> writer : writers) {
+            inserted += writer.get(60, TimeUnit.SECONDS);
+        }
+        for (Future<Integer> reader : readers) {
+            assertThat(reader.get(60, TimeUnit.SECONDS)).isNotNegative();
+        }
+
+        final int expected = WRITERS / 2 * BATCHES * BATCH_SIZE;
+        assertThat(inserted).isEqualTo(expected);
+        assertThat(archiveRepository.countAllByTenantId(TENANT_ID)).isEqualTo(expected);
+        assertThat(archiveRepository.streamAllByTenantId(TENANT_ID, 1000).map(Archive::getHashedGuid))
+            .doesNotHaveDuplicates();
+    }
+
+    private <T> Callable<T> awaitStart(final CountDownLatch start, final Callable<T> task) {
+        return () -> {
+            start.await();
+            return task.call();
+        };
+    }
+
+    private Archive buildArchive(final String suffix) {
+        final Archive archive = new Archive();
+        archive.setHashedGuid(TENANT_ID + "-" + suffix);
+        archive.setIdentifier("identifier");
+        archive.setTenantId(TENANT_ID);
+        archive.setPocId("poc_id");
+        archive.setSecret("secret");
+        archive.setCiphertext("ciphertext");
+        archive.setAlgorithmAes("AES/GCM/NoPadding");
+        archive.setCreatedAt(LocalDateTime.now());
+        archive.setUpdatedAt(LocalDateTime.now());
+        return archive;
+    }
+
+    private void deleteArchives() {
+        int deleted;
+        do {
+            deleted = archiveRepository.deleteByTenantId(TENANT_ID, 1000);
+        } while (deleted > 0);
+    }
+}
@@ -29,7 +29,9 @@ import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import app.coronawarn.quicktest.config.CsvUploadConfig;
@@ -167,6 +169,32 @@ class ArchiveExportControllerTest extends ServletKeycloakAuthUnitTestingSupport
 
     }
 
+    @Test
+    @WithMockKeycloakAuth(
+        authorities = ROLE_ARCHIVE_OPERATOR,
+        claims = @OpenIdClaims(sub = userId)
+    )
+    void downloadArchiveByPartnerIdStreamed() throws Exception {
+        final String partnerId = "P10002";
+        shortTermArchiveRepository.save(buildQuickTestArchive(partnerId, POC_ID_1));
+        shortTermArchiveRepository.save(buildQuickTestArchive(partnerId, POC_ID_1));
+        shortTermArchiveRepository.save(buildQuickTestArchive(partnerId, POC_ID_2));
+
+        archiveSchedulingService.moveToArchiveJob();
+
+        MvcResult asyncResult = mockMvc().perform(MockMvcRequestBuilders
+                .get("/api/archive/" + partnerId).param("stream", "true"))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+        MvcResult mvcResult = mockMvc().perform(asyncDispatch(asyncResult)).andReturn();
+
+        Assertions.assertEquals(HttpStatus.OK.value(), mvcResult.getResponse().getStatus());
+        Assertions.assertEquals(MediaType.APPLICATION_OCTET_STREAM_VALUE, mvcResult.getResponse().getHeader(HttpHeaders.CONTENT_TYPE));
+        Assertions.assertEquals("attachment; filename=quicktest_export.csv", mvcResult.getResponse().getHeader(HttpHeaders.CONTENT_DISPOSITION));
+        Assertions.assertNull(mvcResult.getResponse().getHeader(HttpHeaders.CONTENT_LENGTH));
+        checkCsv(mvcResult.getResponse().getContentAsByteArray(), 24, 4);
+    }
+
     @Test
     @WithMockKeycloakAuth(
         authorities = ROLE_COUNTER,
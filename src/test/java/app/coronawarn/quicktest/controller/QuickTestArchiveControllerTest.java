@@ -31,6 +31,7 @@ import static org.mockito.ArgumentMatchers.anyShort;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import app.coronawarn.quicktest.config.QuicktestKeycloakSpringBootConfigResolver;
@@ -41,6 +42,7 @@ import app.coronawarn.quicktest.service.QuickTestArchiveService;
 import app.coronawarn.quicktest.utils.Utilities;
 import com.c4_soft.springaddons.security.oauth2.test.mockmvc.keycloak.ServletKeycloakAuthUnitTestingSupport;
 import com.google.gson.Gson;
+import java.io.ByteArrayInputStream;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Collections;
@@ -54,6 +56,7 @@ import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMock
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.context.annotation.ComponentScan;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
@@ -80,7 +83,8 @@ class QuickTestArchiveControllerTest extends ServletKeycloakAuthUnitTestingSuppo
     @Test
     void createQuickTestArchive() throws Exception {
         String output = "test output";
-        when(quickTestArchiveService.getPdf(any())).thenReturn(output.getBytes());
+        when(quickTestArchiveService.getPdf(any())).thenAnswer(
+            invocation -> new ByteArrayInputStream(output.getBytes()));
 
         MvcResult mvcResult = mockMvc().with(authentication().authorities(ROLE_LAB)).perform(MockMvcRequestBuilders
             .get("/api/quicktestarchive/6fa4dcecf716d8dd96c9e927dda5484f1a8a9da03155aa760e0c38f9bed645c4/pdf")
@@ -127,6 +131,16 @@ class QuickTestArchiveControllerTest extends ServletKeycloakAuthUnitTestingSuppo
                 result.getResolvedException().getMessage()));
     }
 
+    @Test
+    void getPdfWhileRenderingIsPending() throws Exception {
+        when(quickTestArchiveService.getPdf(any())).thenReturn(null);
+
+        mockMvc().with(authentication().authorities(ROLE_LAB)).perform(MockMvcRequestBuilders
+            .get("/api/quicktestarchive/6fa4dcecf716d8dd96c9e927dda5484f1a8a9da03155aa760e0c38f9bed645c4/pdf"))
+            .andExpect(status().isAccepted())
+            .andExpect(header().string(HttpHeaders.RETRY_AFTER, "2"));
+    }
+
     @Test
     void findArchivesByTestResultAndUpdatedAtBetween() throws Exception {
 
@@ -0,0 +1,148 @@
+/*-
+ * ---license-start
+ * Corona-Warn-App / cwa-quick-test-backend
+ * ---
+ * Copyright (C) 2021 - 2023 T-Systems International GmbH and all other contributors
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---license-end
+ */
+
+package app.coronawarn.quicktest.dbencryption;
+
+import app.coronawarn.quicktest.config.QuickTestConfig;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.security.crypto.encrypt.AesBytesEncryptor;
+
+/**
+ * Throughput (column conversions per second) of encrypting and decrypting a column value with 1, 8 and 32 threads.
+ * <ul>
+ *     <li>globalLock: one shared cipher per direction and one SecureRandom, guarded by synchronized (before)</li>
+ *     <li>perThreadCipher: {@link DbEncryptionService} with a cipher and IV source per thread (after)</li>
+ * </ul>
+ * Both produce the same ciphertext format (IV followed by ciphertext and tag, Base64 encoded).
+ * Run the main method from the test classpath, e.g. in the IDE after mvn test-compile.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DbEncryptionServiceBenchmark {
+
+    private static final String KEY = "abcdefghjklmnopq";
+
+    private static final String VALUE = "Mustermann-Luedenscheid";
+
+    private DbEncryptionService dbEncryptionService;
+
+    private GlobalLockEncryption globalLockEncryption;
+
+    /**
+     * Creates both implementations with the same key.
+     */
+    @Setup
+    public void setUp() throws GeneralSecurityException {
+        QuickTestConfig quickTestConfig = new QuickTestConfig();
+        quickTestConfig.setDbEncryptionKey(KEY);
+        dbEncryptionService = new DbEncryptionService(quickTestConfig);
+        globalLockEncryption = new GlobalLockEncryption(new SecretKeySpec(KEY.getBytes(), "AES"));
+    }
+
+    @Benchmark
+    public String globalLock() throws GeneralSecurityException {
+        return globalLockEncryption.decrypt(globalLockEncryption.encrypt(VALUE));
+    }
+
+    @Benchmark
+    public String perThreadCipher() throws GeneralSecurityException {
+        return dbEncryptionService.decryptString(dbEncryptionService.encryptString(VALUE));
+    }
+
+    /**
+     * Runs the benchmarks with 1, 8 and 32 threads.
+     */
+    public static void main(String[] args) throws RunnerException {
+        for (int threads : new int[] {1, 8, 32}) {
+            new Runner(new OptionsBuilder()
+                .include(DbEncryptionServiceBenchmark.class.getSimpleName())
+                .threads(threads)
+                .build()).run();
+        }
+    }
+
+    /**
+     * The previous implementation of {@link DbEncryptionService}, which serializes all conversions of a direction.
+     */
+    private static final class GlobalLockEncryption {
+
+        private final Key key;
+
+        private final Cipher encryptCipher = AesBytesEncryptor.CipherAlgorithm.GCM.createCipher();
+
+        private final Cipher decryptCipher = AesBytesEncryptor.CipherAlgorithm.GCM.createCipher();
+
+        private final SecureRandom random;
+
+        private GlobalLockEncryption(Key key) throws GeneralSecurityException {
+            this.key = key;
+            this.random = SecureRandom.getInstance("SHA1PRNG");
+        }
+
+        private String encrypt(String plain) throws GeneralSecurityException {
+            synchronized (encryptCipher) {
+                byte[] iv = new byte[12];
+                random.nextBytes(iv);
+                encryptCipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(128, iv));
+                byte[] encrypted = encryptCipher.doFinal(plain.getBytes(StandardCharsets.UTF_8));
+                return Base64.getEncoder().encodeToString(
+                    ByteBuffer.allocate(iv.length + encrypted.length).put(iv).put(encrypted).array());
+            }
+        }
+
+        private String decrypt(String encrypted) throws GeneralSecurityException {
+            synchronized (decryptCipher) {
+                ByteBuffer byteBuffer = ByteBuffer.wrap(Base64.getDecoder().decode(encrypted));
+                byte[] iv = new byte[12];
+                byteBuffer.get(iv);
+                byte[] ciphertext = new byte[byteBuffer.remaining()];
+                byteBuffer.get(ciphertext);
+                decryptCipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(128, iv));
+                return new String(decryptCipher.doFinal(ciphertext), StandardCharsets.UTF_8);
+            }
+        }
+    }
+}
@@ -41,7 +41,14 @@ import java.sql.Clob;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
 import javax.crypto.IllegalBlockSizeException;
@@ -202,6 +209,29 @@ public class DbEncryptionTest {
         }
     }
 
+    @Test
+    public void testConcurrentEncryptionKeepsFormat() throws Exception {
+        DbEncryptionService dbEncryptionService = DbEncryptionService.getInstance();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> encrypted = IntStream.range(0, 1000)
+                .mapToObj(i -> executor.submit(() -> dbEncryptionService.encryptString("value" + i)))
+                .collect(Collectors.toList());
+            List<Future<String>> decrypted = new ArrayList<>();
+            for (Future<String> value : encrypted) {
+                String ciphertext = value.get();
+                decrypted.add(executor.submit(() -> dbEncryptionService.decryptString(ciphertext)));
+            }
+            for (int i = 0; i < encrypted.size(); i++) {
+                assertEquals("value" + i, decrypted.get(i).get());
+                assertEquals("value" + i,
+                    new String(decrypt(Base64.getDecoder().decode(encrypted.get(i).get())), CHARSET));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     private byte[] decrypt(byte[] ciphertext)
         throws InvalidKeyException, BadPaddingException, IllegalBlockSizeException, InvalidAlgorithmParameterException {
         synchronized (decryptCipher) {
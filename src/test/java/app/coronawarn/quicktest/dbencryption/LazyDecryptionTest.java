@@ -0,0 +1,208 @@
+/*-
+ * ---license-start
+ * Corona-Warn-App / cwa-quick-test-backend
+ * ---
+ * Copyright (C) 2021 - 2023 T-Systems International GmbH and all other contributors
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---license-end
+ */
+
+package app.coronawarn.quicktest.dbencryption;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import app.coronawarn.quicktest.config.QuickTestConfig;
+import app.coronawarn.quicktest.domain.QuickTest;
+import app.coronawarn.quicktest.domain.QuickTestArchive;
+import app.coronawarn.quicktest.model.Sex;
+import app.coronawarn.quicktest.repository.QuickTestArchiveDataView;
+import app.coronawarn.quicktest.repository.QuickTestArchiveRepository;
+import app.coronawarn.quicktest.repository.QuickTestRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.LocalDateTime;
+import java.util.stream.Collectors;
+import javax.persistence.EntityManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.annotation.Transactional;
+
+@SpringBootTest(properties = "quicktest.lazy-decryption.enabled=true")
+@Transactional
+class LazyDecryptionTest {
+
+    private static final String HASHED_GUID = "7fa4dcecf716d8dd96c9e927dda5484f1a8a9da03155aa760e0c38f9bed645c4";
+
+    @Autowired
+    private QuickTestConfig quickTestConfig;
+
+    @Autowired
+    private QuickTestRepository quickTestRepository;
+
+    @Autowired
+    private QuickTestArchiveRepository quickTestArchiveRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @BeforeEach
+    void setUp() {
+        quickTestRepository.deleteAll();
+        quickTestArchiveRepository.deleteAll();
+    }
+
+    @AfterEach
+    void tearDown() {
+        quickTestConfig.getLazyDecryption().setEnabled(true);
+    }
+
+    @Test
+    void decryptsOnFirstAccess() {
+        saveQuickTest();
+        double lastName = decryptions("QuickTest", "lastName");
+        double firstName = decryptions("QuickTest", "firstName");
+
+        QuickTest quickTest = quickTestRepository.findById(HASHED_GUID).orElseThrow();
+        assertEquals(QuickTest.TEST_RESULT_PENDING, quickTest.getTestResult());
+        assertEquals("0815", quickTest.getPocId());
+        assertEquals(lastName, decryptions("QuickTest", "lastName"));
+
+        assertEquals("Mustermann", quickTest.getLastName());
+        assertEquals("Mustermann", quickTest.getLastName());
+        assertEquals(lastName + 1, decryptions("QuickTest", "lastName"));
+        assertEquals(firstName, decryptions("QuickTest", "firstName"));
+    }
+
+    @Test
+    void decryptsWhenLoadedIfDisabled() {
+        saveQuickTest();
+        quickTestConfig.getLazyDecryption().setEnabled(false);
+        double lastName = decryptions("QuickTest", "lastName");
+
+        quickTestRepository.findById(HASHED_GUID).orElseThrow();
+        assertEquals(lastName + 1, decryptions("QuickTest", "lastName"));
+    }
+
+    @Test
+    void writesUnchangedCiphertext() {
+        saveQuickTest();
+        String lastName = selectColumn("last_name");
+        String city = selectColumn("city");
+
+        QuickTest quickTest = quickTestRepository.findById(HASHED_GUID).orElseThrow();
+        quickTest.setTestResult(QuickTest.TEST_RESULT_NEGATIVE);
+        quickTest.setCity("Bonn");
+        quickTestRepository.saveAndFlush(quickTest);
+        entityManager.clear();
+
+        assertEquals(lastName, selectColumn("last_name"));
+        assertNotEquals(city, selectColumn("city"));
+        quickTest = quickTestRepository.findById(HASHED_GUID).orElseThrow();
+        assertEquals("Bonn", quickTest.getCity());
+        assertEquals("Mustermann", quickTest.getLastName());
+    }
+
+    @Test
+    void settingUnchangedValueKeepsEntityClean() {
+        saveQuickTest();
+        QuickTest quickTest = quickTestRepository.findById(HASHED_GUID).orElseThrow();
+        Integer version = quickTest.getVersion();
+
+        quickTest.setLastName(quickTest.getLastName());
+        quickTest.setSex(quickTest.getSex());
+        quickTestRepository.saveAndFlush(quickTest);
+        entityManager.clear();
+
+        assertEquals(version, quickTestRepository.findById(HASHED_GUID).orElseThrow().getVersion());
+    }
+
+    @Test
+    void settingValueDoesNotDecryptCurrentValue() {
+        saveQuickTest();
+        double lastName = decryptions("QuickTest", "lastName");
+
+        QuickTest quickTest = quickTestRepository.findById(HASHED_GUID).orElseThrow();
+        quickTest.setLastName("Mustermann");
+        quickTestRepository.saveAndFlush(quickTest);
+        entityManager.clear();
+
+        assertEquals(lastName, decryptions("QuickTest", "lastName"));
+        assertEquals("Mustermann", quickTestRepository.findById(HASHED_GUID).orElseThrow().getLastName());
+    }
+
+    @Test
+    void archiveDataViewDecryptsOnAccess() {
+        QuickTestArchive archive = new QuickTestArchive();
+        archive.setHashedGuid(HASHED_GUID);
+        archive.setShortHashedGuid("7fa4dcec");
+        archive.setTenantId("4711");
+        archive.setPocId("0815");
+        archive.setCreatedAt(LocalDateTime.now());
+        archive.setUpdatedAt(LocalDateTime.now());
+        archive.setTestResult(QuickTest.TEST_RESULT_NEGATIVE);
+        archive.setConfirmationCwa(true);
+        archive.setPrivacyAgreement(true);
+        archive.setLastName("Mustermann");
+        archive.setFirstName("Erika");
+        archive.setSex(Sex.FEMALE);
+        archive.setStreet("Musterstrasse");
+        archive.setZipCode("12345");
+        archive.setCity("Entenhausen");
+        quickTestArchiveRepository.saveAndFlush(archive);
+        entityManager.clear();
+        double lastName = decryptions("QuickTestArchiveDataView", "lastName");
+
+        QuickTestArchiveDataView view = quickTestArchiveRepository.findAllByTenantId("4711", PageRequest.of(0, 10))
+            .collect(Collectors.toList()).get(0);
+        assertEquals(lastName, decryptions("QuickTestArchiveDataView", "lastName"));
+
+        assertEquals("Mustermann", view.getLastName());
+        assertEquals(Sex.FEMALE, view.getSex());
+        assertEquals(lastName + 1, decryptions("QuickTestArchiveDataView", "lastName"));
+    }
+
+    private void saveQuickTest() {
+        QuickTest quickTest = new QuickTest();
+        quickTest.setHashedGuid(HASHED_GUID);
+        quickTest.setShortHashedGuid("7fa4dcec");
+        quickTest.setTenantId("4711");
+        quickTest.setPocId("0815");
+        quickTest.setLastName("Mustermann");
+        quickTest.setFirstName("Erika");
+        quickTest.setSex(Sex.FEMALE);
+        quickTest.setCity("Entenhausen");
+        quickTestRepository.saveAndFlush(quickTest);
+        entityManager.clear();
+    }
+
+    private String selectColumn(String column) {
+        return (String) entityManager.createNativeQuery(
+                "SELECT " + column + " FROM quick_test WHERE hashed_guid = :hashedGuid")
+            .setParameter("hashedGuid", HASHED_GUID)
+            .getSingleResult();
+    }
+
+    private double decryptions(String entity, String field) {
+        Counter counter = meterRegistry.find("quicktest.db.decrypt").tags("entity", entity, "field", field).counter();
+        return counter == null ? 0 : counter.count();
+    }
+}
@@ -0,0 +1,136 @@
+/*-
+ * ---license-start
+ * Corona-Warn-App / cwa-quick-test-backend
+ * ---
+ * Copyright (C) 2021 - 2023 T-Systems International GmbH and all other contributors
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---license-end
+ */
+
+package app.coronawarn.quicktest.dbencryption;
+
+import app.coronawarn.quicktest.config.QuickTestConfig;
+import app.coronawarn.quicktest.model.Sex;
+import java.security.GeneralSecurityException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Latency of writing (save) and reading (load) the personal data of one quick test with both storage layouts.
+ * <ul>
+ *     <li>columns: every value is encrypted and Base64 encoded on its own, like the column converters do</li>
+ *     <li>record: all values are packed into one record which is encrypted once</li>
+ * </ul>
+ * Run the main method from the test classpath, e.g. in the IDE after mvn test-compile.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PersonalDataRecordBenchmark {
+
+    private DbEncryptionService dbEncryptionService;
+
+    private PersonalDataRecordService personalDataRecordService;
+
+    private final Map<String, Object> values = new LinkedHashMap<>();
+
+    private Map<String, String> columns;
+
+    private byte[] record;
+
+    /**
+     * Creates the services and the stored data of a typical quick test.
+     */
+    @Setup
+    public void setUp() throws GeneralSecurityException {
+        QuickTestConfig quickTestConfig = new QuickTestConfig();
+        quickTestConfig.setDbEncryptionKey("abcdefghjklmnopq");
+        dbEncryptionService = new DbEncryptionService(quickTestConfig);
+        personalDataRecordService = new PersonalDataRecordService(quickTestConfig, dbEncryptionService);
+
+        values.put("confirmationCwa", Boolean.TRUE);
+        values.put("privacyAgreement", Boolean.TRUE);
+        values.put("lastName", "Mustermann");
+        values.put("firstName", "Erika");
+        values.put("email", "erika.mustermann@example.org");
+        values.put("phoneNumber", "0800000001");
+        values.put("sex", Sex.FEMALE);
+        values.put("street", "Musterstrasse");
+        values.put("houseNumber", "12a");
+        values.put("zipCode", "12345");
+        values.put("city", "Entenhausen");
+        values.put("testBrandId", "AT1234/21");
+        values.put("testBrandName", "Rapid Antigen Test");
+        values.put("birthday", "1990-02-01");
+        values.put("standardisedFamilyName", "MUSTERMANN");
+        values.put("standardisedGivenName", "ERIKA");
+        values.put("diseaseAgentTargeted", "840539006");
+        values.put("testType", "LP217198-3");
+
+        columns = saveColumns();
+        record = saveRecord();
+    }
+
+    @Benchmark
+    public Map<String, String> saveColumns() throws GeneralSecurityException {
+        Map<String, String> encrypted = new HashMap<>();
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            Object value = entry.getValue();
+            encrypted.put(entry.getKey(), dbEncryptionService.encryptString(
+                value instanceof Sex ? ((Sex) value).name() : value.toString()));
+        }
+        return encrypted;
+    }
+
+    @Benchmark
+    public byte[] saveRecord() {
+        return personalDataRecordService.encode(values);
+    }
+
+    @Benchmark
+    public Map<String, String> loadColumns() throws GeneralSecurityException {
+        Map<String, String> decrypted = new HashMap<>();
+        for (Map.Entry<String, String> entry : columns.entrySet()) {
+            decrypted.put(entry.getKey(), dbEncryptionService.decryptString(entry.getValue()));
+        }
+        return decrypted;
+    }
+
+    @Benchmark
+    public Map<String, Object> loadRecord() {
+        return personalDataRecordService.decode(record);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(PersonalDataRecordBenchmark.class.getSimpleName()).build()).run();
+    }
+}
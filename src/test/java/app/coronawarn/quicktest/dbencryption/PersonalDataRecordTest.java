@@ -0,0 +1,230 @@
+/*-
+ * ---license-start
+ * Corona-Warn-App / cwa-quick-test-backend
+ * ---
+ * Copyright (C) 2021 - 2023 T-Systems International GmbH and all other contributors
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---license-end
+ */
+
+package app.coronawarn.quicktest.dbencryption;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import app.coronawarn.quicktest.archive.domain.ArchiveCipherDtoV1;
+import app.coronawarn.quicktest.config.QuickTestConfig;
+import app.coronawarn.quicktest.domain.QuickTest;
+import app.coronawarn.quicktest.domain.QuickTestArchive;
+import app.coronawarn.quicktest.model.Sex;
+import app.coronawarn.quicktest.repository.QuickTestArchiveDataView;
+import app.coronawarn.quicktest.repository.QuickTestArchiveRepository;
+import app.coronawarn.quicktest.repository.QuickTestRepository;
+import app.coronawarn.quicktest.service.PersonalDataRecordMigrationService;
+import java.time.LocalDateTime;
+import java.util.stream.Collectors;
+import javax.persistence.EntityManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.annotation.Transactional;
+
+@SpringBootTest
+@Transactional
+class PersonalDataRecordTest {
+
+    private static final String HASHED_GUID = "6fa4dcecf716d8dd96c9e927dda5484f1a8a9da03155aa760e0c38f9bed645c4";
+
+    @Autowired
+    private QuickTestConfig quickTestConfig;
+
+    @Autowired
+    private PersonalDataRecordService personalDataRecordService;
+
+    @Autowired
+    private PersonalDataRecordMigrationService migrationService;
+
+    @Autowired
+    private QuickTestRepository quickTestRepository;
+
+    @Autowired
+    private QuickTestArchiveRepository quickTestArchiveRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @BeforeEach
+    void setUp() {
+        quickTestRepository.deleteAll();
+        quickTestArchiveRepository.deleteAll();
+        quickTestConfig.getPersonalDataRecord().getMigration().setPauseInMillis(0);
+    }
+
+    @AfterEach
+    void tearDown() {
+        quickTestConfig.getPersonalDataRecord().setEnabled(false);
+        quickTestConfig.getPersonalDataRecord().getMigration().setEnabled(false);
+    }
+
+    @Test
+    void storesPersonalDataAsOneRecord() {
+        quickTestConfig.getPersonalDataRecord().setEnabled(true);
+        quickTestRepository.saveAndFlush(createQuickTest());
+        entityManager.clear();
+
+        Object[] row = selectColumns("quick_test");
+        assertNull(row[0]);
+        assertNull(row[1]);
+        assertNotNull(row[2]);
+
+        assertPersonalData(quickTestRepository.findById(HASHED_GUID).orElseThrow());
+    }
+
+    @Test
+    void updatesRecord() {
+        quickTestConfig.getPersonalDataRecord().setEnabled(true);
+        quickTestRepository.saveAndFlush(createQuickTest());
+        entityManager.clear();
+
+        QuickTest quickTest = quickTestRepository.findById(HASHED_GUID).orElseThrow();
+        quickTest.setCity("Bonn");
+        quickTestRepository.saveAndFlush(quickTest);
+        entityManager.clear();
+
+        quickTest = quickTestRepository.findById(HASHED_GUID).orElseThrow();
+        assertEquals("Bonn", quickTest.getCity());
+        assertEquals("Mustermann", quickTest.getLastName());
+        assertNull(selectColumns("quick_test")[0]);
+    }
+
+    @Test
+    void writesColumnsAgainWhenDisabled() {
+        quickTestConfig.getPersonalDataRecord().setEnabled(true);
+        quickTestRepository.saveAndFlush(createQuickTest());
+        entityManager.clear();
+
+        quickTestConfig.getPersonalDataRecord().setEnabled(false);
+        QuickTest quickTest = quickTestRepository.findById(HASHED_GUID).orElseThrow();
+        quickTest.setTestResult(QuickTest.TEST_RESULT_NEGATIVE);
+        quickTestRepository.saveAndFlush(quickTest);
+        entityManager.clear();
+
+        Object[] row = selectColumns("quick_test");
+        assertNotNull(row[0]);
+        assertNotNull(row[1]);
+        assertNull(row[2]);
+        assertPersonalData(quickTestRepository.findById(HASHED_GUID).orElseThrow());
+    }
+
+    @Test
+    void migrationConvertsColumnsToRecord() {
+        quickTestRepository.saveAndFlush(createQuickTest());
+        quickTestArchiveRepository.saveAndFlush(createQuickTestArchive());
+        entityManager.clear();
+        Integer version = quickTestArchiveRepository.findById(HASHED_GUID).orElseThrow().getVersion();
+        entityManager.clear();
+
+        quickTestConfig.getPersonalDataRecord().setEnabled(true);
+        quickTestConfig.getPersonalDataRecord().getMigration().setEnabled(true);
+        migrationService.migrate();
+        entityManager.clear();
+
+        for (String table : new String[] {"quick_test", "quick_test_archive"}) {
+            Object[] row = selectColumns(table);
+            assertNull(row[0]);
+            assertNull(row[1]);
+            assertNotNull(row[2]);
+        }
+        assertPersonalData(quickTestRepository.findById(HASHED_GUID).orElseThrow());
+        QuickTestArchive archive = quickTestArchiveRepository.findById(HASHED_GUID).orElseThrow();
+        assertEquals("Mustermann", archive.getLastName());
+        assertEquals(Sex.FEMALE, archive.getSex());
+        assertEquals(version, archive.getVersion());
+    }
+
+    @Test
+    void archiveDataViewContainsRecord() {
+        quickTestConfig.getPersonalDataRecord().setEnabled(true);
+        quickTestArchiveRepository.saveAndFlush(createQuickTestArchive());
+        entityManager.clear();
+
+        QuickTestArchiveDataView view = quickTestArchiveRepository.findAllByTenantId("4711", PageRequest.of(0, 10))
+            .collect(Collectors.toList()).get(0);
+        assertNull(view.getLastName());
+
+        ArchiveCipherDtoV1 dto = new ArchiveCipherDtoV1();
+        personalDataRecordService.apply(view.getPersonalData(), dto);
+        assertEquals("Mustermann", dto.getLastName());
+        assertEquals(Sex.FEMALE, dto.getSex());
+        assertEquals(Boolean.TRUE, dto.getConfirmationCwa());
+    }
+
+    private Object[] selectColumns(String table) {
+        return (Object[]) entityManager.createNativeQuery(
+                "SELECT last_name, sex, personal_data FROM " + table + " WHERE hashed_guid = :hashedGuid")
+            .setParameter("hashedGuid", HASHED_GUID)
+            .getSingleResult();
+    }
+
+    private void assertPersonalData(QuickTest quickTest) {
+        assertEquals("Mustermann", quickTest.getLastName());
+        assertEquals("Erika", quickTest.getFirstName());
+        assertEquals(Sex.FEMALE, quickTest.getSex());
+        assertEquals(Boolean.TRUE, quickTest.getConfirmationCwa());
+        assertEquals("Entenhausen", quickTest.getCity());
+        assertEquals("MUSTERMANN", quickTest.getStandardisedFamilyName());
+        assertNull(quickTest.getEmail());
+    }
+
+    private QuickTest createQuickTest() {
+        QuickTest quickTest = new QuickTest();
+        quickTest.setHashedGuid(HASHED_GUID);
+        quickTest.setShortHashedGuid("6fa4dcec");
+        quickTest.setTenantId("4711");
+        quickTest.setPocId("0815");
+        quickTest.setConfirmationCwa(true);
+        quickTest.setPrivacyAgreement(true);
+        quickTest.setLastName("Mustermann");
+        quickTest.setFirstName("Erika");
+        quickTest.setSex(Sex.FEMALE);
+        quickTest.setCity("Entenhausen");
+        quickTest.setStandardisedFamilyName("MUSTERMANN");
+        quickTest.setTestResultServerHash("a8a9da03155aa760e0c38f9bed645c48fa4dcecf716d8dd96c9e927dda5484f1");
+        return quickTest;
+    }
+
+    private QuickTestArchive createQuickTestArchive() {
+        QuickTestArchive archive = new QuickTestArchive();
+        archive.setHashedGuid(HASHED_GUID);
+        archive.setShortHashedGuid("6fa4dcec");
+        archive.setTenantId("4711");
+        archive.setPocId("0815");
+        archive.setCreatedAt(LocalDateTime.now());
+        archive.setUpdatedAt(LocalDateTime.now());
+        archive.setTestResult(QuickTest.TEST_RESULT_NEGATIVE);
+        archive.setConfirmationCwa(true);
+        archive.setPrivacyAgreement(true);
+        archive.setLastName("Mustermann");
+        archive.setFirstName("Erika");
+        archive.setSex(Sex.FEMALE);
+        archive.setStreet("Musterstrasse");
+        archive.setZipCode("12345");
+        archive.setCity("Entenhausen");
+        return archive;
+    }
+}
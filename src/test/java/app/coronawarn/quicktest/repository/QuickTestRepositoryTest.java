@@ -0,0 +1,102 @@
+/*-
+ * ---license-start
+ * Corona-Warn-App / cwa-quick-test-backend
+ * ---
+ * Copyright (C) 2021 - 2023 T-Systems International GmbH and all other contributors
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---license-end
+ */
+package app.coronawarn.quicktest.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import app.coronawarn.quicktest.domain.QuickTest;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.apache.commons.lang3.RandomUtils;
+import org.apache.tomcat.util.buf.HexUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+@SpringBootTest
+class QuickTestRepositoryTest {
+
+    private static final LocalDateTime DELETE_TIMESTAMP = LocalDateTime.of(2021, 6, 1, 0, 0);
+
+    @Autowired
+    private QuickTestRepository quickTestRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @BeforeEach
+    void setUp() {
+        quickTestRepository.deleteAll();
+    }
+
+    @Test
+    void keysetChunksDoNotSkipQuickTestsWithSameCreatedAt() {
+        final List<String> expected = new ArrayList<>();
+        for (LocalDateTime createdAt : List.of(DELETE_TIMESTAMP.minusDays(3), DELETE_TIMESTAMP.minusDays(2),
+            DELETE_TIMESTAMP.minusDays(1))) {
+            for (int i = 0; i < 3; i++) {
+                expected.add(saveWithResult(createdAt).getHashedGuid());
+            }
+        }
+        final QuickTest withoutResult = quickTestRepository.saveAndFlush(quickTest(DELETE_TIMESTAMP.minusDays(2)));
+        saveWithResult(DELETE_TIMESTAMP);
+
+        // chunks of 2 end within a group of the same created at, every chunk is deleted before the next is read
+        final PageRequest page = PageRequest.of(0, 2);
+        final List<String> found = new ArrayList<>();
+        List<QuickTest> chunk = quickTestRepository.findToDelete(DELETE_TIMESTAMP, page);
+        while (!chunk.isEmpty()) {
+            final List<String> hashedGuids = chunk.stream().map(QuickTest::getHashedGuid).collect(Collectors.toList());
+            found.addAll(hashedGuids);
+            new TransactionTemplate(transactionManager).executeWithoutResult(status ->
+                quickTestRepository.deleteByHashedGuids(hashedGuids));
+            final QuickTest last = chunk.get(chunk.size() - 1);
+            chunk = quickTestRepository.findToDeleteAfter(DELETE_TIMESTAMP, last.getCreatedAt(), last.getHashedGuid(),
+                page);
+        }
+
+        assertThat(found).hasSize(9).containsExactlyInAnyOrderElementsOf(expected);
+        assertThat(quickTestRepository.findHashedGuidsByCreatedAtBefore(DELETE_TIMESTAMP, PageRequest.of(0, 10)))
+            .containsExactly(withoutResult.getHashedGuid());
+    }
+
+    private QuickTest saveWithResult(LocalDateTime createdAt) {
+        final QuickTest quickTest = quickTestRepository.saveAndFlush(quickTest(createdAt));
+        quickTest.setTestResult(QuickTest.TEST_RESULT_NEGATIVE);
+        return quickTestRepository.saveAndFlush(quickTest);
+    }
+
+    private QuickTest quickTest(LocalDateTime createdAt) {
+        final String hashedGuid = HexUtils.toHexString(RandomUtils.nextBytes(32));
+        final QuickTest quickTest = new QuickTest();
+        quickTest.setHashedGuid(hashedGuid);
+        quickTest.setShortHashedGuid(hashedGuid.substring(0, 8));
+        quickTest.setTenantId("keyset_tenant");
+        quickTest.setPocId("keyset_poc");
+        quickTest.setCreatedAt(createdAt);
+        return quickTest;
+    }
+}
@@ -0,0 +1,156 @@
+/*-
+ * ---license-start
+ * Corona-Warn-App / cwa-quick-test-backend
+ * ---
+ * Copyright (C) 2021 - 2023 T-Systems International GmbH and all other contributors
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---license-end
+ */
+
+package app.coronawarn.quicktest.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import app.coronawarn.quicktest.archive.domain.Archive;
+import app.coronawarn.quicktest.archive.domain.ArchiveCipherDtoV1;
+import app.coronawarn.quicktest.archive.repository.ArchiveRepository;
+import app.coronawarn.quicktest.domain.QuickTestArchive;
+import app.coronawarn.quicktest.model.Sex;
+import app.coronawarn.quicktest.repository.QuickTestArchiveRepository;
+import app.coronawarn.quicktest.service.cryption.CryptionService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.apache.commons.lang3.RandomUtils;
+import org.apache.tomcat.util.buf.HexUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+
+@SpringBootTest(properties = "archive.envelope.enabled=true")
+class ArchiveEnvelopeTest {
+
+    private static final String TENANT_ID = "envelope_tenant";
+
+    @Autowired
+    private ArchiveService archiveService;
+
+    @Autowired
+    private QuickTestArchiveRepository quickTestArchiveRepository;
+
+    @Autowired
+    private ArchiveRepository archiveRepository;
+
+    @Autowired
+    private CryptionService cryptionService;
+
+    @Autowired
+    private ObjectMapper mapper;
+
+    @SpyBean
+    private KeyProvider keyProvider;
+
+    @BeforeEach
+    void setUp() {
+        quickTestArchiveRepository.deleteAll();
+        archiveService.deleteByTenantId(TENANT_ID);
+        clearInvocations(keyProvider);
+    }
+
+    @Test
+    void moveToArchiveWrapsOneDataKeyPerTenant() {
+        for (int i = 0; i < 5; i++) {
+            quickTestArchiveRepository.saveAndFlush(buildQuickTestArchive());
+        }
+
+        archiveService.moveToArchive();
+
+        verify(keyProvider, times(1)).encrypt(anyString(), eq(TENANT_ID));
+        final List<Archive> archives = archiveRepository.streamAllByTenantId(archiveService.createHash(TENANT_ID), 100)
+            .collect(Collectors.toList());
+        assertThat(archives).hasSize(5);
+        assertThat(archives).extracting(Archive::getSecret).containsOnlyNulls();
+        assertThat(archives.stream().map(Archive::getKeyId).distinct().collect(Collectors.toList()))
+            .hasSize(1).doesNotContainNull();
+
+        assertThat(readLongtermArchive(TENANT_ID)).hasSize(5);
+        // unwrapped data key is cached
+        verify(keyProvider, never()).decrypt(anyString(), eq(TENANT_ID));
+    }
+
+    @Test
+    void entriesWithOwnSecretStayReadable() throws Exception {
+        final QuickTestArchive legacyTest = buildQuickTestArchive();
+        final ArchiveCipherDtoV1 dto = new ArchiveCipherDtoV1();
+        dto.setHashedGuid(legacyTest.getHashedGuid());
+        dto.setTenantId(TENANT_ID);
+        dto.setPocId(legacyTest.getPocId());
+        final String secret = cryptionService.generateRandomSecret();
+
+        final Archive legacy = new Archive();
+        legacy.setHashedGuid(legacyTest.getHashedGuid());
+        legacy.setIdentifier("identifier");
+        legacy.setTenantId(archiveService.createHash(TENANT_ID));
+        legacy.setPocId(archiveService.createHash(legacyTest.getPocId()));
+        legacy.setSecret(keyProvider.encrypt(secret, TENANT_ID));
+        legacy.setCiphertext(cryptionService.getAesCryption().encrypt(secret, mapper.writeValueAsString(dto)));
+        legacy.setAlgorithmAes(cryptionService.getAesCryption().getAlgorithm());
+        legacy.setCreatedAt(LocalDateTime.now());
+        legacy.setUpdatedAt(LocalDateTime.now());
+        archiveRepository.save(legacy);
+
+        final QuickTestArchive envelopeTest = buildQuickTestArchive();
+        quickTestArchiveRepository.saveAndFlush(envelopeTest);
+        archiveService.moveToArchive();
+
+        assertThat(readLongtermArchive(TENANT_ID))
+            .extracting(ArchiveCipherDtoV1::getHashedGuid)
+            .containsExactlyInAnyOrder(legacyTest.getHashedGuid(), envelopeTest.getHashedGuid());
+    }
+
+    private QuickTestArchive buildQuickTestArchive() {
+        QuickTestArchive qta = new QuickTestArchive();
+        qta.setShortHashedGuid(HexUtils.toHexString(RandomUtils.nextBytes(4)));
+        qta.setHashedGuid(HexUtils.toHexString(RandomUtils.nextBytes(32)));
+        qta.setTenantId(TENANT_ID);
+        qta.setPocId("poc_id");
+        qta.setCreatedAt(LocalDateTime.now().minusMonths(3));
+        qta.setUpdatedAt(LocalDateTime.now().minusMonths(2));
+        qta.setConfirmationCwa(Boolean.TRUE);
+        qta.setTestResult(Short.valueOf("6"));
+        qta.setPrivacyAgreement(Boolean.TRUE);
+        qta.setLastName("last_name");
+        qta.setFirstName("first_name");
+        qta.setSex(Sex.MALE);
+        qta.setBirthday("2000-01-01");
+        qta.setPdf("PDF".getBytes());
+        return qta;
+    }
+
+    private List<ArchiveCipherDtoV1> readLongtermArchive(final String tenantId) {
+        try (Stream<ArchiveCipherDtoV1> archives = archiveService.streamQuicktestsFromLongtermByTenantId(tenantId)) {
+            return archives.collect(Collectors.toList());
+        }
+    }
+}
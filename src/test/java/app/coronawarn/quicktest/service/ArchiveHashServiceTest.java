@@ -0,0 +1,95 @@
+/*-
+ * ---license-start
+ * Corona-Warn-App / cwa-quick-test-backend
+ * ---
+ * Copyright (C) 2021 - 2023 T-Systems International GmbH and all other contributors
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---license-end
+ */
+
+package app.coronawarn.quicktest.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.bouncycastle.util.encoders.Hex;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+@SpringBootTest
+class ArchiveHashServiceTest {
+
+    @Autowired
+    private ArchiveHashService hashService;
+
+    @Autowired
+    private KeyProvider keyProvider;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    void createHashMatchesPepperedDigest() throws Exception {
+        final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        digest.update(keyProvider.getPepper());
+        final String expected = Hex.toHexString(digest.digest("tenant".getBytes(StandardCharsets.UTF_8)));
+
+        assertThat(hashService.createHash("tenant")).isEqualTo(expected);
+        assertThat(hashService.createHash("tenant")).isEqualTo(expected);
+        assertThat(hashService.createCachedHash("tenant")).isEqualTo(expected);
+        assertThat(hashService.createHash(" ")).isEmpty();
+    }
+
+    @Test
+    void createCachedHashCountsHitsAndMisses() {
+        final double hits = count("hit");
+        final double misses = count("miss");
+
+        final String hash = hashService.createCachedHash("cached_poc");
+        assertThat(hashService.createCachedHash("cached_poc")).isEqualTo(hash);
+        assertThat(hashService.createCachedHash("cached_poc")).isEqualTo(hash);
+
+        assertThat(count("miss")).isEqualTo(misses + 1);
+        assertThat(count("hit")).isEqualTo(hits + 2);
+    }
+
+    @Test
+    void createHashIsThreadSafe() throws Exception {
+        final String expected = hashService.createHash("concurrent");
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<String>> hashes = IntStream.range(0, 200)
+                .mapToObj(i -> executor.submit(() -> hashService.createHash("concurrent")))
+                .collect(Collectors.toList());
+            for (Future<String> hash : hashes) {
+                assertThat(hash.get()).isEqualTo(expected);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private double count(final String result) {
+        return meterRegistry.get("archive.hash.cache").tag("result", result).counter().count();
+    }
+}
@@ -0,0 +1,116 @@
+/*-
+ * ---license-start
+ * Corona-Warn-App / cwa-quick-test-backend
+ * ---
+ * Copyright (C) 2021 - 2023 T-Systems International GmbH and all other contributors
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---license-end
+ */
+
+package app.coronawarn.quicktest.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import app.coronawarn.quicktest.archive.domain.ArchiveCipherDtoV1;
+import app.coronawarn.quicktest.model.Sex;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Base64;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.RandomStringUtils;
+import org.apache.commons.lang3.RandomUtils;
+import org.apache.tomcat.util.buf.HexUtils;
+import org.junit.jupiter.api.Test;
+
+@Slf4j
+class ArchiveRecordCodecTest {
+
+    private final ArchiveRecordCodec codec = new ArchiveRecordCodec();
+
+    private final ObjectMapper mapper = new ObjectMapper().registerModule(new JavaTimeModule());
+
+    @Test
+    void encodeAndDecode() {
+        final ArchiveCipherDtoV1 dto = buildDto(0);
+
+        final ArchiveCipherDtoV1 decoded = codec.decode(codec.encode(dto));
+
+        assertThat(decoded).isEqualTo(dto);
+    }
+
+    @Test
+    void encodedRecordsAreSmallerThanJson() throws Exception {
+        final List<ArchiveCipherDtoV1> dtos = IntStream.range(0, 2000).mapToObj(this::buildDto)
+            .collect(Collectors.toList());
+
+        long jsonBytes = 0;
+        final long jsonStart = System.nanoTime();
+        for (ArchiveCipherDtoV1 dto : dtos) {
+            // format version 1 stores the JSON as Base64 text of the ciphertext
+            jsonBytes += Base64.getEncoder().encode(mapper.writeValueAsString(dto)
+                .getBytes(StandardCharsets.UTF_8)).length;
+        }
+        final long jsonNanos = System.nanoTime() - jsonStart;
+
+        long binaryBytes = 0;
+        final long binaryStart = System.nanoTime();
+        for (ArchiveCipherDtoV1 dto : dtos) {
+            final byte[] encoded = codec.encode(dto);
+            assertThat(codec.decode(encoded).getHashedGuid()).isEqualTo(dto.getHashedGuid());
+            binaryBytes += encoded.length;
+        }
+        final long binaryNanos = System.nanoTime() - binaryStart;
+
+        log.info("Format 1: {} bytes, Format 2: {} bytes ({}% saved), encode time format 1: {} ms, "
+                + "encode/decode time format 2: {} ms", jsonBytes, binaryBytes,
+            100 - binaryBytes * 100 / jsonBytes, jsonNanos / 1_000_000, binaryNanos / 1_000_000);
+        assertThat(binaryBytes).isLessThan(jsonBytes / 2);
+    }
+
+    private ArchiveCipherDtoV1 buildDto(final int i) {
+        final ArchiveCipherDtoV1 dto = new ArchiveCipherDtoV1();
+        dto.setHashedGuid(HexUtils.toHexString(RandomUtils.nextBytes(32)));
+        dto.setShortHashedGuid(HexUtils.toHexString(RandomUtils.nextBytes(4)));
+        dto.setTenantId("tenant_" + i % 10);
+        dto.setPocId("poc_" + i % 100);
+        dto.setCreatedAt(LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS));
+        dto.setUpdatedAt(LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS));
+        dto.setVersion(i % 3);
+        dto.setConfirmationCwa(Boolean.TRUE);
+        dto.setTestResult((short) 6);
+        dto.setPrivacyAgreement(Boolean.TRUE);
+        dto.setLastName(RandomStringUtils.randomAlphabetic(10));
+        dto.setFirstName(RandomStringUtils.randomAlphabetic(8));
+        dto.setEmail(RandomStringUtils.randomAlphabetic(8) + "@example.org");
+        dto.setPhoneNumber(RandomStringUtils.randomNumeric(11));
+        dto.setSex(Sex.DIVERSE);
+        dto.setStreet(RandomStringUtils.randomAlphabetic(12));
+        dto.setHouseNumber(RandomStringUtils.randomNumeric(2));
+        dto.setZipCode(RandomStringUtils.randomNumeric(5));
+        dto.setCity(RandomStringUtils.randomAlphabetic(9));
+        dto.setTestBrandId("1232");
+        dto.setTestBrandName("Abbott Rapid Diagnostics, Panbio COVID-19 Ag Rapid Test");
+        dto.setBirthday("2000-01-01");
+        dto.setTestResultServerHash(HexUtils.toHexString(RandomUtils.nextBytes(32)));
+        dto.setAdditionalInfo("additional_info");
+        dto.setGroupName("group_name");
+        return dto;
+    }
+}
@@ -0,0 +1,145 @@
+/*-
+ * ---license-start
+ * Corona-Warn-App / cwa-quick-test-backend
+ * ---
+ * Copyright (C) 2021 - 2023 T-Systems International GmbH and all other contributors
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---license-end
+ */
+
+package app.coronawarn.quicktest.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import app.coronawarn.quicktest.archive.domain.Archive;
+import app.coronawarn.quicktest.archive.domain.ArchiveCipherDtoV1;
+import app.coronawarn.quicktest.archive.domain.ArchiveCipherDtoV2;
+import app.coronawarn.quicktest.archive.repository.ArchiveRepository;
+import app.coronawarn.quicktest.domain.QuickTestArchive;
+import app.coronawarn.quicktest.model.Sex;
+import app.coronawarn.quicktest.repository.QuickTestArchiveRepository;
+import app.coronawarn.quicktest.service.cryption.CryptionService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.apache.commons.lang3.RandomUtils;
+import org.apache.tomcat.util.buf.HexUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+@SpringBootTest(properties = "archive.recordFormatVersion=2")
+class ArchiveRecordFormatTest {
+
+    private static final String TENANT_ID = "record_format_tenant";
+
+    @Autowired
+    private ArchiveService archiveService;
+
+    @Autowired
+    private QuickTestArchiveRepository quickTestArchiveRepository;
+
+    @Autowired
+    private ArchiveRepository archiveRepository;
+
+    @Autowired
+    private KeyProvider keyProvider;
+
+    @Autowired
+    private CryptionService cryptionService;
+
+    @Autowired
+    private ObjectMapper mapper;
+
+    @BeforeEach
+    void setUp() {
+        quickTestArchiveRepository.deleteAll();
+        archiveService.deleteByTenantId(TENANT_ID);
+    }
+
+    @Test
+    void moveToArchiveStoresBinaryRecords() {
+        final QuickTestArchive test = buildQuickTestArchive();
+        quickTestArchiveRepository.saveAndFlush(test);
+
+        archiveService.moveToArchive();
+
+        final List<Archive> archives = archiveRepository.streamAllByTenantId(archiveService.createHash(TENANT_ID), 100)
+            .collect(Collectors.toList());
+        assertThat(archives).hasSize(1);
+        assertThat(archives.get(0).getFormatVersion()).isEqualTo(ArchiveCipherDtoV2.FORMAT_VERSION);
+        assertThat(archives.get(0).getCiphertext()).isNull();
+        assertThat(archives.get(0).getCiphertextBinary()).isNotEmpty();
+
+        final List<ArchiveCipherDtoV1> dtos = readLongtermArchive(TENANT_ID);
+        assertThat(dtos).hasSize(1);
+        assertThat(dtos.get(0).getHashedGuid()).isEqualTo(test.getHashedGuid());
+        assertThat(dtos.get(0).getLastName()).isEqualTo(test.getLastName());
+        assertThat(dtos.get(0).getCreatedAt()).isEqualToIgnoringNanos(test.getCreatedAt());
+    }
+
+    @Test
+    void jsonRecordsStayReadable() throws Exception {
+        final ArchiveCipherDtoV1 dto = new ArchiveCipherDtoV1();
+        dto.setHashedGuid(HexUtils.toHexString(RandomUtils.nextBytes(32)));
+        dto.setTenantId(TENANT_ID);
+        final String secret = cryptionService.generateRandomSecret();
+
+        final Archive json = new Archive();
+        json.setHashedGuid(dto.getHashedGuid());
+        json.setIdentifier("identifier");
+        json.setTenantId(archiveService.createHash(TENANT_ID));
+        json.setPocId(archiveService.createHash("poc_id"));
+        json.setSecret(keyProvider.encrypt(secret, TENANT_ID));
+        json.setCiphertext(cryptionService.getAesCryption().encrypt(secret, mapper.writeValueAsString(dto)));
+        json.setAlgorithmAes(cryptionService.getAesCryption().getAlgorithm());
+        json.setCreatedAt(LocalDateTime.now());
+        json.setUpdatedAt(LocalDateTime.now());
+        archiveRepository.save(json);
+
+        final QuickTestArchive binary = buildQuickTestArchive();
+        quickTestArchiveRepository.saveAndFlush(binary);
+        archiveService.moveToArchive();
+
+        assertThat(readLongtermArchive(TENANT_ID))
+            .extracting(ArchiveCipherDtoV1::getHashedGuid)
+            .containsExactlyInAnyOrder(dto.getHashedGuid(), binary.getHashedGuid());
+    }
+
+    private QuickTestArchive buildQuickTestArchive() {
+        QuickTestArchive qta = new QuickTestArchive();
+        qta.setShortHashedGuid(HexUtils.toHexString(RandomUtils.nextBytes(4)));
+        qta.setHashedGuid(HexUtils.toHexString(RandomUtils.nextBytes(32)));
+        qta.setTenantId(TENANT_ID);
+        qta.setPocId("poc_id");
+        qta.setCreatedAt(LocalDateTime.now().minusMonths(3));
+        qta.setUpdatedAt(LocalDateTime.now().minusMonths(2));
+        qta.setTestResult(Short.valueOf("6"));
+        qta.setLastName("last_name");
+        qta.setFirstName("first_name");
+        qta.setSex(Sex.FEMALE);
+        qta.setBirthday("2000-01-01");
+        qta.setPdf("PDF".getBytes());
+        return qta;
+    }
+
+    private List<ArchiveCipherDtoV1> readLongtermArchive(final String tenantId) {
+        try (Stream<ArchiveCipherDtoV1> archives = archiveService.streamQuicktestsFromLongtermByTenantId(tenantId)) {
+            return archives.collect(Collectors.toList());
+        }
+    }
+}
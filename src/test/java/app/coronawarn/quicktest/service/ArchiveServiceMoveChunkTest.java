@@ -0,0 +1,178 @@
+/*-
+ * ---license-start
+ * Corona-Warn-App / cwa-quick-test-backend
+ * ---
+ * Copyright (C) 2021 - 2023 T-Systems International GmbH and all other contributors
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---license-end
+ */
+package app.coronawarn.quicktest.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doCallRealMethod;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import app.coronawarn.quicktest.archive.domain.Archive;
+import app.coronawarn.quicktest.archive.repository.ArchiveRepository;
+import app.coronawarn.quicktest.domain.QuickTestArchive;
+import app.coronawarn.quicktest.model.Sex;
+import app.coronawarn.quicktest.repository.QuickTestArchiveDataView;
+import app.coronawarn.quicktest.repository.QuickTestArchiveRepository;
+import app.coronawarn.quicktest.service.cryption.CryptionService;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.apache.commons.lang3.RandomUtils;
+import org.apache.tomcat.util.buf.HexUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+@SpringBootTest(properties = {
+    "archive.moveToArchiveJob.batchSize=2",
+    "archive.moveToArchiveJob.parallelism=2"
+})
+class ArchiveServiceMoveChunkTest {
+
+    private static final int ENTITIES = 5;
+
+    @Autowired
+    private ArchiveService archiveService;
+
+    @Autowired
+    private QuickTestArchiveRepository quickTestArchiveRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @SpyBean
+    private ArchiveRepository archiveRepository;
+
+    @SpyBean
+    private CryptionService cryptionService;
+
+    private List<String> hashedGuids;
+
+    @BeforeEach
+    void setUp() {
+        quickTestArchiveRepository.deleteAll();
+        hashedGuids = new ArrayList<>();
+        for (int i = 0; i < ENTITIES; i++) {
+            hashedGuids.add(quickTestArchiveRepository.saveAndFlush(buildQuickTestArchive()).getHashedGuid());
+        }
+    }
+
+    @Test
+    void movesAllEntitiesInBatchesInTheOrderOfTheChunk() {
+        final List<String> chunk = readChunk();
+
+        archiveService.moveToArchive();
+
+        @SuppressWarnings("unchecked")
+        final ArgumentCaptor<List<Archive>> batches = ArgumentCaptor.forClass(List.class);
+        verify(archiveRepository, times(3)).saveAll(batches.capture());
+        assertThat(batches.getAllValues()).extracting(List::size).containsExactly(2, 2, 1);
+        assertThat(batches.getAllValues().stream()
+            .flatMap(List::stream)
+            .map(Archive::getHashedGuid)
+            .collect(Collectors.toList()))
+            .containsExactlyElementsOf(chunk);
+        assertThat(archiveRepository.findAllHashedGuids(hashedGuids)).containsExactlyInAnyOrderElementsOf(hashedGuids);
+        assertThat(quickTestArchiveRepository.findAll()).isEmpty();
+    }
+
+    @Test
+    void keepsShortTermEntitiesIfBuildingArchiveFails() {
+        doThrow(new IllegalStateException("no secret")).doCallRealMethod()
+            .when(cryptionService).generateRandomSecret();
+
+        assertThatThrownBy(() -> archiveService.moveToArchive()).isInstanceOf(IllegalStateException.class);
+
+        assertThat(shortTermHashedGuids()).containsExactlyInAnyOrderElementsOf(hashedGuids);
+
+        // the next run moves all entities, entities already stored in the longterm archive are cleaned up
+        archiveService.moveToArchive();
+
+        assertThat(shortTermHashedGuids()).isEmpty();
+        assertThat(archiveRepository.findAllHashedGuids(hashedGuids)).containsExactlyInAnyOrderElementsOf(hashedGuids);
+    }
+
+    @Test
+    void keepsShortTermEntitiesIfSavingBatchFails() {
+        doCallRealMethod().doThrow(new IllegalStateException("longterm db not available"))
+            .when(archiveRepository).saveAll(anyList());
+        final List<String> chunk = readChunk();
+
+        assertThatThrownBy(() -> archiveService.moveToArchive()).isInstanceOf(IllegalStateException.class);
+
+        assertThat(shortTermHashedGuids()).containsExactlyInAnyOrderElementsOf(hashedGuids);
+        // only the first batch reached the longterm archive
+        assertThat(archiveRepository.findAllHashedGuids(hashedGuids))
+            .containsExactlyInAnyOrderElementsOf(chunk.subList(0, 2));
+
+        reset(archiveRepository);
+        archiveService.moveToArchive();
+
+        assertThat(shortTermHashedGuids()).isEmpty();
+        assertThat(archiveRepository.findAllHashedGuids(hashedGuids)).containsExactlyInAnyOrderElementsOf(hashedGuids);
+    }
+
+    /**
+     * Reads the hashed guids in the order in which moveToArchive reads the chunk.
+     */
+    private List<String> readChunk() {
+        return new TransactionTemplate(transactionManager).execute(status ->
+            quickTestArchiveRepository.findAllByUpdatedAtBefore(LocalDateTime.now().minusMinutes(1),
+                    PageRequest.of(0, 100))
+                .map(QuickTestArchiveDataView::getHashedGuid)
+                .collect(Collectors.toList()));
+    }
+
+    private List<String> shortTermHashedGuids() {
+        return quickTestArchiveRepository.findAll().stream()
+            .map(QuickTestArchive::getHashedGuid)
+            .collect(Collectors.toList());
+    }
+
+    private QuickTestArchive buildQuickTestArchive() {
+        QuickTestArchive qta = new QuickTestArchive();
+        qta.setShortHashedGuid(HexUtils.toHexString(RandomUtils.nextBytes(4)));
+        qta.setHashedGuid(HexUtils.toHexString(RandomUtils.nextBytes(32)));
+        qta.setTenantId("move_chunk_tenant");
+        qta.setPocId("move_chunk_poc");
+        qta.setCreatedAt(LocalDateTime.now().minusMonths(3));
+        qta.setUpdatedAt(LocalDateTime.now().minusMonths(2));
+        qta.setConfirmationCwa(Boolean.TRUE);
+        qta.setTestResult(Short.valueOf("6"));
+        qta.setPrivacyAgreement(Boolean.TRUE);
+        qta.setLastName("last_name");
+        qta.setFirstName("first_name");
+        qta.setSex(Sex.MALE);
+        qta.setBirthday("2000-01-01");
+        qta.setPdf("PDF".getBytes());
+        return qta;
+    }
+}
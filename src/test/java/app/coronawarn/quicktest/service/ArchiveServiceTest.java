@@ -34,6 +34,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
 import org.apache.commons.lang3.RandomUtils;
 import org.apache.tomcat.util.buf.HexUtils;
 import org.junit.jupiter.api.Assertions;
@@ -73,7 +74,7 @@ class ArchiveServiceTest {
     @Test
     void moveToArchive() throws Exception {
         // GIVEN
-        final int initialArchive = this.archiveRepository.findAll().size();
+        final int initialArchive = countLongtermArchives("tenant_id");
         final QuickTestArchive test = this.buildQuickTestArchive("tenant_id");
         final QuickTestArchive excludedTest = this.buildQuickTestArchive("excluded_partner");
         final QuickTestArchive excludedTest2 = this.buildQuickTestArchive("excluded_partner2");
@@ -83,7 +84,7 @@ class ArchiveServiceTest {
         // WHEN
         this.archiveService.moveToArchive();
         // THEN
-        final List<Archive> results = this.archiveRepository.findAll();
+        final List<Archive> results = longtermArchives("tenant_id");
         assertThat(results).isNotNull().hasSize(initialArchive + 1);
         // AND result
         final Archive result = results.stream().filter(it -> test.getHashedGuid().equals(it.getHashedGuid())).findFirst().orElse(null);
@@ -145,13 +146,13 @@ class ArchiveServiceTest {
     @Test
     void moveToArchiveByTenantId() throws Exception {
         // GIVEN
-        final int initialArchive = this.archiveRepository.findAll().size();
+        final int initialArchive = countLongtermArchives("tenant_id2");
         final QuickTestArchive test = this.buildQuickTestArchive("tenant_id2");
         this.quickTestArchiveRepository.saveAndFlush(test);
         // WHEN
         this.archiveService.moveToArchiveByTenantId("tenant_id2");
         // THEN
-        final List<Archive> results = this.archiveRepository.findAll();
+        final List<Archive> results = longtermArchives("tenant_id2");
         assertThat(results).isNotNull().hasSize(initialArchive + 1);
         // AND result
         final Archive result = results.stream().filter(it -> test.getHashedGuid().equals(it.getHashedGuid())).findFirst().orElse(null);
@@ -211,7 +212,7 @@ class ArchiveServiceTest {
 
     @Test
     void testFailedArchiveJobCleanup() {
-        int initialArchiveEntities = archiveRepository.findAll().size();
+        int initialArchiveEntities = countLongtermArchives("tenant_id");
 
         quickTestArchiveRepository.saveAndFlush(buildQuickTestArchive("tenant_id"));
         QuickTestArchive test2 = quickTestArchiveRepository.saveAndFlush(buildQuickTestArchive("tenant_id"));
@@ -220,7 +221,7 @@ class ArchiveServiceTest {
         // Regular Archiving
         archiveService.moveToArchive();
         Assertions.assertEquals(0, quickTestArchiveRepository.findAll().size());
-        Assertions.assertEquals(initialArchiveEntities + 3, archiveRepository.findAll().size());
+        Assertions.assertEquals(initialArchiveEntities + 3, countLongtermArchives("tenant_id"));
 
         // Re-Persist cleaned up entities in ShortTermArchive to simulate delete failed
         quickTestArchiveRepository.saveAndFlush(test2);
@@ -230,7 +231,7 @@ class ArchiveServiceTest {
         // Rerun Archiving Job
         archiveService.moveToArchive();
         Assertions.assertEquals(0, quickTestArchiveRepository.findAll().size());
-        Assertions.assertEquals(initialArchiveEntities + 3, archiveRepository.findAll().size());
+        Assertions.assertEquals(initialArchiveEntities + 3, countLongtermArchives("tenant_id"));
     }
 
     /**
@@ -238,7 +239,7 @@ class ArchiveServiceTest {
      */
     @Test
     void testFailedArchiveJobCleanupMassTest() {
-        int initialArchiveEntities = archiveRepository.findAll().size();
+        int initialArchiveEntities = countLongtermArchives("tenant_id");
         final int n = 2000;
 
         for (int i = 0; i < n; i++) {
@@ -252,7 +253,7 @@ class ArchiveServiceTest {
         archiveService.moveToArchive();
         archiveService.moveToArchive();
         Assertions.assertEquals(0, quickTestArchiveRepository.findAll().size());
-        Assertions.assertEquals(initialArchiveEntities + n + 2, archiveRepository.findAll().size());
+        Assertions.assertEquals(initialArchiveEntities + n + 2, countLongtermArchives("tenant_id"));
 
         // Re-Persist cleaned up entities in ShortTermArchive to simulate delete failed
         quickTestArchiveRepository.saveAndFlush(test2);
@@ -264,7 +265,93 @@ class ArchiveServiceTest {
         archiveService.moveToArchive();
         archiveService.moveToArchive();
         Assertions.assertEquals(0, quickTestArchiveRepository.findAll().size());
-        Assertions.assertEquals(initialArchiveEntities + n + 2, archiveRepository.findAll().size());
+        Assertions.assertEquals(initialArchiveEntities + n + 2, countLongtermArchives("tenant_id"));
+    }
+
+    @Test
+    void saveAllReportsInsertedAndExistingEntries() {
+        final Archive present = buildArchive();
+        Assertions.assertEquals(List.of(present.getHashedGuid()),
+            archiveRepository.saveAll(List.of(present)).getInserted());
+
+        final Archive duplicate = buildArchive();
+        duplicate.setHashedGuid(present.getHashedGuid());
+        final Archive fresh = buildArchive();
+
+        final ArchiveRepository.SaveAllResult result = archiveRepository.saveAll(List.of(duplicate, fresh));
+
+        assertThat(result.getInserted()).containsExactly(fresh.getHashedGuid());
+        assertThat(result.getExisting()).containsExactly(present.getHashedGuid());
+        assertThat(result.getStored()).containsExactlyInAnyOrder(present.getHashedGuid(), fresh.getHashedGuid());
+        assertThat(archiveRepository.findAllHashedGuids(List.of(present.getHashedGuid(), fresh.getHashedGuid())))
+            .hasSize(2);
+    }
+
+    @Test
+    void saveAllReportsEntriesViolatingOtherConstraintsAsFailed() {
+        final Archive invalid = buildArchive();
+        invalid.setIdentifier(null);
+        final Archive fresh = buildArchive();
+
+        final ArchiveRepository.SaveAllResult result = archiveRepository.saveAll(List.of(invalid, fresh));
+
+        assertThat(result.getInserted()).containsExactly(fresh.getHashedGuid());
+        assertThat(result.getExisting()).isEmpty();
+        assertThat(result.getFailed()).containsExactly(invalid.getHashedGuid());
+        assertThat(result.getStored()).containsExactly(fresh.getHashedGuid());
+    }
+
+    @Test
+    void streamAllByTenantIdReturnsAllEntriesInStableOrder() {
+        final List<Archive> archives = List.of(buildArchive(), buildArchive(), buildArchive(), buildArchive(),
+            buildArchive());
+        archives.forEach(archive -> archive.setTenantId("stream_tenant"));
+        archiveRepository.saveAll(archives);
+
+        final List<String> streamed = archiveRepository.streamAllByTenantId("stream_tenant", 2)
+            .map(Archive::getHashedGuid)
+            .collect(Collectors.toList());
+
+        assertThat(streamed).hasSize(5).isSorted();
+        assertThat(streamed).containsExactlyInAnyOrderElementsOf(
+            archives.stream().map(Archive::getHashedGuid).collect(Collectors.toList()));
+
+        archiveRepository.deleteByTenantId("stream_tenant", archives.size());
+    }
+
+    @Test
+    void deleteByTenantIdDeletesAtMostLimitEntries() {
+        final List<Archive> archives = List.of(buildArchive(), buildArchive(), buildArchive());
+        archives.forEach(archive -> archive.setTenantId("delete_tenant"));
+        archiveRepository.saveAll(archives);
+
+        assertThat(archiveRepository.deleteByTenantId("delete_tenant", 2)).isEqualTo(2);
+        assertThat(archiveRepository.countAllByTenantId("delete_tenant")).isEqualTo(1);
+        assertThat(archiveRepository.deleteByTenantId("delete_tenant", 2)).isEqualTo(1);
+        assertThat(archiveRepository.deleteByTenantId("delete_tenant", 2)).isZero();
+    }
+
+    private List<Archive> longtermArchives(final String tenantId) {
+        return archiveRepository.streamAllByTenantId(archiveService.createHash(tenantId), 100)
+            .collect(Collectors.toList());
+    }
+
+    private int countLongtermArchives(final String tenantId) {
+        return archiveRepository.countAllByTenantId(archiveService.createHash(tenantId));
+    }
+
+    private Archive buildArchive() {
+        final Archive archive = new Archive();
+        archive.setHashedGuid(HexUtils.toHexString(RandomUtils.nextBytes(32)));
+        archive.setIdentifier("identifier");
+        archive.setTenantId("save_all_tenant");
+        archive.setPocId("save_all_poc");
+        archive.setSecret("secret");
+        archive.setCiphertext("ciphertext");
+        archive.setAlgorithmAes("AES/GCM/NoPadding");
+        archive.setCreatedAt(LocalDateTime.now());
+        archive.setUpdatedAt(LocalDateTime.now());
+        return archive;
     }
 
     private QuickTestArchive buildQuickTestArchive(String tenantId) {
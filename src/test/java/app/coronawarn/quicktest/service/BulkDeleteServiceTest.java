@@ -0,0 +1,76 @@
+/*-
+ * ---license-start
+ * Corona-Warn-App / cwa-quick-test-backend
+ * ---
+ * Copyright (C) 2021 - 2023 T-Systems International GmbH and all other contributors
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---license-end
+ */
+
+package app.coronawarn.quicktest.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import app.coronawarn.quicktest.config.QuickTestConfig;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class BulkDeleteServiceTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final QuickTestConfig quickTestConfig = new QuickTestConfig();
+
+    private BulkDeleteService bulkDeleteService;
+
+    @BeforeEach
+    void setUp() {
+        quickTestConfig.getBulkDelete().setBatchSize(10);
+        quickTestConfig.getBulkDelete().setPauseInMillis(1);
+        bulkDeleteService = new BulkDeleteService(quickTestConfig, meterRegistry);
+    }
+
+    @Test
+    void deleteUntilLessThanBatchSizeIsDeleted() {
+        final List<Integer> limits = new ArrayList<>();
+        final int[] rows = {25};
+
+        final long deleted = bulkDeleteService.deleteInBatches("test", limit -> {
+            limits.add(limit);
+            final int count = Math.min(limit, rows[0]);
+            rows[0] -= count;
+            return count;
+        });
+
+        assertThat(deleted).isEqualTo(25);
+        assertThat(limits).containsExactly(10, 10, 10);
+        assertThat(meterRegistry.get("quicktest.bulk.delete.rows").tag("name", "test").counter().count())
+            .isEqualTo(25);
+        final Timer statements = meterRegistry.get("quicktest.bulk.delete.statement").tag("name", "test").timer();
+        assertThat(statements.count()).isEqualTo(3);
+        assertThat(statements.max(TimeUnit.NANOSECONDS)).isPositive();
+    }
+
+    @Test
+    void stopAfterSingleStatementIfNothingIsLeft() {
+        assertThat(bulkDeleteService.deleteInBatches("empty", limit -> 0)).isZero();
+        assertThat(meterRegistry.get("quicktest.bulk.delete.statement").tag("name", "empty").timer().count())
+            .isEqualTo(1);
+    }
+}
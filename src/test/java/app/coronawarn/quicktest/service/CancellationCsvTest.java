@@ -64,7 +64,6 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.boot.test.mock.mockito.SpyBean;
-import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -92,7 +91,7 @@ class CancellationCsvTest {
     @BeforeEach
     void setUp() {
         shortTermArchiveRepository.deleteAll();
-        longTermArchiveRepository.deleteAllByTenantId(PARTNER_ID_HASH);
+        deleteLongTermArchives();
         cancellationRepository.deleteAll();
     }
 
@@ -114,12 +113,12 @@ class CancellationCsvTest {
         }
 
         Assertions.assertEquals(n, shortTermArchiveRepository.findAllByTenantId(PARTNER_ID, Pageable.unpaged()).count());
-        Assertions.assertEquals(0, longTermArchiveRepository.findAllByTenantId(PARTNER_ID_HASH, PageRequest.of(0, Integer.MAX_VALUE)).size());
+        Assertions.assertEquals(0, longTermArchiveRepository.countAllByTenantId(PARTNER_ID_HASH).intValue());
 
         cancellationSchedulingService.cancellationArchiveJob();
 
         Assertions.assertEquals(0, shortTermArchiveRepository.findAllByTenantId(PARTNER_ID, Pageable.unpaged()).count());
-        Assertions.assertEquals(n, longTermArchiveRepository.findAllByTenantId(PARTNER_ID_HASH, PageRequest.of(0, Integer.MAX_VALUE)).size());
+        Assertions.assertEquals(n, longTermArchiveRepository.countAllByTenantId(PARTNER_ID_HASH).intValue());
         Assertions.assertEquals(n, cancellationRepository.findById(PARTNER_ID).orElseThrow().getDbEntityCount());
 
         ArgumentCaptor<InputStream> inputStreamArgumentCaptor = ArgumentCaptor.forClass(InputStream.class);
@@ -158,7 +157,7 @@ class CancellationCsvTest {
             Assertions.assertEquals(24, csvEntries.get(0).length);
         }
 
-        longTermArchiveRepository.deleteAllByTenantId(PARTNER_ID_HASH);
+        deleteLongTermArchives();
     }
 
     @Transactional
@@ -194,7 +193,14 @@ class CancellationCsvTest {
         Assertions.assertEquals("CSV Export Delta detected. Expected: 11 Actual: 10", cancellation.getDataExportError());
 
         // Cleanup
-        longTermArchiveRepository.deleteAllByTenantId(PARTNER_ID_HASH);
+        deleteLongTermArchives();
+    }
+
+    private void deleteLongTermArchives() {
+        int deleted;
+        do {
+            deleted = longTermArchiveRepository.deleteByTenantId(PARTNER_ID_HASH, 1000);
+        } while (deleted > 0);
     }
 
     private String getHash(byte[] bytes) throws NoSuchAlgorithmException {
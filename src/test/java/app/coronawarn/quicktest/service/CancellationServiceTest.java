@@ -31,6 +31,7 @@ import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import app.coronawarn.quicktest.archive.domain.ArchiveCipherDtoV1;
 import app.coronawarn.quicktest.domain.Cancellation;
 import app.coronawarn.quicktest.domain.QuickTestArchive;
 import app.coronawarn.quicktest.model.Sex;
@@ -42,6 +43,8 @@ import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -303,16 +306,16 @@ class CancellationServiceTest {
         final QuickTestArchive test = buildCancellationQuickTestArchive();
         quickTestArchiveRepository.saveAndFlush(test);
         archiveService.moveToArchiveByTenantId(PARTNER_ID);
-        var archiveEntries = archiveService.getQuicktestsFromLongtermByTenantId(PARTNER_ID, 0, Integer.MAX_VALUE);
+        var archiveEntries = readLongtermArchive(PARTNER_ID);
         assertFalse(archiveEntries.isEmpty());
         Cancellation cancellation = cancellationService.createCancellation(PARTNER_ID, CANCELLATION_DATE);
         cancellationService.finalDeleteJob();
-        archiveEntries = archiveService.getQuicktestsFromLongtermByTenantId(PARTNER_ID, 0, Integer.MAX_VALUE);
+        archiveEntries = readLongtermArchive(PARTNER_ID);
         assertFalse(archiveEntries.isEmpty());
         cancellation.setCancellationDate(ZonedDateTime.now().minusDays(35));
         cancellationRepository.save(cancellation);
         cancellationService.finalDeleteJob();
-        archiveEntries = archiveService.getQuicktestsFromLongtermByTenantId(PARTNER_ID, 0, Integer.MAX_VALUE);
+        archiveEntries = readLongtermArchive(PARTNER_ID);
         assertTrue(archiveEntries.isEmpty());
     }
 
@@ -346,4 +349,10 @@ class CancellationServiceTest {
         qta.setGroupName("group_name2");
         return qta;
     }
+
+    private List<ArchiveCipherDtoV1> readLongtermArchive(final String tenantId) {
+        try (Stream<ArchiveCipherDtoV1> archives = archiveService.streamQuicktestsFromLongtermByTenantId(tenantId)) {
+            return archives.collect(Collectors.toList());
+        }
+    }
 }
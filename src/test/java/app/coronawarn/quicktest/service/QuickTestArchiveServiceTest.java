@@ -20,32 +20,42 @@
 
 package app.coronawarn.quicktest.service;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.fail;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import app.coronawarn.quicktest.config.CsvUploadConfig;
+import app.coronawarn.quicktest.config.PdfConfig;
 import app.coronawarn.quicktest.config.QuickTestConfig;
+import app.coronawarn.quicktest.dbencryption.DbEncryptionService;
 import app.coronawarn.quicktest.domain.QuickTestArchive;
 import app.coronawarn.quicktest.model.Sex;
 import app.coronawarn.quicktest.repository.QuickTestArchiveRepository;
 import app.coronawarn.quicktest.repository.QuickTestArchiveView;
+import com.amazonaws.services.s3.AmazonS3;
+import java.io.IOException;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Optional;
+import javax.persistence.EntityManager;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.HttpStatus;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.web.server.ResponseStatusException;
 
 @Slf4j
@@ -57,6 +67,14 @@ public class QuickTestArchiveServiceTest {
     private QuickTestConfig quickTestConfig;
     @Mock
     private QuickTestArchiveRepository quickTestArchiveRepository;
+    @Mock
+    private QuickTestPdfRenderService pdfRenderService;
+    @Mock
+    private EntityManager entityManager;
+    @Spy
+    private QuickTestPdfStorage pdfStorage = new QuickTestPdfStorage(new PdfConfig(), new CsvUploadConfig(),
+        mock(AmazonS3.class), mock(DbEncryptionService.class), mock(QuickTestArchiveRepository.class),
+        mock(PlatformTransactionManager.class));
     @InjectMocks
     private QuickTestArchiveService quickTestArchiveService;
 
@@ -87,9 +105,22 @@ public class QuickTestArchiveServiceTest {
     }
 
     @Test
-    void createNewQuickTestArchiveQuickTest() {
+    void createNewQuickTestArchiveQuickTest() throws IOException {
         when(quickTestArchiveRepository.findByHashedGuid(any())).thenReturn(Optional.of(quickTestArchive));
-        assertEquals(quickTestArchive.getPdf(), quickTestArchiveService.getPdf("sgserh"));
+        assertArrayEquals(quickTestArchive.getPdf(), quickTestArchiveService.getPdf("sgserh").readAllBytes());
+    }
+
+    @Test
+    void getPdfWaitsForPendingRendering() throws IOException {
+        QuickTestArchive pending = new QuickTestArchive();
+        pending.setHashedGuid(quickTestArchive.getHashedGuid());
+        when(quickTestArchiveRepository.findByHashedGuid(any()))
+            .thenReturn(Optional.of(pending), Optional.of(quickTestArchive));
+        when(pdfRenderService.isPending(any())).thenReturn(true);
+
+        assertArrayEquals(quickTestArchive.getPdf(), quickTestArchiveService.getPdf("sgserh").readAllBytes());
+        verify(pdfRenderService, times(1)).awaitRendering("sgserh");
+        verify(entityManager).detach(pending);
     }
 
     @Test
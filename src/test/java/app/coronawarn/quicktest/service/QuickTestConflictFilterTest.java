@@ -0,0 +1,152 @@
+/*-
+ * ---license-start
+ * Corona-Warn-App / cwa-quick-test-backend
+ * ---
+ * Copyright (C) 2021 - 2023 T-Systems International GmbH and all other contributors
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---license-end
+ */
+
+package app.coronawarn.quicktest.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import app.coronawarn.quicktest.domain.QuickTest;
+import app.coronawarn.quicktest.domain.QuickTestArchive;
+import app.coronawarn.quicktest.repository.QuickTestArchiveRepository;
+import app.coronawarn.quicktest.repository.QuickTestRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.LocalDateTime;
+import org.apache.commons.lang3.RandomUtils;
+import org.apache.tomcat.util.buf.HexUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
+
+@SpringBootTest(properties = "quicktest.conflict-filter.enabled=true")
+class QuickTestConflictFilterTest {
+
+    private static final String TENANT_ID = "conflict_tenant";
+
+    private static final String POC_ID = "conflict_poc";
+
+    @Autowired
+    private QuickTestConflictFilter conflictFilter;
+
+    @Autowired
+    private QuickTestRepository quickTestRepository;
+
+    @Autowired
+    private QuickTestArchiveRepository quickTestArchiveRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        quickTestRepository.deleteAll();
+        quickTestArchiveRepository.deleteAll();
+    }
+
+    @Test
+    void rebuildContainsQuickTestsAndArchivedQuickTests() {
+        final QuickTest quickTest = quickTestRepository.saveAndFlush(buildQuickTest(randomHash()));
+        final QuickTestArchive archived = quickTestArchiveRepository.saveAndFlush(buildQuickTestArchive());
+
+        conflictFilter.rebuild();
+
+        assertThat(conflictFilter.mightConflict(TENANT_ID, POC_ID, "00000000", quickTest.getHashedGuid())).isTrue();
+        assertThat(conflictFilter.mightConflict(TENANT_ID, POC_ID, "00000000", archived.getHashedGuid())).isTrue();
+        // same short hash within the same poc
+        assertThat(conflictFilter.mightConflict(TENANT_ID, POC_ID, quickTest.getShortHashedGuid(), randomHash()))
+            .isTrue();
+        assertThat(conflictFilter.mightConflict("other", POC_ID, quickTest.getShortHashedGuid(), randomHash()))
+            .isFalse();
+        assertThat(conflictFilter.mightConflict(TENANT_ID, POC_ID, "00000000", randomHash())).isFalse();
+    }
+
+    @Test
+    void refreshAddsQuickTestsOfOtherInstances() {
+        conflictFilter.rebuild();
+        final String hashedGuid = randomHash();
+        assertThat(conflictFilter.mightConflict(TENANT_ID, POC_ID, hashedGuid.substring(0, 8), hashedGuid)).isFalse();
+
+        // created without the filter, e.g. by another instance
+        quickTestRepository.saveAndFlush(buildQuickTest(hashedGuid));
+        conflictFilter.refresh();
+
+        assertThat(conflictFilter.mightConflict(TENANT_ID, POC_ID, hashedGuid.substring(0, 8), hashedGuid)).isTrue();
+    }
+
+    @Test
+    void duplicateShortHashIsRejectedByDatabase() {
+        final String hashedGuid = randomHash();
+        quickTestRepository.saveAndFlush(buildQuickTest(hashedGuid));
+
+        // same short hash within the same poc, e.g. created by another instance before the filter was refreshed
+        final QuickTest duplicate = buildQuickTest(hashedGuid.substring(0, 8) + randomHash().substring(8));
+        assertThatThrownBy(() -> quickTestRepository.saveAndFlush(duplicate))
+            .isInstanceOf(DataIntegrityViolationException.class);
+    }
+
+    @Test
+    void skippedChecksAreCounted() {
+        conflictFilter.rebuild();
+        final double skipped = skippedChecks();
+
+        final String hashedGuid = randomHash();
+        conflictFilter.mightConflict(TENANT_ID, POC_ID, hashedGuid.substring(0, 8), hashedGuid);
+        conflictFilter.add(TENANT_ID, POC_ID, hashedGuid.substring(0, 8), hashedGuid);
+        conflictFilter.mightConflict(TENANT_ID, POC_ID, hashedGuid.substring(0, 8), hashedGuid);
+
+        assertThat(skippedChecks()).isEqualTo(skipped + 1);
+        assertThat(meterRegistry.get("quicktest.conflict.filter.size").gauge().value()).isPositive();
+        assertThat(meterRegistry.get("quicktest.conflict.filter.fpp").gauge().value()).isLessThan(0.01);
+    }
+
+    private double skippedChecks() {
+        return meterRegistry.get("quicktest.conflict.filter.checks").tag("result", "skipped").counter().count();
+    }
+
+    private String randomHash() {
+        return HexUtils.toHexString(RandomUtils.nextBytes(32));
+    }
+
+    private QuickTest buildQuickTest(final String hashedGuid) {
+        final QuickTest quickTest = new QuickTest();
+        quickTest.setHashedGuid(hashedGuid);
+        quickTest.setShortHashedGuid(hashedGuid.substring(0, 8));
+        quickTest.setTenantId(TENANT_ID);
+        quickTest.setPocId(POC_ID);
+        quickTest.setTestResult(QuickTest.TEST_RESULT_PENDING);
+        return quickTest;
+    }
+
+    private QuickTestArchive buildQuickTestArchive() {
+        final QuickTestArchive qta = new QuickTestArchive();
+        final String hashedGuid = randomHash();
+        qta.setShortHashedGuid(hashedGuid.substring(0, 8));
+        qta.setHashedGuid(hashedGuid);
+        qta.setTenantId(TENANT_ID);
+        qta.setPocId(POC_ID);
+        qta.setCreatedAt(LocalDateTime.now().minusMonths(3));
+        qta.setUpdatedAt(LocalDateTime.now().minusMonths(2));
+        qta.setTestResult(Short.valueOf("6"));
+        qta.setPdf("PDF".getBytes());
+        return qta;
+    }
+}
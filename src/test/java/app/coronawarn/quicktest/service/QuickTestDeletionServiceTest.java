@@ -20,8 +20,11 @@
 
 package app.coronawarn.quicktest.service;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -30,21 +33,28 @@ import app.coronawarn.quicktest.config.QuickTestConfig;
 import app.coronawarn.quicktest.domain.QuickTest;
 import app.coronawarn.quicktest.model.quicktest.QuickTestResult;
 import app.coronawarn.quicktest.repository.QuickTestRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.springframework.dao.QueryTimeoutException;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.web.server.ResponseStatusException;
 
 @Slf4j
 @SpringBootTest
 class QuickTestDeletionServiceTest {
 
-    @InjectMocks
     private QuickTestDeletionService underTest;
 
     @Mock
@@ -56,6 +66,32 @@ class QuickTestDeletionServiceTest {
     @Mock
     private QuickTestConfig quickTestConfig;
 
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private TestResultOutboxService testResultOutboxService;
+
+    private MeterRegistry meterRegistry;
+
+    private final QuickTestConfig.CleanUpSettings cleanUpSettings = new QuickTestConfig.CleanUpSettings();
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        underTest = new QuickTestDeletionService(quickTestRepository, testResultService, quickTestConfig,
+            transactionManager, meterRegistry, new BulkDeleteService(quickTestConfig, meterRegistry),
+            testResultOutboxService);
+        underTest.initMetrics();
+        cleanUpSettings.setChunkSize(1000);
+        when(quickTestConfig.getCleanUpSettings()).thenReturn(cleanUpSettings);
+        QuickTestConfig.BulkDeleteConfig bulkDelete = new QuickTestConfig.BulkDeleteConfig();
+        bulkDelete.setBatchSize(2);
+        bulkDelete.setPauseInMillis(0);
+        when(quickTestConfig.getBulkDelete()).thenReturn(bulkDelete);
+        when(testResultService.submitTestResult(any())).thenReturn(CompletableFuture.completedFuture(null));
+        when(testResultService.submitPcrTestResult(any())).thenReturn(CompletableFuture.completedFuture(null));
+    }
 
     @Test
     void removeAllBeforeTest() {
@@ -84,15 +120,110 @@ class QuickTestDeletionServiceTest {
         quickTestResult.setResult(quickTest.getTestResult());
         quickTestResult.setSampleCollection(quickTest.getUpdatedAt().toEpochSecond(ZoneOffset.UTC));
 
-        QuickTestConfig.CleanUpSettings cleanUpSettings = new QuickTestConfig.CleanUpSettings();
-        cleanUpSettings.setChunkSize(1000);
-
         when(quickTestConfig.getLabId()).thenReturn("lab4711");
-        when(quickTestRepository.findAllByCreatedAtBeforeAndVersionIsGreaterThan(eq(now), eq(0), any()))
+        when(quickTestRepository.findToDelete(eq(now), any()))
           .thenReturn(Arrays.asList(quickTest, quickTest, quickTest1, quickTestPcr));
-        underTest.handleChunk(now, cleanUpSettings.getChunkSize(), 1, 1);
-        verify(quickTestRepository, times(1)).findAllByCreatedAtBeforeAndVersionIsGreaterThan(eq(now), eq(0), any());
-        verify(testResultService, times(2)).createOrUpdateTestResult(quickTestResult);
-        verify(testResultService, times(1)).createOrUpdatePcrTestResult(any());
+        when(quickTestRepository.deleteByHashedGuids(any())).thenReturn(4);
+        underTest.removeAllBefore(now);
+        verify(quickTestRepository, times(1)).findToDelete(eq(now), any());
+        verify(testResultService, times(2)).submitTestResult(quickTestResult);
+        verify(testResultService, times(1)).submitPcrTestResult(any());
+        verify(testResultService, times(4)).await(any());
+        verify(quickTestRepository, times(1)).deleteByHashedGuids(any());
+        verify(quickTestRepository, times(1)).findHashedGuidsByCreatedAtBefore(eq(now), any());
+        assertThat(meterRegistry.get("quicktest.cleanup.reported").counter().count()).isEqualTo(3);
+        assertThat(meterRegistry.get("quicktest.cleanup.deleted").counter().count()).isEqualTo(4);
+    }
+
+    @Test
+    void nextChunkStartsAfterLastQuickTest() {
+        LocalDateTime now = ZonedDateTime.now().withNano(0).toLocalDateTime();
+        QuickTest first = quickTest("a", now.minusHours(3));
+        QuickTest second = quickTest("b", now.minusHours(2));
+        QuickTest third = quickTest("c", now.minusHours(2));
+        cleanUpSettings.setChunkSize(2);
+
+        when(quickTestRepository.findToDelete(eq(now), any())).thenReturn(List.of(first, second));
+        when(quickTestRepository.findToDeleteAfter(eq(now), eq(second.getCreatedAt()), eq("b"), any()))
+            .thenReturn(List.of(third));
+        when(quickTestRepository.findToDeleteAfter(eq(now), eq(third.getCreatedAt()), eq("c"), any()))
+            .thenReturn(List.of());
+        underTest.removeAllBefore(now);
+        verify(quickTestRepository).deleteByHashedGuids(List.of("a", "b"));
+        verify(quickTestRepository).deleteByHashedGuids(List.of("c"));
+        verify(quickTestRepository, times(1)).findHashedGuidsByCreatedAtBefore(eq(now), any());
+        assertThat(meterRegistry.get("quicktest.cleanup.remaining").gauge().value()).isZero();
+    }
+
+    @Test
+    void stopWhenTestResultServerFails() {
+        LocalDateTime now = ZonedDateTime.now().withNano(0).toLocalDateTime();
+        QuickTest quickTest = quickTest("a", now.minusHours(3));
+        quickTest.setConfirmationCwa(true);
+        quickTest.setTestResultServerHash("hash");
+
+        when(quickTestRepository.findToDelete(eq(now), any())).thenReturn(List.of(quickTest));
+        doThrow(new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR)).when(testResultService).await(any());
+        underTest.removeAllBefore(now);
+        verify(quickTestRepository, never()).deleteByHashedGuids(any());
+        verify(quickTestRepository, never()).findHashedGuidsByCreatedAtBefore(any(), any());
+    }
+
+    @Test
+    void stopWhenChunkCannotBeDeleted() {
+        LocalDateTime now = ZonedDateTime.now().withNano(0).toLocalDateTime();
+        QuickTest first = quickTest("a", now.minusHours(3));
+        cleanUpSettings.setChunkSize(1);
+
+        when(testResultOutboxService.isEnabled()).thenReturn(true);
+        when(quickTestRepository.findToDelete(eq(now), any())).thenReturn(List.of(first));
+        when(quickTestRepository.deleteByHashedGuids(any())).thenThrow(new QueryTimeoutException("timeout"));
+        underTest.removeAllBefore(now);
+        verify(quickTestRepository, never()).findToDeleteAfter(any(), any(), any(), any());
+        verify(quickTestRepository, never()).findHashedGuidsByCreatedAtBefore(any(), any());
+        assertThat(meterRegistry.get("quicktest.cleanup.deleted").counter().count()).isZero();
+    }
+
+    @Test
+    void queueRedeemedResultsInOutboxIfEnabled() {
+        LocalDateTime now = ZonedDateTime.now().withNano(0).toLocalDateTime();
+        QuickTest reported = quickTest("a", now.minusHours(3));
+        reported.setConfirmationCwa(true);
+        reported.setTestResultServerHash("hash");
+        QuickTest notReported = quickTest("b", now.minusHours(2));
+
+        when(testResultOutboxService.isEnabled()).thenReturn(true);
+        when(quickTestRepository.findToDelete(eq(now), any())).thenReturn(List.of(reported, notReported));
+        when(quickTestRepository.deleteByHashedGuids(any())).thenReturn(2);
+        underTest.removeAllBefore(now);
+        verify(testResultOutboxService).enqueue("a", "hash", QuickTest.TEST_RESULT_REDEEMED,
+            now.toEpochSecond(ZoneOffset.UTC), false);
+        verify(testResultOutboxService, times(1)).enqueue(any(), any(), any(Short.class), any(), any(Boolean.class));
+        verify(testResultService, never()).submitTestResult(any());
+        verify(testResultService, never()).await(any());
+        verify(quickTestRepository).deleteByHashedGuids(List.of("a", "b"));
+        assertThat(meterRegistry.get("quicktest.cleanup.reported").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void deleteRemainingQuickTestsInBatches() {
+        LocalDateTime now = ZonedDateTime.now().withNano(0).toLocalDateTime();
+        when(quickTestRepository.findToDelete(eq(now), any())).thenReturn(List.of());
+        when(quickTestRepository.findHashedGuidsByCreatedAtBefore(eq(now), any()))
+            .thenReturn(List.of("a", "b"), List.of("c"));
+        when(quickTestRepository.deleteByHashedGuids(any())).thenAnswer(call -> call.<List<?>>getArgument(0).size());
+        underTest.removeAllBefore(now);
+        verify(quickTestRepository).deleteByHashedGuids(List.of("a", "b"));
+        verify(quickTestRepository).deleteByHashedGuids(List.of("c"));
+        assertThat(meterRegistry.get("quicktest.bulk.delete.rows").tag("name", "quick_test").counter().count())
+            .isEqualTo(3);
+    }
+
+    private QuickTest quickTest(String hashedGuid, LocalDateTime createdAt) {
+        QuickTest quickTest = new QuickTest();
+        quickTest.setHashedGuid(hashedGuid);
+        quickTest.setCreatedAt(createdAt);
+        quickTest.setConfirmationCwa(false);
+        return quickTest;
     }
 }
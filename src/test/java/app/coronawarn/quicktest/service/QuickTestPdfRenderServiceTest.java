@@ -0,0 +1,238 @@
+/*-
+ * ---license-start
+ * Corona-Warn-App / cwa-quick-test-backend
+ * ---
+ * Copyright (C) 2021 - 2023 T-Systems International GmbH and all other contributors
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---license-end
+ */
+package app.coronawarn.quicktest.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+
+import app.coronawarn.quicktest.domain.QuickTest;
+import app.coronawarn.quicktest.domain.QuickTestArchive;
+import app.coronawarn.quicktest.domain.QuickTestPdfJob;
+import app.coronawarn.quicktest.repository.QuickTestArchiveRepository;
+import app.coronawarn.quicktest.repository.QuickTestPdfJobRepository;
+import app.coronawarn.quicktest.utils.QuicktestUtils;
+import app.coronawarn.quicktest.utils.Utilities;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javax.persistence.EntityManagerFactory;
+import org.apache.commons.lang3.RandomUtils;
+import org.apache.tomcat.util.buf.HexUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.orm.jpa.EntityManagerHolder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+@SpringBootTest(properties = {
+    "pdf.asyncRendering.enabled=true",
+    "pdf.asyncRendering.threads=1",
+    "pdf.asyncRendering.queueCapacity=1",
+    "pdf.asyncRendering.waitInMillis=10000",
+    "pdf.asyncRendering.recoveryDelay=3600000"
+})
+class QuickTestPdfRenderServiceTest {
+
+    private static final List<String> POC_INFORMATION = List.of("Testzentrum", "Teststraße 1");
+
+    @Autowired
+    private QuickTestPdfRenderService pdfRenderService;
+
+    @Autowired
+    private QuickTestArchiveService quickTestArchiveService;
+
+    @Autowired
+    private QuickTestArchiveRepository quickTestArchiveRepository;
+
+    @Autowired
+    private QuickTestPdfJobRepository quickTestPdfJobRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @SpyBean
+    private QuickTestPdfStorage pdfStorage;
+
+    @BeforeEach
+    void setUp() {
+        quickTestPdfJobRepository.deleteAll();
+        quickTestArchiveRepository.deleteAll();
+    }
+
+    @Test
+    void getPdfReturnsPdfRenderedWhileWaiting() throws Exception {
+        final QuickTest quickTest = archivedQuickTest();
+        final Thread caller = Thread.currentThread();
+        final CountDownLatch checked = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            final Object hasPdf = invocation.callRealMethod();
+            if (Thread.currentThread() == caller) {
+                checked.countDown();
+            }
+            return hasPdf;
+        }).when(pdfStorage).hasPdf(any());
+        // the PDF is stored after the caller found the archive without PDF
+        doAnswer(invocation -> {
+            checked.await(10, TimeUnit.SECONDS);
+            return invocation.callRealMethod();
+        }).when(pdfStorage).store(any(), any());
+
+        scheduleRendering(quickTest);
+
+        // open in view, all reads of the request share one persistence context
+        final EntityManagerHolder holder = new EntityManagerHolder(entityManagerFactory.createEntityManager());
+        TransactionSynchronizationManager.bindResource(entityManagerFactory, holder);
+        try (InputStream pdf = quickTestArchiveService.getPdf(quickTest.getHashedGuid())) {
+            assertThat(pdf).isNotNull();
+            assertThat(new String(pdf.readNBytes(4), StandardCharsets.ISO_8859_1)).isEqualTo("%PDF");
+        } finally {
+            TransactionSynchronizationManager.unbindResource(entityManagerFactory);
+            holder.getEntityManager().close();
+        }
+    }
+
+    @Test
+    void rendersPdfAfterCommit() throws Exception {
+        final QuickTest quickTest = archivedQuickTest();
+        final long rendered = renderCount();
+
+        scheduleRendering(quickTest);
+        awaitRendered(quickTest);
+
+        assertThat(hasPdf(quickTest)).isTrue();
+        assertThat(quickTestPdfJobRepository.existsById(quickTest.getHashedGuid())).isFalse();
+        assertThat(renderCount()).isEqualTo(rendered + 1);
+    }
+
+    @Test
+    void recoveryRendersStaleJob() {
+        final QuickTest quickTest = archivedQuickTest();
+        quickTestPdfJobRepository.save(new QuickTestPdfJob(quickTest.getHashedGuid(),
+            String.join("\n", POC_INFORMATION), "tester", Utilities.getCurrentLocalDateTimeUtc().minusHours(1)));
+
+        pdfRenderService.recoverPendingPdfs();
+
+        assertThat(hasPdf(quickTest)).isTrue();
+        assertThat(quickTestPdfJobRepository.existsById(quickTest.getHashedGuid())).isFalse();
+    }
+
+    @Test
+    void fullQueueLeavesPdfToRecovery() throws Exception {
+        final QuickTest rendering = archivedQuickTest();
+        final QuickTest queued = archivedQuickTest();
+        final QuickTest rejected = archivedQuickTest();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            started.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            return invocation.callRealMethod();
+        }).when(pdfStorage).store(any(), any());
+        final double failures = meterRegistry.get("quicktest.pdf.render.failures").counter().count();
+
+        try {
+            scheduleRendering(rendering);
+            assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+            scheduleRendering(queued);
+            scheduleRendering(rejected);
+
+            assertThat(meterRegistry.get("quicktest.pdf.render.queue").gauge().value()).isEqualTo(1);
+            assertThat(meterRegistry.get("quicktest.pdf.render.inflight").gauge().value()).isEqualTo(2);
+            assertThat(meterRegistry.get("quicktest.pdf.render.failures").counter().count())
+                .isEqualTo(failures + 1);
+            assertThat(pdfRenderService.isPending(rejected.getHashedGuid())).isTrue();
+        } finally {
+            release.countDown();
+        }
+        awaitRendered(rendering);
+        awaitRendered(queued);
+        assertThat(hasPdf(rejected)).isFalse();
+
+        final QuickTestPdfJob job = quickTestPdfJobRepository.findById(rejected.getHashedGuid()).orElseThrow();
+        job.setCreatedAt(Utilities.getCurrentLocalDateTimeUtc().minusHours(1));
+        quickTestPdfJobRepository.save(job);
+        pdfRenderService.recoverPendingPdfs();
+
+        assertThat(hasPdf(rejected)).isTrue();
+        assertThat(quickTestPdfJobRepository.count()).isZero();
+    }
+
+    private long renderCount() {
+        return meterRegistry.get("quicktest.pdf.render").timer().count();
+    }
+
+    private boolean hasPdf(QuickTest quickTest) {
+        return quickTestArchiveRepository.findByHashedGuid(quickTest.getHashedGuid())
+            .map(pdfStorage::hasPdf)
+            .orElse(false);
+    }
+
+    private void awaitRendered(QuickTest quickTest) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 10000;
+        while (pdfRenderService.isPending(quickTest.getHashedGuid()) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertThat(pdfRenderService.isPending(quickTest.getHashedGuid())).isFalse();
+    }
+
+    private void scheduleRendering(QuickTest quickTest) {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status ->
+            pdfRenderService.scheduleRendering(quickTest, POC_INFORMATION, "tester"));
+    }
+
+    private QuickTest archivedQuickTest() {
+        final QuickTest quickTest = QuicktestUtils.getQuickTest();
+        quickTest.setHashedGuid(HexUtils.toHexString(RandomUtils.nextBytes(32)));
+        quickTest.setShortHashedGuid(quickTest.getHashedGuid().substring(0, 8));
+
+        final QuickTestArchive archive = new QuickTestArchive();
+        archive.setHashedGuid(quickTest.getHashedGuid());
+        archive.setShortHashedGuid(quickTest.getShortHashedGuid());
+        archive.setTenantId(quickTest.getTenantId());
+        archive.setPocId(quickTest.getPocId());
+        archive.setCreatedAt(quickTest.getCreatedAt());
+        archive.setUpdatedAt(quickTest.getUpdatedAt());
+        archive.setConfirmationCwa(quickTest.getConfirmationCwa());
+        archive.setTestResult(quickTest.getTestResult());
+        archive.setPrivacyAgreement(quickTest.getPrivacyAgreement());
+        archive.setLastName(quickTest.getLastName());
+        archive.setFirstName(quickTest.getFirstName());
+        archive.setSex(quickTest.getSex());
+        archive.setBirthday(quickTest.getBirthday());
+        archive.setTestBrandId(quickTest.getTestBrandId());
+        archive.setTestBrandName(quickTest.getTestBrandName());
+        quickTestArchiveRepository.saveAndFlush(archive);
+        return quickTest;
+    }
+}
@@ -0,0 +1,300 @@
+/*-
+ * ---license-start
+ * Corona-Warn-App / cwa-quick-test-backend
+ * ---
+ * Copyright (C) 2021 - 2023 T-Systems International GmbH and all other contributors
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---license-end
+ */
+
+package app.coronawarn.quicktest.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import app.coronawarn.quicktest.config.CsvUploadConfig;
+import app.coronawarn.quicktest.config.PdfConfig;
+import app.coronawarn.quicktest.config.QuickTestConfig;
+import app.coronawarn.quicktest.dbencryption.DbEncryptionService;
+import app.coronawarn.quicktest.domain.QuickTestArchive;
+import app.coronawarn.quicktest.repository.QuickTestArchiveRepository;
+import com.amazonaws.SdkClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+class QuickTestPdfStorageTest {
+
+    private static final String HASHED_GUID = "6fa4dcecf716d8dd96c9e927dda5484f1a8a9da03155aa760e0c38f9bed645c4";
+
+    private final AmazonS3 s3Client = mock(AmazonS3.class);
+
+    private final QuickTestArchiveRepository quickTestArchiveRepository = mock(QuickTestArchiveRepository.class);
+
+    private final PdfConfig pdfConfig = new PdfConfig();
+
+    private QuickTestPdfStorage pdfStorage;
+
+    @BeforeEach
+    void setUp() {
+        QuickTestConfig quickTestConfig = new QuickTestConfig();
+        quickTestConfig.setDbEncryptionKey("abcdefghjklmnopq");
+        CsvUploadConfig s3Config = new CsvUploadConfig();
+        s3Config.setBucketName("results");
+        pdfConfig.getObjectStorage().setEnabled(true);
+        pdfStorage = new QuickTestPdfStorage(pdfConfig, s3Config, s3Client, new DbEncryptionService(quickTestConfig),
+            quickTestArchiveRepository, mock(PlatformTransactionManager.class));
+        pdfStorage.initUploadExecutor();
+        when(quickTestArchiveRepository.movePdfToBucket(eq(HASHED_GUID), any(), anyString())).thenReturn(1);
+        TransactionSynchronizationManager.initSynchronization();
+    }
+
+    @AfterEach
+    void tearDown() {
+        pdfStorage.shutdownUploadExecutor();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void storesEncryptedPdfInBucketAfterCommit() throws IOException {
+        byte[] pdf = "%PDF-1.4 test".getBytes();
+        QuickTestArchive archive = archive();
+
+        pdfStorage.store(archive, pdf);
+
+        assertThat(archive.getPdf()).isEqualTo(pdf);
+        verify(s3Client, never()).putObject(anyString(), anyString(), any(InputStream.class),
+            any(ObjectMetadata.class));
+
+        commit(archive);
+
+        verify(quickTestArchiveRepository, timeout(5000)).movePdfToBucket(eq(HASHED_GUID), any(), anyString());
+        ArgumentCaptor<String> objectKey = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<InputStream> content = ArgumentCaptor.forClass(InputStream.class);
+        verify(s3Client).putObject(eq("results"), objectKey.capture(), content.capture(), any(ObjectMetadata.class));
+        verify(quickTestArchiveRepository).movePdfToBucket(eq(HASHED_GUID), any(), eq(objectKey.getValue()));
+        verify(s3Client, never()).deleteObjects(any());
+        assertThat(objectKey.getValue()).startsWith("pdf/" + HASHED_GUID + "/");
+        byte[] stored = content.getValue().readAllBytes();
+        assertThat(new String(stored)).doesNotContain("%PDF");
+
+        QuickTestArchive moved = archive();
+        moved.setPdfObjectKey(objectKey.getValue());
+        assertThat(pdfStorage.hasPdf(moved)).isTrue();
+        S3Object object = new S3Object();
+        object.setObjectContent(new ByteArrayInputStream(stored));
+        when(s3Client.getObject("results", objectKey.getValue())).thenReturn(object);
+        assertThat(pdfStorage.read(moved)).isEqualTo(pdf);
+    }
+
+    @Test
+    void uploadsEveryPdfToNewKeyAndDeletesReplacedPdfAfterCommit() {
+        QuickTestArchive archive = archive();
+        archive.setPdfObjectKey("pdf/" + HASHED_GUID + "/old");
+
+        pdfStorage.store(archive, "%PDF-1.4 test".getBytes());
+
+        assertThat(archive.getPdfObjectKey()).isNull();
+        verify(s3Client, never()).deleteObjects(any());
+
+        commit(archive);
+
+        ArgumentCaptor<String> objectKey = ArgumentCaptor.forClass(String.class);
+        verify(s3Client, timeout(5000)).putObject(eq("results"), objectKey.capture(), any(InputStream.class),
+            any(ObjectMetadata.class));
+        assertThat(objectKey.getValue()).isNotEqualTo("pdf/" + HASHED_GUID + "/old");
+        assertThat(deletedKeys()).containsExactly("pdf/" + HASHED_GUID + "/old");
+    }
+
+    @Test
+    void deletesUploadedPdfIfArchiveChangedDuringUpload() {
+        when(quickTestArchiveRepository.movePdfToBucket(eq(HASHED_GUID), any(), anyString())).thenReturn(0);
+        QuickTestArchive archive = archive();
+
+        pdfStorage.store(archive, "%PDF-1.4 test".getBytes());
+        commit(archive);
+
+        verify(s3Client, timeout(5000)).deleteObjects(any());
+        ArgumentCaptor<String> objectKey = ArgumentCaptor.forClass(String.class);
+        verify(s3Client).putObject(eq("results"), objectKey.capture(), any(InputStream.class),
+            any(ObjectMetadata.class));
+        assertThat(deletedKeys()).containsExactly(objectKey.getValue());
+    }
+
+    @Test
+    void keepsPdfInArchiveIfUploadFails() {
+        when(s3Client.putObject(anyString(), anyString(), any(InputStream.class), any(ObjectMetadata.class)))
+            .thenThrow(new SdkClientException("bucket not reachable"));
+        byte[] pdf = "%PDF-1.4 test".getBytes();
+        QuickTestArchive archive = archive();
+
+        pdfStorage.store(archive, pdf);
+        commit(archive);
+
+        verify(s3Client, timeout(5000)).putObject(anyString(), anyString(), any(InputStream.class),
+            any(ObjectMetadata.class));
+        verify(quickTestArchiveRepository, never()).movePdfToBucket(anyString(), any(), anyString());
+        assertThat(pdfStorage.offload(HASHED_GUID)).isFalse();
+        assertThat(archive.getPdfObjectKey()).isNull();
+        assertThat(pdfStorage.read(archive)).isEqualTo(pdf);
+    }
+
+    @Test
+    void leavesPdfToMigrationIfUploadQueueIsFull() throws InterruptedException {
+        pdfStorage.shutdownUploadExecutor();
+        pdfConfig.getObjectStorage().setUploadThreads(1);
+        pdfConfig.getObjectStorage().setUploadQueueCapacity(1);
+        pdfStorage.initUploadExecutor();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> uploadThreads = new CopyOnWriteArrayList<>();
+        when(s3Client.putObject(anyString(), anyString(), any(InputStream.class), any(ObjectMetadata.class)))
+            .thenAnswer(invocation -> {
+                uploadThreads.add(Thread.currentThread().getName());
+                started.countDown();
+                release.await(5, TimeUnit.SECONDS);
+                return null;
+            });
+
+        try {
+            for (int i = 0; i < 3; i++) {
+                QuickTestArchive archive = archive();
+                pdfStorage.store(archive, "%PDF-1.4 test".getBytes());
+                commit(archive);
+                if (i == 0) {
+                    assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+                }
+                TransactionSynchronizationManager.initSynchronization();
+            }
+        } finally {
+            release.countDown();
+        }
+
+        verify(quickTestArchiveRepository, timeout(5000).times(2)).movePdfToBucket(eq(HASHED_GUID), any(),
+            anyString());
+        verify(s3Client, times(2)).putObject(anyString(), anyString(), any(InputStream.class),
+            any(ObjectMetadata.class));
+        assertThat(uploadThreads).allMatch(name -> name.startsWith("pdf-upload-"));
+    }
+
+    @Test
+    void keepsPdfInArchiveWithoutTransaction() {
+        TransactionSynchronizationManager.clearSynchronization();
+        QuickTestArchive archive = archive();
+
+        pdfStorage.store(archive, "%PDF-1.4 test".getBytes());
+
+        verify(s3Client, never()).putObject(anyString(), anyString(), any(InputStream.class),
+            any(ObjectMetadata.class));
+    }
+
+    @Test
+    void keepsPdfInArchiveIfDisabled() {
+        pdfConfig.getObjectStorage().setEnabled(false);
+        QuickTestArchive archive = archive();
+
+        pdfStorage.store(archive, "%PDF-1.4 test".getBytes());
+        commit(archive);
+        pdfStorage.delete(List.of("pdf/" + HASHED_GUID));
+
+        assertThat(pdfStorage.offload(HASHED_GUID)).isFalse();
+        assertThat(archive.getPdfObjectKey()).isNull();
+        verify(s3Client, never()).putObject(anyString(), anyString(), any(InputStream.class),
+            any(ObjectMetadata.class));
+        verify(s3Client, never()).deleteObjects(any());
+    }
+
+    @Test
+    void deletesPdfsInChunks() {
+        List<String> objectKeys = IntStream.range(0, 2500).mapToObj(i -> "pdf/" + i).collect(Collectors.toList());
+
+        pdfStorage.delete(objectKeys);
+
+        ArgumentCaptor<DeleteObjectsRequest> requests = ArgumentCaptor.forClass(DeleteObjectsRequest.class);
+        verify(s3Client, times(3)).deleteObjects(requests.capture());
+        assertThat(requests.getAllValues()).extracting(request -> request.getKeys().size())
+            .containsExactly(1000, 1000, 500);
+        assertThat(requests.getAllValues().get(0).getKeys().get(0).getKey()).isEqualTo("pdf/0");
+    }
+
+    @Test
+    void ignoresArchivesWithoutObjectKeyOnDelete() {
+        pdfStorage.delete(Arrays.asList(null, null));
+
+        verify(s3Client, never()).deleteObjects(any());
+    }
+
+    @Test
+    void archiveWithoutPdf() {
+        QuickTestArchive archive = archive();
+
+        assertThat(pdfStorage.hasPdf(archive)).isFalse();
+        assertThat(pdfStorage.open(archive)).isNull();
+    }
+
+    private QuickTestArchive archive() {
+        QuickTestArchive archive = new QuickTestArchive();
+        archive.setHashedGuid(HASHED_GUID);
+        return archive;
+    }
+
+    /**
+     * Saves the archive and runs the synchronizations registered within the transaction.
+     */
+    private void commit(QuickTestArchive archive) {
+        QuickTestArchive committed = archive();
+        committed.setPdf(archive.getPdf());
+        when(quickTestArchiveRepository.findByHashedGuid(HASHED_GUID)).thenReturn(Optional.of(committed));
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        synchronizations.forEach(TransactionSynchronization::afterCommit);
+    }
+
+    private List<String> deletedKeys() {
+        ArgumentCaptor<DeleteObjectsRequest> requests = ArgumentCaptor.forClass(DeleteObjectsRequest.class);
+        verify(s3Client).deleteObjects(requests.capture());
+        return requests.getValue().getKeys().stream()
+            .map(DeleteObjectsRequest.KeyVersion::getKey)
+            .collect(Collectors.toList());
+    }
+}
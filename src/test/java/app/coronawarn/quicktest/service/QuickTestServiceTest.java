@@ -39,7 +39,6 @@ import app.coronawarn.quicktest.domain.QuickTest;
 import app.coronawarn.quicktest.domain.QuickTestArchive;
 import app.coronawarn.quicktest.domain.QuickTestLog;
 import app.coronawarn.quicktest.model.quicktest.QuickTestDccConsent;
-import app.coronawarn.quicktest.model.quicktest.QuickTestResult;
 import app.coronawarn.quicktest.model.quicktest.QuickTestUpdateRequest;
 import app.coronawarn.quicktest.repository.QuickTestArchiveRepository;
 import app.coronawarn.quicktest.repository.QuickTestLogRepository;
@@ -50,20 +49,20 @@ import app.coronawarn.quicktest.utils.Utilities;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.time.LocalDateTime;
-import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.server.ResponseStatusException;
 
@@ -89,6 +88,19 @@ public class QuickTestServiceTest {
     private PdfGenerator pdf;
     @Mock
     private Utilities utilities;
+    @Mock
+    private QuickTestConflictFilter conflictFilter;
+    @Mock
+    private QuickTestPdfRenderService pdfRenderService;
+    @Mock
+    private QuickTestPdfStorage pdfStorage;
+    @Mock
+    private TestResultOutboxService testResultOutbox;
+
+    @BeforeEach
+    void setUp() {
+        when(conflictFilter.mightConflict(any(), any(), any(), any())).thenReturn(true);
+    }
 
     @Test
     void conflictInQuickTestShortAndFullHashTest() {
@@ -119,9 +131,24 @@ public class QuickTestServiceTest {
         }
     }
 
+    @Test
+    void conflictWithQuickTestOfOtherInstanceTest() {
+        when(conflictFilter.mightConflict(any(), any(), any(), any())).thenReturn(false);
+        when(quickTestRepository.saveAndFlush(any())).thenThrow(new DataIntegrityViolationException("duplicate"));
+        try {
+            quickTestService.createNewQuickTest(utilities.getIdsFromToken(),
+                "6fa4dcecf716d8dd96c9e927dda5484f1a8a9da03155aa760e0c38f9bed645c4");
+            fail("conflict did not recognized");
+        } catch (ResponseStatusException e) {
+            assertEquals(e.getStatus(), HttpStatus.CONFLICT, "wrong status");
+        }
+        verify(quickTestRepository, never()).findByTenantIdAndPocIdAndShortHashedGuidOrHashedGuid(any(), any(), any(),
+            any());
+    }
+
     @Test
     void createNewQuickTestSaveFailedTest() {
-        when(quickTestRepository.save(any())).thenThrow(new RuntimeException());
+        when(quickTestRepository.saveAndFlush(any())).thenThrow(new RuntimeException());
         try {
             quickTestService.createNewQuickTest(utilities.getIdsFromToken(),
                 "6fa4dcecf716d8dd96c9e927dda5484f1a8a9da03155aa760e0c38f9bed645c4");
@@ -329,6 +356,31 @@ public class QuickTestServiceTest {
         verify(testResultService, times(1)).createOrUpdateTestResult(any());
     }
 
+    @Test
+    void storeResultInOutboxInUpdateQuickTestTest() throws IOException, ResponseStatusException {
+        QuickTest quickTest = createPendingTest();
+        quickTest.setConfirmationCwa(true);
+        quickTest.setTestResultServerHash("6fa4dcecf716d8dd96c9e927dda5484f1a8a9da03155aa760e0c38f9bed645c4");
+        quickTest.setTestType("LP217198-3");
+        when(quickTestRepository.findByTenantIdAndPocIdAndShortHashedGuid(any(), any(), any()))
+            .thenReturn(quickTest);
+        when(pdf.generatePdf(any(), any(), any()))
+            .thenReturn(new ByteArrayOutputStream());
+        when(testResultOutbox.isEnabled()).thenReturn(true);
+        QuickTestUpdateRequest quickTestUpdateRequest = new QuickTestUpdateRequest();
+        quickTestUpdateRequest.setTestBrandId("testBrandId");
+        quickTestUpdateRequest.setResult((short) 6);
+        quickTestUpdateRequest.setTestBrandName("TestBrandName");
+        quickTestService.updateQuickTest(new HashMap<>(),
+            "6fa4dcecf716d8dd96c9e927dda5484f1a8a9da03155aa760e0c38f9bed645c4",
+            quickTestUpdateRequest,
+            new ArrayList<>(),
+            "User");
+        verify(testResultOutbox, times(1)).enqueue(any(), eq(quickTest.getTestResultServerHash()),
+            eq((short) 6), any(), eq(false));
+        verify(testResultService, never()).createOrUpdateTestResult(any());
+    }
+
     @Test
     void updateQuickTestSaveFailedTest() {
         QuickTest quickTest = new QuickTest();
@@ -366,36 +418,8 @@ public class QuickTestServiceTest {
     @Test
     void removeAllBeforeTest() {
         LocalDateTime now = ZonedDateTime.now().withNano(0).toLocalDateTime();
-        QuickTest quickTest = new QuickTest();
-        quickTest.setConfirmationCwa(true);
-        quickTest.setTestResultServerHash("");
-        quickTest.setTestResult((short) 8);
-        quickTest.setUpdatedAt(now);
-        quickTest.setTestType("LP217198-3");
-
-        QuickTest quickTest1 = new QuickTest();
-        quickTest1.setConfirmationCwa(false);
-        quickTest1.setTestResultServerHash("");
-        quickTest1.setTestResult((short) 8);
-        quickTest1.setUpdatedAt(now);
-        quickTest1.setTestType("LP217198-3");
-
-
-        QuickTestResult quickTestResult = new QuickTestResult();
-        quickTestResult.setId(quickTest.getTestResultServerHash());
-        quickTestResult.setResult(quickTest.getTestResult());
-        quickTestResult.setSampleCollection(quickTest.getUpdatedAt().toEpochSecond(ZoneOffset.UTC));
-
-        QuickTestConfig.CleanUpSettings cleanUpSettings = new QuickTestConfig.CleanUpSettings();
-        cleanUpSettings.setChunkSize(1000);
-
-        when(quickTestRepository.countAllByCreatedAtBeforeAndVersionIsGreaterThan(eq(now), eq(0))).thenReturn(2);
-        when(quickTestRepository.findAllByCreatedAtBeforeAndVersionIsGreaterThan(eq(now), eq(0), any()))
-            .thenReturn(Arrays.asList(quickTest, quickTest, quickTest1));
-        when(quickTestConfig.getCleanUpSettings()).thenReturn(cleanUpSettings);
         quickTestService.removeAllBefore(now);
-        verify(quickTestDeletionService, times(1)).handleChunk(eq(now), eq(1000), eq(1), eq(1));
-        verify(quickTestRepository, times(1)).deleteByCreatedAtBefore(now);
+        verify(quickTestDeletionService, times(1)).removeAllBefore(now);
     }
 
     @Test
@@ -0,0 +1,86 @@
+/*-
+ * ---license-start
+ * Corona-Warn-App / cwa-quick-test-backend
+ * ---
+ * Copyright (C) 2021 - 2023 T-Systems International GmbH and all other contributors
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---license-end
+ */
+package app.coronawarn.quicktest.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import app.coronawarn.quicktest.config.TestResultServerValuesConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class TestResultBatchDispatcherTest {
+
+    private final List<List<String>> sent = new CopyOnWriteArrayList<>();
+
+    private TestResultBatchDispatcher<String> dispatcher;
+
+    @AfterEach
+    void tearDown() {
+        if (dispatcher != null) {
+            dispatcher.stop();
+        }
+    }
+
+    @Test
+    void errorOfSenderFailsOnlyItsBatch() throws Exception {
+        dispatcher = dispatcher(results -> {
+            if (results.contains("error")) {
+                throw new AssertionError("sender failed");
+            }
+            sent.add(results);
+        });
+
+        final CompletableFuture<Void> failed = dispatcher.submit("error");
+        assertThatThrownBy(() -> failed.get(5, TimeUnit.SECONDS))
+            .isInstanceOf(ExecutionException.class)
+            .hasCauseInstanceOf(AssertionError.class);
+
+        dispatcher.submit("ok").get(5, TimeUnit.SECONDS);
+        assertThat(sent).containsExactly(List.of("ok"));
+    }
+
+    @Test
+    void resultSubmittedAfterStopIsRejected() {
+        dispatcher = dispatcher(sent::add);
+        dispatcher.stop();
+
+        final CompletableFuture<Void> outcome = dispatcher.submit("late");
+
+        assertThat(outcome).isCompletedExceptionally();
+        assertThatThrownBy(outcome::join).hasCauseInstanceOf(RejectedExecutionException.class);
+        assertThat(sent).isEmpty();
+    }
+
+    private TestResultBatchDispatcher<String> dispatcher(Consumer<List<String>> sender) {
+        final TestResultServerValuesConfig.Batching config = new TestResultServerValuesConfig.Batching();
+        config.setLingerInMillis(0);
+        config.setTimeoutInMillis(5000);
+        return new TestResultBatchDispatcher<>("test", sender, config, new SimpleMeterRegistry());
+    }
+}
@@ -0,0 +1,165 @@
+/*-
+ * ---license-start
+ * Corona-Warn-App / cwa-quick-test-backend
+ * ---
+ * Copyright (C) 2021 - 2023 T-Systems International GmbH and all other contributors
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---license-end
+ */
+
+package app.coronawarn.quicktest.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import app.coronawarn.quicktest.config.TestResultServerValuesConfig;
+import app.coronawarn.quicktest.domain.TestResultOutboxEntry;
+import app.coronawarn.quicktest.model.quicktest.QuickTestResult;
+import app.coronawarn.quicktest.repository.TestResultOutboxRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+@SpringBootTest(properties = {
+    "testresultserver.outbox.enabled=true",
+    "testresultserver.outbox.delay=3600000",
+    "testresultserver.outbox.max-attempts=2"
+})
+class TestResultOutboxServiceTest {
+
+    private static final String TRS_HASH = "6fa4dcecf716d8dd96c9e927dda5484f1a8a9da03155aa760e0c38f9bed645c4";
+
+    @Autowired
+    private TestResultOutboxService testResultOutbox;
+
+    @Autowired
+    private TestResultOutboxRepository testResultOutboxRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private TestResultServerValuesConfig testResultServerConfig;
+
+    @MockBean
+    private TestResultService testResultService;
+
+    @BeforeEach
+    void setUp() {
+        testResultOutboxRepository.deleteAll();
+    }
+
+    @Test
+    void resultsOfAQuickTestAreDeliveredInOrder() {
+        when(testResultService.submitTestResult(any())).thenReturn(CompletableFuture.completedFuture(null));
+        testResultOutbox.enqueue("guid", TRS_HASH, (short) 5, 1L, false);
+        testResultOutbox.enqueue("guid", TRS_HASH, (short) 6, 2L, false);
+        assertThat(meterRegistry.get("quicktest.trs.outbox.size").gauge().value()).isEqualTo(2);
+
+        testResultOutbox.deliver();
+
+        InOrder order = inOrder(testResultService);
+        order.verify(testResultService).submitTestResult(result(5));
+        order.verify(testResultService).submitTestResult(result(6));
+        assertThat(testResultOutboxRepository.count()).isZero();
+        assertThat(meterRegistry.get("quicktest.trs.outbox.delivered").counter().count()).isGreaterThanOrEqualTo(2);
+    }
+
+    @Test
+    void failedResultIsRetriedLaterAndBlocksLaterResults() {
+        CompletableFuture<Void> failed = CompletableFuture.failedFuture(new IllegalStateException("TRS down"));
+        when(testResultService.submitTestResult(any())).thenReturn(failed);
+        doThrow(new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR)).when(testResultService).await(failed);
+        testResultOutbox.enqueue("guid", TRS_HASH, (short) 5, 1L, false);
+        testResultOutbox.enqueue("guid", TRS_HASH, (short) 6, 2L, false);
+
+        testResultOutbox.deliver();
+        testResultOutbox.deliver();
+
+        verify(testResultService).submitTestResult(result(5));
+        verify(testResultService, never()).submitTestResult(result(6));
+        List<TestResultOutboxEntry> entries = testResultOutboxRepository.findAll();
+        assertThat(entries).hasSize(2);
+        assertThat(entries.get(0).getAttempts()).isEqualTo(1);
+        assertThat(entries.get(0).getLastError()).isNotBlank();
+        assertThat(entries.get(0).getNextAttemptAt()).isAfter(entries.get(0).getCreatedAt());
+        assertThat(meterRegistry.get("quicktest.trs.outbox.lag").gauge().value()).isGreaterThanOrEqualTo(0);
+    }
+
+    @Test
+    void resultIsParkedAfterMaxAttemptsAndUnblocksLaterResults() {
+        CompletableFuture<Void> failed = CompletableFuture.failedFuture(new IllegalStateException("rejected"));
+        CompletableFuture<Void> accepted = CompletableFuture.completedFuture(null);
+        when(testResultService.submitTestResult(any())).thenReturn(failed, failed, accepted);
+        doThrow(new ResponseStatusException(HttpStatus.BAD_REQUEST)).when(testResultService).await(failed);
+        testResultOutbox.enqueue("guid", TRS_HASH, (short) 5, 1L, false);
+        testResultOutbox.enqueue("guid", TRS_HASH, (short) 6, 2L, false);
+        double parked = meterRegistry.get("quicktest.trs.outbox.parked").counter().count();
+
+        long initialBackoff = testResultServerConfig.getOutbox().getInitialBackoffInMillis();
+        testResultServerConfig.getOutbox().setInitialBackoffInMillis(0);
+        try {
+            testResultOutbox.deliver();
+            testResultOutbox.deliver();
+            testResultOutbox.deliver();
+        } finally {
+            testResultServerConfig.getOutbox().setInitialBackoffInMillis(initialBackoff);
+        }
+
+        verify(testResultService, times(2)).submitTestResult(result(5));
+        verify(testResultService).submitTestResult(result(6));
+        List<TestResultOutboxEntry> entries = testResultOutboxRepository.findAll();
+        assertThat(entries).hasSize(1);
+        assertThat(entries.get(0).getResult()).isEqualTo((short) 5);
+        assertThat(entries.get(0).getAttempts()).isEqualTo(2);
+        assertThat(entries.get(0).getParkedAt()).isNotNull();
+        assertThat(meterRegistry.get("quicktest.trs.outbox.parked").counter().count()).isEqualTo(parked + 1);
+        assertThat(meterRegistry.get("quicktest.trs.outbox.parked.size").gauge().value()).isEqualTo(1);
+        assertThat(meterRegistry.get("quicktest.trs.outbox.size").gauge().value()).isZero();
+    }
+
+    @Test
+    void pcrResultsAreSentAsPcrResults() {
+        when(testResultService.submitPcrTestResult(any())).thenReturn(CompletableFuture.completedFuture(null));
+        testResultOutbox.enqueue("pcr", TRS_HASH, (short) 10, 1L, true);
+
+        testResultOutbox.deliver();
+
+        verify(testResultService).submitPcrTestResult(argThat(result -> result.getResult() == 10));
+        assertThat(testResultOutboxRepository.count()).isZero();
+    }
+
+    private static QuickTestResult result(int result) {
+        QuickTestResult quickTestResult = new QuickTestResult();
+        quickTestResult.setId(TRS_HASH);
+        quickTestResult.setResult((short) result);
+        quickTestResult.setSampleCollection(result - 4L);
+        return quickTestResult;
+    }
+}
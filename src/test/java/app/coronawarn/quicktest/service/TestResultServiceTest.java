@@ -0,0 +1,179 @@
+/*-
+ * ---license-start
+ * Corona-Warn-App / cwa-quick-test-backend
+ * ---
+ * Copyright (C) 2021 - 2023 T-Systems International GmbH and all other contributors
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---license-end
+ */
+
+package app.coronawarn.quicktest.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import app.coronawarn.quicktest.model.quicktest.PcrTestResult;
+import app.coronawarn.quicktest.model.quicktest.QuickTestResult;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Sends test results with batching enabled to a stub of the Test Result Server endpoints, which rejects every
+ * request containing the result "bad".
+ */
+@SpringBootTest(properties = {
+    "testresultserver.batching.enabled=true",
+    "testresultserver.batching.lingerInMillis=50",
+    "testresultserver.batching.maxBatchSize=10"
+})
+class TestResultServiceTest {
+
+    private static final String QUICK_TEST_RESULTS = "/api/v1/quicktest/results";
+
+    private static final String PCR_TEST_RESULTS = "/api/v1/pocnat/results";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final Map<String, List<List<String>>> REQUESTS = new ConcurrentHashMap<>();
+
+    private static HttpServer server;
+
+    @Autowired
+    private TestResultService testResultService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @DynamicPropertySource
+    static void testResultServer(DynamicPropertyRegistry registry) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext(QUICK_TEST_RESULTS, exchange -> results(exchange, QUICK_TEST_RESULTS));
+        server.createContext(PCR_TEST_RESULTS, exchange -> results(exchange, PCR_TEST_RESULTS));
+        server.start();
+        final String url = "http://localhost:" + server.getAddress().getPort();
+        registry.add("cwa-testresult-server.url", () -> url);
+        registry.add("cwa-testresult-server.url-pcr", () -> url);
+    }
+
+    @AfterAll
+    static void stopTestResultServer() {
+        server.stop(0);
+    }
+
+    @BeforeEach
+    void setUp() {
+        REQUESTS.clear();
+    }
+
+    @Test
+    void concurrentResultsAreSentTogether() {
+        final List<CompletableFuture<Void>> sent = IntStream.range(0, 50)
+            .mapToObj(i -> CompletableFuture.runAsync(() -> testResultService.createOrUpdateTestResult(result("" + i))))
+            .collect(Collectors.toList());
+        sent.forEach(CompletableFuture::join);
+
+        final List<Integer> batches = REQUESTS.get(QUICK_TEST_RESULTS).stream()
+            .map(List::size)
+            .collect(Collectors.toList());
+        assertThat(batches.stream().mapToInt(Integer::intValue).sum()).isEqualTo(50);
+        assertThat(batches).hasSizeLessThan(50).allMatch(size -> size <= 10);
+        assertThat(meterRegistry.get("quicktest.trs.batch.size").tag("type", "rat").summary().count())
+            .isGreaterThanOrEqualTo(batches.size());
+        assertThat(meterRegistry.get("quicktest.trs.batch.latency").tag("type", "rat").timer().count())
+            .isGreaterThanOrEqualTo(batches.size());
+    }
+
+    @Test
+    void rejectedResultFailsOnlyItsCaller() {
+        final List<CompletableFuture<Void>> outcomes = List.of(
+            testResultService.submitTestResult(result("a")),
+            testResultService.submitTestResult(result("bad")),
+            testResultService.submitTestResult(result("b")));
+
+        testResultService.await(outcomes.get(0));
+        assertThatThrownBy(() -> testResultService.await(outcomes.get(1)))
+            .isInstanceOf(ResponseStatusException.class);
+        testResultService.await(outcomes.get(2));
+        // the results may be split into several batches, the rejected result is sent alone in the end
+        final List<List<String>> requests = REQUESTS.get(QUICK_TEST_RESULTS);
+        assertThat(requests).contains(List.of("bad"));
+        assertThat(requests.stream()
+            .filter(request -> !request.contains("bad"))
+            .flatMap(List::stream)
+            .collect(Collectors.toList()))
+            .containsExactlyInAnyOrder("a", "b");
+    }
+
+    @Test
+    void cancelledResultIsNotSent() {
+        final CompletableFuture<Void> cancelled = testResultService.submitTestResult(result("cancelled"));
+        cancelled.cancel(false);
+        testResultService.await(testResultService.submitTestResult(result("a")));
+
+        assertThat(REQUESTS.get(QUICK_TEST_RESULTS).stream().flatMap(List::stream).collect(Collectors.toList()))
+            .containsExactly("a");
+    }
+
+    @Test
+    void pcrResultsAreSentTogether() {
+        final List<CompletableFuture<Void>> outcomes = IntStream.range(0, 5)
+            .mapToObj(i -> {
+                final PcrTestResult result = new PcrTestResult();
+                result.setId("pcr" + i);
+                result.setResult((short) 10);
+                return testResultService.submitPcrTestResult(result);
+            })
+            .collect(Collectors.toList());
+        outcomes.forEach(testResultService::await);
+
+        assertThat(REQUESTS.get(PCR_TEST_RESULTS)).extracting(List::size).containsExactly(5);
+    }
+
+    private static QuickTestResult result(String id) {
+        final QuickTestResult result = new QuickTestResult();
+        result.setId(id);
+        result.setResult((short) 7);
+        return result;
+    }
+
+    private static void results(HttpExchange exchange, String path) throws IOException {
+        final JsonNode results = MAPPER.readTree(exchange.getRequestBody()).get("testResults");
+        final List<String> ids = new ArrayList<>();
+        results.forEach(result -> ids.add(result.get("id").asText()));
+        REQUESTS.computeIfAbsent(path, key -> new CopyOnWriteArrayList<>()).add(ids);
+        exchange.sendResponseHeaders(ids.contains("bad") ? 400 : 204, -1);
+        exchange.close();
+    }
+}
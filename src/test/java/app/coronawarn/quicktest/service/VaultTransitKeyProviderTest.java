@@ -0,0 +1,196 @@
+/*-
+ * ---license-start
+ * Corona-Warn-App / cwa-quick-test-backend
+ * ---
+ * Copyright (C) 2021 - 2023 T-Systems International GmbH and all other contributors
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---license-end
+ */
+
+package app.coronawarn.quicktest.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import app.coronawarn.quicktest.config.ArchiveProperties;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.vault.authentication.TokenAuthentication;
+import org.springframework.vault.client.VaultEndpoint;
+import org.springframework.vault.core.VaultTemplate;
+
+/**
+ * Runs the provider against a minimal Transit stub which returns "vault:v1:" + plaintext as ciphertext.
+ */
+@Slf4j
+class VaultTransitKeyProviderTest {
+
+    private static final String FOLDER = "transit";
+
+    private static final String DEK = "dek";
+
+    private static final String CONTEXT = "tenant";
+
+    private static final int ENTRIES = 500;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final AtomicInteger encryptRequests = new AtomicInteger();
+
+    private final AtomicInteger decryptRequests = new AtomicInteger();
+
+    private final AtomicInteger keyRequests = new AtomicInteger();
+
+    private HttpServer server;
+
+    private String publicKeyPem;
+
+    private VaultTransitKeyProvider keyProvider;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        final KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        publicKeyPem = "-----BEGIN PUBLIC KEY-----\n"
+            + Base64.getMimeEncoder().encodeToString(generator.generateKeyPair().getPublic().getEncoded())
+            + "\n-----END PUBLIC KEY-----\n";
+
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/v1/" + FOLDER + "/encrypt/" + DEK, exchange -> transform(exchange, encryptRequests,
+            "plaintext", "ciphertext", value -> "vault:v1:" + value));
+        server.createContext("/v1/" + FOLDER + "/decrypt/" + DEK, exchange -> transform(exchange, decryptRequests,
+            "ciphertext", "plaintext", value -> value.substring("vault:v1:".length())));
+        server.createContext("/v1/" + FOLDER + "/keys/" + DEK, this::key);
+        server.start();
+
+        final VaultEndpoint endpoint = VaultEndpoint.create("localhost", server.getAddress().getPort());
+        endpoint.setScheme("http");
+        final ArchiveProperties properties = new ArchiveProperties();
+        properties.getVaultTransit().setFolder(FOLDER);
+        properties.getVaultTransit().setDek(DEK);
+        properties.getVaultTransit().setBatchSize(250);
+        keyProvider = new VaultTransitKeyProvider(properties,
+            new VaultTemplate(endpoint, new TokenAuthentication("token")));
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    void batchResultsMatchSingleOperations() {
+        final String single = keyProvider.encrypt("secret", CONTEXT);
+        final List<String> batch = keyProvider.encryptAll(List.of("secret", "other"), CONTEXT);
+
+        assertThat(batch.get(0)).isEqualTo(single);
+        assertThat(keyProvider.decrypt(batch.get(1), CONTEXT)).isEqualTo("other");
+        assertThat(keyProvider.decryptAll(List.of(single, batch.get(1)), CONTEXT)).containsExactly("secret", "other");
+    }
+
+    @Test
+    void batchOperationsNeedOneRequestPerBatch() {
+        final List<String> secrets = IntStream.range(0, ENTRIES)
+            .mapToObj(i -> "secret-" + i)
+            .collect(Collectors.toList());
+
+        long start = System.nanoTime();
+        final List<String> singleEncrypted = secrets.stream()
+            .map(secret -> keyProvider.encrypt(secret, CONTEXT))
+            .collect(Collectors.toList());
+        singleEncrypted.forEach(encrypted -> keyProvider.decrypt(encrypted, CONTEXT));
+        final long singleMillis = (System.nanoTime() - start) / 1_000_000;
+        assertThat(encryptRequests.get()).isEqualTo(ENTRIES);
+        assertThat(decryptRequests.get()).isEqualTo(ENTRIES);
+
+        encryptRequests.set(0);
+        decryptRequests.set(0);
+        start = System.nanoTime();
+        final List<String> encrypted = keyProvider.encryptAll(secrets, CONTEXT);
+        final List<String> decrypted = keyProvider.decryptAll(encrypted, CONTEXT);
+        final long batchMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertThat(decrypted).containsExactlyElementsOf(secrets);
+        assertThat(encryptRequests.get()).isEqualTo(2);
+        assertThat(decryptRequests.get()).isEqualTo(2);
+        log.info("{} secrets encrypted and decrypted: single requests {} ms, batch requests {} ms",
+            ENTRIES, singleMillis, batchMillis);
+    }
+
+    @Test
+    void publicKeyIsCached() throws Exception {
+        final PublicKey first = keyProvider.getPublicKey();
+        final PublicKey second = keyProvider.getPublicKey();
+
+        assertThat(second).isEqualTo(first);
+        assertThat(keyRequests.get()).isEqualTo(1);
+    }
+
+    private void transform(final HttpExchange exchange, final AtomicInteger counter, final String input,
+                           final String output, final UnaryOperator<String> operation)
+        throws IOException {
+        counter.incrementAndGet();
+        final JsonNode request = mapper.readTree(exchange.getRequestBody());
+        final ObjectNode data = mapper.createObjectNode();
+        if (request.has("batch_input")) {
+            final ArrayNode results = data.putArray("batch_results");
+            request.get("batch_input").forEach(item ->
+                results.addObject().put(output, operation.apply(item.get(input).asText())));
+        } else {
+            data.put(output, operation.apply(request.get(input).asText()));
+        }
+        respond(exchange, data);
+    }
+
+    private void key(final HttpExchange exchange) throws IOException {
+        keyRequests.incrementAndGet();
+        final ObjectNode data = mapper.createObjectNode();
+        data.put("name", DEK);
+        data.put("type", "rsa-2048");
+        data.put("latest_version", 1);
+        data.put("min_decryption_version", 1);
+        data.put("min_encryption_version", 0);
+        data.putObject("keys").putObject("1").put("public_key", publicKeyPem);
+        respond(exchange, data);
+    }
+
+    private void respond(final HttpExchange exchange, final ObjectNode data) throws IOException {
+        final ObjectNode body = mapper.createObjectNode();
+        body.set("data", data);
+        final byte[] response = mapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, response.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(response);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*-
+ * ---license-start
+ * Corona-Warn-App / cwa-quick-test-backend
+ * ---
+ * Copyright (C) 2021 - 2023 T-Systems International GmbH and all other contributors
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---license-end
+ */
+
+package app.coronawarn.quicktest.service.crypton;
+
+import app.coronawarn.quicktest.service.cryption.AesGcmNoPadding256Cryption;
+import app.coronawarn.quicktest.service.cryption.AesGcmNoPadding256V2Cryption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * Throughput (archive records per second) of encrypting and decrypting a record of the longterm archive.
+ * <ul>
+ *     <li>legacy: {@link AesGcmNoPadding256Cryption}, derives the key with PBKDF2 for every encryption and
+ *     decryption (before)</li>
+ *     <li>v2SharedSecret: {@link AesGcmNoPadding256V2Cryption} with the secret shared by the records of a data key,
+ *     the key is derived once and cached (after)</li>
+ *     <li>v2SecretPerRecord: {@link AesGcmNoPadding256V2Cryption} with a new secret for every record, as without
+ *     envelope data keys</li>
+ * </ul>
+ * All of them use 12345 PBKDF2 iterations, the default of the application.
+ * Run the main method from the test classpath, e.g. in the IDE after mvn test-compile.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AesGcmNoPadding256V2CryptionBenchmark {
+
+    private static final int ITERATIONS = 12345;
+
+    private static final String SECRET = "B5hCYqxtkHtSkkhZcEEfVyL48zWEn8vqhJJxAQhr4eQTtHZZEH";
+
+    private static final String RECORD = "{\"hashedGuid\":\"6fa4dcecf716d8dd96c9e927dda5484f1a8a9da03155aa760e0c38f9"
+        + "bed645c4\",\"shortHashedGuid\":\"6fa4dcec\",\"tenantId\":\"4711\",\"pocId\":\"0815\",\"createdAt\":"
+        + "\"2021-04-08T08:11:12\",\"updatedAt\":\"2021-04-08T08:26:12\",\"confirmationCwa\":true,\"testResult\":6,"
+        + "\"privacyAgreement\":true,\"lastName\":\"Mustermann\",\"firstName\":\"Erika\",\"email\":"
+        + "\"erika.mustermann@example.org\",\"phoneNumber\":\"+49 221 1234567\",\"sex\":\"FEMALE\",\"street\":"
+        + "\"Musterstrasse\",\"houseNumber\":\"12a\",\"zipCode\":\"51147\",\"city\":\"Koeln\",\"testBrandId\":"
+        + "\"1232\",\"testBrandName\":\"Panbio COVID-19 Ag Rapid Test\",\"birthday\":\"1964-08-12\","
+        + "\"testResultServerHash\":\"a3b7c4d1e2f3a4b5c6d7e8f9a0b1c2d3e4f5a6b7c8d9e0f1a2b3c4d5e6f7a8b9\"}";
+
+    private final AtomicLong secrets = new AtomicLong();
+
+    private AesGcmNoPadding256Cryption legacy;
+
+    private AesGcmNoPadding256V2Cryption v2;
+
+    /**
+     * Creates both implementations with the default configuration.
+     */
+    @Setup
+    public void setUp() {
+        legacy = new AesGcmNoPadding256Cryption();
+        ReflectionTestUtils.setField(legacy, "iterations", ITERATIONS);
+        v2 = new AesGcmNoPadding256V2Cryption();
+        ReflectionTestUtils.setField(v2, "iterations", ITERATIONS);
+        ReflectionTestUtils.setField(v2, "cacheSize", 1000);
+        ReflectionTestUtils.setField(v2, "cacheTtlInSeconds", 3600L);
+        v2.initCaches();
+    }
+
+    @Benchmark
+    public String legacy() {
+        return legacy.decrypt(SECRET, legacy.encrypt(SECRET, RECORD));
+    }
+
+    @Benchmark
+    public String v2SharedSecret() {
+        return v2.decrypt(SECRET, v2.encrypt(SECRET, RECORD));
+    }
+
+    @Benchmark
+    public String v2SecretPerRecord() {
+        final String secret = SECRET + secrets.incrementAndGet();
+        return v2.decrypt(secret, v2.encrypt(secret, RECORD));
+    }
+
+    /**
+     * Runs the benchmarks with 1 thread.
+     */
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+            .include(AesGcmNoPadding256V2CryptionBenchmark.class.getSimpleName())
+            .threads(1)
+            .build()).run();
+    }
+}
@@ -0,0 +1,89 @@
+/*-
+ * ---license-start
+ * Corona-Warn-App / cwa-quick-test-backend
+ * ---
+ * Copyright (C) 2021 - 2023 T-Systems International GmbH and all other contributors
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---license-end
+ */
+
+package app.coronawarn.quicktest.service.crypton;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import app.coronawarn.quicktest.service.cryption.AesGcmNoPadding256Cryption;
+import app.coronawarn.quicktest.service.cryption.AesGcmNoPadding256V2Cryption;
+import app.coronawarn.quicktest.service.cryption.CryptionService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.NullAndEmptySource;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+@SpringBootTest
+class AesGcmNoPadding256V2CryptionTest {
+
+    private static final String SECRET = "B5hCYqxtkHtSkkhZcEEfVyL48zWEn8vqhJJxAQhr4eQTtHZZEH";
+
+    @Autowired
+    private AesGcmNoPadding256V2Cryption cryption;
+
+    @Autowired
+    private AesGcmNoPadding256Cryption legacyCryption;
+
+    @Autowired
+    private CryptionService cryptionService;
+
+    private final String plain = "{\"glossary\":{\"title\":\"exampleglossary\",\"GlossDiv\":{\"title\":\"S\","
+            + "\"GlossList\":{\"GlossEntry\":{\"ID\":\"SGML\",\"SortAs\":\"SGML\"}}}}}";
+
+    @ParameterizedTest
+    @NullAndEmptySource
+    @ValueSource(strings = { SECRET, "rVsNnbc4kKT2TPqLWKJ25A4VydVavpGsudHbChe5WpwpuKksxx" })
+    void encryptAndDecrypt(String secret) {
+        final String encrypted = this.cryption.encrypt(secret, this.plain);
+        final String decrypted = this.cryption.decrypt(secret, encrypted);
+
+        assertThat(encrypted).isNotNull();
+        assertThat(decrypted).isNotNull().isEqualTo(this.plain);
+    }
+
+    @Test
+    void sameSecretProducesDifferentCiphertexts() {
+        final String first = this.cryption.encrypt(SECRET, this.plain);
+        final String second = this.cryption.encrypt(SECRET, this.plain);
+
+        assertThat(first).isNotEqualTo(second);
+        assertThat(this.cryption.decrypt(SECRET, first)).isEqualTo(this.plain);
+        assertThat(this.cryption.decrypt(SECRET, second)).isEqualTo(this.plain);
+    }
+
+    @Test
+    void wrongSecretFails() {
+        final String encrypted = this.cryption.encrypt(SECRET, this.plain);
+
+        assertThrows(RuntimeException.class, () -> this.cryption.decrypt("wrong", encrypted));
+    }
+
+    @Test
+    void legacyFormatStaysDecryptableByAlgorithmName() {
+        final String legacy = this.legacyCryption.encrypt(SECRET, this.plain);
+
+        assertThat(this.cryptionService.getByAlgorithm(this.legacyCryption.getAlgorithm()).decrypt(SECRET, legacy))
+            .isEqualTo(this.plain);
+        assertThrows(RuntimeException.class, () -> this.cryption.decrypt(SECRET, legacy));
+    }
+}
@@ -83,7 +83,7 @@ class CryptionServiceTest {
     }
 
     @ParameterizedTest
-    @ValueSource(strings = { "RSA/ECB/OAEPwithSHA-512andMGF1Padding", "AES/GCM/NoPadding" })
+    @ValueSource(strings = { "RSA/ECB/OAEPwithSHA-512andMGF1Padding", "AES/GCM/NoPadding", "AES/GCM/NoPadding/V2" })
     void getByAlgorithm(final String algorithm) {
         // GIVEN algorithm param
         // WHEN
@@ -0,0 +1,67 @@
+/*-
+ * ---license-start
+ * Corona-Warn-App / cwa-quick-test-backend
+ * ---
+ * Copyright (C) 2021 - 2023 T-Systems International GmbH and all other contributors
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---license-end
+ */
+
+package app.coronawarn.quicktest.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+class BloomFilterTest {
+
+    private static final int ELEMENTS = 100_000;
+
+    @Test
+    void containsAllAddedValues() {
+        final BloomFilter filter = new BloomFilter(ELEMENTS, 0.01);
+        IntStream.range(0, ELEMENTS).forEach(i -> filter.put("value-" + i));
+
+        assertThat(IntStream.range(0, ELEMENTS).allMatch(i -> filter.mightContain("value-" + i))).isTrue();
+        assertThat(filter.getInsertions()).isEqualTo(ELEMENTS);
+    }
+
+    @Test
+    void falsePositiveRateMatchesConfiguration() {
+        final BloomFilter filter = new BloomFilter(ELEMENTS, 0.01);
+        IntStream.range(0, ELEMENTS).forEach(i -> filter.put("value-" + i));
+
+        final long falsePositives = IntStream.range(0, ELEMENTS)
+            .filter(i -> filter.mightContain("other-" + i))
+            .count();
+        assertThat((double) falsePositives / ELEMENTS).isLessThan(0.02);
+        assertThat(filter.getExpectedFalsePositiveProbability()).isBetween(0.005, 0.02);
+    }
+
+    @Test
+    void emptyFilterContainsNothing() {
+        final BloomFilter filter = new BloomFilter(10, 0.01);
+
+        assertThat(filter.mightContain("value")).isFalse();
+        assertThat(filter.getExpectedFalsePositiveProbability()).isZero();
+    }
+
+    @Test
+    void rejectsInvalidProbability() {
+        assertThrows(IllegalArgumentException.class, () -> new BloomFilter(10, 0));
+        assertThrows(IllegalArgumentException.class, () -> new BloomFilter(10, 1));
+    }
+}
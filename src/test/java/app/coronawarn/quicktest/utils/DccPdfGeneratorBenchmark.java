@@ -0,0 +1,137 @@
+/*-
+ * ---license-start
+ * Corona-Warn-App / cwa-quick-test-backend
+ * ---
+ * Copyright (C) 2021 - 2023 T-Systems International GmbH and all other contributors
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---license-end
+ */
+
+package app.coronawarn.quicktest.utils;
+
+import static app.coronawarn.quicktest.utils.QuicktestUtils.getQuickTest;
+
+import app.coronawarn.quicktest.config.PdfConfig;
+import app.coronawarn.quicktest.config.QuickTestConfig;
+import app.coronawarn.quicktest.dgc.DccDecoder;
+import app.coronawarn.quicktest.domain.QuickTest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Latency (ms per PDF) and size (bytes / pdfs) of appending the certificate pages to the quick test PDF.
+ * <ul>
+ *     <li>appendCertificatePage: the pages appended as incremental update by {@link DccPdfGenerator}</li>
+ *     <li>rewriteDocument: loading and saving the complete result again, what a full save adds on top</li>
+ * </ul>
+ * Run the main method from the test classpath, e.g. in the IDE after mvn test-compile.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DccPdfGeneratorBenchmark {
+
+    static final String DCC = "HC1:6BF-606A0T9WTWGSLKC 4X7923S%CA.48Y+6TAB3XK2F310RT012F3LMQ1001JC X8Y50.FK8ZKO/EZKEZ"
+        + "967L6C56..DU%DLPCG/DS2DHIA5Y8GY8JPCT3E5JDOA73467463W5207ZWERIL9WEQDD+Q6TW6FA7C464KCCWE6T9OF6:/6NA76W5."
+        + "JC2EC+96-Q63KCZPCNF6OF63W59%6PF6.SA*479L61G73564KC*KETF6A46.96646B565WET.D6$CBWE3/DO341$CKWEY "
+        + "CUPC1JC%N9+EDIPDCECRTCWH8.KEZEDWJC0FD6A5AIA%G7X+AQB9F+ALG7$X85G6+%6UB8AY8VS8VNAJ*8A1A*"
+        + "CBYB9UY9UB8%6A27BT3DC6CRHQ:FQSBG6X2MQE PIUIJ+Q83%3.KBJD7N5T+GUIIJT-MFWT*$0CQ7P5C4UQHF8F."
+        + "EC4D78J.2K$KQDIDIQRVS8A4KF5QM:D";
+
+    private PdfResources pdfResources;
+
+    private DccPdfGenerator dccPdfGenerator;
+
+    private QuickTest quickTest;
+
+    private byte[] quickTestPdf;
+
+    private byte[] certificatePdf;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class PdfSize {
+        public long bytes;
+        public long pdfs;
+
+        void add(byte[] pdf) {
+            bytes += pdf.length;
+            pdfs++;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        PdfConfig pdfConfig = new PdfConfig();
+        QuickTestConfig quickTestConfig = new QuickTestConfig();
+        PdfRenderBulkhead bulkhead = new PdfRenderBulkhead(pdfConfig, new SimpleMeterRegistry());
+        pdfResources = new PdfResources(pdfConfig);
+        pdfResources.preload();
+        dccPdfGenerator = new DccPdfGenerator(pdfConfig, quickTestConfig, new DccDecoder(), pdfResources, bulkhead);
+        quickTest = getQuickTest();
+        quickTestPdf = new PdfGenerator(pdfConfig, quickTestConfig, pdfResources, bulkhead)
+            .generatePdf(List.of("PoC Benchmark", "Benchmark Way 15"), quickTest, "Benchmark").toByteArray();
+        certificatePdf = dccPdfGenerator.appendCertificatePage(quickTestPdf, quickTest, DCC).toByteArray();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        pdfResources.close();
+    }
+
+    @Benchmark
+    public byte[] appendCertificatePage(PdfSize size) throws IOException {
+        byte[] pdf = dccPdfGenerator.appendCertificatePage(quickTestPdf, quickTest, DCC).toByteArray();
+        size.add(pdf);
+        return pdf;
+    }
+
+    @Benchmark
+    public byte[] rewriteDocument(PdfSize size) throws IOException {
+        try (PDDocument document = PDDocument.load(certificatePdf)) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            document.save(output);
+            byte[] pdf = output.toByteArray();
+            size.add(pdf);
+            return pdf;
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(DccPdfGeneratorBenchmark.class.getSimpleName()).build()).run();
+    }
+}
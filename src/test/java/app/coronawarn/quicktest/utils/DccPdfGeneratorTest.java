@@ -21,6 +21,8 @@
 package app.coronawarn.quicktest.utils;
 
 import static app.coronawarn.quicktest.utils.QuicktestUtils.getQuickTest;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.when;
@@ -29,20 +31,30 @@ import app.coronawarn.quicktest.config.PdfConfig;
 import app.coronawarn.quicktest.config.QuickTestConfig;
 import app.coronawarn.quicktest.dgc.DccDecoder;
 import app.coronawarn.quicktest.domain.QuickTest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.Arrays;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.io.RandomAccessBuffer;
+import org.apache.pdfbox.pdfparser.PDFParser;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.PDResources;
 import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDType0Font;
 import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.rendering.PDFRenderer;
 import org.apache.pdfbox.text.PDFTextStripper;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 @Slf4j
@@ -62,6 +74,10 @@ class DccPdfGeneratorTest {
 
     @Mock
     private QuickTestConfig quickTestConfig;
+    @Spy
+    private PdfResources pdfResources = new PdfResources(new PdfConfig());
+    @Spy
+    private PdfRenderBulkhead bulkhead = new PdfRenderBulkhead(new PdfConfig(), new SimpleMeterRegistry());
     QuickTestConfig.FrontendContextConfig frontendContextConfig = new QuickTestConfig.FrontendContextConfig();
 
     @BeforeEach
@@ -187,6 +203,42 @@ class DccPdfGeneratorTest {
         }
     }
 
+    @Test
+    void appendDccPageAsIncrementalUpdate() throws IOException {
+        frontendContextConfig.setEnvironmentName("");
+        when(quickTestConfig.getFrontendContextConfig()).thenReturn(frontendContextConfig);
+        when(pdfConfig.getCertTestTypeRat()).thenReturn(pdc.getCertTestTypeRat());
+
+        byte[] pdf = createFirstPagePdf().toByteArray();
+        byte[] file = pdfGenerator.appendCertificatePage(pdf, getQuickTest(),
+            DccPdfGeneratorBenchmark.DCC).toByteArray();
+
+        // the original document is kept unchanged, only the new objects are appended
+        assertArrayEquals(pdf, Arrays.copyOf(file, pdf.length));
+        assertTrue(file.length > pdf.length);
+
+        PDFParser parser = new PDFParser(new RandomAccessBuffer(file));
+        parser.setLenient(false);
+        parser.parse();
+        try (PDDocument pdfDocument = parser.getPDDocument()) {
+            assertEquals(3, pdfDocument.getNumberOfPages());
+            PDFRenderer renderer = new PDFRenderer(pdfDocument);
+            for (int i = 1; i < pdfDocument.getNumberOfPages(); i++) {
+                PDResources resources = pdfDocument.getPage(i).getResources();
+                for (COSName name : resources.getFontNames()) {
+                    PDFont font = resources.getFont(name);
+                    assertTrue(font.isEmbedded(), font.getName() + " is not embedded");
+                    if (font instanceof PDType0Font) {
+                        assertTrue(font.getName().matches("[A-Z]{6}\\+.*"), font.getName() + " is not a subset");
+                    }
+                }
+                assertTrue(resources.getXObjectNames().iterator().hasNext());
+                renderer.renderImage(i, 0.5f);
+            }
+            assertTrue(new PDFTextStripper().getText(pdfDocument).contains(pdc.getCertHeaderTestEn()));
+        }
+    }
+
     private ByteArrayOutputStream createFirstPagePdf() throws IOException {
         PDDocument document = new PDDocument();
         PDPage page1 = new PDPage(PDRectangle.A4);
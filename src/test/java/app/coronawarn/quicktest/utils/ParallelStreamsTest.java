@@ -0,0 +1,99 @@
+/*-
+ * ---license-start
+ * Corona-Warn-App / cwa-quick-test-backend
+ * ---
+ * Copyright (C) 2021 - 2023 T-Systems International GmbH and all other contributors
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---license-end
+ */
+
+package app.coronawarn.quicktest.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ParallelStreamsTest {
+
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void mapOrderedKeepsOrderOfSource() {
+        final List<Integer> result = ParallelStreams.mapOrdered(IntStream.range(0, 200).boxed(), i -> {
+            sleep(ThreadLocalRandom.current().nextInt(3));
+            return i * 2;
+        }, executor, 16).collect(Collectors.toList());
+
+        assertThat(result).isEqualTo(IntStream.range(0, 200).map(i -> i * 2).boxed().collect(Collectors.toList()));
+    }
+
+    @Test
+    void mapOrderedReadsAheadAtMostMaxPendingElements() {
+        final AtomicInteger read = new AtomicInteger();
+        final Stream<Integer> source = IntStream.range(0, 100).boxed().peek(i -> read.incrementAndGet());
+
+        try (Stream<Integer> mapped = ParallelStreams.mapOrdered(source, i -> i, executor, 10)) {
+            assertThat(mapped.iterator().next()).isZero();
+        }
+
+        assertThat(read.get()).isLessThanOrEqualTo(11);
+    }
+
+    @Test
+    void mapOrderedPropagatesExceptionsAndClosesSource() {
+        final AtomicBoolean closed = new AtomicBoolean();
+        final Stream<Integer> source = IntStream.range(0, 10).boxed().onClose(() -> closed.set(true));
+
+        try (Stream<Integer> mapped = ParallelStreams.mapOrdered(source, i -> {
+            if (i == 5) {
+                throw new IllegalArgumentException("failed");
+            }
+            return i;
+        }, executor, 4)) {
+            assertThrows(IllegalArgumentException.class, () -> mapped.collect(Collectors.toList()));
+        }
+
+        assertThat(closed).isTrue();
+    }
+
+    private static void sleep(final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
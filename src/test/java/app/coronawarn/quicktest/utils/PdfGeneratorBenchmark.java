@@ -0,0 +1,181 @@
+/*-
+ * ---license-start
+ * Corona-Warn-App / cwa-quick-test-backend
+ * ---
+ * Copyright (C) 2021 - 2023 T-Systems International GmbH and all other contributors
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---license-end
+ */
+
+package app.coronawarn.quicktest.utils;
+
+import static app.coronawarn.quicktest.utils.QuicktestUtils.getQuickTest;
+
+import app.coronawarn.quicktest.config.PdfConfig;
+import app.coronawarn.quicktest.config.QuickTestConfig;
+import app.coronawarn.quicktest.domain.QuickTest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDType0Font;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.core.io.ClassPathResource;
+
+/**
+ * Throughput (PDFs per second) and size (bytes / pdfs) of the quick test PDF.
+ * <ul>
+ *     <li>classpathResources: fonts and logo loaded for every document and the logo for every page (before)</li>
+ *     <li>cachedResources: the same document with {@link PdfResources} (after)</li>
+ *     <li>generatePdf: the complete PDF of {@link PdfGenerator}</li>
+ * </ul>
+ * Run the main method from the test classpath, e.g. in the IDE after mvn test-compile.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PdfGeneratorBenchmark {
+
+    private static final List<String> POC_INFORMATION =
+        List.of("PoC Benchmark", "Benchmark Way 15", "10101 Benchmark City", "Call: 0123-7890-0");
+
+    private PdfConfig pdfConfig;
+
+    private PdfResources pdfResources;
+
+    private PdfGenerator pdfGenerator;
+
+    private QuickTest quickTest;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class PdfSize {
+        public long bytes;
+        public long pdfs;
+
+        void add(byte[] pdf) {
+            bytes += pdf.length;
+            pdfs++;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        pdfConfig = new PdfConfig();
+        pdfResources = new PdfResources(pdfConfig);
+        pdfResources.preload();
+        pdfGenerator = new PdfGenerator(pdfConfig, new QuickTestConfig(), pdfResources,
+            new PdfRenderBulkhead(pdfConfig, new SimpleMeterRegistry()));
+        quickTest = getQuickTest();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        pdfResources.close();
+    }
+
+    @Benchmark
+    public byte[] classpathResources(PdfSize size) throws IOException {
+        try (PDDocument document = new PDDocument()) {
+            PDFont font = PDType0Font.load(document, new ClassPathResource(PdfResources.ARIAL).getInputStream());
+            PDFont bold = PDType0Font.load(document, new ClassPathResource(PdfResources.ARIAL_BOLD).getInputStream());
+            for (int i = 0; i < 2; i++) {
+                byte[] logo;
+                try (InputStream input = new ClassPathResource(pdfConfig.getLogoPath()).getInputStream()) {
+                    logo = IOUtils.toByteArray(input);
+                }
+                addPage(document, font, bold, PDImageXObject.createFromByteArray(document, logo, "logo"));
+            }
+            return save(document, size);
+        }
+    }
+
+    @Benchmark
+    public byte[] cachedResources(PdfSize size) throws IOException {
+        try (PdfRenderContext context = new PdfRenderContext(new PDDocument(), pdfResources)) {
+            PDFont font = context.getFont(PdfResources.ARIAL);
+            PDFont bold = context.getFont(PdfResources.ARIAL_BOLD);
+            PDImageXObject logo = context.getImage(pdfConfig.getLogoPath());
+            for (int i = 0; i < 2; i++) {
+                addPage(context.getDocument(), font, bold, logo);
+            }
+            return save(context.getDocument(), size);
+        }
+    }
+
+    @Benchmark
+    public byte[] generatePdf(PdfSize size) throws IOException {
+        byte[] pdf = pdfGenerator.generatePdf(POC_INFORMATION, quickTest, "Benchmark").toByteArray();
+        size.add(pdf);
+        return pdf;
+    }
+
+    private void addPage(PDDocument document, PDFont font, PDFont bold, PDImageXObject logo) throws IOException {
+        PDPage page = new PDPage(PDRectangle.A4);
+        document.addPage(page);
+        try (PDPageContentStream cos = new PDPageContentStream(document, page)) {
+            cos.drawImage(logo, 280f, page.getMediaBox().getHeight() - 70f, 50f, 50f);
+            cos.beginText();
+            cos.setFont(bold, 12);
+            cos.newLineAtOffset(70f, page.getMediaBox().getHeight() - 160f);
+            cos.showText(pdfConfig.getQuickTestHeadlineText());
+            cos.setFont(font, 12);
+            cos.setLeading(14.5f);
+            for (String line : POC_INFORMATION) {
+                cos.newLine();
+                cos.showText(line);
+            }
+            cos.endText();
+        }
+    }
+
+    private byte[] save(PDDocument document, PdfSize size) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        document.save(output);
+        byte[] pdf = output.toByteArray();
+        size.add(pdf);
+        return pdf;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(PdfGeneratorBenchmark.class.getSimpleName()).build()).run();
+    }
+}
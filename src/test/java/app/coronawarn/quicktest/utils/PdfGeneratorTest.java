@@ -28,6 +28,7 @@ import static org.mockito.Mockito.when;
 import app.coronawarn.quicktest.config.PdfConfig;
 import app.coronawarn.quicktest.config.QuickTestConfig;
 import app.coronawarn.quicktest.domain.QuickTest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -39,6 +40,7 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 @Slf4j
@@ -51,6 +53,10 @@ public class PdfGeneratorTest {
     private PdfConfig pdfConfig;
     @Mock
     private QuickTestConfig quickTestConfig;
+    @Spy
+    private PdfResources pdfResources = new PdfResources(new PdfConfig());
+    @Spy
+    private PdfRenderBulkhead bulkhead = new PdfRenderBulkhead(new PdfConfig(), new SimpleMeterRegistry());
 
     @Test
     void generatePdfTest() throws IOException {
@@ -0,0 +1,134 @@
+/*-
+ * ---license-start
+ * Corona-Warn-App / cwa-quick-test-backend
+ * ---
+ * Copyright (C) 2021 - 2023 T-Systems International GmbH and all other contributors
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---license-end
+ */
+
+package app.coronawarn.quicktest.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import app.coronawarn.quicktest.config.PdfConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+class PdfRenderBulkheadTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(8);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void limitsConcurrentRenders() throws Exception {
+        PdfRenderBulkhead bulkhead = bulkhead(2, 10, 10000);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            final int value = i;
+            results.add(executor.submit(() -> bulkhead.execute(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(20));
+                running.decrementAndGet();
+                return value;
+            })));
+        }
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(i, results.get(i).get(10, TimeUnit.SECONDS));
+        }
+        assertThat(maxRunning.get()).isLessThanOrEqualTo(2);
+        assertThat(bulkhead.getActive()).isZero();
+        assertThat(bulkhead.getWaiting()).isZero();
+    }
+
+    @Test
+    void rejectsWhenQueueIsFull() throws Exception {
+        PdfRenderBulkhead bulkhead = bulkhead(1, 0, 10000);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> blocking = executor.submit(() -> bulkhead.execute(() -> {
+            started.countDown();
+            await(release);
+            return "done";
+        }));
+        assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+
+        ResponseStatusException e = assertThrows(ResponseStatusException.class, () -> bulkhead.execute(() -> "x"));
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, e.getStatus());
+        assertEquals(1.0, meterRegistry.get("quicktest.pdf.bulkhead.rejected").tag("reason", "full").counter()
+            .count());
+
+        release.countDown();
+        assertEquals("done", blocking.get(10, TimeUnit.SECONDS));
+        assertEquals("x", bulkhead.execute(() -> "x"));
+    }
+
+    @Test
+    void rejectsAfterTimeout() throws Exception {
+        PdfRenderBulkhead bulkhead = bulkhead(1, 5, 50);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        executor.submit(() -> bulkhead.execute(() -> {
+            started.countDown();
+            await(release);
+            return "done";
+        }));
+        assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+
+        assertThrows(ResponseStatusException.class, () -> bulkhead.execute(() -> "x"));
+        assertEquals(1.0, meterRegistry.get("quicktest.pdf.bulkhead.rejected").tag("reason", "timeout").counter()
+            .count());
+        assertThat(bulkhead.getWaiting()).isZero();
+        release.countDown();
+    }
+
+    private PdfRenderBulkhead bulkhead(int maxConcurrent, int queueCapacity, long timeoutInMillis) {
+        PdfConfig pdfConfig = new PdfConfig();
+        pdfConfig.getBulkhead().setMaxConcurrent(maxConcurrent);
+        pdfConfig.getBulkhead().setQueueCapacity(queueCapacity);
+        pdfConfig.getBulkhead().setTimeoutInMillis(timeoutInMillis);
+        return new PdfRenderBulkhead(pdfConfig, meterRegistry);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*-
+ * ---license-start
+ * Corona-Warn-App / cwa-quick-test-backend
+ * ---
+ * Copyright (C) 2021 - 2023 T-Systems International GmbH and all other contributors
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---license-end
+ */
+
+package app.coronawarn.quicktest.utils;
+
+import static app.coronawarn.quicktest.utils.QuicktestUtils.getQuickTest;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import app.coronawarn.quicktest.config.PdfConfig;
+import app.coronawarn.quicktest.config.QuickTestConfig;
+import app.coronawarn.quicktest.dgc.DccDecoder;
+import app.coronawarn.quicktest.domain.QuickTest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Renders PDFs on many threads through the shared generators and checks that every document is complete and only
+ * contains the data of its own quick test.
+ */
+class PdfRenderingStressTest {
+
+    private static final int PDFS = 2000;
+
+    private static final int THREADS = 32;
+
+    private static final int MAX_CONCURRENT = 4;
+
+    private static final String DCC = "HC1:6BF-606A0T9WTWGSLKC 4X7923S%CA.48Y+6TAB3XK2F310RT012F3LMQ1001JC X8Y50.FK8ZKO"
+        + "/EZKEZ967L6C56..DU%DLPCG/DS2DHIA5Y8GY8JPCT3E5JDOA73467463W5207ZWERIL9WEQDD+Q6TW6FA7C464KCCWE6T9OF6:/6NA76W5."
+        + "JC2EC+96-Q63KCZPCNF6OF63W59%6PF6.SA*479L61G73564KC*KETF6A46.96646B565WET.D6$CBWE3/DO341$CKWEY "
+        + "CUPC1JC%N9+EDIPDCECRTCWH8.KEZEDWJC0FD6A5AIA%G7X+AQB9F+ALG7$X85G6+%6UB8AY8VS8VNAJ*8A1A*"
+        + "CBYB9UY9UB8%6A27BT3DC6CRHQ:FQSBG6X2MQE PIUIJ+Q83%3.KBJD7N5T+GUIIJT-MFWT*$0CQ7P5C4UQHF8F."
+        + "EC4D78J.2K$KQDIDIQRVS8A4KF5QM:D";
+
+    private PdfResources pdfResources;
+
+    private PdfRenderBulkhead bulkhead;
+
+    private PdfGenerator pdfGenerator;
+
+    private DccPdfGenerator dccPdfGenerator;
+
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        PdfConfig pdfConfig = new PdfConfig();
+        pdfConfig.getBulkhead().setMaxConcurrent(MAX_CONCURRENT);
+        pdfConfig.getBulkhead().setQueueCapacity(THREADS);
+        pdfConfig.getBulkhead().setTimeoutInMillis(TimeUnit.MINUTES.toMillis(5));
+        QuickTestConfig quickTestConfig = new QuickTestConfig();
+        pdfResources = new PdfResources(pdfConfig);
+        pdfResources.preload();
+        bulkhead = new PdfRenderBulkhead(pdfConfig, new SimpleMeterRegistry());
+        pdfGenerator = new PdfGenerator(pdfConfig, quickTestConfig, pdfResources, bulkhead);
+        dccPdfGenerator = new DccPdfGenerator(pdfConfig, quickTestConfig, new DccDecoder(), pdfResources, bulkhead);
+        executor = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        executor.shutdownNow();
+        pdfResources.close();
+    }
+
+    @Test
+    void everyPdfIsWellFormed() throws Exception {
+        List<Future<?>> results = new ArrayList<>();
+        for (int i = 0; i < PDFS; i++) {
+            final int number = i;
+            results.add(executor.submit(() -> {
+                render(number);
+                return null;
+            }));
+        }
+        for (Future<?> result : results) {
+            result.get(5, TimeUnit.MINUTES);
+        }
+        assertThat(bulkhead.getActive()).isZero();
+        assertThat(bulkhead.getWaiting()).isZero();
+    }
+
+    private void render(int number) throws IOException {
+        QuickTest quickTest = getQuickTest();
+        quickTest.setFirstName("Stress" + number);
+        quickTest.setLastName("Test" + number);
+        String poc = "PoC " + number;
+        byte[] pdf = pdfGenerator.generatePdf(List.of(poc, "Stress Way 1"), quickTest, "User" + number)
+            .toByteArray();
+        // the certificate is appended for every tenth test, like the DCC upload does for consenting persons
+        boolean withDcc = number % 10 == 0;
+        if (withDcc) {
+            pdf = dccPdfGenerator.appendCertificatePage(pdf, quickTest, DCC).toByteArray();
+        }
+
+        try (PDDocument document = PDDocument.load(pdf)) {
+            assertThat(document.getNumberOfPages()).isEqualTo(withDcc ? 4 : 2);
+            String text = new PDFTextStripper().getText(document);
+            assertThat(text)
+                .contains(poc, "Stress" + number + " Test" + number, "User" + number)
+                .doesNotContain("Stress" + (number + 1) + " ");
+            if (withDcc) {
+                assertThat(text).contains("Test" + number + ", Stress" + number);
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*-
+ * ---license-start
+ * Corona-Warn-App / cwa-quick-test-backend
+ * ---
+ * Copyright (C) 2021 - 2023 T-Systems International GmbH and all other contributors
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---license-end
+ */
+
+package app.coronawarn.quicktest.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import app.coronawarn.quicktest.config.PdfConfig;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class PdfResourcesTest {
+
+    private final PdfConfig pdfConfig = new PdfConfig();
+
+    private final PdfResources pdfResources = new PdfResources(pdfConfig);
+
+    @BeforeEach
+    void setUp() {
+        pdfResources.preload();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        pdfResources.close();
+    }
+
+    @Test
+    void imageIsWrittenOnceForAllPages() throws IOException {
+        try (PDDocument document = PDDocument.load(render())) {
+            PDImageXObject first = image(document.getPage(0).getResources());
+            PDImageXObject second = image(document.getPage(1).getResources());
+
+            assertThat(first.getCOSObject()).isSameAs(second.getCOSObject());
+            assertThat(first.getImage()).isNotNull();
+            assertThat(first.getWidth()).isPositive();
+            assertThat(new PDFTextStripper().getText(document)).contains("Schnelltestportal");
+        }
+    }
+
+    @Test
+    void fontIsEmbeddedAsSubset() throws IOException {
+        try (PDDocument document = PDDocument.load(render())) {
+            PDResources resources = document.getPage(0).getResources();
+            PDFont font = resources.getFont(resources.getFontNames().iterator().next());
+
+            assertThat(font.getName()).matches("[A-Z]{6}\\+.*");
+        }
+    }
+
+    @Test
+    void documentsCanBeRenderedConcurrently() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<byte[]>> results = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                results.add(executor.submit(this::render));
+            }
+            byte[] expected = render();
+            for (Future<byte[]> result : results) {
+                assertThat(result.get()).hasSameSizeAs(expected);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void missingResourceFails() {
+        assertThrows(IOException.class, () -> {
+            try (PDDocument document = new PDDocument()) {
+                pdfResources.loadImage(document, "pdf/missing.png");
+            }
+        });
+    }
+
+    private byte[] render() throws IOException {
+        try (PdfRenderContext context = new PdfRenderContext(new PDDocument(), pdfResources)) {
+            PDDocument document = context.getDocument();
+            PDFont font = context.getFont(PdfResources.ARIAL);
+            PDImageXObject logo = context.getImage(pdfConfig.getLogoPath());
+            for (int i = 0; i < 2; i++) {
+                PDPage page = new PDPage(PDRectangle.A4);
+                document.addPage(page);
+                try (PDPageContentStream cos = new PDPageContentStream(document, page)) {
+                    cos.drawImage(logo, 280f, 700f, 50f, 50f);
+                    cos.beginText();
+                    cos.setFont(font, 12);
+                    cos.newLineAtOffset(70f, 600f);
+                    cos.showText("Schnelltestportal");
+                    cos.endText();
+                }
+            }
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            document.save(output);
+            return output.toByteArray();
+        }
+    }
+
+    private PDImageXObject image(PDResources resources) throws IOException {
+        for (COSName name : resources.getXObjectNames()) {
+            if (resources.isImageXObject(name)) {
+                return (PDImageXObject) resources.getXObject(name);
+            }
+        }
+        throw new IllegalStateException("no image on page");
+    }
+}
@@ -0,0 +1,119 @@
+/*-
+ * ---license-start
+ * Corona-Warn-App / cwa-quick-test-backend
+ * ---
+ * Copyright (C) 2021 - 2023 T-Systems International GmbH and all other contributors
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ---license-end
+ */
+
+package app.coronawarn.quicktest.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
+import java.io.InputStream;
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class S3MultipartOutputStreamTest {
+
+    private static final int PART_SIZE = S3MultipartOutputStream.MIN_PART_SIZE;
+
+    @Mock
+    private AmazonS3 s3Client;
+
+    @Test
+    void smallObjectIsUploadedWithSingleRequest() throws Exception {
+        S3MultipartOutputStream stream = new S3MultipartOutputStream(s3Client, "bucket", "small.csv", PART_SIZE);
+        stream.write("a;b;c\n".getBytes());
+        stream.close();
+
+        ArgumentCaptor<ObjectMetadata> metadata = ArgumentCaptor.forClass(ObjectMetadata.class);
+        verify(s3Client).putObject(eq("bucket"), eq("small.csv"), any(InputStream.class), metadata.capture());
+        assertThat(metadata.getValue().getContentLength()).isEqualTo(6);
+        assertThat(stream.getSize()).isEqualTo(6);
+        verify(s3Client, never()).initiateMultipartUpload(any());
+    }
+
+    @Test
+    void largeObjectIsUploadedInParts() throws Exception {
+        mockMultipartUpload();
+        byte[] chunk = new byte[1024 * 1024];
+        Arrays.fill(chunk, (byte) 'x');
+
+        S3MultipartOutputStream stream = new S3MultipartOutputStream(s3Client, "bucket", "large.csv", PART_SIZE);
+        for (int i = 0; i < 11; i++) {
+            stream.write(chunk);
+        }
+        stream.close();
+
+        ArgumentCaptor<UploadPartRequest> parts = ArgumentCaptor.forClass(UploadPartRequest.class);
+        verify(s3Client, times(3)).uploadPart(parts.capture());
+        assertThat(parts.getAllValues()).extracting(UploadPartRequest::getPartNumber).containsExactly(1, 2, 3);
+        assertThat(parts.getAllValues()).extracting(UploadPartRequest::getPartSize)
+            .containsExactly((long) PART_SIZE, (long) PART_SIZE, 1024L * 1024L);
+
+        ArgumentCaptor<CompleteMultipartUploadRequest> complete =
+            ArgumentCaptor.forClass(CompleteMultipartUploadRequest.class);
+        verify(s3Client).completeMultipartUpload(complete.capture());
+        assertThat(complete.getValue().getUploadId()).isEqualTo("upload-id");
+        assertThat(complete.getValue().getPartETags()).hasSize(3);
+        assertThat(stream.getSize()).isEqualTo(11L * 1024 * 1024);
+        verify(s3Client, never()).putObject(any(), any(), any(InputStream.class), any());
+    }
+
+    @Test
+    void abortDiscardsUploadedParts() throws Exception {
+        mockMultipartUpload();
+        S3MultipartOutputStream stream = new S3MultipartOutputStream(s3Client, "bucket", "aborted.csv", PART_SIZE);
+        stream.write(new byte[PART_SIZE + 1]);
+        stream.abort();
+        stream.close();
+
+        verify(s3Client).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+        verify(s3Client, never()).completeMultipartUpload(any());
+    }
+
+    private void mockMultipartUpload() {
+        InitiateMultipartUploadResult initResult = new InitiateMultipartUploadResult();
+        initResult.setUploadId("upload-id");
+        when(s3Client.initiateMultipartUpload(any(InitiateMultipartUploadRequest.class))).thenReturn(initResult);
+        when(s3Client.uploadPart(any(UploadPartRequest.class))).thenAnswer(invocation -> {
+            UploadPartRequest request = invocation.getArgument(0);
+            UploadPartResult result = new UploadPartResult();
+            result.setPartNumber(request.getPartNumber());
+            result.setETag("etag-" + request.getPartNumber());
+            return result;
+        });
+    }
+}